@@ -1,13 +1,17 @@
 package io.jenkins.plugins;
 
-import java.io.File;
 import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.StaplerRequest;
 
@@ -28,7 +32,12 @@ import io.jenkins.plugins.datatype.BitsType;
 import io.jenkins.plugins.datatype.FileObject;
 import io.jenkins.plugins.datatype.PlatformType;
 import io.jenkins.plugins.exceptions.InvalidNameException;
+import io.jenkins.plugins.utils.AssetBuildCache;
 import io.jenkins.plugins.utils.AssetFileUtils;
+import io.jenkins.plugins.utils.AssetManifest;
+import io.jenkins.plugins.utils.AssetZipCallable;
+import io.jenkins.plugins.utils.AssetZipRetention;
+import io.jenkins.plugins.utils.CompressionPolicy;
 import io.jenkins.plugins.utils.ContextLogger;
 import io.jenkins.plugins.utils.NameUtils;
 import net.sf.json.JSONObject;
@@ -139,6 +148,18 @@ public class AssetBuilder extends Builder {
 	private String documentationFileName;
 	private String installScriptFileName;
 
+	// Packaging Fields:
+	private boolean storeCompressedMedia;
+	private Integer compressionLevel;
+	private boolean virtualStaging;
+	private boolean reproducibleZip;
+	private boolean incrementalZip;
+	private Integer retainedZipsPerAsset;
+	private Integer retainedZipMegabytes;
+	private Integer buildCacheMegabytes;
+	private Integer entryCacheMegabytes;
+	private Integer zipThreads;
+
 	@DataBoundConstructor
 	public AssetBuilder(String name, String description, String version, String vendor, String platform,
 			String architecture, String bits, Integer cpu, Integer memory, Integer storage,
@@ -257,6 +278,121 @@ public class AssetBuilder extends Builder {
 		this.hasDocumentation = hasDocumentation;
 	}
 
+	public boolean isStoreCompressedMedia() {
+		return storeCompressedMedia;
+	}
+
+	@DataBoundSetter
+	public void setStoreCompressedMedia(boolean storeCompressedMedia) {
+		this.storeCompressedMedia = storeCompressedMedia;
+	}
+
+	public Integer getCompressionLevel() {
+		return compressionLevel;
+	}
+
+	@DataBoundSetter
+	public void setCompressionLevel(Integer compressionLevel) {
+		this.compressionLevel = compressionLevel;
+	}
+
+	public boolean isVirtualStaging() {
+		return virtualStaging;
+	}
+
+	@DataBoundSetter
+	public void setVirtualStaging(boolean virtualStaging) {
+		this.virtualStaging = virtualStaging;
+	}
+
+	public boolean isReproducibleZip() {
+		return reproducibleZip;
+	}
+
+	@DataBoundSetter
+	public void setReproducibleZip(boolean reproducibleZip) {
+		this.reproducibleZip = reproducibleZip;
+	}
+
+	public boolean isIncrementalZip() {
+		return incrementalZip;
+	}
+
+	@DataBoundSetter
+	public void setIncrementalZip(boolean incrementalZip) {
+		this.incrementalZip = incrementalZip;
+	}
+
+	public Integer getEntryCacheMegabytes() {
+		return entryCacheMegabytes;
+	}
+
+	@DataBoundSetter
+	public void setEntryCacheMegabytes(Integer entryCacheMegabytes) {
+		this.entryCacheMegabytes = entryCacheMegabytes;
+	}
+
+	public Integer getZipThreads() {
+		return zipThreads;
+	}
+
+	@DataBoundSetter
+	public void setZipThreads(Integer zipThreads) {
+		this.zipThreads = zipThreads;
+	}
+
+	/**
+	 * Gets the compression policy of the asset zip, reusing the unchanged
+	 * entries of the last zip of the asset if the zip is built incrementally,
+	 * and the compressed entries of the node if it has an entry cache.
+	 */
+	private CompressionPolicy getCompressionPolicy(final AbstractBuild<?, ?> build, final ContextLogger log)
+			throws IOException, InterruptedException {
+		final FilePath workspace = build.getWorkspace();
+		final CompressionPolicy policy = AssetFileUtils.withEntryCache(
+				CompressionPolicy.of(this.storeCompressedMedia, this.compressionLevel, this.reproducibleZip)
+						.withThreads(this.zipThreads),
+				build.getBuiltOn(), this.entryCacheMegabytes);
+		if (!this.incrementalZip) {
+			return policy;
+		}
+
+		final FilePath previousZip = AssetFileUtils.findPreviousAssetZip(workspace, this.getName());
+		if (previousZip == null) {
+			log.log("No previous asset zip found, compressing every file.");
+			return policy;
+		}
+		log.log("Copying unchanged files from the previous asset zip " + previousZip.getName() + ".");
+		return policy.withPreviousZip(previousZip.getRemote());
+	}
+
+	public Integer getRetainedZipsPerAsset() {
+		return retainedZipsPerAsset;
+	}
+
+	@DataBoundSetter
+	public void setRetainedZipsPerAsset(Integer retainedZipsPerAsset) {
+		this.retainedZipsPerAsset = retainedZipsPerAsset;
+	}
+
+	public Integer getRetainedZipMegabytes() {
+		return retainedZipMegabytes;
+	}
+
+	@DataBoundSetter
+	public void setRetainedZipMegabytes(Integer retainedZipMegabytes) {
+		this.retainedZipMegabytes = retainedZipMegabytes;
+	}
+
+	public Integer getBuildCacheMegabytes() {
+		return buildCacheMegabytes;
+	}
+
+	@DataBoundSetter
+	public void setBuildCacheMegabytes(Integer buildCacheMegabytes) {
+		this.buildCacheMegabytes = buildCacheMegabytes;
+	}
+
 	@Override
 	public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener) {
 
@@ -312,6 +448,34 @@ public class AssetBuilder extends Builder {
 				this.setHasDocumentation(true);
 			}
 
+			// Take the zip from the build cache if nothing it is built from changed:
+			AssetManifest contents = null;
+			String inputFingerprint = null;
+			final FilePath cacheDir = (this.buildCacheMegabytes != null && this.buildCacheMegabytes > 0)
+					? AssetBuildCache.getCacheDir(build.getBuiltOn())
+					: null;
+			if (cacheDir != null) {
+				contents = this.listAssetContents(build, log, installFile, documentationFile, licenseFile);
+				inputFingerprint = AssetBuildCache.fingerprint(build.getWorkspace(), contents, this.getBuildInputs());
+				final AssetZipCallable.Result cached = AssetBuildCache.lookup(cacheDir, inputFingerprint,
+						build.getWorkspace(), AssetFileUtils.getAssetZipNameForAsset(this.getName()));
+				if (cached != null) {
+					log.log("Asset inputs are unchanged (fingerprint " + inputFingerprint
+							+ "), using the asset zip from the build cache.");
+					this.recordAssetZip(build, log, cached, null, null);
+					return true;
+				}
+				log.log("No cached asset zip for input fingerprint " + inputFingerprint + ", building the asset.");
+			}
+
+			if (this.virtualStaging) {
+				if (contents == null) {
+					contents = this.listAssetContents(build, log, installFile, documentationFile, licenseFile);
+				}
+				this.zipFromSources(build, listener, log, contents, cacheDir, inputFingerprint);
+				return true;
+			}
+
 			// Create working directory:
 			log.log("Creating working directory...");
 			workDir = AssetFileUtils.createWorkingDirectory(build.getWorkspace(), this.getName());
@@ -359,6 +523,8 @@ public class AssetBuilder extends Builder {
 
 				log.log("Media directory created.");
 
+				final Map<String, Set<String>> wildcardMatches = this.findMediaWildcardMatches(build);
+
 				// Copy media file(s) into media directory, if provided:
 				for (final FileObject mf : this.mediaFilePaths) {
 					final FilePath workspace = build.getWorkspace();
@@ -371,7 +537,7 @@ public class AssetBuilder extends Builder {
 						
 						LOGGER.info("Wild card found in path: " + relativePath);
 
-						final Set<String> files = AssetFileUtils.findWildcardMatches(workspace, relativePath);
+						final Set<String> files = wildcardMatches.get(relativePath);
 						
 						for( final String file : files ) {
 							AssetFileUtils.copyAssetFile(log, workspace, file, mediaDirectory);
@@ -386,8 +552,9 @@ public class AssetBuilder extends Builder {
 
 			// Asset now created, create asset zip:
 			log.log("Asset contents copied, creating asset zip.");
-			final File assetZip = AssetFileUtils.getAssetZipFromPath(build.getWorkspace(), workDir);
-			log.log("Asset zip " + assetZip.getName() + " created.");
+			final AssetZipCallable.Result assetZip = build.getWorkspace().act(AssetZipCallable.forPath(listener,
+					"CONS3RT Asset Builder", workDir, this.getCompressionPolicy(build, log)));
+			this.recordAssetZip(build, log, assetZip, cacheDir, inputFingerprint);
 			
 			return true;
 
@@ -409,6 +576,132 @@ public class AssetBuilder extends Builder {
 		}
 	}
 
+	/**
+	 * Zips the asset straight from the workspace files. Nothing is copied. The
+	 * contents are listed from the controller and zipped on the machine the
+	 * workspace is on.
+	 */
+	private void zipFromSources(final AbstractBuild<?, ?> build, final BuildListener listener,
+			final ContextLogger log, final AssetManifest manifest, final FilePath cacheDir,
+			final String inputFingerprint) throws IOException, InterruptedException {
+		final FilePath workspace = build.getWorkspace();
+
+		log.log("Asset contents listed, creating asset zip.");
+		final AssetZipCallable.Result assetZip = workspace.act(AssetZipCallable.forManifest(listener,
+				"CONS3RT Asset Builder", AssetFileUtils.getAssetZipNameForAsset(this.getName()), manifest,
+				this.getCompressionPolicy(build, log)));
+		this.recordAssetZip(build, log, assetZip, cacheDir, inputFingerprint);
+	}
+
+	/**
+	 * Records the asset zip of the build, and adds it to the build cache if it
+	 * was just created.
+	 */
+	private void recordAssetZip(final AbstractBuild<?, ?> build, final ContextLogger log,
+			final AssetZipCallable.Result assetZip, final FilePath cacheDir, final String inputFingerprint)
+			throws IOException, InterruptedException {
+		final FilePath workspace = build.getWorkspace();
+		Cons3rtTransferAction.record(build, assetZip.getStatistics());
+		log.log("Asset zip " + assetZip.getZipName() + (assetZip.isCreated() ? " created." : " taken from the build cache."));
+		Cons3rtAssetAction.record(build, AssetFileUtils.recordPrebuiltAsset(workspace, this.getName(),
+				assetZip.getZipName(), assetZip.getSize(), assetZip.getSha256()));
+		AssetZipRetention.request(build, workspace, this.getName(), assetZip.getZipName(), this.retainedZipsPerAsset,
+				this.retainedZipMegabytes);
+
+		if (cacheDir != null && assetZip.isCreated()) {
+			final int evicted = AssetBuildCache.store(cacheDir, inputFingerprint,
+					new FilePath(workspace.getChannel(), assetZip.getZipPath()), assetZip.getSha256(),
+					this.buildCacheMegabytes);
+			log.log((evicted < 0) ? "Asset zip is larger than the build cache, not caching it."
+					: "Asset zip added to the build cache, " + evicted + " least recently used zip(s) evicted.");
+		}
+	}
+
+	/**
+	 * Gets everything besides the files that the asset zip is built from: the
+	 * content of asset.properties without its creation time, and the zip
+	 * settings.
+	 */
+	private String getBuildInputs() {
+		return AssetFileUtils.getAssetPropertiesContent(this, false) + "\nstoreCompressedMedia="
+				+ this.storeCompressedMedia + "\ncompressionLevel=" + this.compressionLevel + "\nreproducibleZip="
+				+ this.reproducibleZip;
+	}
+
+	/**
+	 * Lists the asset contents with the same layout the working directory copy
+	 * would have, and asset.properties generated in memory.
+	 */
+	private AssetManifest listAssetContents(final AbstractBuild<?, ?> build, final ContextLogger log,
+			final FilePath installFile, final FilePath documentationFile, final FilePath licenseFile)
+			throws IOException, InterruptedException {
+		if (installFile == null) {
+			throw new IOException("No Installation Script file was provided.");
+		}
+
+		final FilePath workspace = build.getWorkspace();
+		final AssetManifest manifest = new AssetManifest();
+
+		log.log("Listing asset contents.");
+		manifest.addContent("asset.properties",
+				AssetFileUtils.getAssetPropertiesContent(this).getBytes(Charset.defaultCharset()));
+		manifest.addFile("scripts/" + this.installScriptFileName, installFile.getRemote());
+
+		if (this.hasDocumentation) {
+			manifest.addFile(this.documentationFileName, documentationFile.getRemote());
+		}
+
+		if (this.hasLicense) {
+			manifest.addFile(this.licenseFileName, licenseFile.getRemote());
+		}
+
+		if (this.mediaFilePaths != null && !this.mediaFilePaths.isEmpty()) {
+			manifest.addDirectory("media");
+			final Map<String, Set<String>> wildcardMatches = this.findMediaWildcardMatches(build);
+
+			for (final FileObject mf : this.mediaFilePaths) {
+				final String relativePath = mf.getPath();
+
+				log.log("Received media file path: " + relativePath);
+
+				//Detect if wildcard:
+				if (relativePath.contains(AssetFileUtils.wildCard)) {
+
+					LOGGER.info("Wild card found in path: " + relativePath);
+
+					final Set<String> files = wildcardMatches.get(relativePath);
+
+					for (final String file : files) {
+						AssetFileUtils.addAssetFile(log, manifest, workspace, file, "media");
+					}
+				} else {
+					AssetFileUtils.addAssetFile(log, manifest, workspace, relativePath, "media");
+				}
+			}
+		} else {
+			log.log("No media files provided.");
+		}
+		return manifest;
+	}
+
+	/**
+	 * Finds the matches of all wildcard media paths with one walk of the
+	 * workspace.
+	 */
+	private Map<String, Set<String>> findMediaWildcardMatches(final AbstractBuild<?, ?> build)
+			throws IOException, InterruptedException {
+		final List<String> wildcardPaths = new ArrayList<>();
+		for (final FileObject mf : this.mediaFilePaths) {
+			if (mf.getPath().contains(AssetFileUtils.wildCard)) {
+				wildcardPaths.add(mf.getPath());
+			}
+		}
+		if (wildcardPaths.isEmpty()) {
+			return Collections.emptyMap();
+		}
+		return AssetFileUtils.findWildcardMatches(build, build.getWorkspace(), wildcardPaths);
+	}
+
 	private String printAsset() {
 		final StringBuilder sb = new StringBuilder();
 		sb.append("Name: " + this.name + ", ");
@@ -0,0 +1,316 @@
+package io.jenkins.plugins;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+
+import hudson.FilePath;
+import hudson.model.TaskListener;
+import hudson.remoting.VirtualChannel;
+import io.jenkins.plugins.datatype.TransferStatistics;
+import io.jenkins.plugins.utils.AssetFileUtils;
+import io.jenkins.plugins.utils.AssetFingerprint;
+import io.jenkins.plugins.utils.AssetZipCallable;
+import io.jenkins.plugins.utils.AssetZipValidator;
+import io.jenkins.plugins.utils.CompressionPolicy;
+import io.jenkins.plugins.utils.ContextLogger;
+import io.jenkins.plugins.utils.HttpWrapper;
+import io.jenkins.plugins.utils.HttpWrapper.HTTPAbortedException;
+import io.jenkins.plugins.utils.HttpWrapper.HTTPException;
+import io.jenkins.plugins.utils.HttpWrapper.HttpWrapperBuilder;
+import io.jenkins.plugins.utils.TransferProgress;
+import jenkins.MasterToSlaveFileCallable;
+
+/**
+ * Zips, validates and uploads an asset for the {@link Cons3rtPublisher} on the
+ * machine the workspace is on. The agent connects to CONS3RT with its own
+ * pooled http client, so the asset goes straight from the agent to the site
+ * and only the response and transfer statistics come back to the controller.
+ *
+ * Parts of chunked uploads are remembered in the {@value #uploadStateDirName}
+ * directory of the workspace. If the content fingerprint of the last upload is
+ * given, the upload is skipped when the asset content has not changed since.
+ */
+public class AssetUploadCallable extends MasterToSlaveFileCallable<AssetUploadCallable.Result> {
+
+	private static final long serialVersionUID = 1L;
+
+	static final String uploadStateDirName = ".cons3rt-uploads";
+
+	private static final String logName = "CONS3RT Plugin";
+
+	private final HttpWrapperBuilder connection;
+
+	private final TaskListener listener;
+
+	private final String providedPath;
+
+	private final String actionType;
+
+	private final Integer assetId;
+
+	private final boolean streamUpload;
+
+	private final boolean chunkedUpload;
+
+	private final boolean keepStreamedZip;
+
+	private final boolean skipValidation;
+
+	private final CompressionPolicy policy;
+
+	private final boolean fingerprintContent;
+
+	private final String lastFingerprint;
+
+	/**
+	 * The outcome of an upload.
+	 */
+	public static final class Result implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private final String response;
+
+		private final String zipPath;
+
+		private final List<TransferStatistics> transfers;
+
+		private final String fingerprint;
+
+		private final boolean skipped;
+
+		Result(final String response, final String zipPath, final List<TransferStatistics> transfers,
+				final String fingerprint, final boolean skipped) {
+			this.response = response;
+			this.zipPath = zipPath;
+			this.transfers = transfers;
+			this.fingerprint = fingerprint;
+			this.skipped = skipped;
+		}
+
+		public String getResponse() {
+			return this.response;
+		}
+
+		/**
+		 * Gets the path of the uploaded zip on the machine the workspace is on.
+		 *
+		 * @return the path, or null if the asset was streamed
+		 */
+		public String getZipPath() {
+			return this.zipPath;
+		}
+
+		public List<TransferStatistics> getTransfers() {
+			return Collections.unmodifiableList(this.transfers);
+		}
+
+		/**
+		 * Gets the content fingerprint of the asset.
+		 *
+		 * @return the fingerprint, or null if it was not asked for
+		 */
+		public String getFingerprint() {
+			return this.fingerprint;
+		}
+
+		/**
+		 * Whether the upload was skipped as the content was unchanged.
+		 *
+		 * @return true, if nothing was uploaded
+		 */
+		public boolean isSkipped() {
+			return this.skipped;
+		}
+	}
+
+	AssetUploadCallable(final HttpWrapperBuilder connection, final TaskListener listener, final FilePath providedPath,
+			final String actionType, final Integer assetId, final boolean streamUpload, final boolean chunkedUpload,
+			final boolean keepStreamedZip, final boolean skipValidation, final CompressionPolicy policy,
+			final boolean fingerprintContent, final String lastFingerprint) {
+		this.connection = connection;
+		this.listener = listener;
+		this.providedPath = providedPath.getRemote();
+		this.actionType = actionType;
+		this.assetId = assetId;
+		this.streamUpload = streamUpload;
+		this.chunkedUpload = chunkedUpload;
+		this.keepStreamedZip = keepStreamedZip;
+		this.skipValidation = skipValidation;
+		this.policy = policy;
+		this.fingerprintContent = fingerprintContent;
+		this.lastFingerprint = lastFingerprint;
+	}
+
+	@Override
+	public Result invoke(final File workspaceDir, final VirtualChannel channel)
+			throws IOException, InterruptedException {
+		final ContextLogger log = new ContextLogger(this.listener.getLogger(), logName, Level.INFO);
+		final FilePath provided = new FilePath(new File(this.providedPath));
+		final List<TransferStatistics> transfers = new ArrayList<>();
+
+		try {
+			final HttpWrapper wrapper = this.connection.build();
+
+			if (this.streamUpload && provided.isDirectory()) {
+				if (!this.skipValidation) {
+					validateAsset(log, AssetZipValidator.validateDirectory(new File(this.providedPath).toPath()),
+							this.providedPath);
+				}
+				final String fingerprint = this.fingerprintContent
+						? AssetFingerprint.ofDirectory(new File(this.providedPath).toPath())
+						: null;
+				if (this.isUnchanged(log, fingerprint)) {
+					return new Result(null, null, transfers, fingerprint, true);
+				}
+				final String response = this.streamAsset(wrapper, log, workspaceDir, provided, transfers);
+				return new Result(response, null, transfers, fingerprint, false);
+			}
+
+			final AssetZipCallable.Result zip = AssetZipCallable
+					.forPath(this.listener, logName, provided, this.policy).invoke(workspaceDir, channel);
+			if (zip.getStatistics() != null) {
+				transfers.add(zip.getStatistics());
+			}
+
+			log.log("Using asset zip file: " + zip.getZipPath());
+
+			final File assetZipForUpload = new File(zip.getZipPath());
+			if (!this.skipValidation) {
+				validateAsset(log, AssetZipValidator.validateZip(assetZipForUpload.toPath()), zip.getZipName());
+			}
+
+			final String fingerprint = this.fingerprintContent ? AssetFingerprint.ofZip(assetZipForUpload.toPath())
+					: null;
+			if (this.isUnchanged(log, fingerprint)) {
+				return new Result(null, zip.getZipPath(), transfers, fingerprint, true);
+			}
+			final String response = this.uploadAsset(wrapper, log, workspaceDir, assetZipForUpload, transfers);
+			return new Result(response, zip.getZipPath(), transfers, fingerprint, false);
+		} catch (HTTPAbortedException e) {
+			throw new InterruptedException(e.getMessage());
+		} catch (HTTPException e) {
+			// Sent back wrapped, the publisher unwraps it
+			throw new IOException(e.getMessage(), e);
+		}
+	}
+
+	private boolean isUnchanged(final ContextLogger log, final String fingerprint) {
+		if (fingerprint == null) {
+			return false;
+		}
+		if (fingerprint.equals(this.lastFingerprint)) {
+			log.log("Asset content is unchanged since the last upload to asset " + this.assetId + " (fingerprint "
+					+ fingerprint + "), skipping the upload.");
+			return true;
+		}
+		log.log("Asset content fingerprint is " + fingerprint + ((this.lastFingerprint != null)
+				? ", the last upload to asset " + this.assetId + " was " + this.lastFingerprint
+				: ", no earlier upload to asset " + this.assetId + " is known") + ".");
+		return false;
+	}
+
+	private static void validateAsset(final ContextLogger log, final List<String> problems, final String assetName)
+			throws IOException {
+		if (problems.isEmpty()) {
+			log.log("Validated asset " + assetName);
+			return;
+		}
+
+		for (final String problem : problems) {
+			log.log(problem, Level.SEVERE);
+		}
+		throw new IOException("Asset " + assetName + " is not valid, not uploading it: " + problems.size()
+				+ " problem(s) found");
+	}
+
+	private String uploadAsset(final HttpWrapper wrapper, final ContextLogger log, final File workspaceDir,
+			final File assetZipForUpload, final List<TransferStatistics> transfers) throws HTTPException, IOException {
+
+		final File uploadStateDir = new File(workspaceDir, uploadStateDirName);
+		if (this.chunkedUpload) {
+			log.log("Uploading in parts. Upload state is kept in: " + uploadStateDir.getAbsolutePath());
+		}
+
+		final TransferProgress uploadProgress = new TransferProgress(log, "Upload");
+		uploadProgress.setExpectedBytes(assetZipForUpload.length(), false);
+		wrapper.setUploadProgress(uploadProgress);
+
+		final String result;
+		try {
+			switch (this.actionType) {
+			case Cons3rtPublisher.createAssetAction:
+				result = this.chunkedUpload ? wrapper.createAssetChunked(assetZipForUpload, uploadStateDir)
+						: wrapper.createAsset(assetZipForUpload);
+				break;
+			case Cons3rtPublisher.updateAssetAction:
+				result = this.chunkedUpload
+						? wrapper.updateAssetChunked(this.assetId, assetZipForUpload, uploadStateDir)
+						: wrapper.updateAsset(this.assetId, assetZipForUpload);
+				break;
+			default:
+				final String message = "Invalid action type requested: " + this.actionType;
+				log.log(message, Level.SEVERE);
+				throw new IOException(message);
+			}
+		} finally {
+			wrapper.setUploadProgress(null);
+		}
+
+		transfers.add(uploadProgress.finish());
+		return result;
+	}
+
+	private String streamAsset(final HttpWrapper wrapper, final ContextLogger log, final File workspaceDir,
+			final FilePath providedPath, final List<TransferStatistics> transfers)
+			throws HTTPException, IOException {
+
+		final String zipName = AssetFileUtils.getAssetZipName(providedPath);
+		final File keepCopy = this.keepStreamedZip ? new File(workspaceDir, zipName) : null;
+
+		log.log("Streaming asset directory " + providedPath.getRemote() + " as " + zipName
+				+ ((keepCopy != null) ? ", keeping a copy at " + keepCopy.getAbsolutePath() : ""));
+
+		if (this.chunkedUpload) {
+			log.log("Uploading in parts is not possible while streaming, sending a single request.");
+		}
+
+		final TransferProgress progress = new TransferProgress(log, "Zip and upload");
+		final CompressionPolicy policy = this.policy;
+
+		final HttpWrapper.StreamingContent content = new HttpWrapper.StreamingContent() {
+			@Override
+			public void writeTo(final OutputStream out) throws IOException {
+				try {
+					AssetFileUtils.writeAssetZip(providedPath, out, keepCopy, progress, policy);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted while streaming asset zip " + zipName, e);
+				}
+			}
+		};
+
+		final String result;
+		switch (this.actionType) {
+		case Cons3rtPublisher.createAssetAction:
+			result = wrapper.createAsset(zipName, content);
+			break;
+		case Cons3rtPublisher.updateAssetAction:
+			result = wrapper.updateAsset(this.assetId, zipName, content);
+			break;
+		default:
+			final String message = "Invalid action type requested: " + this.actionType;
+			log.log(message, Level.SEVERE);
+			throw new IOException(message);
+		}
+
+		transfers.add(progress.finish());
+		return result;
+	}
+}
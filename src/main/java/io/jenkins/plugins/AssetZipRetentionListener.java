@@ -0,0 +1,30 @@
+package io.jenkins.plugins;
+
+import java.util.logging.Level;
+
+import hudson.Extension;
+import hudson.model.Result;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+import io.jenkins.plugins.utils.AssetZipRetention;
+import io.jenkins.plugins.utils.ContextLogger;
+
+/**
+ * Applies the asset zip retention policies of an {@link AssetBuilder} once its
+ * build has completed. Runs before the build log is closed, so the bytes
+ * reclaimed still show up in it, while the files themselves are deleted in the
+ * background.
+ */
+@Extension
+public class AssetZipRetentionListener extends RunListener<Run<?, ?>> {
+
+	@Override
+	public void onCompleted(final Run<?, ?> run, final TaskListener listener) {
+		if (run.getResult() != Result.SUCCESS) {
+			AssetZipRetention.discard(run);
+			return;
+		}
+		AssetZipRetention.apply(run, new ContextLogger(listener.getLogger(), "CONS3RT Asset Retention", Level.INFO));
+	}
+}
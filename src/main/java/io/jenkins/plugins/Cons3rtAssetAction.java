@@ -0,0 +1,79 @@
+package io.jenkins.plugins;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+import hudson.model.Action;
+import hudson.model.Run;
+import io.jenkins.plugins.datatype.PrebuiltAsset;
+
+/**
+ * Records the asset zips a build produced, so a publisher of the same build
+ * finds them by name without scanning the workspace.
+ */
+@ExportedBean
+public class Cons3rtAssetAction implements Action {
+
+	private final Map<String, PrebuiltAsset> assets = new LinkedHashMap<>();
+
+	public static void record(final Run<?, ?> build, final PrebuiltAsset asset) {
+		if (build == null || asset == null) {
+			return;
+		}
+
+		synchronized (build) {
+			Cons3rtAssetAction action = build.getAction(Cons3rtAssetAction.class);
+			if (action == null) {
+				action = new Cons3rtAssetAction();
+				build.addAction(action);
+			}
+			action.add(asset);
+		}
+	}
+
+	/**
+	 * Finds the newest zip a build produced for an asset.
+	 *
+	 * @return the asset, or null if the build did not produce one
+	 */
+	public static PrebuiltAsset find(final Run<?, ?> build, final String name) {
+		if (build == null) {
+			return null;
+		}
+		final Cons3rtAssetAction action = build.getAction(Cons3rtAssetAction.class);
+		return (action != null) ? action.get(name) : null;
+	}
+
+	public synchronized void add(final PrebuiltAsset asset) {
+		this.assets.put(asset.getName(), asset);
+	}
+
+	public synchronized PrebuiltAsset get(final String name) {
+		return this.assets.get(name);
+	}
+
+	@Exported
+	public synchronized List<PrebuiltAsset> getAssets() {
+		return new ArrayList<>(this.assets.values());
+	}
+
+	@Override
+	public String getIconFileName() {
+		return null;
+	}
+
+	@Override
+	public String getDisplayName() {
+		return "CONS3RT Assets";
+	}
+
+	@Override
+	public String getUrlName() {
+		return null;
+	}
+}
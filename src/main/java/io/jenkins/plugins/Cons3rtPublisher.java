@@ -12,6 +12,7 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.StaplerRequest;
 
@@ -33,21 +34,26 @@ import hudson.util.FormValidation;
 import hudson.util.ListBoxModel;
 import io.jenkins.plugins.datatype.Network;
 import io.jenkins.plugins.datatype.RunConfiguration;
+import io.jenkins.plugins.datatype.TransferStatistics;
 import io.jenkins.plugins.utils.AssetFileUtils;
+import io.jenkins.plugins.utils.AssetFingerprintStore;
+import io.jenkins.plugins.utils.CompressionPolicy;
 import io.jenkins.plugins.utils.ContextLogger;
 import io.jenkins.plugins.utils.HttpWrapper;
 import io.jenkins.plugins.utils.HttpWrapper.HTTPException;
-import io.jenkins.plugins.utils.HttpWrapper.HttpWrapperBuilder;
+import io.jenkins.plugins.utils.HttpWrapper.HTTPAbortedException;
+import io.jenkins.plugins.utils.HttpWrapper.HTTPTimeoutException;
 import io.jenkins.plugins.utils.NameUtils;
+import jenkins.model.Jenkins;
 import net.sf.json.JSONObject;
 
 public class Cons3rtPublisher extends Recorder {
 
 	public static final Logger LOGGER = Logger.getLogger(Cons3rtPublisher.class.getName());
 
-	private static final String createAssetAction = "createAsset";
+	static final String createAssetAction = "createAsset";
 
-	private static final String updateAssetAction = "updateAsset";
+	static final String updateAssetAction = "updateAsset";
 
 	private static final String prebuiltAssetType = "prebuilt";
 
@@ -69,6 +75,27 @@ public class Cons3rtPublisher extends Recorder {
 
 	private boolean deleteCreatedAssetAfterUpload;
 
+	private boolean chunkedUpload;
+
+	private boolean streamUpload;
+
+	private boolean keepStreamedZip;
+
+	private boolean storeCompressedMedia;
+
+	private Integer compressionLevel;
+
+	private boolean reproducibleZip;
+
+	private Integer entryCacheMegabytes;
+	private Integer zipThreads;
+
+	private boolean skipValidation;
+
+	private boolean skipUnchangedUpdate;
+
+	private boolean releaseRunOnAbort;
+
 	private RunConfiguration launchRequest;
 
 	private static final Map<Integer, Set<Entry<String, Integer>>> availableCloudspaces = new HashMap<>();
@@ -168,6 +195,105 @@ public class Cons3rtPublisher extends Recorder {
 		this.deleteCreatedAssetAfterUpload = deleteCreatedAssetAfterUpload;
 	}
 
+	public boolean isChunkedUpload() {
+		return chunkedUpload;
+	}
+
+	@DataBoundSetter
+	public void setChunkedUpload(boolean chunkedUpload) {
+		this.chunkedUpload = chunkedUpload;
+	}
+
+	public boolean isStreamUpload() {
+		return streamUpload;
+	}
+
+	@DataBoundSetter
+	public void setStreamUpload(boolean streamUpload) {
+		this.streamUpload = streamUpload;
+	}
+
+	public boolean isKeepStreamedZip() {
+		return keepStreamedZip;
+	}
+
+	@DataBoundSetter
+	public void setKeepStreamedZip(boolean keepStreamedZip) {
+		this.keepStreamedZip = keepStreamedZip;
+	}
+
+	public boolean isStoreCompressedMedia() {
+		return storeCompressedMedia;
+	}
+
+	@DataBoundSetter
+	public void setStoreCompressedMedia(boolean storeCompressedMedia) {
+		this.storeCompressedMedia = storeCompressedMedia;
+	}
+
+	public Integer getCompressionLevel() {
+		return compressionLevel;
+	}
+
+	@DataBoundSetter
+	public void setCompressionLevel(Integer compressionLevel) {
+		this.compressionLevel = compressionLevel;
+	}
+
+	public boolean isReproducibleZip() {
+		return reproducibleZip;
+	}
+
+	@DataBoundSetter
+	public void setReproducibleZip(boolean reproducibleZip) {
+		this.reproducibleZip = reproducibleZip;
+	}
+
+	public Integer getEntryCacheMegabytes() {
+		return entryCacheMegabytes;
+	}
+
+	@DataBoundSetter
+	public void setEntryCacheMegabytes(Integer entryCacheMegabytes) {
+		this.entryCacheMegabytes = entryCacheMegabytes;
+	}
+
+	public Integer getZipThreads() {
+		return zipThreads;
+	}
+
+	@DataBoundSetter
+	public void setZipThreads(Integer zipThreads) {
+		this.zipThreads = zipThreads;
+	}
+
+	public boolean isSkipValidation() {
+		return skipValidation;
+	}
+
+	@DataBoundSetter
+	public void setSkipValidation(boolean skipValidation) {
+		this.skipValidation = skipValidation;
+	}
+
+	public boolean isSkipUnchangedUpdate() {
+		return skipUnchangedUpdate;
+	}
+
+	@DataBoundSetter
+	public void setSkipUnchangedUpdate(boolean skipUnchangedUpdate) {
+		this.skipUnchangedUpdate = skipUnchangedUpdate;
+	}
+
+	public boolean isReleaseRunOnAbort() {
+		return releaseRunOnAbort;
+	}
+
+	@DataBoundSetter
+	public void setReleaseRunOnAbort(boolean releaseRunOnAbort) {
+		this.releaseRunOnAbort = releaseRunOnAbort;
+	}
+
 	public void setActionType(final String actionType) {
 		this.actionType = actionType;
 	}
@@ -290,30 +416,26 @@ public class Cons3rtPublisher extends Recorder {
 			}
 
 			final String baseUrl = this.site.getUrl();
-			final String token = this.site.getToken();
 			final String authenticationType = this.site.getAuthenticationType();
 
+			// Every request of this build must finish by the publish deadline of the site
+			final long deadline = this.site.getPublishDeadline(System.currentTimeMillis());
+			if (deadline > 0) {
+				log.log("CONS3RT requests of this build must finish within " + this.site.getPublishDeadlineMinutes()
+						+ " minutes.");
+			}
+
 			try {
 				log.log("Site Url: " + baseUrl + " authentication type: " + authenticationType + " action type: "
 						+ this.getActionType());
 
-				final HttpWrapperBuilder builder = new HttpWrapper.HttpWrapperBuilder(baseUrl, token,
-						authenticationType);
-
-				if (Cons3rtPublisher.isCeritificateAuthentication(authenticationType)) {
-					builder.certificate(this.site.getCertificate());
-				} else if (Cons3rtPublisher.isUsernameAuthentication(authenticationType)) {
-					builder.username(this.site.getUsername());
-				}
-
-				final HttpWrapper wrapper = builder.build();
-
 				final FilePath providedPath;
 				if (build.getWorkspace() != null) {
 					switch (this.getAssetStyle()) {
 					case Cons3rtPublisher.prebuiltAssetType:
 						if(this.prebuiltAssetName != null) {
-							providedPath = AssetFileUtils.findPrebuiltAsset(build.getWorkspace(), this.prebuiltAssetName);
+							providedPath = AssetFileUtils.resolvePrebuiltAsset(build, build.getWorkspace(),
+									this.prebuiltAssetName);
 						} else {
 							final String message = "Asset type requested: " + this.getAssetStyle() + " but no pre-built asset name provided.";
 							log.log(message, Level.SEVERE);
@@ -335,40 +457,65 @@ public class Cons3rtPublisher extends Recorder {
 					throw new IOException(message);
 				}
 
-				final File assetZipForUpload = AssetFileUtils.getAssetZipFromPath(build.getWorkspace(), providedPath);
-
-				log.log("Using asset zip file: " + assetZipForUpload.getAbsolutePath());
-
 				log.log("Received action type: " + this.getActionType());
 
-				final String result;
-				switch (this.getActionType()) {
-				case Cons3rtPublisher.createAssetAction:
-					result = wrapper.createAsset(assetZipForUpload);
-					break;
-				case Cons3rtPublisher.updateAssetAction:
-					result = wrapper.updateAsset(this.assetId, assetZipForUpload);
-					break;
-				default:
-					final String message = "Invalid action type requested: " + this.getActionType();
-					log.log(message, Level.SEVERE);
-					throw new IOException(message);
+				// Updates of unchanged content are skipped if requested
+				final boolean fingerprintUpdate = this.skipUnchangedUpdate
+						&& Cons3rtPublisher.updateAssetAction.equals(this.getActionType());
+				final AssetFingerprintStore fingerprints = fingerprintUpdate
+						? new AssetFingerprintStore(new File(Jenkins.getInstance().getRootDir(), AssetFingerprintStore.fileName))
+						: null;
+
+				// Zip, validate and upload on the machine the workspace is on
+				final AssetUploadCallable.Result upload;
+				try {
+					upload = build.getWorkspace().act(new AssetUploadCallable(this.site.createRemoteHttpWrapperBuilder().deadline(deadline),
+							listener, providedPath, this.getActionType(), this.assetId, this.streamUpload,
+							this.chunkedUpload, this.keepStreamedZip, this.skipValidation,
+							AssetFileUtils.withEntryCache(CompressionPolicy.of(this.storeCompressedMedia,
+									this.compressionLevel, this.reproducibleZip).withThreads(this.zipThreads),
+									build.getBuiltOn(), this.entryCacheMegabytes),
+							fingerprintUpdate,
+							fingerprintUpdate ? fingerprints.get(baseUrl, this.assetId) : null));
+				} catch (IOException e) {
+					final HTTPException cause = findHttpException(e);
+					if (cause != null) {
+						throw cause;
+					}
+					throw e;
 				}
 
-				log.log(result);
+				for (final TransferStatistics transfer : upload.getTransfers()) {
+					Cons3rtTransferAction.record(build, transfer);
+				}
+
+				if (upload.isSkipped()) {
+					log.log("Asset " + this.assetId + " was not updated, its content is unchanged.");
+				} else {
+					log.log(upload.getResponse());
+					if (fingerprintUpdate) {
+						fingerprints.put(baseUrl, this.assetId, upload.getFingerprint());
+					}
+				}
 
 				if (this.isRunRequested()) {
+					final HttpWrapper wrapper = this.site.createHttpWrapper(deadline);
 					log.log("Launch of deployment " + this.launchRequest.getDeploymentId() + " into cloudspace "
 							+ this.launchRequest.getCloudspaceName() + " id "
 							+ this.getLaunchRequest().getCloudspaceId() + " was requested.");
 					final String deploymentRunId = wrapper.launchDeployment(this.launchRequest);
 					log.log("Launch was successful. Deployment run id: " + deploymentRunId);
+					// Kept with the build, so an abort at any later point can release it
+					Cons3rtRunAction.record(build, this.site, deploymentRunId, this.releaseRunOnAbort);
 				} else {
 					log.log("No deployment launch was requested.");
 				}
 
 				// Attempt to delete pre-built asset:
-				if (prebuiltAssetType.equals(this.assetStyle) && this.deleteCreatedAssetAfterUpload) {
+				if (upload.getZipPath() != null && prebuiltAssetType.equals(this.assetStyle)
+						&& this.deleteCreatedAssetAfterUpload) {
+					final FilePath assetZipForUpload = new FilePath(build.getWorkspace().getChannel(),
+							upload.getZipPath());
 					log.log("Deletion of created asset was requested. Attempting to delete: "
 							+ assetZipForUpload.getName());
 					final boolean deleted = assetZipForUpload.delete();
@@ -377,6 +524,18 @@ public class Cons3rtPublisher extends Recorder {
 						log.log("Failed to delete: " + assetZipForUpload.getName());
 					}
 				}
+			} catch (InterruptedException | HTTPAbortedException e) {
+				log.log("Build was aborted, stopped talking to CONS3RT.", Level.SEVERE);
+				// Released at once, the run listener releases runs of later aborts
+				Cons3rtRunAction.releaseAborted(build, log);
+				if (e instanceof InterruptedException) {
+					throw (InterruptedException) e;
+				}
+				throw new InterruptedException(e.getMessage());
+			} catch (HTTPTimeoutException e) {
+				log.log("Timed out (" + e.getKind() + "): " + e.getMessage(), Level.SEVERE);
+				build.setResult(Result.FAILURE);
+				return false;
 			} catch (HTTPException | ParseException | SecurityException e) {
 				log.log("Caught: " + e.getClass().getName() + " message: " + e.getMessage(), Level.SEVERE);
 				build.setResult(Result.FAILURE);
@@ -389,6 +548,18 @@ public class Cons3rtPublisher extends Recorder {
 		}
 	}
 
+	/**
+	 * Finds the http failure an agent side upload was aborted with.
+	 */
+	private static HTTPException findHttpException(final Throwable e) {
+		for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+			if (cause instanceof HTTPException) {
+				return (HTTPException) cause;
+			}
+		}
+		return null;
+	}
+
 	public boolean isActionType(String given) {
 		return this.actionType.equals(given);
 	}
@@ -0,0 +1,146 @@
+package io.jenkins.plugins;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+import hudson.model.Action;
+import hudson.model.Run;
+import io.jenkins.plugins.utils.ContextLogger;
+import io.jenkins.plugins.utils.HttpWrapper.HTTPException;
+
+/**
+ * Records the deployment runs a build launched, so the runs of an aborted
+ * build can be released once it has completed, whenever the abort came.
+ */
+@ExportedBean
+public class Cons3rtRunAction implements Action {
+
+	/**
+	 * A deployment run launched by the build.
+	 */
+	@ExportedBean(defaultVisibility = 2)
+	public static final class LaunchedRun {
+
+		private final String deploymentRunId;
+
+		private final boolean releaseOnAbort;
+
+		// only needed until the build completes, not kept with it
+		private final transient Cons3rtSite site;
+
+		private boolean releaseRequested;
+
+		private volatile boolean released;
+
+		LaunchedRun(final String deploymentRunId, final boolean releaseOnAbort, final Cons3rtSite site) {
+			this.deploymentRunId = deploymentRunId;
+			this.releaseOnAbort = releaseOnAbort;
+			this.site = site;
+		}
+
+		@Exported
+		public String getDeploymentRunId() {
+			return this.deploymentRunId;
+		}
+
+		@Exported
+		public boolean isReleased() {
+			return this.released;
+		}
+	}
+
+	private final List<LaunchedRun> runs = new ArrayList<>();
+
+	public static void record(final Run<?, ?> build, final Cons3rtSite site, final String deploymentRunId,
+			final boolean releaseOnAbort) {
+		if (build == null || deploymentRunId == null) {
+			return;
+		}
+
+		synchronized (build) {
+			Cons3rtRunAction action = build.getAction(Cons3rtRunAction.class);
+			if (action == null) {
+				action = new Cons3rtRunAction();
+				build.addAction(action);
+			}
+			action.add(new LaunchedRun(deploymentRunId, releaseOnAbort, site));
+		}
+	}
+
+	/**
+	 * Releases the runs an aborted build launched and asked to have released.
+	 * Each run is released once, whether from the publisher that saw the
+	 * abort or from the listener once the build has completed.
+	 *
+	 * @param build the aborted build
+	 * @param log   the build log
+	 */
+	public static void releaseAborted(final Run<?, ?> build, final ContextLogger log) {
+		final Cons3rtRunAction action = (build != null) ? build.getAction(Cons3rtRunAction.class) : null;
+		if (action == null) {
+			return;
+		}
+
+		for (final LaunchedRun run : action.takeReleasable()) {
+			// The release must go out even though the thread was interrupted, and
+			// past the publish deadline
+			final boolean interrupted = Thread.interrupted();
+			try {
+				log.log("Releasing deployment run " + run.deploymentRunId + " launched by this build.");
+				run.site.createHttpWrapper().releaseDeploymentRun(run.deploymentRunId);
+				run.released = true;
+				log.log("Released deployment run " + run.deploymentRunId + ".");
+			} catch (HTTPException e) {
+				log.log("Could not release deployment run " + run.deploymentRunId + ": " + e.getMessage(),
+						Level.SEVERE);
+			} finally {
+				if (interrupted) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+	}
+
+	public synchronized void add(final LaunchedRun run) {
+		this.runs.add(run);
+	}
+
+	/**
+	 * Takes the runs still to be released, so no other caller releases them
+	 * again.
+	 */
+	synchronized List<LaunchedRun> takeReleasable() {
+		final List<LaunchedRun> retval = new ArrayList<>();
+		for (final LaunchedRun run : this.runs) {
+			if (run.releaseOnAbort && !run.releaseRequested && run.site != null) {
+				run.releaseRequested = true;
+				retval.add(run);
+			}
+		}
+		return retval;
+	}
+
+	@Exported
+	public synchronized List<LaunchedRun> getRuns() {
+		return new ArrayList<>(this.runs);
+	}
+
+	@Override
+	public String getIconFileName() {
+		return null;
+	}
+
+	@Override
+	public String getDisplayName() {
+		return "CONS3RT Deployment Runs";
+	}
+
+	@Override
+	public String getUrlName() {
+		return null;
+	}
+}
@@ -0,0 +1,27 @@
+package io.jenkins.plugins;
+
+import java.util.logging.Level;
+
+import hudson.Extension;
+import hudson.model.Result;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+import io.jenkins.plugins.utils.ContextLogger;
+
+/**
+ * Releases the deployment runs of a build that was aborted after the
+ * {@link Cons3rtPublisher} launched them, if the publisher asked for it. Runs
+ * before the build log is closed, so the releases show up in it.
+ */
+@Extension
+public class Cons3rtRunReleaseListener extends RunListener<Run<?, ?>> {
+
+	@Override
+	public void onCompleted(final Run<?, ?> run, final TaskListener listener) {
+		if (run.getResult() != Result.ABORTED) {
+			return;
+		}
+		Cons3rtRunAction.releaseAborted(run, new ContextLogger(listener.getLogger(), "CONS3RT Plugin", Level.INFO));
+	}
+}
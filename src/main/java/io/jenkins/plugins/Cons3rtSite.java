@@ -12,6 +12,7 @@ import java.util.logging.Logger;
 import org.jenkinsci.plugins.plaincredentials.StringCredentials;
 import org.kohsuke.stapler.AncestorInPath;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.Stapler;
 
@@ -36,6 +37,7 @@ import io.jenkins.plugins.datatype.Network;
 import io.jenkins.plugins.utils.HttpWrapper;
 import io.jenkins.plugins.utils.HttpWrapper.HTTPException;
 import io.jenkins.plugins.utils.HttpWrapper.HttpWrapperBuilder;
+import io.jenkins.plugins.utils.Timeouts;
 import jenkins.model.Jenkins;
 
 public class Cons3rtSite extends AbstractDescribableImpl<Cons3rtSite> {
@@ -60,6 +62,13 @@ public class Cons3rtSite extends AbstractDescribableImpl<Cons3rtSite> {
 	String certificateId;
 	StandardCertificateCredentials certificate;
 
+	Integer connectTimeoutSeconds;
+	Integer metadataTimeoutSeconds;
+	Integer launchTimeoutSeconds;
+	Integer uploadTimeoutSeconds;
+	Integer uploadKilobytesPerSecond;
+	Integer publishDeadlineMinutes;
+
 	@DataBoundConstructor
 	public Cons3rtSite(final String url, final String tokenId, final String authenticationType,
 			final String certificateId, final String username) {
@@ -173,6 +182,84 @@ public class Cons3rtSite extends AbstractDescribableImpl<Cons3rtSite> {
 		this.username = username;
 	}
 
+	public Integer getConnectTimeoutSeconds() {
+		return connectTimeoutSeconds;
+	}
+
+	@DataBoundSetter
+	public void setConnectTimeoutSeconds(final Integer connectTimeoutSeconds) {
+		this.connectTimeoutSeconds = connectTimeoutSeconds;
+	}
+
+	public Integer getMetadataTimeoutSeconds() {
+		return metadataTimeoutSeconds;
+	}
+
+	@DataBoundSetter
+	public void setMetadataTimeoutSeconds(final Integer metadataTimeoutSeconds) {
+		this.metadataTimeoutSeconds = metadataTimeoutSeconds;
+	}
+
+	public Integer getLaunchTimeoutSeconds() {
+		return launchTimeoutSeconds;
+	}
+
+	@DataBoundSetter
+	public void setLaunchTimeoutSeconds(final Integer launchTimeoutSeconds) {
+		this.launchTimeoutSeconds = launchTimeoutSeconds;
+	}
+
+	public Integer getUploadTimeoutSeconds() {
+		return uploadTimeoutSeconds;
+	}
+
+	@DataBoundSetter
+	public void setUploadTimeoutSeconds(final Integer uploadTimeoutSeconds) {
+		this.uploadTimeoutSeconds = uploadTimeoutSeconds;
+	}
+
+	public Integer getUploadKilobytesPerSecond() {
+		return uploadKilobytesPerSecond;
+	}
+
+	@DataBoundSetter
+	public void setUploadKilobytesPerSecond(final Integer uploadKilobytesPerSecond) {
+		this.uploadKilobytesPerSecond = uploadKilobytesPerSecond;
+	}
+
+	public Integer getPublishDeadlineMinutes() {
+		return publishDeadlineMinutes;
+	}
+
+	@DataBoundSetter
+	public void setPublishDeadlineMinutes(final Integer publishDeadlineMinutes) {
+		this.publishDeadlineMinutes = publishDeadlineMinutes;
+	}
+
+	/**
+	 * Gets the time limits of requests to this site.
+	 *
+	 * @return the limits, with defaults for the settings left empty
+	 */
+	public Timeouts getTimeouts() {
+		return Timeouts.of(this.connectTimeoutSeconds, this.metadataTimeoutSeconds, this.launchTimeoutSeconds,
+				this.uploadTimeoutSeconds, this.uploadKilobytesPerSecond);
+	}
+
+	/**
+	 * Gets the time the requests of a build that starts publishing now must
+	 * finish by.
+	 *
+	 * @param start the time publishing started, in milliseconds since the
+	 *              epoch
+	 * @return the deadline, or 0 if there is none
+	 */
+	public long getPublishDeadline(final long start) {
+		return (this.publishDeadlineMinutes != null && this.publishDeadlineMinutes > 0)
+				? start + this.publishDeadlineMinutes * 60000L
+				: 0;
+	}
+
 	private StringCredentials lookupTokenCredentialsById(final String tokenCredentialId) {
 		final Set<StringCredentials> all = new HashSet<>();
 
@@ -235,10 +322,28 @@ public class Cons3rtSite extends AbstractDescribableImpl<Cons3rtSite> {
 		return retval;
 	}
 
-	public void testConnection(final Logger logger) throws HTTPException {
+	/**
+	 * Creates a wrapper for this site. The wrapper borrows the pooled http
+	 * client shared by every wrapper for the same site and credential.
+	 *
+	 * @return the wrapper
+	 * @throws HTTPException if the connection context could not be built
+	 */
+	public HttpWrapper createHttpWrapper() throws HTTPException {
+		return this.createHttpWrapper(0);
+	}
 
+	/**
+	 * Creates a wrapper whose requests must finish by a deadline.
+	 *
+	 * @param deadline the time in milliseconds since the epoch, or 0 for no
+	 *                 deadline
+	 * @return the wrapper
+	 * @throws HTTPException if the connection context could not be built
+	 */
+	public HttpWrapper createHttpWrapper(final long deadline) throws HTTPException {
 		final HttpWrapperBuilder builder = new HttpWrapper.HttpWrapperBuilder(this.url, this.token,
-				this.authenticationType);
+				this.authenticationType).timeouts(this.getTimeouts()).deadline(deadline);
 
 		if (Cons3rtPublisher.isCeritificateAuthentication(this.authenticationType)) {
 			builder.certificate(this.certificate);
@@ -246,23 +351,42 @@ public class Cons3rtSite extends AbstractDescribableImpl<Cons3rtSite> {
 			builder.username(this.username);
 		}
 
-		final HttpWrapper wrapper = builder.build();
-
-		final String result = wrapper.validateCredentials();
-		logger.log(Level.INFO, "Attempt to validate connection returned: " + result);
+		return builder.build();
 	}
 
-	public Set<Entry<String, Integer>> getAvailableProjects(Logger logger) throws HTTPException {
+	/**
+	 * Creates a builder for wrappers that connect to this site from an agent.
+	 * The certificate credential is replaced by a self-contained snapshot, so
+	 * the builder can be sent over the remoting channel and the agent builds
+	 * its own pooled http client from it.
+	 *
+	 * @return the builder
+	 */
+	public HttpWrapperBuilder createRemoteHttpWrapperBuilder() {
 		final HttpWrapperBuilder builder = new HttpWrapper.HttpWrapperBuilder(this.url, this.token,
-				this.authenticationType);
+				this.authenticationType).timeouts(this.getTimeouts());
 
 		if (Cons3rtPublisher.isCeritificateAuthentication(this.authenticationType)) {
-			builder.certificate(this.certificate);
+			builder.certificate((this.certificate != null)
+					? CredentialsProvider.snapshot(StandardCertificateCredentials.class, this.certificate)
+					: null);
 		} else if (Cons3rtPublisher.isUsernameAuthentication(this.authenticationType)) {
 			builder.username(this.username);
 		}
 
-		final HttpWrapper wrapper = builder.build();
+		return builder;
+	}
+
+	public void testConnection(final Logger logger) throws HTTPException {
+
+		final HttpWrapper wrapper = this.createHttpWrapper();
+
+		final String result = wrapper.validateCredentials();
+		logger.log(Level.INFO, "Attempt to validate connection returned: " + result);
+	}
+
+	public Set<Entry<String, Integer>> getAvailableProjects(Logger logger) throws HTTPException {
+		final HttpWrapper wrapper = this.createHttpWrapper();
 
 		return wrapper.getProjects();
 	}
@@ -271,47 +395,20 @@ public class Cons3rtSite extends AbstractDescribableImpl<Cons3rtSite> {
 			throws HTTPException {
 		LOGGER.info("Attempting to get available cloudspaces for deployment id: " + deploymentId + " in site with url: "
 				+ this.getUrl());
-		final HttpWrapperBuilder builder = new HttpWrapper.HttpWrapperBuilder(this.url, this.token,
-				this.authenticationType);
-
-		if (Cons3rtPublisher.isCeritificateAuthentication(this.authenticationType)) {
-			builder.certificate(this.certificate);
-		} else if (Cons3rtPublisher.isUsernameAuthentication(this.authenticationType)) {
-			builder.username(this.username);
-		}
-
-		final HttpWrapper wrapper = builder.build();
+		final HttpWrapper wrapper = this.createHttpWrapper();
 
 		return wrapper.getCloudspaces(deploymentId);
 	}
 
 	public Set<String> getHostRoles(Logger logger, Integer deploymentId) throws HTTPException {
-		final HttpWrapperBuilder builder = new HttpWrapper.HttpWrapperBuilder(this.url, this.token,
-				this.authenticationType);
-
-		if (Cons3rtPublisher.isCeritificateAuthentication(this.authenticationType)) {
-			builder.certificate(this.certificate);
-		} else if (Cons3rtPublisher.isUsernameAuthentication(this.authenticationType)) {
-			builder.username(this.username);
-		}
-
-		final HttpWrapper wrapper = builder.build();
+		final HttpWrapper wrapper = this.createHttpWrapper();
 
 		return wrapper.getRoles(deploymentId);
 	}
 
 	public Set<Network> getAvailableNetworks(Logger logger, Integer deploymentId, Integer cloudspaceId)
 			throws HTTPException {
-		final HttpWrapperBuilder builder = new HttpWrapper.HttpWrapperBuilder(this.url, this.token,
-				this.authenticationType);
-
-		if (Cons3rtPublisher.isCeritificateAuthentication(this.authenticationType)) {
-			builder.certificate(this.certificate);
-		} else if (Cons3rtPublisher.isUsernameAuthentication(this.authenticationType)) {
-			builder.username(this.username);
-		}
-
-		final HttpWrapper wrapper = builder.build();
+		final HttpWrapper wrapper = this.createHttpWrapper();
 
 		return wrapper.getNetworks(deploymentId, cloudspaceId);
 	}
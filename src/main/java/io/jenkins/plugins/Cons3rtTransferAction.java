@@ -0,0 +1,61 @@
+package io.jenkins.plugins;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+import hudson.model.Action;
+import hudson.model.Run;
+import io.jenkins.plugins.datatype.TransferStatistics;
+
+/**
+ * Records the zip and upload figures of a build, shown on the build page and
+ * exported through the remote API so builds can be compared.
+ */
+@ExportedBean
+public class Cons3rtTransferAction implements Action {
+
+	private final List<TransferStatistics> transfers = new ArrayList<>();
+
+	public static void record(final Run<?, ?> build, final TransferStatistics statistics) {
+		if (build == null || statistics == null) {
+			return;
+		}
+
+		synchronized (build) {
+			Cons3rtTransferAction action = build.getAction(Cons3rtTransferAction.class);
+			if (action == null) {
+				action = new Cons3rtTransferAction();
+				build.addAction(action);
+			}
+			action.add(statistics);
+		}
+	}
+
+	public synchronized void add(final TransferStatistics statistics) {
+		this.transfers.add(statistics);
+	}
+
+	@Exported
+	public synchronized List<TransferStatistics> getTransfers() {
+		return Collections.unmodifiableList(new ArrayList<>(this.transfers));
+	}
+
+	@Override
+	public String getIconFileName() {
+		return null;
+	}
+
+	@Override
+	public String getDisplayName() {
+		return "CONS3RT Transfers";
+	}
+
+	@Override
+	public String getUrlName() {
+		return null;
+	}
+}
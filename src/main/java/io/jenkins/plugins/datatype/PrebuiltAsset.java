@@ -0,0 +1,63 @@
+package io.jenkins.plugins.datatype;
+
+import java.io.Serializable;
+
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+@ExportedBean
+public class PrebuiltAsset implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final String name;
+
+	private final String zipName;
+
+	private final long size;
+
+	private final String sha256;
+
+	private final long createdMillis;
+
+	public PrebuiltAsset(String name, String zipName, long size, String sha256, long createdMillis) {
+		super();
+		this.name = name;
+		this.zipName = zipName;
+		this.size = size;
+		this.sha256 = sha256;
+		this.createdMillis = createdMillis;
+	}
+
+	/**
+	 * The asset name with spaces replaced by underscores, as prebuilt assets are
+	 * looked up.
+	 */
+	@Exported
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * The name of the zip file in the workspace.
+	 */
+	@Exported
+	public String getZipName() {
+		return zipName;
+	}
+
+	@Exported
+	public long getSize() {
+		return size;
+	}
+
+	@Exported
+	public String getSha256() {
+		return sha256;
+	}
+
+	@Exported
+	public long getCreatedMillis() {
+		return createdMillis;
+	}
+}
@@ -0,0 +1,66 @@
+package io.jenkins.plugins.datatype;
+
+import java.io.Serializable;
+import java.util.Locale;
+
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+@ExportedBean
+public class TransferStatistics implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private final String phase;
+
+	private final long bytes;
+
+	private final long sourceBytes;
+
+	private final long elapsedMillis;
+
+	public TransferStatistics(String phase, long bytes, long sourceBytes, long elapsedMillis) {
+		super();
+		this.phase = phase;
+		this.bytes = bytes;
+		this.sourceBytes = sourceBytes;
+		this.elapsedMillis = elapsedMillis;
+	}
+
+	@Exported
+	public String getPhase() {
+		return phase;
+	}
+
+	@Exported
+	public long getBytes() {
+		return bytes;
+	}
+
+	@Exported
+	public long getSourceBytes() {
+		return sourceBytes;
+	}
+
+	@Exported
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	@Exported
+	public double getMegabytesPerSecond() {
+		return (bytes / (1024.0 * 1024.0)) / (Math.max(1L, elapsedMillis) / 1000.0);
+	}
+
+	@Exported
+	public double getCompressionRatio() {
+		return (sourceBytes > 0) ? (double) bytes / sourceBytes : 1.0;
+	}
+
+	public String getSummary() {
+		return String.format(Locale.ROOT, "%.1f MB in %.1f s (%.1f MB/s)", bytes / (1024.0 * 1024.0),
+				elapsedMillis / 1000.0, getMegabytesPerSecond())
+				+ ((sourceBytes > 0) ? String.format(Locale.ROOT, ", compression ratio %.2f", getCompressionRatio())
+						: "");
+	}
+}
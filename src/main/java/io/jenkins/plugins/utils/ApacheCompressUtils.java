@@ -28,31 +28,47 @@ package io.jenkins.plugins.utils;
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.invoke.MethodHandles;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
 import java.nio.file.FileSystems;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
+import java.nio.file.FileVisitor;
 import java.nio.file.InvalidPathException;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
 import java.util.Enumeration;
+import java.util.GregorianCalendar;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
 
-import org.apache.commons.compress.archivers.ArchiveException;
-import org.apache.commons.compress.archivers.ArchiveStreamFactory;
-import org.apache.commons.compress.archivers.zip.UnixStat;
-import org.apache.commons.compress.archivers.zip.Zip64Mode;
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
 import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipExtraField;
 import org.apache.commons.compress.archivers.zip.ZipFile;
 import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
@@ -73,6 +89,32 @@ public class ApacheCompressUtils {
     /** The Constant COLON. */
     private static final CharSequence COLON = ":";
 
+    /** The buffer size used when copying file contents into an archive. */
+    static final int COPY_BUFFER_SIZE = 256 * 1024;
+
+    /** One copy buffer per thread, reused for every entry. */
+    private static final ThreadLocal<byte[]> COPY_BUFFERS = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[COPY_BUFFER_SIZE];
+        }
+    };
+
+    /**
+     * The time of every entry of a reproducible zip. Zip times are local
+     * date and time fields, so this is taken in the local time zone, and a
+     * month after the earliest time a zip can hold.
+     */
+    static final long REPRODUCIBLE_TIME = new GregorianCalendar(1980, Calendar.FEBRUARY, 1).getTimeInMillis();
+
+    /** Orders the paths of a directory by name. */
+    private static final Comparator<Path> BY_FILE_NAME = new Comparator<Path>() {
+        @Override
+        public int compare(final Path a, final Path b) {
+            return a.getFileName().toString().compareTo(b.getFileName().toString());
+        }
+    };
+
     /** The Constant LOGGER. */
     private static final Logger LOGGER = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
@@ -87,7 +129,7 @@ public class ApacheCompressUtils {
      */
     @SuppressFBWarnings(value = "NP_NULL_ON_SOME_PATH_FROM_RETURN_VALUE",
     	    justification = "Complained method is null checked for all parameters")
-    private static String getEntryName(final Path baseDirPath, Path fullFilePath, boolean includeBaseDir) {
+    static String getEntryName(final Path baseDirPath, Path fullFilePath, boolean includeBaseDir) {
         final String entryName;
         if (includeBaseDir) {
             entryName = baseDirPath.getParent().relativize(fullFilePath).toString();
@@ -97,6 +139,222 @@ public class ApacheCompressUtils {
         return entryName;
     }
 
+    /**
+     * Gets the length of the path prefix to cut from walked paths to get their
+     * entry names.
+     *
+     * @param baseDirPath    the base dir path
+     * @param includeBaseDir the include base dir
+     * @return the prefix length
+     */
+    static int getEntryNamePrefixLength(final Path baseDirPath, final boolean includeBaseDir) {
+        final Path root = includeBaseDir ? baseDirPath.getParent() : baseDirPath;
+        if (root == null) {
+            return 0;
+        }
+        final String prefix = root.toString();
+        if (prefix.isEmpty() || prefix.endsWith(root.getFileSystem().getSeparator())) {
+            return prefix.length();
+        }
+        return prefix.length() + 1;
+    }
+
+    /**
+     * Gets the entry name of a path found while walking the base dir. Same as
+     * {@link #getEntryName(Path, Path, boolean)} without relativizing.
+     *
+     * @param walkedPath   a path below the base dir
+     * @param prefixLength the result of {@link #getEntryNamePrefixLength(Path, boolean)}
+     * @return the name of an archive entry
+     */
+    static String getEntryName(final Path walkedPath, final int prefixLength) {
+        final String path = walkedPath.toString();
+        return (path.length() <= prefixLength) ? "" : path.substring(prefixLength);
+    }
+
+    /**
+     * Gets the copy buffer of the calling thread.
+     *
+     * @return the buffer, {@link #COPY_BUFFER_SIZE} bytes long
+     */
+    static byte[] copyBuffer() {
+        return COPY_BUFFERS.get();
+    }
+
+    /**
+     * Copies a file into a stream through a pooled buffer.
+     *
+     * @param filePath the file path
+     * @param out      the stream to copy to
+     * @param progress receives the bytes read - ignored if null
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    static void copyFile(final Path filePath, final OutputStream out, final TransferProgress progress)
+            throws IOException {
+        final byte[] buffer = copyBuffer();
+        final ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+        try (final FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            int read;
+            while ((read = channel.read(byteBuffer)) != -1) {
+                out.write(buffer, 0, read);
+                if (progress != null) {
+                    progress.addSourceBytes(read);
+                }
+                byteBuffer.clear();
+            }
+        }
+    }
+
+    /**
+     * Stamps an entry with the time of its source, or normalizes it if the
+     * policy writes reproducible zips: a fixed time and no extra fields.
+     *
+     * @param entry        the entry
+     * @param lastModified the last modified time of the source
+     * @param policy       the compression policy
+     */
+    static void setEntryTime(final ZipArchiveEntry entry, final long lastModified, final CompressionPolicy policy) {
+        if (policy.isReproducible()) {
+            entry.setTime(REPRODUCIBLE_TIME);
+            entry.setExtraFields(new ZipExtraField[0]);
+        } else {
+            entry.setTime(lastModified);
+        }
+    }
+
+    /**
+     * Walks a file tree like {@link Files#walkFileTree(Path, FileVisitor)}.
+     * If sorted, the entries of each directory are visited in name order
+     * instead of the order the file system lists them in.
+     *
+     * @param start   the start path
+     * @param visitor the visitor
+     * @param sorted  whether to visit in name order
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    static void walkFileTree(final Path start, final FileVisitor<Path> visitor, final boolean sorted)
+            throws IOException {
+        if (sorted) {
+            walkSorted(start, visitor);
+        } else {
+            Files.walkFileTree(start, visitor);
+        }
+    }
+
+    private static FileVisitResult walkSorted(final Path path, final FileVisitor<Path> visitor) throws IOException {
+        final BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class,
+                LinkOption.NOFOLLOW_LINKS);
+        if (!attrs.isDirectory()) {
+            return visitor.visitFile(path, attrs);
+        }
+
+        final FileVisitResult result = visitor.preVisitDirectory(path, attrs);
+        if (result != FileVisitResult.CONTINUE) {
+            return (result == FileVisitResult.SKIP_SUBTREE) ? FileVisitResult.CONTINUE : result;
+        }
+
+        final List<Path> children = new ArrayList<>();
+        IOException failure = null;
+        try (final DirectoryStream<Path> stream = Files.newDirectoryStream(path)) {
+            for (final Path child : stream) {
+                children.add(child);
+            }
+        } catch (final IOException e) {
+            failure = e;
+        }
+        Collections.sort(children, BY_FILE_NAME);
+
+        for (final Path child : children) {
+            final FileVisitResult childResult = walkSorted(child, visitor);
+            if (childResult == FileVisitResult.TERMINATE) {
+                return childResult;
+            }
+            if (childResult == FileVisitResult.SKIP_SIBLINGS) {
+                break;
+            }
+        }
+        return visitor.postVisitDirectory(path, failure);
+    }
+
+    /**
+     * Gets the entries of a manifest in the order they are zipped: as listed,
+     * or by name if the policy writes reproducible zips.
+     *
+     * @param manifest the manifest
+     * @param policy   the compression policy
+     * @return the entries
+     */
+    static List<AssetManifest.Entry> getManifestEntries(final AssetManifest manifest,
+            final CompressionPolicy policy) {
+        if (!policy.isReproducible()) {
+            return manifest.getEntries();
+        }
+        final List<AssetManifest.Entry> entries = new ArrayList<>(manifest.getEntries());
+        Collections.sort(entries, new Comparator<AssetManifest.Entry>() {
+            @Override
+            public int compare(final AssetManifest.Entry a, final AssetManifest.Entry b) {
+                return a.getName().compareTo(b.getName());
+            }
+        });
+        return entries;
+    }
+
+    /**
+     * Tracks the directories of a walk, so a directory entry is only written
+     * for directories nothing else was written below. Other directories are
+     * implied by the names of their entries.
+     */
+    static final class DirectoryEntries {
+
+        private static final class Directory {
+            final long time;
+            boolean hasEntries;
+
+            Directory(final long time) {
+                this.time = time;
+            }
+        }
+
+        private final Deque<Directory> directories = new ArrayDeque<>();
+
+        private final CompressionPolicy policy;
+
+        DirectoryEntries(final CompressionPolicy policy) {
+            this.policy = policy;
+        }
+
+        void enter(final BasicFileAttributes attrs) {
+            this.directories.push(new Directory(attrs.lastModifiedTime().toMillis()));
+        }
+
+        void entryWritten() {
+            final Directory current = this.directories.peek();
+            if (current != null) {
+                current.hasEntries = true;
+            }
+        }
+
+        /**
+         * Leaves the current directory.
+         *
+         * @param entryName the entry name of the directory
+         * @return the directory entry to write, or null if none is needed
+         */
+        ZipArchiveEntry leave(final String entryName) {
+            final Directory directory = this.directories.pop();
+            ZipArchiveEntry entry = null;
+            if (!directory.hasEntries && !entryName.isEmpty()) {
+                // need to put a / on the end to force archive entry to be a directory
+                entry = new ZipArchiveEntry(entryName.concat("/"));
+                setEntryTime(entry, directory.time, this.policy);
+            }
+            if (directory.hasEntries || entry != null) {
+                this.entryWritten();
+            }
+            return entry;
+        }
+    }
+
     /**
      * Gets the zip file entry as string.
      *
@@ -107,14 +365,11 @@ public class ApacheCompressUtils {
      */
     public static String getZipFileEntryAsString(final Path zipFilePath, final String entryToGet) throws IOException {
         try (final ZipFile commonsZipFile = new ZipFile(zipFilePath.toFile())) {
-            for (final Enumeration<ZipArchiveEntry> e = commonsZipFile.getEntries(); e.hasMoreElements();) {
-                final ZipArchiveEntry entry = e.nextElement();
-                final String entryName = entry.getName();
-                if (entryName.equals(entryToGet)) {
-                    try (final InputStream in = commonsZipFile.getInputStream(entry);
-                            final BufferedInputStream bin = new BufferedInputStream(in)) {
-                        return IOUtils.toString(bin, CONS3RT_CHARSET);
-                    }
+            final ZipArchiveEntry entry = commonsZipFile.getEntry(entryToGet);
+            if (entry != null) {
+                try (final InputStream in = commonsZipFile.getInputStream(entry);
+                        final BufferedInputStream bin = new BufferedInputStream(in)) {
+                    return IOUtils.toString(bin, CONS3RT_CHARSET);
                 }
             }
         }
@@ -152,6 +407,24 @@ public class ApacheCompressUtils {
     	    justification = "Complained method is null checked for all parameters")
     public static void unzipIntoDirFromZipFile(final Path outputDirPath, final Path zipFilePath,
             final List<String> filesToInclude) throws IOException, InvalidPathException {
+        unzipIntoDirFromZipFile(outputDirPath, zipFilePath, filesToInclude, 1);
+    }
+
+    /**
+     * Unzip into dir from zip file, extracting with the given number of threads.
+     * More than one thread selects the {@link ParallelZipExtractor}.
+     *
+     * @param outputDirPath  the output dir path
+     * @param zipFilePath    the zip file path
+     * @param filesToInclude the files to include
+     * @param threads        the number of extraction threads
+     * @throws IOException          Signals that an I/O exception has occurred.
+     * @throws InvalidPathException the invalid path exception
+     */
+    @SuppressFBWarnings(value = "NP_NULL_ON_SOME_PATH_FROM_RETURN_VALUE",
+    	    justification = "Complained method is null checked for all parameters")
+    public static void unzipIntoDirFromZipFile(final Path outputDirPath, final Path zipFilePath,
+            final List<String> filesToInclude, final int threads) throws IOException, InvalidPathException {
 
         LOGGER.info("unzipIntoDirFromZipFile: starting unzip of {} into directory {} (filesToInclude = {})",
                 zipFilePath, outputDirPath, filesToInclude);
@@ -168,14 +441,19 @@ public class ApacheCompressUtils {
             throw new InvalidPathException(msg, outputDirPath.toString());
         }
 
+        if (threads > 1) {
+            ParallelZipExtractor.unzipIntoDirFromZipFile(outputDirPath, zipFilePath, filesToInclude, threads);
+            return;
+        }
+
         // did caller provide a populated include list? If so, we need to set some stuff
-        // up
+        // up - a set, so each lookup is constant time
         final boolean includeListProvided = filesToInclude != null && !filesToInclude.isEmpty();
-        final List<String> localIncludeList;
+        final Set<String> localIncludeList;
         if (includeListProvided) {
-            localIncludeList = new ArrayList<>(filesToInclude);
+            localIncludeList = new LinkedHashSet<>(filesToInclude);
         } else {
-            localIncludeList = new ArrayList<>();
+            localIncludeList = new LinkedHashSet<>();
         }
 
         try (final ZipFile commonsZipFile = new ZipFile(zipFilePath.toFile())) {
@@ -203,10 +481,7 @@ public class ApacheCompressUtils {
                             entry.isDirectory());
                 }
 
-                final boolean skip = Platform.isWindows() && entryName.contains(COLON);
-                if (skip) {
-                    LOGGER.info("unzipIntoDirFromZipFile: skipping entry {} containing {} on Windows platform",
-                            entryName, COLON);
+                if (isUnextractable(entryName)) {
                     continue;
                 }
 
@@ -226,28 +501,7 @@ public class ApacheCompressUtils {
 
                     if (!includeListProvided || localIncludeList.contains(entryName)) {
 
-                        // now copy from the zip stream to a string to get the link target path
-                        final String targetString;
-                        try (final InputStream in = commonsZipFile.getInputStream(entry);
-                                final ByteArrayOutputStream result = new ByteArrayOutputStream()) {
-
-                            final byte[] buffer = new byte[1024];
-                            int length;
-                            while ((length = in.read(buffer)) != -1) {
-                                result.write(buffer, 0, length);
-                            }
-                            targetString = result.toString(CONS3RT_CHARSET.name());
-                        }
-
-                        final Path targetPath = FileSystems.getDefault().getPath(targetString);
-
-                        // create the sym link
-                        Files.createSymbolicLink(entryOutputPath, targetPath);
-
-                        if (LOGGER.isDebugEnabled()) {
-                            LOGGER.debug("unzipIntoDirFromZipFile: created sym link at {} pointing to {})",
-                                    entryOutputPath, targetPath);
-                        }
+                        createSymbolicLink(commonsZipFile, entry, entryOutputPath);
 
                         // remove file from list to include
                         if (includeListProvided) {
@@ -306,6 +560,57 @@ public class ApacheCompressUtils {
         }
     }
 
+    /**
+     * Creates the symbolic link stored in a zip entry.
+     *
+     * @param zipFile         the zip file
+     * @param entry           the symbolic link entry
+     * @param entryOutputPath the path of the link to create
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    static void createSymbolicLink(final ZipFile zipFile, final ZipArchiveEntry entry, final Path entryOutputPath)
+            throws IOException {
+
+        // now copy from the zip stream to a string to get the link target path
+        final String targetString;
+        try (final InputStream in = zipFile.getInputStream(entry);
+                final ByteArrayOutputStream result = new ByteArrayOutputStream()) {
+
+            final byte[] buffer = new byte[1024];
+            int length;
+            while ((length = in.read(buffer)) != -1) {
+                result.write(buffer, 0, length);
+            }
+            targetString = result.toString(CONS3RT_CHARSET.name());
+        }
+
+        final Path targetPath = FileSystems.getDefault().getPath(targetString);
+
+        // create the sym link
+        Files.createSymbolicLink(entryOutputPath, targetPath);
+
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("unzipIntoDirFromZipFile: created sym link at {} pointing to {})", entryOutputPath,
+                    targetPath);
+        }
+    }
+
+    /**
+     * Whether an entry must be skipped because its name cannot be used on this
+     * platform.
+     *
+     * @param entryName the entry name
+     * @return true if the entry must be skipped
+     */
+    static boolean isUnextractable(final String entryName) {
+        final boolean skip = Platform.isWindows() && entryName.contains(COLON);
+        if (skip) {
+            LOGGER.info("unzipIntoDirFromZipFile: skipping entry {} containing {} on Windows platform", entryName,
+                    COLON);
+        }
+        return skip;
+    }
+
     /**
      * Zip into zip file from dir.
      *
@@ -319,6 +624,78 @@ public class ApacheCompressUtils {
     	    justification = "Complained method is null checked for all parameters")
     public static void zipIntoZipFileFromDir(final Path destZipFilePath, final Path sourceDirPath,
             final boolean includeSourceDir, final String extensionToMatch) throws IOException, InvalidPathException {
+        zipIntoZipFileFromDir(destZipFilePath, sourceDirPath, includeSourceDir, extensionToMatch, null);
+    }
+
+    /**
+     * Zip into zip file from dir, reporting progress.
+     *
+     * @param destZipFilePath  the dest zip file path
+     * @param sourceDirPath    the source dir path
+     * @param includeSourceDir include source dir as top level dir of zip file
+     * @param extensionToMatch the extension to match - ignored if null or empty
+     * @param progress         receives the bytes read and written - ignored if
+     *                         null
+     * @throws IOException          Signals that an I/O exception has occurred.
+     * @throws InvalidPathException the invalid path exception
+     */
+    @SuppressFBWarnings(value = "NP_NULL_ON_SOME_PATH_FROM_RETURN_VALUE",
+    	    justification = "Complained method is null checked for all parameters")
+    public static void zipIntoZipFileFromDir(final Path destZipFilePath, final Path sourceDirPath,
+            final boolean includeSourceDir, final String extensionToMatch, final TransferProgress progress)
+            throws IOException, InvalidPathException {
+        zipIntoZipFileFromDir(destZipFilePath, sourceDirPath, includeSourceDir, extensionToMatch, progress, 1,
+                CompressionPolicy.DEFAULT);
+    }
+
+    /**
+     * Zip into zip file from dir, compressing with the given number of threads
+     * and policy. More than one thread, or a reproducible policy, selects the
+     * {@link ParallelZipArchiver}.
+     *
+     * @param destZipFilePath  the dest zip file path
+     * @param sourceDirPath    the source dir path
+     * @param includeSourceDir include source dir as top level dir of zip file
+     * @param extensionToMatch the extension to match - ignored if null or empty
+     * @param progress         receives the bytes read and written - ignored if
+     *                         null
+     * @param threads          the number of compression threads
+     * @param policy           decides how each file is compressed
+     * @throws IOException          Signals that an I/O exception has occurred.
+     * @throws InvalidPathException the invalid path exception
+     */
+    @SuppressFBWarnings(value = "NP_NULL_ON_SOME_PATH_FROM_RETURN_VALUE",
+    	    justification = "Complained method is null checked for all parameters")
+    public static void zipIntoZipFileFromDir(final Path destZipFilePath, final Path sourceDirPath,
+            final boolean includeSourceDir, final String extensionToMatch, final TransferProgress progress,
+            final int threads, final CompressionPolicy policy) throws IOException, InvalidPathException {
+        zipIntoZipFileFromDir(destZipFilePath, sourceDirPath, includeSourceDir, extensionToMatch, progress, threads,
+                policy, null);
+    }
+
+    /**
+     * Zip into zip file from dir, compressing with the given number of threads
+     * and policy and updating a digest with the zip file bytes as they are
+     * written.
+     *
+     * @param destZipFilePath  the dest zip file path
+     * @param sourceDirPath    the source dir path
+     * @param includeSourceDir include source dir as top level dir of zip file
+     * @param extensionToMatch the extension to match - ignored if null or empty
+     * @param progress         receives the bytes read and written - ignored if
+     *                         null
+     * @param threads          the number of compression threads
+     * @param policy           decides how each file is compressed
+     * @param digest           receives the zip file bytes - ignored if null
+     * @throws IOException          Signals that an I/O exception has occurred.
+     * @throws InvalidPathException the invalid path exception
+     */
+    @SuppressFBWarnings(value = "NP_NULL_ON_SOME_PATH_FROM_RETURN_VALUE",
+    	    justification = "Complained method is null checked for all parameters")
+    public static void zipIntoZipFileFromDir(final Path destZipFilePath, final Path sourceDirPath,
+            final boolean includeSourceDir, final String extensionToMatch, final TransferProgress progress,
+            final int threads, final CompressionPolicy policy, final MessageDigest digest)
+            throws IOException, InvalidPathException {
 
         // make sure we can write to the dest dir
         final Path parentDir = destZipFilePath.getParent();
@@ -329,170 +706,147 @@ public class ApacheCompressUtils {
         }
 
         try (final OutputStream fos = new FileOutputStream(destZipFilePath.toFile());
-                final BufferedOutputStream bfos = new BufferedOutputStream(fos);
-                final ZipArchiveOutputStream zaos = (ZipArchiveOutputStream) new ArchiveStreamFactory()
-                        .createArchiveOutputStream(ArchiveStreamFactory.ZIP, bfos)) {
-
-            // See
-            // http://commons.apache.org/proper/commons-compress/apidocs/org/apache/commons/compress/archivers/zip/ZipArchiveOutputStream.html#setUseZip64-org.apache.commons.compress.archivers.zip.Zip64Mode-
-            zaos.setUseZip64(Zip64Mode.AsNeeded);
-
-            Files.walkFileTree(sourceDirPath, new SimpleFileVisitor<Path>() {
-
-                /*
-                 * (non-Javadoc)
-                 * 
-                 * @see java.nio.file.SimpleFileVisitor#preVisitDirectory(java.lang.Object,
-                 * java.nio.file.attribute.BasicFileAttributes)
-                 */
-                @Override
-                public FileVisitResult preVisitDirectory(final Path dirPath, final BasicFileAttributes attrs)
-                        throws IOException {
-
-                    if (LOGGER.isDebugEnabled()) {
-                        LOGGER.debug("preVisitDirectory: entered for {} (isDirectory = {} isRegularFile = {})", dirPath,
-                                attrs.isDirectory(), attrs.isRegularFile());
-                    }
-
-                    // get the entry name for our zip file entry based on path + desire to include
-                    // source dir
-                    final String entryName = getEntryName(sourceDirPath, dirPath, includeSourceDir);
-
-                    if (!entryName.isEmpty()) {
-
-                        // need to put a / on the end to force archive entry to be a directory
-                        final String dirEntryName = entryName.concat("/");
-
-                        // create a new entry object - iff name ends with "/" , this is a directory
-                        final ZipArchiveEntry entry = new ZipArchiveEntry(dirEntryName);
-
-                        // put the headers for the entry in the archive file
-                        try {
-                            zaos.putArchiveEntry(entry);
-                        } finally {
-                            // close this entry of the archive
-                            zaos.closeArchiveEntry();
-                        }
-
-                        if (LOGGER.isDebugEnabled()) {
-                            LOGGER.debug("preVisitDirectory: added zip dir entry {} (source path {})", dirEntryName,
-                                    dirPath);
-                        }
-
-                    } else {
-                        if (LOGGER.isDebugEnabled()) {
-                            LOGGER.debug(
-                                    "preVisitDirectory: skipping add of zip dir entry for {} (entry name is empty)",
-                                    dirPath);
-                        }
-                    }
-
-                    return FileVisitResult.CONTINUE;
-                }
-
-                /*
-                 * (non-Javadoc)
-                 * 
-                 * @see java.nio.file.SimpleFileVisitor#visitFile(java.lang.Object,
-                 * java.nio.file.attribute.BasicFileAttributes)
-                 */
-                @Override
-                @SuppressFBWarnings(value = "NP_NULL_ON_SOME_PATH_FROM_RETURN_VALUE",
-        	    justification = "Complained method is null checked for all parameters")
-                public FileVisitResult visitFile(final Path filePath, final BasicFileAttributes attrs)
-                        throws IOException {
-
-                    if (LOGGER.isDebugEnabled()) {
-                        LOGGER.debug(
-                                "visitFile: entered for {} (isDirectory = {} isRegularFile = {} isSymbolicLink = {})",
-                                filePath, attrs.isDirectory(), attrs.isRegularFile(), attrs.isSymbolicLink());
-                    }
-
-                    // if we only want files with certain extensions, check that
-                    if (extensionToMatch != null && !extensionToMatch.isEmpty()
-                            && !filePath.getFileName().toString().endsWith(".".concat(extensionToMatch))) {
-                        if (LOGGER.isDebugEnabled()) {
-                            LOGGER.debug("visitFile: not adding {} - did not match extension {}", filePath,
-                                    extensionToMatch);
-                        }
-                        return FileVisitResult.CONTINUE;
-                    }
-
-                    // we will need to handle sym links - hard links are mostly invisible to us at
-                    // this level of abstraction, and zip files do not support them
-
-                    // get the entry name for our zip file entry based on path + desire to include
-                    // source dir
-                    final String entryName = getEntryName(sourceDirPath, filePath, includeSourceDir);
-
-                    // create a new entry object
-                    final ZipArchiveEntry entry = new ZipArchiveEntry(entryName);
-
-                    // if this is a sym link...
-                    if (attrs.isSymbolicLink()) {
-
-                        // copy the content for this entry into the archive - either the contents of the
-                        // target if not a sym link,
-                        // or the target path if a sym link
-                        Path realPath = null;
-                        try {
-                            realPath = filePath.toRealPath();
-                        } catch (final IOException ioe) {
-                            LOGGER.warn("visitFile: could not find target for symbolic link entry {} - skipping",
-                                    entryName);
-                        }
-
-                        if (realPath != null) {
-
-                            // get the target path, adjusted for our zip file path
-                            final String realPathEntryName = getEntryName(sourceDirPath, realPath, includeSourceDir);
-
-                            // we need to set a flag in the entry
-                            entry.setUnixMode(UnixStat.LINK_FLAG | UnixStat.DEFAULT_LINK_PERM);
+                final OutputStream bfos = digesting(new BufferedOutputStream(fos), digest)) {
+            final Path tempDir = (ParallelZipArchiver.TEMP_DIR != null) ? Paths.get(ParallelZipArchiver.TEMP_DIR)
+                    : parentDir;
+            ParallelZipArchiver.zipIntoStreamFromDir(bfos, sourceDirPath, includeSourceDir, extensionToMatch,
+                    progress, Math.max(threads, 1), policy, tempDir);
+        }
+    }
 
-                            // put the headers for the entry in the archive file
-                            zaos.putArchiveEntry(entry);
+    /**
+     * Wraps a stream so it updates a digest with what is written to it.
+     *
+     * @param out    the stream
+     * @param digest the digest - the stream is returned as is if null
+     * @return the stream to write to
+     */
+    static OutputStream digesting(final OutputStream out, final MessageDigest digest) {
+        return (digest != null) ? new DigestOutputStream(out, digest) : out;
+    }
 
-                            // write the target path string as the entry contents
-                            try {
-                                zaos.write(realPathEntryName.getBytes(CONS3RT_CHARSET));
-                            } finally {
-                                zaos.closeArchiveEntry();
-                            }
+    /**
+     * Zip into an output stream from dir. The zip is finished but the stream is
+     * left open, so the caller can keep writing to it (e.g. a multipart
+     * request body).
+     *
+     * @param out              the stream to write the zip to
+     * @param sourceDirPath    the source dir path
+     * @param includeSourceDir include source dir as top level dir of zip file
+     * @param extensionToMatch the extension to match - ignored if null or empty
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public static void zipIntoStreamFromDir(final OutputStream out, final Path sourceDirPath,
+            final boolean includeSourceDir, final String extensionToMatch) throws IOException {
+        zipIntoStreamFromDir(out, sourceDirPath, includeSourceDir, extensionToMatch, null);
+    }
 
-                            LOGGER.info("visitFile: added zip file symbolic link entry {} pointing to target path {}",
-                                    entryName, realPathEntryName);
-                        }
-                    } else {
+    /**
+     * Zip into an output stream from dir, reporting progress. The stream is
+     * left open.
+     *
+     * @param out              the stream to write the zip to
+     * @param sourceDirPath    the source dir path
+     * @param includeSourceDir include source dir as top level dir of zip file
+     * @param extensionToMatch the extension to match - ignored if null or empty
+     * @param progress         receives the bytes read and written - ignored if
+     *                         null
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public static void zipIntoStreamFromDir(final OutputStream out, final Path sourceDirPath,
+            final boolean includeSourceDir, final String extensionToMatch, final TransferProgress progress)
+            throws IOException {
+        zipIntoStreamFromDir(out, sourceDirPath, includeSourceDir, extensionToMatch, progress,
+                CompressionPolicy.DEFAULT);
+    }
 
-                        // set the size
-                        entry.setSize(filePath.toFile().length());
+    /**
+     * Zip into an output stream from dir, reporting progress and compressing
+     * each file as the policy decides. The stream is left open.
+     *
+     * @param out              the stream to write the zip to
+     * @param sourceDirPath    the source dir path
+     * @param includeSourceDir include source dir as top level dir of zip file
+     * @param extensionToMatch the extension to match - ignored if null or empty
+     * @param progress         receives the bytes read and written - ignored if
+     *                         null
+     * @param policy           decides how each file is compressed
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public static void zipIntoStreamFromDir(final OutputStream out, final Path sourceDirPath,
+            final boolean includeSourceDir, final String extensionToMatch, final TransferProgress progress,
+            final CompressionPolicy policy) throws IOException {
+        ParallelZipArchiver.zipIntoStreamFromDir(out, sourceDirPath, includeSourceDir, extensionToMatch, progress, 1,
+                policy);
+    }
 
-                        // put the headers for the entry in the archive file
-                        zaos.putArchiveEntry(entry);
+    /**
+     * Writes content generated in memory as an entry. It is deflated unless
+     * the policy turns compression off.
+     *
+     * @param zaos    the archive stream
+     * @param entry   the entry, named
+     * @param content the content
+     * @param policy  the compression policy
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    static void writeContentEntry(final ZipArchiveOutputStream zaos, final ZipArchiveEntry entry,
+            final byte[] content, final CompressionPolicy policy) throws IOException {
+        entry.setSize(content.length);
+        if (policy.getLevel() == Deflater.NO_COMPRESSION) {
+            final CRC32 crc = new CRC32();
+            crc.update(content);
+            entry.setMethod(ZipEntry.STORED);
+            entry.setCompressedSize(content.length);
+            entry.setCrc(crc.getValue());
+        } else {
+            entry.setMethod(ZipEntry.DEFLATED);
+        }
 
-                        try (final BufferedInputStream input = new BufferedInputStream(
-                                new FileInputStream(filePath.toFile()))) {
-                            IOUtils.copy(input, zaos);
-                        } finally {
-                            // close this entry of the archive
-                            zaos.closeArchiveEntry();
-                        }
+        zaos.putArchiveEntry(entry);
+        try {
+            zaos.write(content);
+        } finally {
+            zaos.closeArchiveEntry();
+        }
+    }
 
-                        if (LOGGER.isDebugEnabled()) {
-                            LOGGER.debug("visitFile: added zip file entry {} (source path {})", entryName, filePath);
-                        }
-                    }
+    /**
+     * Zip the entries of an asset manifest into an output stream, reporting
+     * progress and compressing each file as the policy decides. The stream is
+     * left open.
+     *
+     * @param out      the stream to write the zip to
+     * @param manifest the entries to zip
+     * @param progress receives the bytes read and written - ignored if null
+     * @param policy   decides how each file is compressed
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public static void zipIntoStreamFromManifest(final OutputStream out, final AssetManifest manifest,
+            final TransferProgress progress, final CompressionPolicy policy) throws IOException {
+        ParallelZipArchiver.zipIntoStreamFromManifest(out, manifest, progress, 1, policy,
+                (ParallelZipArchiver.TEMP_DIR != null) ? Paths.get(ParallelZipArchiver.TEMP_DIR) : null);
+    }
 
-                    return FileVisitResult.CONTINUE;
+    /**
+     * Sums the size of all regular files below a directory.
+     *
+     * @param dirPath the dir path
+     * @return the total size in bytes
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public static long sizeOfDir(final Path dirPath) throws IOException {
+        final long[] total = new long[1];
+        Files.walkFileTree(dirPath, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(final Path filePath, final BasicFileAttributes attrs) {
+                if (attrs.isRegularFile()) {
+                    total[0] += attrs.size();
                 }
-            });
-        } catch (final ArchiveException e) {
-            final String msg = " caught " + e.getClass().getSimpleName() + " creating archive stream into "
-                    + destZipFilePath + " (message = " + e.getMessage() + ")";
-            LOGGER.info("zipIntoZipFileFromDir: {}", msg);
-            throw new IOException(msg);
-        }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return total[0];
     }
 
     /**
@@ -0,0 +1,395 @@
+package io.jenkins.plugins.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import hudson.FilePath;
+import hudson.model.Node;
+import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
+
+/**
+ * Caches the asset zips the {@link io.jenkins.plugins.AssetBuilder} produces
+ * on each node, keyed by a fingerprint of everything the zip is built from:
+ * the asset fields, the zip settings, the name, size and modification time of
+ * every file, and the content of the script, documentation and license files
+ * and of media files up to the contentHashMaxBytes system property prefixed
+ * with this class name (1 MB by default). A build whose inputs have the same
+ * fingerprint as an earlier one takes the cached zip instead of staging and
+ * zipping again.
+ *
+ * Each cached zip is kept as {@code <fingerprint>.zip} next to a
+ * {@code <fingerprint>.sha256} file holding its checksum, in the
+ * {@value #cacheDirName} directory of the node root. Zips are hard linked
+ * where the file system allows it and copied otherwise. Using a zip marks its
+ * checksum file as recently used, never the zip itself, which shares its
+ * modification time with every workspace zip linked to it. The least recently
+ * used zips are removed once the cache grows beyond its size limit.
+ */
+public class AssetBuildCache {
+
+	public static final Logger LOGGER = Logger.getLogger(AssetBuildCache.class.getName());
+
+	public static final String cacheDirName = "cons3rt-asset-cache";
+
+	private static final String zipSuffix = ".zip";
+
+	private static final String checksumSuffix = ".sha256";
+
+	private static final String mediaPrefix = "media/";
+
+	private static final long MEGABYTE = 1024L * 1024L;
+
+	static final long CONTENT_HASH_MAX_BYTES = Long
+			.getLong(AssetBuildCache.class.getName() + ".contentHashMaxBytes", MEGABYTE);
+
+	/** Most recently used first, by the time their checksum file was touched. */
+	private static final Comparator<Path> MOST_RECENTLY_USED = new Comparator<Path>() {
+		@Override
+		public int compare(final Path a, final Path b) {
+			return Long.compare(checksumFile(b).toFile().lastModified(), checksumFile(a).toFile().lastModified());
+		}
+	};
+
+	/**
+	 * Fingerprints the inputs of an asset on the machine the workspace is on.
+	 */
+	private static final class FingerprintCallable extends MasterToSlaveFileCallable<String> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final AssetManifest manifest;
+
+		private final String inputs;
+
+		FingerprintCallable(final AssetManifest manifest, final String inputs) {
+			this.manifest = manifest;
+			this.inputs = inputs;
+		}
+
+		@Override
+		public String invoke(final File workspaceDir, final VirtualChannel channel) throws IOException {
+			return fingerprint(this.manifest, this.inputs);
+		}
+	}
+
+	/**
+	 * Takes a cached zip into the workspace, on the machine the cache is on.
+	 */
+	private static final class LookupCallable extends MasterToSlaveFileCallable<AssetZipCallable.Result> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final String fingerprint;
+
+		private final String targetPath;
+
+		LookupCallable(final String fingerprint, final String targetPath) {
+			this.fingerprint = fingerprint;
+			this.targetPath = targetPath;
+		}
+
+		@Override
+		public AssetZipCallable.Result invoke(final File cacheDir, final VirtualChannel channel) throws IOException {
+			final File target = new File(this.targetPath);
+			final String sha256 = lookup(cacheDir.toPath(), this.fingerprint, target.toPath());
+			return (sha256 != null) ? new AssetZipCallable.Result(target, sha256, null) : null;
+		}
+	}
+
+	/**
+	 * Adds a zip to the cache, on the machine the cache is on.
+	 */
+	private static final class StoreCallable extends MasterToSlaveFileCallable<Integer> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final String fingerprint;
+
+		private final String zipPath;
+
+		private final String sha256;
+
+		private final long maxBytes;
+
+		StoreCallable(final String fingerprint, final String zipPath, final String sha256, final long maxBytes) {
+			this.fingerprint = fingerprint;
+			this.zipPath = zipPath;
+			this.sha256 = sha256;
+			this.maxBytes = maxBytes;
+		}
+
+		@Override
+		public Integer invoke(final File cacheDir, final VirtualChannel channel) throws IOException {
+			return store(cacheDir.toPath(), this.fingerprint, new File(this.zipPath).toPath(), this.sha256,
+					this.maxBytes);
+		}
+	}
+
+	/**
+	 * Private ktor.
+	 */
+	private AssetBuildCache() {
+
+	}
+
+	/**
+	 * Gets the cache directory of a node.
+	 *
+	 * @param node the node the build runs on
+	 * @return the directory, or null if the node is not available
+	 */
+	public static FilePath getCacheDir(final Node node) {
+		if (node == null) {
+			return null;
+		}
+		final FilePath root = node.getRootPath();
+		return (root != null) ? new FilePath(root, cacheDirName) : null;
+	}
+
+	/**
+	 * Fingerprints the inputs of an asset.
+	 *
+	 * @param workspace the workspace the files are in
+	 * @param manifest  the files of the asset
+	 * @param inputs    everything else the zip is built from
+	 * @return the fingerprint
+	 * @throws IOException          Signals that an I/O exception has occurred.
+	 * @throws InterruptedException the interrupted exception
+	 */
+	public static String fingerprint(final FilePath workspace, final AssetManifest manifest, final String inputs)
+			throws IOException, InterruptedException {
+		return workspace.act(new FingerprintCallable(manifest, inputs));
+	}
+
+	/**
+	 * Fingerprints the inputs of an asset: the inputs string, then the name,
+	 * size and modification time of every file and the name of every
+	 * directory of the manifest, in name order. The content of every file
+	 * outside the media directory, and of media files no larger than
+	 * {@link #CONTENT_HASH_MAX_BYTES}, is digested as well, so an edit that
+	 * keeps the size and modification time is not missed for them. Content
+	 * generated in memory is left out, so what it is generated from belongs in
+	 * the inputs string.
+	 *
+	 * @param manifest the files of the asset
+	 * @param inputs   everything else the zip is built from
+	 * @return the fingerprint
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public static String fingerprint(final AssetManifest manifest, final String inputs) throws IOException {
+		final List<AssetManifest.Entry> entries = new ArrayList<>(manifest.getEntries());
+		Collections.sort(entries, new Comparator<AssetManifest.Entry>() {
+			@Override
+			public int compare(final AssetManifest.Entry a, final AssetManifest.Entry b) {
+				return a.getName().compareTo(b.getName());
+			}
+		});
+
+		final MessageDigest digest = AssetFileUtils.newAssetDigest();
+		digest.update(inputs.getBytes(StandardCharsets.UTF_8));
+		for (final AssetManifest.Entry entry : entries) {
+			final StringBuilder line = new StringBuilder().append('\n').append(entry.getName());
+			if (entry.getSource() != null) {
+				final BasicFileAttributes attrs = Files.readAttributes(entry.getSource(), BasicFileAttributes.class);
+				line.append('\0').append(attrs.size()).append('\0').append(attrs.lastModifiedTime().toMillis());
+				if (!entry.getName().startsWith(mediaPrefix) || attrs.size() <= CONTENT_HASH_MAX_BYTES) {
+					line.append('\0').append(contentDigest(entry.getSource()));
+				}
+			} else if (entry.isDirectory()) {
+				line.append('/');
+			}
+			digest.update(line.toString().getBytes(StandardCharsets.UTF_8));
+		}
+		return AssetFileUtils.toHex(digest.digest());
+	}
+
+	/**
+	 * Takes the cached zip of a fingerprint into a workspace.
+	 *
+	 * @param cacheDir    the cache directory
+	 * @param fingerprint the input fingerprint
+	 * @param workspace   the workspace
+	 * @param zipName     the name of the zip to create in the workspace
+	 * @return the zip, or null if none is cached or it could not be taken
+	 * @throws InterruptedException the interrupted exception
+	 */
+	public static AssetZipCallable.Result lookup(final FilePath cacheDir, final String fingerprint,
+			final FilePath workspace, final String zipName) throws InterruptedException {
+		try {
+			return cacheDir.act(new LookupCallable(fingerprint, new FilePath(workspace, zipName).getRemote()));
+		} catch (IOException e) {
+			LOGGER.log(Level.WARNING, "Could not take asset zip " + fingerprint + " from the build cache: "
+					+ e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Links or copies the cached zip of a fingerprint to a target path and
+	 * marks it as used by touching its checksum file.
+	 *
+	 * @param cacheDir    the cache directory
+	 * @param fingerprint the input fingerprint
+	 * @param target      the target path
+	 * @return the checksum of the zip, or null if none is cached
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public static String lookup(final Path cacheDir, final String fingerprint, final Path target)
+			throws IOException {
+		final Path zip = cacheDir.resolve(fingerprint + zipSuffix);
+		final Path checksum = cacheDir.resolve(fingerprint + checksumSuffix);
+		if (!Files.isRegularFile(zip) || !Files.isRegularFile(checksum)) {
+			return null;
+		}
+
+		final String sha256 = new String(Files.readAllBytes(checksum), StandardCharsets.UTF_8).trim();
+		try {
+			linkOrCopy(zip, target);
+		} catch (IOException e) {
+			Files.deleteIfExists(target);
+			throw e;
+		}
+		Files.setLastModifiedTime(checksum, FileTime.fromMillis(System.currentTimeMillis()));
+		LOGGER.log(Level.INFO, "Took cached asset zip " + zip + " as " + target);
+		return sha256;
+	}
+
+	/**
+	 * Adds a zip to the cache and evicts the least recently used zips beyond
+	 * the size limit.
+	 *
+	 * @param cacheDir     the cache directory
+	 * @param fingerprint  the input fingerprint
+	 * @param zip          the zip, on the machine the cache is on
+	 * @param sha256       the checksum of the zip
+	 * @param maxMegabytes the size the cache may use
+	 * @return the number of zips evicted, or -1 if the zip is larger than the
+	 *         cache and was not added
+	 * @throws InterruptedException the interrupted exception
+	 */
+	public static int store(final FilePath cacheDir, final String fingerprint, final FilePath zip,
+			final String sha256, final int maxMegabytes) throws InterruptedException {
+		try {
+			return cacheDir.act(new StoreCallable(fingerprint, zip.getRemote(), sha256, maxMegabytes * MEGABYTE));
+		} catch (IOException e) {
+			LOGGER.log(Level.WARNING, "Could not add asset zip " + zip.getName() + " to the build cache: "
+					+ e.getMessage());
+			return 0;
+		}
+	}
+
+	/**
+	 * Adds a zip to the cache and evicts the least recently used zips beyond
+	 * the size limit.
+	 *
+	 * @param cacheDir    the cache directory
+	 * @param fingerprint the input fingerprint
+	 * @param zip         the zip
+	 * @param sha256      the checksum of the zip
+	 * @param maxBytes    the size the cache may use
+	 * @return the number of zips evicted, or -1 if the zip is larger than the
+	 *         cache and was not added
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public static int store(final Path cacheDir, final String fingerprint, final Path zip, final String sha256,
+			final long maxBytes) throws IOException {
+		if (Files.size(zip) > maxBytes) {
+			LOGGER.log(Level.INFO, "Not caching asset zip " + zip + ", it is larger than the build cache");
+			return -1;
+		}
+
+		Files.createDirectories(cacheDir);
+		final Path tempZip = Files.createTempFile(cacheDir, fingerprint, zipSuffix + ".tmp");
+		final Path tempChecksum = Files.createTempFile(cacheDir, fingerprint, checksumSuffix + ".tmp");
+		try {
+			Files.delete(tempZip);
+			linkOrCopy(zip, tempZip);
+			Files.write(tempChecksum, sha256.getBytes(StandardCharsets.UTF_8));
+
+			// the checksum goes first, a zip is only found once both are in place
+			Files.move(tempChecksum, cacheDir.resolve(fingerprint + checksumSuffix),
+					StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			Files.move(tempZip, cacheDir.resolve(fingerprint + zipSuffix), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tempZip);
+			Files.deleteIfExists(tempChecksum);
+		}
+		LOGGER.log(Level.INFO, "Cached asset zip " + zip + " as " + fingerprint);
+		return evict(cacheDir, maxBytes);
+	}
+
+	/**
+	 * Removes the least recently used zips until the cache fits its size
+	 * limit.
+	 *
+	 * @param cacheDir the cache directory
+	 * @param maxBytes the size the cache may use
+	 * @return the number of zips evicted
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public static int evict(final Path cacheDir, final long maxBytes) throws IOException {
+		final List<Path> zips = new ArrayList<>();
+		try (final DirectoryStream<Path> stream = Files.newDirectoryStream(cacheDir, "*" + zipSuffix)) {
+			for (final Path zip : stream) {
+				zips.add(zip);
+			}
+		}
+		Collections.sort(zips, MOST_RECENTLY_USED);
+
+		long usedBytes = 0;
+		int evicted = 0;
+		for (final Path zip : zips) {
+			usedBytes += Files.size(zip);
+			if (usedBytes > maxBytes) {
+				Files.deleteIfExists(zip);
+				Files.deleteIfExists(checksumFile(zip));
+				LOGGER.log(Level.INFO, "Evicted cached asset zip " + zip);
+				++evicted;
+			}
+		}
+		return evicted;
+	}
+
+	private static Path checksumFile(final Path zip) {
+		final String name = zip.getFileName().toString();
+		return zip.resolveSibling(name.substring(0, name.length() - zipSuffix.length()) + checksumSuffix);
+	}
+
+	private static String contentDigest(final Path file) throws IOException {
+		final MessageDigest digest = AssetFileUtils.newAssetDigest();
+		final byte[] buffer = new byte[8192];
+		try (InputStream in = Files.newInputStream(file)) {
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				digest.update(buffer, 0, read);
+			}
+		}
+		return AssetFileUtils.toHex(digest.digest());
+	}
+
+	private static void linkOrCopy(final Path source, final Path target) throws IOException {
+		try {
+			Files.createLink(target, source);
+		} catch (IOException | UnsupportedOperationException e) {
+			LOGGER.log(Level.FINE, "Could not link " + target + " to " + source + ", copying it: " + e);
+			Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+}
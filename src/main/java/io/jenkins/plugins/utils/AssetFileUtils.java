@@ -1,29 +1,54 @@
 package io.jenkins.plugins.utils;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import org.apache.tools.ant.DirectoryScanner;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+import org.apache.commons.io.output.TeeOutputStream;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
 
 import hudson.FilePath;
+import hudson.model.Node;
+import hudson.model.Run;
+import hudson.remoting.VirtualChannel;
 import io.jenkins.plugins.AssetBuilder;
+import io.jenkins.plugins.Cons3rtAssetAction;
 import io.jenkins.plugins.datatype.ArchitectureType;
 import io.jenkins.plugins.datatype.BitsType;
 import io.jenkins.plugins.datatype.PlatformType;
+import io.jenkins.plugins.datatype.PrebuiltAsset;
+import jenkins.MasterToSlaveFileCallable;
 
 public class AssetFileUtils {
 
@@ -35,6 +60,8 @@ public class AssetFileUtils {
 
 	public static final String wildCard = "*";
 
+	public static final String prebuiltAssetIndexName = ".cons3rt-assets.json";
+
 	public static SimpleDateFormat getDateFormat() {
 		return new SimpleDateFormat("yyyy.MM.dd.HH.mm.ss");
 	}
@@ -53,6 +80,26 @@ public class AssetFileUtils {
 
 	public static File getAssetZipFromPath(final FilePath buildWorkspace, FilePath providedPath)
 			throws IOException, InterruptedException {
+		return getAssetZipFromPath(buildWorkspace, providedPath, null, CompressionPolicy.DEFAULT);
+	}
+
+	/**
+	 * Same as {@link #getAssetZipFromPath(FilePath, FilePath)}, reporting the
+	 * zip throughput to the given progress and compressing with the given
+	 * policy if a directory has to be zipped.
+	 */
+	public static File getAssetZipFromPath(final FilePath buildWorkspace, FilePath providedPath,
+			final TransferProgress progress, final CompressionPolicy policy) throws IOException, InterruptedException {
+		return getAssetZipFromPath(buildWorkspace, providedPath, progress, policy, null);
+	}
+
+	/**
+	 * Same as {@link #getAssetZipFromPath(FilePath, FilePath, TransferProgress, CompressionPolicy)},
+	 * updating the digest with the bytes of the zip if one is created.
+	 */
+	public static File getAssetZipFromPath(final FilePath buildWorkspace, FilePath providedPath,
+			final TransferProgress progress, final CompressionPolicy policy, final MessageDigest digest)
+			throws IOException, InterruptedException {
 
 		final File providedFile = new File(providedPath.toURI());
 
@@ -64,59 +111,16 @@ public class AssetFileUtils {
 				LOGGER.log(Level.INFO, "Provided file " + providedPath
 						+ " is a directory. Checking for top level asset.properties file", "INFO");
 
-				// Make sure an asset.properties file (and only 1) exists at the top level of
-				// the directory
-				
-				
-				final String[] fileList = providedFile.list(assetPropertiesFilter);
-				
-				final List<String> assetPropsFiles;
-				if(fileList != null) {
-					assetPropsFiles = Arrays.asList(fileList);
-				} else {
-					final String message = "Could not find asset.properties file at top level of directory "
-							+ providedPath;
-					LOGGER.log(Level.WARNING, message);
-					throw new IOException(message);
-				} 
-				
-				if (assetPropsFiles.size() > 1) {
-					final String message = "Found " + assetPropsFiles.size()
-							+ " asset.properties files at top level of directory " + providedPath;
-					LOGGER.warning(message);
-					throw new IOException(message);
-				} else {
-					LOGGER.info("Found asset.properties file at top level of directory " + providedPath
-							+ ". Attempting to create zip for asset import");
-				}
-
-				final StringBuilder assetZipName = new StringBuilder();
-				assetZipName.append(AssetFileUtils.cons3rtAssetPrefix);
-				assetZipName.append("-");
-
-				if (providedPath.getBaseName().startsWith(cons3rtAssetBuilderPrefix)) {
-					LOGGER.info(
-							"Asset to be zipped is an asset built by the cons3rt asset builder plugin. Removing prefix and timestamp to get name");
-					final String baseName = providedPath.getBaseName().replace(cons3rtAssetBuilderPrefix + "-", "");
-					final String name = baseName.substring(0, baseName.lastIndexOf("-"));
-					assetZipName.append(name);
-				} else {
-					assetZipName.append(providedPath.getBaseName());
-				}
-
-				final String timeStamp = new SimpleDateFormat("yyyy.MM.dd.HH.mm.ss").format(new Date());
-				assetZipName.append("-");
-				assetZipName.append(timeStamp);
-				assetZipName.append(".zip");
+				verifyAssetDirectory(providedFile, providedPath);
 
-				final FilePath zipFilePath = new FilePath(buildWorkspace, assetZipName.toString());
+				final FilePath zipFilePath = new FilePath(buildWorkspace, getAssetZipName(providedPath));
 
 				// final FilePath zipFilePath =
 				// buildWorkspace.createTempFile("cons3rt-jenkins-plugin-asset-", ".zip");
 				LOGGER.info("Zipping directory " + providedPath.toURI().toString() + " to file "
 						+ zipFilePath.toURI().toString());
 				Cons3rtCompressUtils.INSTANCE.zipIntoZipFileFromDir(Paths.get(zipFilePath.toURI()),
-						Paths.get(providedPath.toURI()), false, null);
+						Paths.get(providedPath.toURI()), false, null, progress, policy, digest);
 				LOGGER.info("Zip created.");
 				assetZipForUpload = new File(zipFilePath.toURI());
 			} else {
@@ -141,6 +145,126 @@ public class AssetFileUtils {
 		return assetZipForUpload;
 	}
 
+	/**
+	 * Checks the asset.properties files at the top level of the provided asset
+	 * directory: the directory must be listable and hold no more than one.
+	 */
+	static void verifyAssetDirectory(final File providedFile, final FilePath providedPath) throws IOException {
+		final String[] fileList = providedFile.list(assetPropertiesFilter);
+
+		final List<String> assetPropsFiles;
+		if (fileList != null) {
+			assetPropsFiles = Arrays.asList(fileList);
+		} else {
+			final String message = "Could not find asset.properties file at top level of directory " + providedPath;
+			LOGGER.log(Level.WARNING, message);
+			throw new IOException(message);
+		}
+
+		if (assetPropsFiles.size() > 1) {
+			final String message = "Found " + assetPropsFiles.size()
+					+ " asset.properties files at top level of directory " + providedPath;
+			LOGGER.warning(message);
+			throw new IOException(message);
+		} else {
+			LOGGER.info("Found asset.properties file at top level of directory " + providedPath
+					+ ". Attempting to create zip for asset import");
+		}
+	}
+
+	/**
+	 * Gets the timestamped CONS3RT-Asset zip name for an asset directory.
+	 */
+	public static String getAssetZipName(final FilePath providedPath) {
+		if (providedPath.getBaseName().startsWith(cons3rtAssetBuilderPrefix)) {
+			LOGGER.info(
+					"Asset to be zipped is an asset built by the cons3rt asset builder plugin. Removing prefix and timestamp to get name");
+			final String baseName = providedPath.getBaseName().replace(cons3rtAssetBuilderPrefix + "-", "");
+			final String name = baseName.substring(0, baseName.lastIndexOf("-"));
+			return timestampedAssetZipName(name);
+		} else {
+			return timestampedAssetZipName(providedPath.getBaseName());
+		}
+	}
+
+	/**
+	 * Gets the timestamped CONS3RT-Asset zip name for an asset built from the
+	 * given name, the same name zipping its builder working directory gives.
+	 */
+	public static String getAssetZipNameForAsset(final String name) {
+		return timestampedAssetZipName(name.replaceAll(" ", "_"));
+	}
+
+	private static String timestampedAssetZipName(final String name) {
+		final StringBuilder assetZipName = new StringBuilder();
+		assetZipName.append(AssetFileUtils.cons3rtAssetPrefix);
+		assetZipName.append("-");
+		assetZipName.append(name);
+
+		final String timeStamp = new SimpleDateFormat("yyyy.MM.dd.HH.mm.ss").format(new Date());
+		assetZipName.append("-");
+		assetZipName.append(timeStamp);
+		assetZipName.append(".zip");
+
+		return assetZipName.toString();
+	}
+
+	/**
+	 * Zips the entries of an asset manifest into a zip file in the workspace,
+	 * reading every file from where it is and updating the digest, if not
+	 * null, with the bytes of the zip.
+	 */
+	public static File writeAssetZip(final FilePath buildWorkspace, final String zipName,
+			final AssetManifest manifest, final TransferProgress progress, final CompressionPolicy policy,
+			final MessageDigest digest) throws IOException, InterruptedException {
+		final FilePath zipFilePath = new FilePath(buildWorkspace, zipName);
+		LOGGER.info("Zipping " + manifest.size() + " asset entries to file " + zipFilePath.toURI().toString());
+		Cons3rtCompressUtils.INSTANCE.zipIntoZipFileFromManifest(Paths.get(zipFilePath.toURI()), manifest,
+				progress, policy, digest);
+		LOGGER.info("Zip created.");
+		return new File(zipFilePath.toURI());
+	}
+
+	/**
+	 * Zips an asset directory straight into the given stream, without staging
+	 * a zip file on disk. If keepCopy is not null, the zip is also written to
+	 * that file.
+	 */
+	public static void writeAssetZip(final FilePath providedPath, final OutputStream out, final File keepCopy)
+			throws IOException, InterruptedException {
+		writeAssetZip(providedPath, out, keepCopy, null, CompressionPolicy.DEFAULT);
+	}
+
+	/**
+	 * Same as {@link #writeAssetZip(FilePath, OutputStream, File)}, reporting
+	 * the zip throughput to the given progress and compressing with the given
+	 * policy.
+	 */
+	public static void writeAssetZip(final FilePath providedPath, final OutputStream out, final File keepCopy,
+			final TransferProgress progress, final CompressionPolicy policy) throws IOException, InterruptedException {
+		final File providedFile = new File(providedPath.toURI());
+
+		if (!providedFile.isDirectory()) {
+			final String message = "Provided file " + providedPath + " is not a directory and cannot be streamed.";
+			LOGGER.warning(message);
+			throw new IOException(message);
+		}
+
+		verifyAssetDirectory(providedFile, providedPath);
+
+		if (keepCopy == null) {
+			Cons3rtCompressUtils.INSTANCE.zipIntoStreamFromDir(out, Paths.get(providedPath.toURI()), false, null,
+					progress, policy);
+		} else {
+			LOGGER.info("Keeping a copy of the streamed asset zip in " + keepCopy);
+			try (final OutputStream copy = new BufferedOutputStream(new FileOutputStream(keepCopy));
+					final OutputStream tee = new TeeOutputStream(new CloseShieldOutputStream(out), copy)) {
+				Cons3rtCompressUtils.INSTANCE.zipIntoStreamFromDir(tee, Paths.get(providedPath.toURI()), false,
+						null, progress, policy);
+			}
+		}
+	}
+
 	public static FilePath createWorkingDirectory(final FilePath workspace, final String name)
 			throws IOException, InterruptedException {
 		try {
@@ -167,6 +291,25 @@ public class AssetFileUtils {
 
 	public static void createAssetPropertiesFile(final FilePath workDir, final AssetBuilder assetBuilder)
 			throws IOException, InterruptedException {
+		// Write the properties file
+		final FilePath propertiesFile = new FilePath(workDir, "asset.properties");
+		propertiesFile.write(getAssetPropertiesContent(assetBuilder), null);
+	}
+
+	/**
+	 * Gets the content of the asset.properties file for the fields of an
+	 * {@link AssetBuilder}. The creation time is left out if the builder
+	 * writes reproducible zips.
+	 */
+	public static String getAssetPropertiesContent(final AssetBuilder assetBuilder) {
+		return getAssetPropertiesContent(assetBuilder, !assetBuilder.isReproducibleZip());
+	}
+
+	/**
+	 * Gets the content of the asset.properties file for the fields of an
+	 * {@link AssetBuilder}, with or without the creation time.
+	 */
+	public static String getAssetPropertiesContent(final AssetBuilder assetBuilder, final boolean timestamped) {
 		// Based on fields in assetBuilder create asset properties file
 		final String newline = System.getProperty("line.separator");
 		final String timeStamp = new SimpleDateFormat("yyyy.MM.dd.HH.mm.ss").format(new Date());
@@ -179,9 +322,11 @@ public class AssetFileUtils {
 		sb.append(newline);
 
 		// Add timestamp as header:
-		sb.append('#');
-		sb.append(timeStamp);
-		sb.append(newline);
+		if (timestamped) {
+			sb.append('#');
+			sb.append(timeStamp);
+			sb.append(newline);
+		}
 
 		// Add software type info:
 		sb.append("assetType=SOFTWARE");
@@ -252,9 +397,7 @@ public class AssetFileUtils {
 			sb.append(newline);
 		}
 
-		// Write the properties file
-		final FilePath propertiesFile = new FilePath(workDir, "asset.properties");
-		propertiesFile.write(sb.toString(), null);
+		return sb.toString();
 	}
 
 	public static FilePath verifyFileExists(final FilePath workspace, final String pathToFile)
@@ -287,48 +430,256 @@ public class AssetFileUtils {
 		log.log("Media file copied.");
 	}
 
-	public static Set<String> findWildcardMatches(FilePath workspace, String relativePath)
+	/**
+	 * Adds a file to an asset manifest the way {@link #copyAssetFile} copies
+	 * it into a staging directory: by name below the target directory, or with
+	 * its contents below a directory of the same name.
+	 */
+	public static void addAssetFile(final ContextLogger log, final AssetManifest manifest,
+			final FilePath workspace, final String relativePath, final String targetDirectory)
 			throws IOException, InterruptedException {
+		final FilePath currentfile = AssetFileUtils.verifyFileExists(workspace, relativePath);
+		final String targetName = targetDirectory + "/" + currentfile.getName();
 
-		final Set<String> results = new HashSet<>();
+		log.log("Adding file: " + currentfile.getName() + " as " + targetName);
 
-		final String baseDir = Paths.get(workspace.toURI()).toString();
+		if (currentfile.isDirectory()) {
+			log.log("Directory detected, adding contents");
+			final int sourceDirLength = currentfile.getRemote().length() + 1;
+			// Same files, with the same default excludes, as FilePath.copyRecursiveTo
+			for (final FilePath file : currentfile.list("**/*")) {
+				manifest.addFile(targetName + "/" + file.getRemote().substring(sourceDirLength).replace('\\', '/'),
+						file.getRemote());
+			}
+		} else {
+			manifest.addFile(targetName, currentfile.getRemote());
+		}
+
+		log.log("Media file added.");
+	}
 
-		LOGGER.info("Searching with basedir: " + baseDir);
+	public static Set<String> findWildcardMatches(FilePath workspace, String relativePath)
+			throws IOException, InterruptedException {
+		LOGGER.info("Searching with basedir: " + workspace.getRemote());
 		LOGGER.info("Finding all files returned by search for: " + relativePath);
-		DirectoryScanner scanner = new DirectoryScanner();
-		scanner.setIncludes(new String[] { relativePath });
-		scanner.setBasedir(baseDir);
-		scanner.setCaseSensitive(true);
-		scanner.scan();
+		final Set<String> results = new HashSet<>(
+				WorkspaceScanner.scan(workspace, Collections.singleton(relativePath)).get(relativePath));
+		LOGGER.info("Search found " + results.size() + " files and directories");
+
+		return results;
+	}
 
-		String[] dirs = scanner.getIncludedDirectories();
-		String[] files = scanner.getIncludedFiles();
+	/**
+	 * Finds the matches of several wildcard paths with a single walk of the
+	 * workspace, reusing the matches found earlier in the same build.
+	 */
+	public static Map<String, Set<String>> findWildcardMatches(final Run<?, ?> build, final FilePath workspace,
+			final Collection<String> relativePaths) throws IOException, InterruptedException {
+		LOGGER.info("Searching with basedir: " + workspace.getRemote());
+		LOGGER.info("Finding all files returned by search for: " + relativePaths);
+		return WorkspaceScanner.scan(build, workspace, relativePaths);
+	}
 
-		for (final String dir : dirs) {
-			LOGGER.info("Search found directory: " + dir);
-			results.add(dir);
+	static String toHex(final byte[] bytes) {
+		final StringBuilder hex = new StringBuilder();
+		for (final byte b : bytes) {
+			hex.append(String.format("%02x", b));
 		}
+		return hex.toString();
+	}
 
-		for (final String file : files) {
-			LOGGER.info("Search found file: " + file);
-			results.add(file);
+	/**
+	 * Creates the digest asset zips are checksummed with while they are
+	 * written.
+	 */
+	public static MessageDigest newAssetDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available", e);
 		}
+	}
 
-		return results;
+	/**
+	 * Records a zip produced by the asset builder in the prebuilt asset index of
+	 * the workspace.
+	 *
+	 * @return the recorded asset
+	 */
+	public static PrebuiltAsset recordPrebuiltAsset(final FilePath workspace, final String assetName,
+			final File assetZip, final MessageDigest digest) throws IOException, InterruptedException {
+		return recordPrebuiltAsset(workspace, assetName, assetZip.getName(), assetZip.length(),
+				toHex(digest.digest()));
+	}
+
+	/**
+	 * Same as {@link #recordPrebuiltAsset(FilePath, String, File, MessageDigest)},
+	 * for a zip written on the machine the workspace is on.
+	 *
+	 * @return the recorded asset
+	 */
+	public static PrebuiltAsset recordPrebuiltAsset(final FilePath workspace, final String assetName,
+			final String zipName, final long size, final String sha256) throws IOException, InterruptedException {
+		final PrebuiltAsset asset = new PrebuiltAsset(assetName.replaceAll(" ", "_"), zipName, size, sha256,
+				System.currentTimeMillis());
+
+		final Map<String, PrebuiltAsset> index = readPrebuiltAssetIndex(workspace);
+		index.put(asset.getName(), asset);
+		writePrebuiltAssetIndex(workspace, index);
+
+		LOGGER.info("Recorded prebuilt asset " + asset.getName() + " as " + asset.getZipName() + " in "
+				+ workspace.getRemote());
+		return asset;
+	}
+
+	/**
+	 * Removes the prebuilt assets recorded as one of the given zips from the
+	 * prebuilt asset index of the workspace.
+	 */
+	static void forgetPrebuiltAssets(final FilePath workspace, final Collection<String> zipNames)
+			throws IOException, InterruptedException {
+		final Map<String, PrebuiltAsset> index = readPrebuiltAssetIndex(workspace);
+		boolean changed = false;
+		for (final Iterator<PrebuiltAsset> it = index.values().iterator(); it.hasNext();) {
+			if (zipNames.contains(it.next().getZipName())) {
+				it.remove();
+				changed = true;
+			}
+		}
+		if (changed) {
+			writePrebuiltAssetIndex(workspace, index);
+		}
+	}
+
+	private static void writePrebuiltAssetIndex(final FilePath workspace, final Map<String, PrebuiltAsset> index)
+			throws IOException, InterruptedException {
+		workspace.act(new WriteIndexCallable(new Gson().toJson(index)));
+	}
+
+	/**
+	 * Replaces the prebuilt asset index on the machine the workspace is on, so
+	 * readers never see a partly written index.
+	 */
+	private static final class WriteIndexCallable extends MasterToSlaveFileCallable<Void> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final String json;
+
+		WriteIndexCallable(final String json) {
+			this.json = json;
+		}
+
+		@Override
+		public Void invoke(final File workspaceDir, final VirtualChannel channel) throws IOException {
+			final Path indexPath = workspaceDir.toPath().resolve(prebuiltAssetIndexName);
+			final Path tempPath = indexPath.resolveSibling(prebuiltAssetIndexName + ".tmp");
+			Files.write(tempPath, this.json.getBytes(StandardCharsets.UTF_8));
+			Files.move(tempPath, indexPath, StandardCopyOption.REPLACE_EXISTING);
+			return null;
+		}
+	}
+
+	static Map<String, PrebuiltAsset> readPrebuiltAssetIndex(final FilePath workspace)
+			throws IOException, InterruptedException {
+		final FilePath indexPath = new FilePath(workspace, prebuiltAssetIndexName);
+		if (!indexPath.exists()) {
+			return new HashMap<>();
+		}
+
+		try (final Reader reader = new InputStreamReader(indexPath.read(), StandardCharsets.UTF_8)) {
+			final Map<String, PrebuiltAsset> index = new Gson().fromJson(reader,
+					new TypeToken<HashMap<String, PrebuiltAsset>>() {
+					}.getType());
+			return (index != null) ? index : new HashMap<String, PrebuiltAsset>();
+		} catch (JsonParseException e) {
+			LOGGER.warning("Ignoring unreadable prebuilt asset index " + indexPath + ": " + e.getMessage());
+			return new HashMap<>();
+		}
+	}
+
+	/**
+	 * Resolves a prebuilt asset by name: from the zips this build recorded,
+	 * then from the prebuilt asset index of the workspace, and only if neither
+	 * knows a zip that still exists with its recorded size, by scanning the
+	 * workspace with {@link #findPrebuiltAsset(FilePath, String)}.
+	 */
+	public static FilePath resolvePrebuiltAsset(final Run<?, ?> build, final FilePath workspace,
+			final String prebuiltAssetName) throws IOException, InterruptedException, ParseException {
+		final String cleanedName = prebuiltAssetName.replaceAll(" ", "_");
+
+		PrebuiltAsset asset = Cons3rtAssetAction.find(build, cleanedName);
+		if (asset == null) {
+			asset = readPrebuiltAssetIndex(workspace).get(cleanedName);
+		}
+
+		if (asset != null) {
+			final FilePath zip = new FilePath(workspace, asset.getZipName());
+			if (zip.exists() && zip.length() == asset.getSize()) {
+				LOGGER.log(Level.INFO, "Prebuilt asset " + cleanedName + " recorded as " + asset.getZipName());
+				return zip;
+			}
+			LOGGER.warning("Recorded prebuilt asset " + asset.getZipName()
+					+ " is missing or has changed, searching the workspace");
+		}
+
+		return findPrebuiltAsset(workspace, prebuiltAssetName);
+	}
+
+	/**
+	 * Finds the zip recorded for an asset in the prebuilt asset index of the
+	 * workspace, to rebuild the asset incrementally from.
+	 *
+	 * @return the zip, or null if none is recorded or it is missing or has
+	 *         changed
+	 */
+	public static FilePath findPreviousAssetZip(final FilePath workspace, final String assetName)
+			throws IOException, InterruptedException {
+		final PrebuiltAsset asset = readPrebuiltAssetIndex(workspace).get(assetName.replaceAll(" ", "_"));
+		if (asset == null) {
+			return null;
+		}
+
+		final FilePath zip = new FilePath(workspace, asset.getZipName());
+		if (zip.exists() && zip.length() == asset.getSize()) {
+			return zip;
+		}
+		LOGGER.warning("Recorded asset zip " + asset.getZipName() + " is missing or has changed, not reusing it");
+		return null;
+	}
+
+	/**
+	 * Adds the compressed entry cache of a node to a compression policy, so
+	 * large files already deflated for another zip on the node are copied
+	 * instead of deflated again.
+	 *
+	 * @param policy    the compression policy
+	 * @param node      the node the zip is written on
+	 * @param megabytes the size the cache may use, null or 0 to not use it
+	 * @return the policy
+	 */
+	public static CompressionPolicy withEntryCache(final CompressionPolicy policy, final Node node,
+			final Integer megabytes) {
+		if (megabytes == null || megabytes <= 0 || node == null || node.getRootPath() == null) {
+			return policy;
+		}
+		final FilePath cacheDir = new FilePath(node.getRootPath(), CompressedEntryCache.cacheDirName);
+		return policy.withEntryCache(cacheDir.getRemote(), megabytes * 1024L * 1024L);
 	}
 
 	public static FilePath findPrebuiltAsset(FilePath workspace, String prebuiltAssetName)
 			throws IOException, InterruptedException, ParseException {
 		final String cleanedName = prebuiltAssetName.replaceAll(" ", "_");
 
-		final File workspaceDir = new File(workspace.toURI());
-
-		final String[] fileList = workspaceDir.list(prebuiltAssetFilter);
+		final List<FilePath> fileList = workspace.list();
 
-		final List<String> prebuiltAssets;
+		final List<String> prebuiltAssets = new ArrayList<>();
 		if (fileList != null) {
-			prebuiltAssets = Arrays.asList(fileList);
+			for (final FilePath file : fileList) {
+				if (prebuiltAssetFilter.accept(null, file.getName())) {
+					prebuiltAssets.add(file.getName());
+				}
+			}
 		} else {
 			final String message = "Could not find " + cleanedName + " in workspace.";
 			LOGGER.log(Level.WARNING, message);
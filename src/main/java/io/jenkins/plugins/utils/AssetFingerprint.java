@@ -0,0 +1,133 @@
+package io.jenkins.plugins.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandles;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.jenkins.plugins.utils.ZipCentralDirectoryIndex.IndexedEntry;
+
+/**
+ * A canonical fingerprint of the content of an asset: a SHA-256 digest over
+ * the name, size and CRC-32 of every file, in name order. Timestamps, entry
+ * order, compression and directory entries do not change it, so a zip and the
+ * directory it was made from have the same fingerprint, and rebuilding an
+ * unchanged asset gives the same fingerprint again.
+ *
+ * The top level asset.properties is fingerprinted without its {@code #}
+ * comment lines, as the asset builder writes its creation time in one.
+ */
+public class AssetFingerprint {
+
+    /** The Constant LOGGER. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    /** The file fingerprinted without its comment lines. */
+    static final String assetPropertiesName = "asset.properties";
+
+    /**
+     * Private ktor.
+     */
+    private AssetFingerprint() {
+
+    }
+
+    /**
+     * Fingerprints a zip from its central directory, without reading the
+     * entry contents.
+     *
+     * @param zipFilePath the zip file path
+     * @return the fingerprint
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public static String ofZip(final Path zipFilePath) throws IOException {
+        final ZipCentralDirectoryIndex index = Cons3rtCompressUtils.INSTANCE.getZipIndex(zipFilePath);
+        final SortedMap<String, long[]> files = new TreeMap<>();
+        for (final String name : index.getNames()) {
+            final IndexedEntry entry = index.getEntry(name);
+            if (assetPropertiesName.equals(name)) {
+                files.put(name, withoutComments(index.getEntryAsString(name)));
+            } else if (!entry.isDirectory()) {
+                files.put(name, new long[] { entry.getSize(), entry.getCrc() });
+            }
+        }
+        return digest(files);
+    }
+
+    /**
+     * Fingerprints a directory the way it would be zipped. Every file is read
+     * once to compute its CRC-32.
+     *
+     * @param dirPath the directory path
+     * @return the fingerprint
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public static String ofDirectory(final Path dirPath) throws IOException {
+        final long start = System.nanoTime();
+        final SortedMap<String, long[]> files = new TreeMap<>();
+        final byte[] buffer = new byte[64 * 1024];
+        Files.walkFileTree(dirPath, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
+                final String name = dirPath.relativize(file).toString().replace('\\', '/');
+                if (assetPropertiesName.equals(name)) {
+                    files.put(name, withoutComments(
+                            new String(Files.readAllBytes(file), ApacheCompressUtils.CONS3RT_CHARSET)));
+                    return FileVisitResult.CONTINUE;
+                }
+                final CRC32 crc = new CRC32();
+                long size = 0;
+                try (final InputStream in = Files.newInputStream(file)) {
+                    for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+                        crc.update(buffer, 0, read);
+                        size += read;
+                    }
+                }
+                files.put(name, new long[] { size, crc.getValue() });
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        LOGGER.debug("ofDirectory: read {} files of {} in {} ms", files.size(), dirPath,
+                (System.nanoTime() - start) / 1000000);
+        return digest(files);
+    }
+
+    /**
+     * Gets the size and CRC-32 of a properties file without its comment lines
+     * and with its line ends made the same.
+     */
+    private static long[] withoutComments(final String properties) {
+        final StringBuilder kept = new StringBuilder();
+        for (final String line : properties.split("\r?\n")) {
+            if (!line.trim().startsWith("#")) {
+                kept.append(line).append('\n');
+            }
+        }
+        final byte[] bytes = kept.toString().getBytes(ApacheCompressUtils.CONS3RT_CHARSET);
+        final CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return new long[] { bytes.length, crc.getValue() };
+    }
+
+    private static String digest(final SortedMap<String, long[]> files) {
+        final MessageDigest digest = AssetFileUtils.newAssetDigest();
+        for (final Map.Entry<String, long[]> file : files.entrySet()) {
+            digest.update((file.getKey() + '\0' + file.getValue()[0] + '\0' + file.getValue()[1] + '\n')
+                    .getBytes(StandardCharsets.UTF_8));
+        }
+        return AssetFileUtils.toHex(digest.digest());
+    }
+}
@@ -0,0 +1,84 @@
+package io.jenkins.plugins.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Remembers the {@link AssetFingerprint} of the last asset content uploaded
+ * successfully to each asset id of each CONS3RT site, so an update with
+ * unchanged content can be skipped. Kept in a properties file on the
+ * controller, shared by every job that updates the same asset.
+ */
+public class AssetFingerprintStore {
+
+	public static final Logger LOGGER = Logger.getLogger(AssetFingerprintStore.class.getName());
+
+	public static final String fileName = "cons3rt-asset-fingerprints.properties";
+
+	/** Stores of the same file may be used by several builds at once. */
+	private static final Object lock = new Object();
+
+	private final File file;
+
+	public AssetFingerprintStore(final File file) {
+		this.file = file;
+	}
+
+	/**
+	 * Gets the fingerprint of the content last uploaded to an asset.
+	 *
+	 * @param siteUrl the site url
+	 * @param assetId the asset id
+	 * @return the fingerprint, or null if none was recorded
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public String get(final String siteUrl, final Integer assetId) throws IOException {
+		synchronized (lock) {
+			return this.load().getProperty(key(siteUrl, assetId));
+		}
+	}
+
+	/**
+	 * Records the fingerprint of the content just uploaded to an asset.
+	 *
+	 * @param siteUrl     the site url
+	 * @param assetId     the asset id
+	 * @param fingerprint the fingerprint
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public void put(final String siteUrl, final Integer assetId, final String fingerprint) throws IOException {
+		synchronized (lock) {
+			final Properties fingerprints = this.load();
+			fingerprints.setProperty(key(siteUrl, assetId), fingerprint);
+
+			final File temp = new File(this.file.getPath() + ".tmp");
+			try (final OutputStream out = Files.newOutputStream(temp.toPath())) {
+				fingerprints.store(out, "Content fingerprints of the last asset uploads, by site url and asset id");
+			}
+			Files.move(temp.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		LOGGER.log(Level.INFO, "Recorded fingerprint " + fingerprint + " for asset " + assetId + " of " + siteUrl);
+	}
+
+	private Properties load() throws IOException {
+		final Properties fingerprints = new Properties();
+		if (this.file.exists()) {
+			try (final InputStream in = Files.newInputStream(this.file.toPath())) {
+				fingerprints.load(in);
+			}
+		}
+		return fingerprints;
+	}
+
+	private static String key(final String siteUrl, final Integer assetId) {
+		final String url = siteUrl.endsWith("/") ? siteUrl.substring(0, siteUrl.length() - 1) : siteUrl;
+		return url + "#" + assetId;
+	}
+}
@@ -0,0 +1,173 @@
+package io.jenkins.plugins.utils;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The contents of an asset zip as a list of archive entry names and where
+ * their bytes come from, so an asset can be zipped straight from its source
+ * files instead of from a staged copy of them.
+ *
+ * Entries are zipped in the order they were first added. Adding a name again
+ * replaces its source, the way copying over a staged file would. Directories
+ * only get an entry of their own if nothing is added below them.
+ *
+ * A manifest is serializable, so it can be listed on the controller and
+ * zipped on the agent the files are on. Sources are kept as paths on that
+ * agent.
+ */
+public class AssetManifest implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+
+    /**
+     * A file, generated content or directory of the asset.
+     */
+    public static final class Entry implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String name;
+
+        private final String source;
+
+        private final byte[] content;
+
+        private Entry(final String name, final String source, final byte[] content) {
+            this.name = name;
+            this.source = source;
+            this.content = content;
+        }
+
+        /**
+         * Gets the archive entry name. Directory names end with a slash.
+         *
+         * @return the name
+         */
+        public String getName() {
+            return this.name;
+        }
+
+        /**
+         * Gets the file the entry is read from.
+         *
+         * @return the source, or null for generated content and directories
+         */
+        public Path getSource() {
+            return (this.source != null) ? Paths.get(this.source) : null;
+        }
+
+        /**
+         * Gets the generated content of the entry.
+         *
+         * @return the content, or null for files and directories
+         */
+        public byte[] getContent() {
+            return this.content;
+        }
+
+        public boolean isDirectory() {
+            return this.name.endsWith("/");
+        }
+    }
+
+    /**
+     * Adds a file.
+     *
+     * @param entryName the archive entry name
+     * @param source    the file to read
+     */
+    public void addFile(final String entryName, final Path source) {
+        this.addFile(entryName, source.toString());
+    }
+
+    /**
+     * Adds a file by its path on the machine the zip is written on.
+     *
+     * @param entryName  the archive entry name
+     * @param sourcePath the path of the file to read
+     */
+    public void addFile(final String entryName, final String sourcePath) {
+        this.entries.put(entryName, new Entry(entryName, sourcePath, null));
+    }
+
+    /**
+     * Adds content generated in memory.
+     *
+     * @param entryName the archive entry name
+     * @param content   the content
+     */
+    public void addContent(final String entryName, final byte[] content) {
+        this.entries.put(entryName, new Entry(entryName, null, content.clone()));
+    }
+
+    /**
+     * Adds a directory, which is kept in the zip even if it stays empty.
+     *
+     * @param entryName the archive entry name, with or without a trailing slash
+     */
+    public void addDirectory(final String entryName) {
+        final String name = entryName.endsWith("/") ? entryName : entryName.concat("/");
+        this.entries.put(name, new Entry(name, null, null));
+    }
+
+    /**
+     * Gets the entries to zip, leaving out directories that are implied by the
+     * names of other entries.
+     *
+     * @return the entries
+     */
+    public List<Entry> getEntries() {
+        final Set<String> parents = new HashSet<>();
+        for (final String name : this.entries.keySet()) {
+            for (int slash = name.lastIndexOf('/', name.length() - 2); slash > 0; slash = name.lastIndexOf('/',
+                    slash - 1)) {
+                if (!parents.add(name.substring(0, slash + 1))) {
+                    break;
+                }
+            }
+        }
+
+        final List<Entry> result = new ArrayList<>(this.entries.size());
+        for (final Entry entry : this.entries.values()) {
+            if (!entry.isDirectory() || !parents.contains(entry.name)) {
+                result.add(entry);
+            }
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * Sums the size of the files and generated content of the asset.
+     *
+     * @return the size in bytes
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public long getSourceBytes() throws IOException {
+        long total = 0;
+        for (final Entry entry : this.entries.values()) {
+            if (entry.source != null) {
+                total += Files.size(entry.getSource());
+            } else if (entry.content != null) {
+                total += entry.content.length;
+            }
+        }
+        return total;
+    }
+
+    public int size() {
+        return this.entries.size();
+    }
+}
@@ -0,0 +1,167 @@
+package io.jenkins.plugins.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.security.MessageDigest;
+import java.util.logging.Level;
+
+import hudson.FilePath;
+import hudson.model.TaskListener;
+import hudson.remoting.VirtualChannel;
+import io.jenkins.plugins.datatype.TransferStatistics;
+import jenkins.MasterToSlaveFileCallable;
+
+/**
+ * Creates an asset zip in a workspace on the machine the workspace is on, so
+ * the asset bytes never travel through the controller. Either an asset
+ * directory or zip found at a path is used, or the entries of an
+ * {@link AssetManifest} are zipped. Progress is logged to the build log, and
+ * only the name, size and checksum of the zip come back.
+ */
+public class AssetZipCallable extends MasterToSlaveFileCallable<AssetZipCallable.Result> {
+
+	private static final long serialVersionUID = 1L;
+
+	private final TaskListener listener;
+
+	private final String logName;
+
+	private final String providedPath;
+
+	private final String zipName;
+
+	private final AssetManifest manifest;
+
+	private final CompressionPolicy policy;
+
+	/**
+	 * The zip that was created or found.
+	 */
+	public static final class Result implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private final String zipPath;
+
+		private final String zipName;
+
+		private final long size;
+
+		private final String sha256;
+
+		private final TransferStatistics statistics;
+
+		Result(final File zip, final String sha256, final TransferStatistics statistics) {
+			this.zipPath = zip.getAbsolutePath();
+			this.zipName = zip.getName();
+			this.size = zip.length();
+			this.sha256 = sha256;
+			this.statistics = statistics;
+		}
+
+		/**
+		 * Gets the path of the zip on the machine the workspace is on.
+		 *
+		 * @return the path
+		 */
+		public String getZipPath() {
+			return this.zipPath;
+		}
+
+		public String getZipName() {
+			return this.zipName;
+		}
+
+		public long getSize() {
+			return this.size;
+		}
+
+		/**
+		 * Gets the SHA-256 checksum of a created zip.
+		 *
+		 * @return the checksum, or null if an existing zip was used as is
+		 */
+		public String getSha256() {
+			return this.sha256;
+		}
+
+		/**
+		 * Gets the zip statistics.
+		 *
+		 * @return the statistics, or null if an existing zip was used as is
+		 */
+		public TransferStatistics getStatistics() {
+			return this.statistics;
+		}
+
+		public boolean isCreated() {
+			return this.statistics != null;
+		}
+	}
+
+	private AssetZipCallable(final TaskListener listener, final String logName, final String providedPath,
+			final String zipName, final AssetManifest manifest, final CompressionPolicy policy) {
+		this.listener = listener;
+		this.logName = logName;
+		this.providedPath = providedPath;
+		this.zipName = zipName;
+		this.manifest = manifest;
+		this.policy = policy;
+	}
+
+	/**
+	 * Zips the asset directory at a path into the workspace, or uses the zip
+	 * at that path as is. See
+	 * {@link AssetFileUtils#getAssetZipFromPath(FilePath, FilePath)}.
+	 *
+	 * @param listener     the build listener
+	 * @param logName      the name the build log lines are prefixed with
+	 * @param providedPath the asset directory or zip
+	 * @param policy       the compression policy
+	 * @return the callable, to run on the workspace
+	 */
+	public static AssetZipCallable forPath(final TaskListener listener, final String logName,
+			final FilePath providedPath, final CompressionPolicy policy) {
+		return new AssetZipCallable(listener, logName, providedPath.getRemote(), null, null, policy);
+	}
+
+	/**
+	 * Zips the entries of a manifest into the workspace.
+	 *
+	 * @param listener the build listener
+	 * @param logName  the name the build log lines are prefixed with
+	 * @param zipName  the name of the zip
+	 * @param manifest the manifest, listing files by their path on the machine
+	 *                 the workspace is on
+	 * @param policy   the compression policy
+	 * @return the callable, to run on the workspace
+	 */
+	public static AssetZipCallable forManifest(final TaskListener listener, final String logName,
+			final String zipName, final AssetManifest manifest, final CompressionPolicy policy) {
+		return new AssetZipCallable(listener, logName, null, zipName, manifest, policy);
+	}
+
+	@Override
+	public Result invoke(final File workspaceDir, final VirtualChannel channel)
+			throws IOException, InterruptedException {
+		final FilePath workspace = new FilePath(workspaceDir);
+		final ContextLogger log = new ContextLogger(this.listener.getLogger(), this.logName, Level.INFO);
+
+		if (this.manifest == null && !new File(this.providedPath).isDirectory()) {
+			return new Result(AssetFileUtils.getAssetZipFromPath(workspace, new FilePath(new File(this.providedPath)),
+					null, this.policy), null, null);
+		}
+
+		final TransferProgress progress = new TransferProgress(log, "Zip");
+		final MessageDigest digest = AssetFileUtils.newAssetDigest();
+		final File zip;
+		if (this.manifest != null) {
+			zip = AssetFileUtils.writeAssetZip(workspace, this.zipName, this.manifest, progress, this.policy, digest);
+		} else {
+			zip = AssetFileUtils.getAssetZipFromPath(workspace, new FilePath(new File(this.providedPath)), progress,
+					this.policy, digest);
+		}
+		return new Result(zip, AssetFileUtils.toHex(digest.digest()), progress.finish());
+	}
+}
@@ -0,0 +1,370 @@
+package io.jenkins.plugins.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import hudson.FilePath;
+import hudson.model.Run;
+import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
+
+/**
+ * Keeps the timestamped asset zips the {@link io.jenkins.plugins.AssetBuilder}
+ * leaves in the workspace root from filling the disk.
+ *
+ * A build step registers its policy with {@link #request}. Once the build has
+ * completed successfully, {@link #apply(Run, ContextLogger)} works out which
+ * zips go, reports the bytes reclaimed and the remaining usage in the build
+ * log, and deletes the files on a background thread so the build does not
+ * wait for the file system. The zip the build produced is never removed. The
+ * workspace is listed on the machine it is on.
+ */
+public class AssetZipRetention {
+
+	public static final Logger LOGGER = Logger.getLogger(AssetZipRetention.class.getName());
+
+	/** The name of a zip produced by the asset builder, capturing the asset name. */
+	private static final Pattern ASSET_ZIP_NAME = Pattern.compile(Pattern.quote(AssetFileUtils.cons3rtAssetPrefix)
+			+ "-(.+)-\\d{4}\\.\\d{2}\\.\\d{2}\\.\\d{2}\\.\\d{2}\\.\\d{2}\\.zip");
+
+	private static final long MEGABYTE = 1024L * 1024L;
+
+	/** Policies registered by the steps of running builds, dropped with the build. */
+	private static final Map<Run<?, ?>, List<Policy>> requests = new WeakHashMap<>();
+
+	private static final ExecutorService deleter = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(final Runnable r) {
+			final Thread thread = new Thread(r, "cons3rt-asset-retention");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	/**
+	 * A retention policy for the zips of one asset.
+	 */
+	private static final class Policy {
+
+		private final FilePath workspace;
+
+		private final String assetName;
+
+		private final String keepZipName;
+
+		private final int keepPerAsset;
+
+		private final long maxBytes;
+
+		Policy(final FilePath workspace, final String assetName, final String keepZipName, final int keepPerAsset,
+				final long maxBytes) {
+			this.workspace = workspace;
+			this.assetName = assetName;
+			this.keepZipName = keepZipName;
+			this.keepPerAsset = keepPerAsset;
+			this.maxBytes = maxBytes;
+		}
+	}
+
+	/**
+	 * The zips a policy removes and what is left afterwards.
+	 */
+	public static final class Plan implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private final List<String> evicted = new ArrayList<>();
+
+		private long reclaimedBytes;
+
+		private long usedBytes;
+
+		private int remaining;
+
+		/**
+		 * Gets the names of the zips to remove, oldest last for the count limit
+		 * and oldest first for the size limit.
+		 *
+		 * @return the zip names
+		 */
+		public List<String> getEvicted() {
+			return Collections.unmodifiableList(this.evicted);
+		}
+
+		public long getReclaimedBytes() {
+			return this.reclaimedBytes;
+		}
+
+		/**
+		 * Gets the size of the asset zips left in the workspace root.
+		 *
+		 * @return the size in bytes
+		 */
+		public long getUsedBytes() {
+			return this.usedBytes;
+		}
+
+		public int getRemaining() {
+			return this.remaining;
+		}
+	}
+
+	/**
+	 * An asset zip in the workspace root.
+	 */
+	private static final class AssetZip {
+
+		private final Path path;
+
+		private final String assetName;
+
+		private final long size;
+
+		private final long lastModified;
+
+		AssetZip(final Path path, final String assetName, final BasicFileAttributes attributes) {
+			this.path = path;
+			this.assetName = assetName;
+			this.size = attributes.size();
+			this.lastModified = attributes.lastModifiedTime().toMillis();
+		}
+	}
+
+	/** Newest first; zips written in the same millisecond by their timestamped name. */
+	private static final Comparator<AssetZip> NEWEST_FIRST = new Comparator<AssetZip>() {
+		@Override
+		public int compare(final AssetZip a, final AssetZip b) {
+			final int byTime = Long.compare(b.lastModified, a.lastModified);
+			return byTime != 0 ? byTime : b.path.getFileName().toString().compareTo(a.path.getFileName().toString());
+		}
+	};
+
+	/**
+	 * Plans the retention of a workspace on the machine it is on.
+	 */
+	private static final class PlanCallable extends MasterToSlaveFileCallable<Plan> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final String assetName;
+
+		private final String keepZipName;
+
+		private final int keepPerAsset;
+
+		private final long maxBytes;
+
+		PlanCallable(final Policy policy) {
+			this.assetName = policy.assetName;
+			this.keepZipName = policy.keepZipName;
+			this.keepPerAsset = policy.keepPerAsset;
+			this.maxBytes = policy.maxBytes;
+		}
+
+		@Override
+		public Plan invoke(final File workspaceDir, final VirtualChannel channel) throws IOException {
+			return plan(workspaceDir.toPath(), this.assetName, this.keepZipName, this.keepPerAsset, this.maxBytes);
+		}
+	}
+
+	/**
+	 * Private ktor.
+	 */
+	private AssetZipRetention() {
+
+	}
+
+	/**
+	 * Registers a retention policy to apply once the build completed
+	 * successfully. Nothing is registered if neither limit is set.
+	 *
+	 * @param build        the build
+	 * @param workspace    the workspace the asset zip was written to
+	 * @param assetName    the asset name
+	 * @param keepZipName  the name of the zip the build produced
+	 * @param keepPerAsset the number of zips to keep for the asset, null or less
+	 *                     than one for no limit
+	 * @param maxMegabytes the size all asset zips of the workspace may use, null
+	 *                     or less than one for no limit
+	 */
+	public static void request(final Run<?, ?> build, final FilePath workspace, final String assetName,
+			final String keepZipName, final Integer keepPerAsset, final Integer maxMegabytes) {
+		final int keep = (keepPerAsset != null && keepPerAsset > 0) ? keepPerAsset : 0;
+		final long maxBytes = (maxMegabytes != null && maxMegabytes > 0) ? maxMegabytes * MEGABYTE : 0;
+		if (keep == 0 && maxBytes == 0) {
+			return;
+		}
+
+		synchronized (requests) {
+			List<Policy> policies = requests.get(build);
+			if (policies == null) {
+				policies = new ArrayList<>();
+				requests.put(build, policies);
+			}
+			policies.add(new Policy(workspace, assetName.replaceAll(" ", "_"), keepZipName, keep, maxBytes));
+		}
+	}
+
+	/**
+	 * Forgets the policies of a build that did not complete successfully.
+	 *
+	 * @param build the build
+	 */
+	public static void discard(final Run<?, ?> build) {
+		synchronized (requests) {
+			requests.remove(build);
+		}
+	}
+
+	/**
+	 * Applies the policies registered by a build: removes the evicted zips from
+	 * the prebuilt asset index, reports them, and deletes them in the
+	 * background.
+	 *
+	 * @param build the build
+	 * @param log   the build log
+	 */
+	public static void apply(final Run<?, ?> build, final ContextLogger log) {
+		final List<Policy> policies;
+		synchronized (requests) {
+			policies = requests.remove(build);
+		}
+		if (policies == null) {
+			return;
+		}
+
+		for (final Policy policy : policies) {
+			try {
+				final Plan plan = policy.workspace.act(new PlanCallable(policy));
+
+				if (plan.evicted.isEmpty()) {
+					log.log("Asset zips in the workspace use " + TransferProgress.describe(plan.usedBytes) + " in "
+							+ plan.remaining + " file(s), nothing to remove.");
+					continue;
+				}
+
+				final Set<String> zipNames = new HashSet<>(plan.evicted);
+				AssetFileUtils.forgetPrebuiltAssets(policy.workspace, zipNames);
+
+				log.log("Removing " + plan.evicted.size() + " old asset zip(s) " + zipNames + ", reclaiming "
+						+ TransferProgress.describe(plan.reclaimedBytes) + ". Asset zips in the workspace now use "
+						+ TransferProgress.describe(plan.usedBytes) + " in " + plan.remaining + " file(s).");
+				evict(policy.workspace, plan);
+			} catch (IOException | InterruptedException e) {
+				log.log("Could not apply the asset zip retention policy: " + e.getMessage(), Level.WARNING);
+			}
+		}
+	}
+
+	/**
+	 * Works out which asset zips of a workspace a policy removes. The newest
+	 * zips of the asset are kept up to the count limit, then the oldest zips of
+	 * any asset are removed until the rest fits the size limit.
+	 *
+	 * @param workspaceDir the workspace dir
+	 * @param assetName    the asset name, with spaces replaced by underscores
+	 * @param keepZipName  the name of a zip that is never removed, or null
+	 * @param keepPerAsset the number of zips to keep for the asset, 0 for no
+	 *                     limit
+	 * @param maxBytes     the size all asset zips may use, 0 for no limit
+	 * @return the plan
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public static Plan plan(final Path workspaceDir, final String assetName, final String keepZipName,
+			final int keepPerAsset, final long maxBytes) throws IOException {
+		final List<AssetZip> zips = new ArrayList<>();
+		try (final DirectoryStream<Path> stream = Files.newDirectoryStream(workspaceDir,
+				AssetFileUtils.cons3rtAssetPrefix + "-*.zip")) {
+			for (final Path path : stream) {
+				final Matcher matcher = ASSET_ZIP_NAME.matcher(path.getFileName().toString());
+				final BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+				if (matcher.matches() && attributes.isRegularFile()) {
+					zips.add(new AssetZip(path, matcher.group(1), attributes));
+				}
+			}
+		}
+		Collections.sort(zips, NEWEST_FIRST);
+
+		final Plan plan = new Plan();
+		final List<AssetZip> kept = new ArrayList<>();
+		int keptOfAsset = 0;
+		for (final AssetZip zip : zips) {
+			final boolean protectedZip = zip.path.getFileName().toString().equals(keepZipName);
+			if (!protectedZip && keepPerAsset > 0 && zip.assetName.equals(assetName) && keptOfAsset >= keepPerAsset) {
+				plan.evicted.add(zip.path.getFileName().toString());
+				plan.reclaimedBytes += zip.size;
+				continue;
+			}
+			if (zip.assetName.equals(assetName)) {
+				++keptOfAsset;
+			}
+			kept.add(zip);
+			plan.usedBytes += zip.size;
+		}
+
+		if (maxBytes > 0) {
+			for (int i = kept.size() - 1; i >= 0 && plan.usedBytes > maxBytes; --i) {
+				final AssetZip zip = kept.get(i);
+				if (!zip.path.getFileName().toString().equals(keepZipName)) {
+					kept.remove(i);
+					plan.evicted.add(zip.path.getFileName().toString());
+					plan.reclaimedBytes += zip.size;
+					plan.usedBytes -= zip.size;
+				}
+			}
+		}
+		plan.remaining = kept.size();
+		return plan;
+	}
+
+	/**
+	 * Deletes the zips of a plan on the background thread.
+	 *
+	 * @param workspace the workspace the plan was made for
+	 * @param plan      the plan
+	 * @return the future of the deletion
+	 */
+	public static Future<?> evict(final FilePath workspace, final Plan plan) {
+		final List<String> evicted = new ArrayList<>(plan.evicted);
+		return deleter.submit(new Runnable() {
+			@Override
+			public void run() {
+				for (final String zipName : evicted) {
+					final FilePath zip = new FilePath(workspace, zipName);
+					try {
+						zip.delete();
+						LOGGER.log(Level.INFO, "Removed old asset zip " + zip.getRemote());
+					} catch (IOException e) {
+						LOGGER.log(Level.WARNING,
+								"Could not remove old asset zip " + zip.getRemote() + ": " + e.getMessage());
+					} catch (InterruptedException e) {
+						LOGGER.log(Level.WARNING, "Interrupted while removing old asset zips");
+						Thread.currentThread().interrupt();
+						return;
+					}
+				}
+			}
+		});
+	}
+}
@@ -0,0 +1,175 @@
+package io.jenkins.plugins.utils;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.invoke.MethodHandles;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Checks the structure of an asset before it is uploaded, so that malformed
+ * assets fail in milliseconds instead of after the whole zip was sent.
+ *
+ * The checks follow the layout the {@link io.jenkins.plugins.AssetBuilder}
+ * produces: exactly one asset.properties at the top level naming the asset, an
+ * installScript inside scripts/, documentationFile and licenseFile at the top
+ * level, and no entry that would be extracted outside the asset.
+ */
+public class AssetZipValidator {
+
+    /** The Constant LOGGER. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    /** The name of the asset properties file. */
+    static final String ASSET_PROPERTIES = "asset.properties";
+
+    /** The directory install scripts are kept in. */
+    static final String SCRIPTS_DIRECTORY = "scripts/";
+
+    private final Set<String> files = new HashSet<>();
+
+    private final List<String> problems = new ArrayList<>();
+
+    private String propertiesEntry;
+
+    /**
+     * Private ktor.
+     */
+    private AssetZipValidator() {
+
+    }
+
+    /**
+     * Validates an asset zip from its central directory.
+     *
+     * @param zipFilePath the zip file path
+     * @return the problems found, empty if the asset is well formed
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public static List<String> validateZip(final Path zipFilePath) throws IOException {
+        final long start = System.nanoTime();
+        final ZipCentralDirectoryIndex index = Cons3rtCompressUtils.INSTANCE.getZipIndex(zipFilePath);
+
+        final AssetZipValidator validator = new AssetZipValidator();
+        validator.checkEntries(index.getNames());
+        if (validator.propertiesEntry != null) {
+            validator.checkProperties(index.getEntryAsString(validator.propertiesEntry));
+        }
+
+        LOGGER.debug("validateZip: checked {} entries of {} in {} ms, {} problems", index.getNames().size(),
+                zipFilePath, (System.nanoTime() - start) / 1000000, validator.problems.size());
+        return validator.problems;
+    }
+
+    /**
+     * Validates an asset directory that is about to be zipped.
+     *
+     * @param assetDirPath the asset dir path
+     * @return the problems found, empty if the asset is well formed
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public static List<String> validateDirectory(final Path assetDirPath) throws IOException {
+        final List<String> names = new ArrayList<>();
+        Files.walkFileTree(assetDirPath, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
+                names.add(assetDirPath.relativize(file).toString().replace('\\', '/'));
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        final AssetZipValidator validator = new AssetZipValidator();
+        validator.checkEntries(names);
+        if (validator.propertiesEntry != null) {
+            validator.checkProperties(new String(Files.readAllBytes(assetDirPath.resolve(validator.propertiesEntry)),
+                    ApacheCompressUtils.CONS3RT_CHARSET));
+        }
+        return validator.problems;
+    }
+
+    /**
+     * Looks for asset.properties, duplicate names and unsafe paths in one pass
+     * over the entry names.
+     */
+    private void checkEntries(final Collection<String> names) {
+        final Set<String> duplicates = new HashSet<>();
+        final List<String> nestedProperties = new ArrayList<>();
+        int topLevelProperties = 0;
+
+        for (final String name : names) {
+            if (!name.endsWith("/") && !this.files.add(name) && duplicates.add(name)) {
+                this.problems.add("The entry " + name + " appears more than once");
+            }
+            if (name.startsWith("/") || name.equals("..") || name.startsWith("../") || name.contains("/../")
+                    || name.endsWith("/..")) {
+                this.problems.add("The entry " + name + " would be extracted outside of the asset");
+            }
+
+            final int slash = name.lastIndexOf('/');
+            if (name.substring(slash + 1).equalsIgnoreCase(ASSET_PROPERTIES)) {
+                if (slash < 0) {
+                    ++topLevelProperties;
+                    this.propertiesEntry = name;
+                } else {
+                    nestedProperties.add(name);
+                }
+            }
+        }
+
+        if (topLevelProperties > 1) {
+            this.problems.add("Found " + topLevelProperties + " asset.properties files at the top level, expected one");
+        } else if (topLevelProperties == 0) {
+            this.problems.add(nestedProperties.isEmpty() ? "Could not find an asset.properties file at the top level"
+                    : "Could not find an asset.properties file at the top level, found " + nestedProperties
+                            + " instead");
+        }
+    }
+
+    /**
+     * Checks the asset properties and the files they reference.
+     */
+    private void checkProperties(final String propertiesText) {
+        final Properties properties = new Properties();
+        try {
+            properties.load(new StringReader(propertiesText));
+        } catch (IOException | IllegalArgumentException e) {
+            this.problems.add("Could not parse " + this.propertiesEntry + ": " + e.getMessage());
+            return;
+        }
+
+        if (isBlank(properties.getProperty("name"))) {
+            this.problems.add(this.propertiesEntry + " does not name the asset");
+        }
+
+        final String installScript = properties.getProperty("installScript");
+        if (installScript != null && !this.files.contains(SCRIPTS_DIRECTORY + installScript.trim())) {
+            this.problems.add("The installScript " + installScript.trim() + " was not found in "
+                    + SCRIPTS_DIRECTORY);
+        }
+        this.checkTopLevelFile(properties, "documentationFile");
+        this.checkTopLevelFile(properties, "licenseFile");
+    }
+
+    private void checkTopLevelFile(final Properties properties, final String key) {
+        final String fileName = properties.getProperty(key);
+        if (!isBlank(fileName) && !this.files.contains(fileName.trim())) {
+            this.problems.add("The " + key + " " + fileName.trim() + " was not found at the top level");
+        }
+    }
+
+    private static boolean isBlank(final String value) {
+        return value == null || value.trim().isEmpty();
+    }
+}
@@ -0,0 +1,476 @@
+package io.jenkins.plugins.utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import io.jenkins.plugins.utils.HttpWrapper.HTTPAbortedException;
+import io.jenkins.plugins.utils.HttpWrapper.HTTPException;
+import io.jenkins.plugins.utils.HttpWrapper.HTTPStatusException;
+
+/**
+ * Uploads an asset zip as fixed-size parts, several at a time, so that a
+ * dropped connection only costs the parts that were in flight.
+ *
+ * Every part is sent as a PUT to {session}/parts/{index} with a Content-Range
+ * header and the SHA-256 of the part in the X-Part-Checksum header. Once all
+ * parts are in, a POST to {session}/complete carries the manifest of parts and
+ * returns the same response as a single-request import or update. Completed
+ * parts are recorded in a state file, so a later attempt for the same file,
+ * site, principal and target skips them.
+ *
+ * The part size and the number of parts sent at once are read from the
+ * partSizeMegabytes and parallelism system properties prefixed with this class
+ * name.
+ */
+public class ChunkedUploader {
+
+	public static final Logger LOGGER = Logger.getLogger(ChunkedUploader.class.getName());
+
+	static final long PART_SIZE = Long.getLong(ChunkedUploader.class.getName() + ".partSizeMegabytes", 64L) * 1024L
+			* 1024L;
+
+	static final int PARALLELISM = Integer.getInteger(ChunkedUploader.class.getName() + ".parallelism", 4);
+
+	private static final String sizeProperty = "size";
+
+	private static final String lastModifiedProperty = "lastModified";
+
+	private static final String partSizeProperty = "partSize";
+
+	private static final String partPropertyPrefix = "part.";
+
+	private final HttpWrapper wrapper;
+
+	private final String target;
+
+	private final File file;
+
+	private final File stateDir;
+
+	private final long partSize;
+
+	private final int parallelism;
+
+	private final Properties state = new Properties();
+
+	public ChunkedUploader(final HttpWrapper wrapper, final String target, final File file, final File stateDir) {
+		this(wrapper, target, file, stateDir, PART_SIZE, PARALLELISM);
+	}
+
+	public ChunkedUploader(final HttpWrapper wrapper, final String target, final File file, final File stateDir,
+			final long partSize, final int parallelism) {
+		this.wrapper = wrapper;
+		this.target = target;
+		this.file = file;
+		this.stateDir = stateDir;
+		this.partSize = Math.max(1L, partSize);
+		this.parallelism = Math.max(1, parallelism);
+	}
+
+	/**
+	 * Gets the id of the upload session for this file and target. The id only
+	 * depends on the site, the principal the upload is sent as, the target and
+	 * the file name, size and modification time, so a retry of the same upload
+	 * resumes the same session, while an upload of the same file to another
+	 * site or as another user starts its own.
+	 *
+	 * @return the upload id
+	 * @throws HTTPException if the id could not be computed
+	 */
+	public String getUploadId() throws HTTPException {
+		final String seed = this.wrapper.getPoolKey() + "|" + this.target + "|" + this.file.getName() + "|"
+				+ this.file.length() + "|" + this.file.lastModified();
+		return hex(sha256(seed.getBytes(StandardCharsets.UTF_8))).substring(0, 32);
+	}
+
+	/**
+	 * Uploads all parts that have not been uploaded yet, then completes the
+	 * upload. If the site no longer knows a resumed session or rejects its
+	 * completion, the upload state is dropped and the upload starts over once.
+	 * A fresh upload that is rejected also drops its state, so the next build
+	 * does not resume it.
+	 *
+	 * @return the response of the complete request
+	 * @throws HTTPException if any part or the complete request failed
+	 */
+	public String upload() throws HTTPException {
+		if (this.file == null || !this.file.exists()) {
+			throw new HTTPException("File to be uploaded was not found or does not exist");
+		}
+
+		final String uploadId = this.getUploadId();
+		final String sessionUrl = this.wrapper.baseUrl + "/rest/api/uploads/" + uploadId;
+		final File stateFile = new File(this.stateDir, "cons3rt-upload-" + uploadId + ".properties");
+
+		this.loadState(stateFile);
+		final boolean resumed = !this.state.isEmpty();
+
+		try {
+			return this.sendParts(uploadId, sessionUrl, stateFile);
+		} catch (HTTPStatusException e) {
+			if (!isSessionRejected(e.getStatus())) {
+				throw e;
+			}
+			LOGGER.log(Level.WARNING, "Upload session " + uploadId + " of " + this.file.getName()
+					+ " was rejected with status " + e.getStatus() + ", dropping its state"
+					+ (resumed ? " and starting over" : ""));
+			this.state.clear();
+			deleteState(stateFile);
+			if (!resumed) {
+				throw e;
+			}
+			return this.sendParts(uploadId, sessionUrl, stateFile);
+		}
+	}
+
+	// The site does not know the session, or will not assemble it
+	private static boolean isSessionRejected(final int status) {
+		switch (status) {
+		case 400:
+		case 404:
+		case 409:
+		case 410:
+		case 422:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	private String sendParts(final String uploadId, final String sessionUrl, final File stateFile)
+			throws HTTPException {
+		final long size = this.file.length();
+		final int partCount = (int) Math.max(1L, (size + this.partSize - 1) / this.partSize);
+
+		final List<Integer> pending = new ArrayList<>();
+		for (int i = 0; i < partCount; ++i) {
+			if (this.state.getProperty(partPropertyPrefix + i) == null) {
+				pending.add(i);
+			}
+		}
+
+		LOGGER.log(Level.INFO, "Uploading " + this.file.getName() + " as " + partCount + " parts of "
+				+ this.partSize + " bytes, " + (partCount - pending.size()) + " already uploaded.");
+
+		final ExecutorService executor = Executors.newFixedThreadPool(Math.min(this.parallelism,
+				Math.max(1, pending.size())), new ThreadFactory() {
+					@Override
+					public Thread newThread(final Runnable r) {
+						final Thread thread = new Thread(r, "cons3rt-chunked-upload-" + uploadId);
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+
+		try {
+			// parts are taken as they finish, so the first failure is seen at once
+			final CompletionService<Void> parts = new ExecutorCompletionService<>(executor);
+			final List<Future<Void>> futures = new ArrayList<>();
+			for (final Integer index : pending) {
+				futures.add(parts.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws HTTPException, IOException {
+						uploadPart(sessionUrl, index, stateFile);
+						return null;
+					}
+				}));
+			}
+
+			for (int done = 0; done < futures.size(); ++done) {
+				try {
+					parts.take().get();
+				} catch (ExecutionException e) {
+					// the parts still running are aborted, their requests are interrupted
+					for (final Future<Void> future : futures) {
+						future.cancel(true);
+					}
+					throw (e.getCause() instanceof HTTPException) ? (HTTPException) e.getCause()
+							: new HTTPException("upload: caught " + e.getCause().getClass().getSimpleName()
+									+ " while uploading part. Message: " + e.getCause().getMessage());
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new HTTPAbortedException("upload: interrupted while uploading parts of " + this.file.getName());
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		final HttpPost complete = new HttpPost(sessionUrl + "/complete");
+		complete.setEntity(new StringEntity(this.createManifest(partCount).toString(), ContentType.APPLICATION_JSON));
+		final String result = this.wrapper.send(complete, Timeouts.Operation.METADATA);
+
+		deleteState(stateFile);
+		return result;
+	}
+
+	private static void deleteState(final File stateFile) {
+		if (!stateFile.delete() && stateFile.exists()) {
+			LOGGER.log(Level.WARNING, "Failed to delete upload state file " + stateFile);
+		}
+	}
+
+	private void uploadPart(final String sessionUrl, final int index, final File stateFile)
+			throws HTTPException, IOException {
+		final long offset = index * this.partSize;
+		final long length = Math.min(this.partSize, this.file.length() - offset);
+
+		final String checksum = this.checksum(offset, length);
+
+		final HttpPut put = new HttpPut(sessionUrl + "/parts/" + index);
+		put.setHeader("Content-Range",
+				"bytes " + offset + "-" + (offset + length - 1) + "/" + this.file.length());
+		put.setHeader("X-Part-Checksum", checksum);
+		put.setEntity(this.wrapper.trackProgress(new FileRegionEntity(this.file, offset, length)));
+
+		this.wrapper.send(put, Timeouts.Operation.UPLOAD);
+
+		synchronized (this.state) {
+			this.state.setProperty(partPropertyPrefix + index, checksum);
+			this.storeState(stateFile);
+		}
+
+		LOGGER.log(Level.INFO, "Uploaded part " + index + " of " + this.file.getName() + " (" + length + " bytes)");
+	}
+
+	private JsonObject createManifest(final int partCount) {
+		final JsonObject manifest = new JsonObject();
+		manifest.addProperty("target", this.target);
+		manifest.addProperty("filename", this.file.getName());
+		manifest.addProperty("size", this.file.length());
+		manifest.addProperty("partSize", this.partSize);
+
+		final JsonArray parts = new JsonArray();
+		for (int i = 0; i < partCount; ++i) {
+			final long offset = i * this.partSize;
+			final JsonObject part = new JsonObject();
+			part.addProperty("index", i);
+			part.addProperty("offset", offset);
+			part.addProperty("length", Math.min(this.partSize, this.file.length() - offset));
+			part.addProperty("checksum", this.state.getProperty(partPropertyPrefix + i));
+			parts.add(part);
+		}
+		manifest.add("parts", parts);
+
+		return manifest;
+	}
+
+	private String checksum(final long offset, final long length) throws HTTPException, IOException {
+		final MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new HTTPException("checksum: caught " + e.getClass().getSimpleName(), e);
+		}
+
+		try (final FileChannel channel = FileChannel.open(this.file.toPath(), StandardOpenOption.READ)) {
+			final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+			long position = offset;
+			final long end = offset + length;
+			while (position < end) {
+				buffer.clear();
+				buffer.limit((int) Math.min(buffer.capacity(), end - position));
+				final int read = channel.read(buffer, position);
+				if (read < 0) {
+					break;
+				}
+				buffer.flip();
+				digest.update(buffer);
+				position += read;
+			}
+		}
+		return hex(digest.digest());
+	}
+
+	private void loadState(final File stateFile) {
+		this.state.clear();
+		if (!stateFile.exists()) {
+			return;
+		}
+
+		try (final InputStream in = new FileInputStream(stateFile)) {
+			this.state.load(in);
+		} catch (IOException e) {
+			LOGGER.log(Level.WARNING, "Could not read upload state " + stateFile + ", starting over. Message: "
+					+ e.getMessage());
+			this.state.clear();
+			return;
+		}
+
+		if (!String.valueOf(this.file.length()).equals(this.state.getProperty(sizeProperty))
+				|| !String.valueOf(this.file.lastModified()).equals(this.state.getProperty(lastModifiedProperty))
+				|| !String.valueOf(this.partSize).equals(this.state.getProperty(partSizeProperty))) {
+			LOGGER.log(Level.INFO, "Upload state " + stateFile + " does not match " + this.file.getName()
+					+ ", starting over.");
+			this.state.clear();
+		}
+	}
+
+	private void storeState(final File stateFile) throws IOException {
+		this.state.setProperty(sizeProperty, String.valueOf(this.file.length()));
+		this.state.setProperty(lastModifiedProperty, String.valueOf(this.file.lastModified()));
+		this.state.setProperty(partSizeProperty, String.valueOf(this.partSize));
+
+		Files.createDirectories(this.stateDir.toPath());
+		final File temp = new File(this.stateDir, stateFile.getName() + ".tmp");
+		try (final OutputStream out = new FileOutputStream(temp)) {
+			this.state.store(out, "CONS3RT chunked upload of " + this.file.getName());
+		}
+		Files.move(temp.toPath(), stateFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	private static byte[] sha256(final byte[] bytes) throws HTTPException {
+		try {
+			return MessageDigest.getInstance("SHA-256").digest(bytes);
+		} catch (NoSuchAlgorithmException e) {
+			throw new HTTPException("sha256: caught " + e.getClass().getSimpleName(), e);
+		}
+	}
+
+	static String hex(final byte[] bytes) {
+		final StringBuilder sb = new StringBuilder();
+		for (final byte b : bytes) {
+			sb.append(String.format("%02x", b));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * A repeatable entity over a byte range of a file.
+	 */
+	static class FileRegionEntity extends AbstractHttpEntity {
+
+		private final File file;
+
+		private final long offset;
+
+		private final long length;
+
+		FileRegionEntity(final File file, final long offset, final long length) {
+			this.file = file;
+			this.offset = offset;
+			this.length = length;
+			this.setContentType(ContentType.APPLICATION_OCTET_STREAM.toString());
+		}
+
+		@Override
+		public boolean isRepeatable() {
+			return true;
+		}
+
+		@Override
+		public long getContentLength() {
+			return this.length;
+		}
+
+		@Override
+		public InputStream getContent() throws IOException {
+			final FileChannel channel = FileChannel.open(this.file.toPath(), StandardOpenOption.READ);
+			channel.position(this.offset);
+			return new BoundedInputStream(Channels.newInputStream(channel), this.length);
+		}
+
+		@Override
+		public void writeTo(final OutputStream out) throws IOException {
+			try (final FileChannel channel = FileChannel.open(this.file.toPath(), StandardOpenOption.READ)) {
+				final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+				long position = this.offset;
+				final long end = this.offset + this.length;
+				while (position < end) {
+					buffer.clear();
+					buffer.limit((int) Math.min(buffer.capacity(), end - position));
+					final int read = channel.read(buffer, position);
+					if (read < 0) {
+						throw new IOException("Unexpected end of " + this.file.getName() + " at " + position);
+					}
+					out.write(buffer.array(), 0, read);
+					position += read;
+				}
+			}
+		}
+
+		@Override
+		public boolean isStreaming() {
+			return false;
+		}
+	}
+
+	/**
+	 * Limits the number of bytes read from the wrapped stream.
+	 */
+	static class BoundedInputStream extends InputStream {
+
+		private final InputStream in;
+
+		private long remaining;
+
+		BoundedInputStream(final InputStream in, final long limit) {
+			this.in = in;
+			this.remaining = limit;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (this.remaining <= 0) {
+				return -1;
+			}
+			final int b = this.in.read();
+			if (b >= 0) {
+				--this.remaining;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(final byte[] b, final int off, final int len) throws IOException {
+			if (this.remaining <= 0) {
+				return -1;
+			}
+			final int read = this.in.read(b, off, (int) Math.min(len, this.remaining));
+			if (read > 0) {
+				this.remaining -= read;
+			}
+			return read;
+		}
+
+		@Override
+		public void close() throws IOException {
+			this.in.close();
+		}
+	}
+}
@@ -0,0 +1,149 @@
+package io.jenkins.plugins.utils;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import io.jenkins.plugins.utils.HttpWrapper.HTTPException;
+
+/**
+ * Stops sending requests to a CONS3RT site that keeps failing, so a wave of
+ * builds fails fast with a clear message instead of each one retrying against
+ * a server that is down.
+ *
+ * After failureThreshold consecutive failures (connection failures and 429,
+ * 502, 503 and 504 responses) the breaker opens and requests fail at once for
+ * openSeconds. Then one request is let through: if it succeeds the breaker
+ * closes, otherwise it opens again. Both settings are read from system
+ * properties prefixed with this class name. There is one breaker per site url
+ * and Java process, so the controller and each agent judge a site
+ * independently.
+ */
+public final class CircuitBreaker {
+
+	public static final Logger LOGGER = Logger.getLogger(CircuitBreaker.class.getName());
+
+	private static final ConcurrentMap<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+	private final String site;
+
+	private final int failureThreshold;
+
+	private final long openMillis;
+
+	private int consecutiveFailures;
+
+	private long openUntil;
+
+	private boolean trialInFlight;
+
+	/** Identifies the trial in flight, so only its sender can hand it back. */
+	private long trialTicket;
+
+	CircuitBreaker(final String site, final int failureThreshold, final long openMillis) {
+		this.site = site;
+		this.failureThreshold = Math.max(1, failureThreshold);
+		this.openMillis = Math.max(0, openMillis);
+	}
+
+	/**
+	 * Gets the breaker of a site.
+	 *
+	 * @param baseUrl the site url
+	 * @return the breaker shared by all requests to the site
+	 */
+	public static CircuitBreaker forSite(final String baseUrl) {
+		CircuitBreaker breaker = breakers.get(baseUrl);
+		if (breaker == null) {
+			// the settings are read once per site, when its breaker is created, so a change applies after a restart
+			final CircuitBreaker created = new CircuitBreaker(baseUrl,
+					Integer.getInteger(CircuitBreaker.class.getName() + ".failureThreshold", 5),
+					Long.getLong(CircuitBreaker.class.getName() + ".openSeconds", 60L) * 1000L);
+			breaker = breakers.putIfAbsent(baseUrl, created);
+			if (breaker == null) {
+				breaker = created;
+			}
+		}
+		return breaker;
+	}
+
+	/**
+	 * Checks that a request may be sent.
+	 *
+	 * @return a ticket to pass to {@link #release(long)} once the request is
+	 *         done, non-zero if the request is the trial of a half-open
+	 *         breaker
+	 * @throws HTTPException if the breaker is open
+	 */
+	public synchronized long acquire() throws HTTPException {
+		if (this.consecutiveFailures < this.failureThreshold) {
+			return 0;
+		}
+
+		final long now = System.currentTimeMillis();
+		if (now < this.openUntil) {
+			throw new HTTPException("CONS3RT site " + this.site + " is unavailable: the last "
+					+ this.consecutiveFailures + " requests to it failed, not sending requests for another "
+					+ Math.max(1, (this.openUntil - now + 999) / 1000) + " seconds");
+		}
+		if (this.trialInFlight) {
+			throw new HTTPException("CONS3RT site " + this.site + " is unavailable: the last "
+					+ this.consecutiveFailures + " requests to it failed, waiting for a trial request to it");
+		}
+
+		// let one request through to see whether the site is back
+		this.trialInFlight = true;
+		LOGGER.log(Level.INFO, "Trying CONS3RT site " + this.site + " again after " + this.consecutiveFailures
+				+ " failures");
+		return ++this.trialTicket;
+	}
+
+	/**
+	 * Ends a request whether or not its outcome was recorded. A trial that
+	 * ended without one, because it was aborted or failed in the client, is
+	 * handed back so the next request becomes the trial.
+	 *
+	 * @param ticket what {@link #acquire()} returned
+	 */
+	public synchronized void release(final long ticket) {
+		if (ticket != 0 && ticket == this.trialTicket && this.trialInFlight) {
+			this.trialInFlight = false;
+			LOGGER.log(Level.INFO, "Trial request to CONS3RT site " + this.site + " ended without an outcome");
+		}
+	}
+
+	/**
+	 * Records a request the site answered.
+	 */
+	public synchronized void recordSuccess() {
+		if (this.consecutiveFailures >= this.failureThreshold) {
+			LOGGER.log(Level.INFO, "CONS3RT site " + this.site + " is available again");
+		}
+		this.consecutiveFailures = 0;
+		this.trialInFlight = false;
+	}
+
+	/**
+	 * Records a request that failed because the site is unreachable or
+	 * overloaded.
+	 */
+	public synchronized void recordFailure() {
+		this.trialInFlight = false;
+		if (++this.consecutiveFailures >= this.failureThreshold) {
+			this.openUntil = System.currentTimeMillis() + this.openMillis;
+			LOGGER.log(Level.WARNING, "CONS3RT site " + this.site + " failed " + this.consecutiveFailures
+					+ " requests in a row, not sending requests to it for " + (this.openMillis / 1000) + " seconds");
+		}
+	}
+
+	/**
+	 * Checks whether requests to the site are being refused.
+	 *
+	 * @return true, if the breaker is open
+	 */
+	public synchronized boolean isOpen() {
+		return this.consecutiveFailures >= this.failureThreshold
+				&& (System.currentTimeMillis() < this.openUntil || this.trialInFlight);
+	}
+}
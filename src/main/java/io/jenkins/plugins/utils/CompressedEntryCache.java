@@ -0,0 +1,344 @@
+package io.jenkins.plugins.utils;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A cache of deflated file contents shared by every zip built on a machine, so
+ * large files that go into many assets (ISOs, JDKs, driver bundles) are only
+ * deflated once. Payloads are keyed by the SHA-256 of the file and the deflate
+ * level, and kept as {@code <key>.deflated} with the CRC-32 and sizes in a
+ * {@code <key>.entry} file next to it.
+ *
+ * A file found in the cache costs one read to hash it and one copy of its
+ * compressed bytes. A file that is not found is deflated into the cache and
+ * copied from there. Only files of at least minMegabytes (a system property
+ * prefixed with this class name, 1 by default) are cached. The least recently
+ * used payloads are evicted when the cache is closed and larger than its
+ * limit. A payload is opened when it is found, so it can still be written to
+ * a zip after another build evicts it.
+ */
+public final class CompressedEntryCache implements Closeable {
+
+    /** The Constant LOGGER. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    /** The name of the cache directory in the node root. */
+    public static final String cacheDirName = "cons3rt-entry-cache";
+
+    /** Files smaller than this are deflated as usual. */
+    static final long MIN_CACHED_SIZE = Long.getLong(CompressedEntryCache.class.getName() + ".minMegabytes", 1)
+            * 1024 * 1024;
+
+    private static final String payloadSuffix = ".deflated";
+
+    private static final String entrySuffix = ".entry";
+
+    /** The buffer size used when reading files. */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final Comparator<Path> MOST_RECENTLY_USED = new Comparator<Path>() {
+        @Override
+        public int compare(final Path a, final Path b) {
+            return Long.compare(b.toFile().lastModified(), a.toFile().lastModified());
+        }
+    };
+
+    private final Path cacheDir;
+
+    private final long maxBytes;
+
+    private final int level;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private CompressedEntryCache(final Path cacheDir, final long maxBytes, final int level) {
+        this.cacheDir = cacheDir;
+        this.maxBytes = maxBytes;
+        this.level = level;
+    }
+
+    /**
+     * Opens the entry cache of a policy.
+     *
+     * @param policy the compression policy
+     * @return the cache, or null if the policy has none or it cannot be
+     *         created
+     */
+    public static CompressedEntryCache open(final CompressionPolicy policy) {
+        if (policy.getEntryCache() == null || policy.getLevel() == Deflater.NO_COMPRESSION) {
+            return null;
+        }
+
+        final Path cacheDir = Paths.get(policy.getEntryCache());
+        try {
+            Files.createDirectories(cacheDir);
+            return new CompressedEntryCache(cacheDir, policy.getEntryCacheBytes(), policy.getLevel());
+        } catch (final IOException e) {
+            LOGGER.warn("open: not using compressed entry cache {}, it could not be created ({})", cacheDir,
+                    e.toString());
+            return null;
+        }
+    }
+
+    /**
+     * Checks whether a file is large enough to be cached.
+     *
+     * @param size the file size
+     * @return true, if the file is cached
+     */
+    public boolean accepts(final long size) {
+        return size >= MIN_CACHED_SIZE && size <= this.maxBytes;
+    }
+
+    /**
+     * Finds the deflated payload of a file, deflating it into the cache if it
+     * is not there yet.
+     *
+     * @param filePath the file path
+     * @return the payload
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public Payload get(final Path filePath) throws IOException {
+        final String key = sha256(filePath) + "-" + this.level;
+        final Path payloadPath = this.cacheDir.resolve(key + payloadSuffix);
+        final Path entryPath = this.cacheDir.resolve(key + entrySuffix);
+
+        final Payload cached = read(payloadPath, entryPath);
+        if (cached != null) {
+            // marks the payload as recently used, unless it was evicted since it was opened
+            try {
+                Files.setLastModifiedTime(payloadPath, FileTime.fromMillis(System.currentTimeMillis()));
+            } catch (final NoSuchFileException e) {
+                LOGGER.debug("get: cached payload {} was evicted while in use", key);
+            }
+            this.hits.incrementAndGet();
+            LOGGER.debug("get: using cached payload {} for {}", key, filePath);
+            return cached;
+        }
+
+        this.misses.incrementAndGet();
+        return this.store(filePath, key, payloadPath, entryPath);
+    }
+
+    private static Payload read(final Path payloadPath, final Path entryPath) throws IOException {
+        final FileChannel channel;
+        try {
+            channel = FileChannel.open(payloadPath, StandardOpenOption.READ);
+        } catch (final NoSuchFileException e) {
+            return null;
+        }
+        try {
+            final String[] fields = new String(Files.readAllBytes(entryPath), StandardCharsets.UTF_8).trim()
+                    .split(" ");
+            final Payload payload = new Payload(channel, Long.parseLong(fields[0]), Long.parseLong(fields[1]),
+                    Long.parseLong(fields[2]));
+            if (channel.size() == payload.compressedSize) {
+                return payload;
+            }
+        } catch (final NoSuchFileException | NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            LOGGER.warn("read: ignoring damaged cache entry {} ({})", payloadPath, e.toString());
+        }
+        channel.close();
+        return null;
+    }
+
+    private Payload store(final Path filePath, final String key, final Path payloadPath, final Path entryPath)
+            throws IOException {
+        final Path tempPayload = Files.createTempFile(this.cacheDir, key, payloadSuffix + ".tmp");
+        final Path tempEntry = Files.createTempFile(this.cacheDir, key, entrySuffix + ".tmp");
+        try {
+            final Deflater deflater = new Deflater(this.level, true);
+            final CRC32 crc = new CRC32();
+            long size = 0;
+            try (final InputStream input = Files.newInputStream(filePath);
+                    final OutputStream output = Files.newOutputStream(tempPayload)) {
+                final byte[] buffer = new byte[BUFFER_SIZE];
+                final byte[] deflated = new byte[BUFFER_SIZE];
+                int read;
+                while ((read = input.read(buffer)) != -1) {
+                    crc.update(buffer, 0, read);
+                    size += read;
+                    deflater.setInput(buffer, 0, read);
+                    while (!deflater.needsInput()) {
+                        output.write(deflated, 0, deflater.deflate(deflated));
+                    }
+                }
+                deflater.finish();
+                while (!deflater.finished()) {
+                    output.write(deflated, 0, deflater.deflate(deflated));
+                }
+            } finally {
+                deflater.end();
+            }
+
+            // opened before it is moved in place, so an eviction cannot take it away
+            final Payload payload = new Payload(FileChannel.open(tempPayload, StandardOpenOption.READ),
+                    crc.getValue(), size, Files.size(tempPayload));
+            try {
+                Files.write(tempEntry, (payload.crc + " " + payload.size + " " + payload.compressedSize)
+                        .getBytes(StandardCharsets.UTF_8));
+
+                // the entry file goes first, a payload is only found once both are in place
+                Files.move(tempEntry, entryPath, StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+                Files.move(tempPayload, payloadPath, StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (final IOException | RuntimeException e) {
+                payload.close();
+                throw e;
+            }
+            LOGGER.info("store: cached deflated payload of {} as {} ({} to {} bytes)", filePath, key, size,
+                    payload.compressedSize);
+            return payload;
+        } finally {
+            Files.deleteIfExists(tempPayload);
+            Files.deleteIfExists(tempEntry);
+        }
+    }
+
+    /**
+     * Removes the least recently used payloads until the cache fits its size
+     * limit.
+     *
+     * @param cacheDir the cache directory
+     * @param maxBytes the size the cache may use
+     * @return the number of payloads evicted
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public static int evict(final Path cacheDir, final long maxBytes) throws IOException {
+        final List<Path> payloads = new ArrayList<>();
+        try (final DirectoryStream<Path> stream = Files.newDirectoryStream(cacheDir, "*" + payloadSuffix)) {
+            for (final Path payload : stream) {
+                payloads.add(payload);
+            }
+        }
+
+        Collections.sort(payloads, MOST_RECENTLY_USED);
+
+        long usedBytes = 0;
+        int evicted = 0;
+        for (final Path payload : payloads) {
+            usedBytes += Files.size(payload);
+            if (usedBytes > maxBytes) {
+                final String name = payload.getFileName().toString();
+                Files.deleteIfExists(payload);
+                Files.deleteIfExists(
+                        cacheDir.resolve(name.substring(0, name.length() - payloadSuffix.length()) + entrySuffix));
+                LOGGER.info("evict: removed cached payload {}", payload);
+                ++evicted;
+            }
+        }
+        return evicted;
+    }
+
+    public long getHits() {
+        return this.hits.get();
+    }
+
+    public long getMisses() {
+        return this.misses.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        LOGGER.info("close: {} cached and {} newly deflated entries in {}", this.hits.get(), this.misses.get(),
+                this.cacheDir);
+        if (this.misses.get() > 0) {
+            evict(this.cacheDir, this.maxBytes);
+        }
+    }
+
+    private static String sha256(final Path filePath) throws IOException {
+        final MessageDigest digest = AssetFileUtils.newAssetDigest();
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        try (final InputStream input = Files.newInputStream(filePath)) {
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return AssetFileUtils.toHex(digest.digest());
+    }
+
+    /**
+     * The deflated contents of a file, with what its zip entry needs. It
+     * holds the cache file open until it is written or closed.
+     */
+    public static final class Payload implements Closeable {
+
+        private final FileChannel channel;
+
+        private final long crc;
+
+        private final long size;
+
+        private final long compressedSize;
+
+        Payload(final FileChannel channel, final long crc, final long size, final long compressedSize) {
+            this.channel = channel;
+            this.crc = crc;
+            this.size = size;
+            this.compressedSize = compressedSize;
+        }
+
+        public long getSize() {
+            return this.size;
+        }
+
+        /**
+         * Writes the payload into an archive as a deflated entry and closes
+         * it.
+         *
+         * @param entry the entry, named and timestamped
+         * @param zaos  the archive stream
+         * @throws IOException Signals that an I/O exception has occurred.
+         */
+        public void writeTo(final ZipArchiveEntry entry, final ZipArchiveOutputStream zaos) throws IOException {
+            entry.setMethod(ZipEntry.DEFLATED);
+            entry.setCrc(this.crc);
+            entry.setSize(this.size);
+            entry.setCompressedSize(this.compressedSize);
+            try (final InputStream raw = new BufferedInputStream(Channels.newInputStream(this.channel),
+                    BUFFER_SIZE)) {
+                zaos.addRawArchiveEntry(entry, raw);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.channel.close();
+        }
+    }
+}
@@ -0,0 +1,343 @@
+package io.jenkins.plugins.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.lang.invoke.MethodHandles;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Decides how each file of an asset zip is compressed.
+ *
+ * With storeIncompressible set, files with a known compressed extension (ISOs,
+ * packages, archives, images, video) and files whose leading bytes do not
+ * deflate are STORED instead of deflated again. Everything else is deflated at
+ * the configured level. Extra extensions and the sampling parameters are read
+ * from system properties prefixed with this class name: storedExtensions
+ * (comma separated), sampleKilobytes and incompressibleRatio.
+ *
+ * With reproducible set, zips are written the same way every time: entries in
+ * name order, with a fixed timestamp and no extra fields, so identical inputs
+ * give a byte-identical zip.
+ *
+ * With a previous zip set, files that have not changed since it was written
+ * are copied from it as they are, see {@link PreviousZipEntries}.
+ *
+ * With an entry cache set, large files are deflated once per machine and
+ * copied compressed into every zip they go into, see
+ * {@link CompressedEntryCache}.
+ *
+ * With threads set, the zip is compressed with that many threads instead of
+ * the default of the machine it is written on. The zip bytes do not depend on
+ * it.
+ */
+public class CompressionPolicy implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The Constant LOGGER. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    /** Deflates every file at the default level, as zips always were. */
+    public static final CompressionPolicy DEFAULT = new CompressionPolicy(false, Deflater.DEFAULT_COMPRESSION);
+
+    /** The number of leading bytes deflated to judge a file. */
+    static final int SAMPLE_BYTES = Integer.getInteger(CompressionPolicy.class.getName() + ".sampleKilobytes", 256)
+            * 1024;
+
+    /** Samples that deflate to more than this share of their size are stored. */
+    static final double INCOMPRESSIBLE_RATIO = Double.parseDouble(
+            System.getProperty(CompressionPolicy.class.getName() + ".incompressibleRatio", "0.97"));
+
+    /** Files smaller than this are always deflated. */
+    private static final long MIN_SAMPLED_SIZE = 16 * 1024;
+
+    /** The buffer size used when reading files. */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /** Extensions of files that are compressed already. */
+    static final Set<String> STORED_EXTENSIONS = storedExtensions();
+
+    private final boolean storeIncompressible;
+
+    private final int level;
+
+    private final boolean reproducible;
+
+    private final String previousZip;
+
+    private final String entryCache;
+
+    private final long entryCacheBytes;
+
+    private final int threads;
+
+    /**
+     * Instantiates a new compression policy.
+     *
+     * @param storeIncompressible whether to store already compressed files
+     * @param level               the deflate level, 0-9 or -1 for the default
+     */
+    public CompressionPolicy(final boolean storeIncompressible, final int level) {
+        this(storeIncompressible, level, false);
+    }
+
+    /**
+     * Instantiates a new compression policy.
+     *
+     * @param storeIncompressible whether to store already compressed files
+     * @param level               the deflate level, 0-9 or -1 for the default
+     * @param reproducible        whether to write reproducible zips
+     */
+    public CompressionPolicy(final boolean storeIncompressible, final int level, final boolean reproducible) {
+        this(storeIncompressible, level, reproducible, null, null, 0, 0);
+    }
+
+    private CompressionPolicy(final boolean storeIncompressible, final int level, final boolean reproducible,
+            final String previousZip, final String entryCache, final long entryCacheBytes, final int threads) {
+        if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Invalid compression level " + level + ", expected 0 to 9");
+        }
+        this.storeIncompressible = storeIncompressible;
+        this.level = level;
+        this.reproducible = reproducible;
+        this.previousZip = previousZip;
+        this.entryCache = entryCache;
+        this.entryCacheBytes = entryCacheBytes;
+        this.threads = threads;
+    }
+
+    /**
+     * Builds a policy from job options. A missing or invalid level falls back
+     * to the default level.
+     *
+     * @param storeIncompressible whether to store already compressed files
+     * @param level               the deflate level, may be null
+     * @return the policy
+     */
+    public static CompressionPolicy of(final boolean storeIncompressible, final Integer level) {
+        return of(storeIncompressible, level, false);
+    }
+
+    /**
+     * Builds a policy from job options. A missing or invalid level falls back
+     * to the default level.
+     *
+     * @param storeIncompressible whether to store already compressed files
+     * @param level               the deflate level, may be null
+     * @param reproducible        whether to write reproducible zips
+     * @return the policy
+     */
+    public static CompressionPolicy of(final boolean storeIncompressible, final Integer level,
+            final boolean reproducible) {
+        int deflateLevel = Deflater.DEFAULT_COMPRESSION;
+        if (level != null) {
+            if (level >= Deflater.DEFAULT_COMPRESSION && level <= Deflater.BEST_COMPRESSION) {
+                deflateLevel = level;
+            } else {
+                LOGGER.warn("of: ignoring invalid compression level {}, using the default level", level);
+            }
+        }
+        return new CompressionPolicy(storeIncompressible, deflateLevel, reproducible);
+    }
+
+    public boolean isStoreIncompressible() {
+        return this.storeIncompressible;
+    }
+
+    public int getLevel() {
+        return this.level;
+    }
+
+    public boolean isReproducible() {
+        return this.reproducible;
+    }
+
+    /**
+     * Gets the path of the zip unchanged entries are copied from.
+     *
+     * @return the path on the machine the zip is written on, or null
+     */
+    public String getPreviousZip() {
+        return this.previousZip;
+    }
+
+    /**
+     * Copies this policy with a previous zip to reuse unchanged entries from.
+     *
+     * @param zipPath the path of the previous zip on the machine the new zip
+     *                is written on
+     * @return the policy
+     */
+    public CompressionPolicy withPreviousZip(final String zipPath) {
+        return new CompressionPolicy(this.storeIncompressible, this.level, this.reproducible, zipPath,
+                this.entryCache, this.entryCacheBytes, this.threads);
+    }
+
+    /**
+     * Gets the directory of the compressed entry cache.
+     *
+     * @return the path on the machine the zip is written on, or null
+     */
+    public String getEntryCache() {
+        return this.entryCache;
+    }
+
+    public long getEntryCacheBytes() {
+        return this.entryCacheBytes;
+    }
+
+    /**
+     * Copies this policy with a compressed entry cache to take large files
+     * from.
+     *
+     * @param cacheDir the cache directory on the machine the zip is written on
+     * @param maxBytes the size the cache may use
+     * @return the policy
+     */
+    public CompressionPolicy withEntryCache(final String cacheDir, final long maxBytes) {
+        return new CompressionPolicy(this.storeIncompressible, this.level, this.reproducible, this.previousZip,
+                cacheDir, maxBytes, this.threads);
+    }
+
+    /**
+     * Gets the number of threads the zip is compressed with.
+     *
+     * @return the number of threads, or 0 for the default of the machine the
+     *         zip is written on
+     */
+    public int getThreads() {
+        return this.threads;
+    }
+
+    /**
+     * Copies this policy with the number of threads to compress the zip with.
+     * A missing or invalid number keeps the default of the machine the zip is
+     * written on.
+     *
+     * @param zipThreads the number of threads, may be null
+     * @return the policy
+     */
+    public CompressionPolicy withThreads(final Integer zipThreads) {
+        int threadCount = 0;
+        if (zipThreads != null) {
+            if (zipThreads > 0) {
+                threadCount = zipThreads;
+            } else {
+                LOGGER.warn("withThreads: ignoring invalid thread count {}, using the default", zipThreads);
+            }
+        }
+        return new CompressionPolicy(this.storeIncompressible, this.level, this.reproducible, this.previousZip,
+                this.entryCache, this.entryCacheBytes, threadCount);
+    }
+
+    /**
+     * Chooses the zip method for a file.
+     *
+     * @param filePath the file path
+     * @param size     the file size
+     * @return {@link ZipEntry#STORED} or {@link ZipEntry#DEFLATED}
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public int chooseMethod(final Path filePath, final long size) throws IOException {
+        if (this.level == Deflater.NO_COMPRESSION) {
+            return ZipEntry.STORED;
+        }
+        if (!this.storeIncompressible) {
+            return ZipEntry.DEFLATED;
+        }
+
+        final String name = filePath.getFileName().toString().toLowerCase(Locale.ROOT);
+        final int dot = name.lastIndexOf('.');
+        if (dot >= 0 && STORED_EXTENSIONS.contains(name.substring(dot + 1))) {
+            LOGGER.debug("chooseMethod: storing {} (known compressed extension)", filePath);
+            return ZipEntry.STORED;
+        }
+
+        if (size >= MIN_SAMPLED_SIZE && isIncompressible(filePath)) {
+            LOGGER.debug("chooseMethod: storing {} (sample did not compress)", filePath);
+            return ZipEntry.STORED;
+        }
+
+        return ZipEntry.DEFLATED;
+    }
+
+    /**
+     * Deflates the leading bytes of a file at the fastest level and checks
+     * whether they got noticeably smaller.
+     */
+    static boolean isIncompressible(final Path filePath) throws IOException {
+        final byte[] sample = new byte[SAMPLE_BYTES];
+        int sampled = 0;
+        try (final InputStream input = Files.newInputStream(filePath)) {
+            int read;
+            while (sampled < sample.length && (read = input.read(sample, sampled, sample.length - sampled)) != -1) {
+                sampled += read;
+            }
+        }
+        if (sampled == 0) {
+            return false;
+        }
+
+        final Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        try {
+            deflater.setInput(sample, 0, sampled);
+            deflater.finish();
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            while (!deflater.finished()) {
+                deflater.deflate(buffer);
+            }
+            return deflater.getBytesWritten() >= sampled * INCOMPRESSIBLE_RATIO;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Computes the CRC-32 of a file, which STORED entries need up front so the
+     * zip can be written without data descriptors.
+     *
+     * @param filePath the file path
+     * @return the crc
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public static long crc32(final Path filePath) throws IOException {
+        final CRC32 crc = new CRC32();
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        try (final InputStream input = Files.newInputStream(filePath)) {
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                crc.update(buffer, 0, read);
+            }
+        }
+        return crc.getValue();
+    }
+
+    private static Set<String> storedExtensions() {
+        final Set<String> extensions = new HashSet<>();
+        Collections.addAll(extensions, "iso", "rpm", "deb", "msi", "cab", "gz", "tgz", "bz2", "tbz2", "xz",
+                "txz", "lz", "lzma", "zst", "7z", "rar", "zip", "jar", "war", "ear", "apk", "png", "jpg", "jpeg",
+                "gif", "webp", "mp3", "mp4", "mkv", "avi", "mov", "docx", "xlsx", "pptx", "dmg");
+
+        final String extra = System.getProperty(CompressionPolicy.class.getName() + ".storedExtensions");
+        if (extra != null) {
+            for (final String extension : extra.split(",")) {
+                if (!extension.trim().isEmpty()) {
+                    extensions.add(extension.trim().toLowerCase(Locale.ROOT).replaceFirst("^\\.", ""));
+                }
+            }
+        }
+        return Collections.unmodifiableSet(extensions);
+    }
+}
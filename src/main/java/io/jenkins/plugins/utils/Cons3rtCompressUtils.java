@@ -25,10 +25,19 @@
 ************************************************************************************************************************************/
 package io.jenkins.plugins.utils;
 
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * The Enum Cons3rtCompressUtils.
@@ -37,6 +46,111 @@ public enum Cons3rtCompressUtils {
 
     INSTANCE;
 
+    /** The number of zip central directories kept in memory. */
+    static final int INDEX_CACHE_SIZE = Integer.getInteger(Cons3rtCompressUtils.class.getName() + ".indexCacheSize",
+            32);
+
+    /** Central directory indexes by zip file path, least recently used first. */
+    private final Map<Path, ZipCentralDirectoryIndex> indexes = new LinkedHashMap<Path, ZipCentralDirectoryIndex>(
+            16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Path, ZipCentralDirectoryIndex> eldest) {
+            return size() > INDEX_CACHE_SIZE;
+        }
+    };
+
+    /** The number of threads zips are compressed with. */
+    private volatile int zipThreads = ParallelZipArchiver.THREADS;
+
+    /**
+     * Gets the number of threads zips are compressed with.
+     *
+     * @return the zip threads
+     */
+    public int getZipThreads() {
+        return this.zipThreads;
+    }
+
+    /**
+     * Sets the number of threads zips are compressed with, unless their
+     * {@link CompressionPolicy} sets its own. The zip bytes do not depend on
+     * it.
+     *
+     * @param zipThreads the zip threads
+     */
+    public void setZipThreads(final int zipThreads) {
+        this.zipThreads = zipThreads;
+    }
+
+    /**
+     * Gets the number of threads a zip is compressed with, the one of its
+     * policy if set.
+     */
+    private int getZipThreads(final CompressionPolicy policy) {
+        return Math.max((policy.getThreads() > 0) ? policy.getThreads() : this.zipThreads, 1);
+    }
+
+    /** The number of threads zips are extracted with. */
+    private volatile int unzipThreads = ParallelZipExtractor.THREADS;
+
+    /**
+     * Gets the number of threads zips are extracted with.
+     *
+     * @return the unzip threads
+     */
+    public int getUnzipThreads() {
+        return this.unzipThreads;
+    }
+
+    /**
+     * Sets the number of threads zips are extracted with. One thread selects
+     * the single-threaded path, more select the {@link ParallelZipExtractor}.
+     *
+     * @param unzipThreads the unzip threads
+     */
+    public void setUnzipThreads(final int unzipThreads) {
+        this.unzipThreads = unzipThreads;
+    }
+
+    /**
+     * Gets the central directory index of a zip file. Indexes are cached by
+     * path and reused while the file keeps its size and modification time.
+     *
+     * @param zipFilePath the zip file path
+     * @return the index
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public ZipCentralDirectoryIndex getZipIndex(final Path zipFilePath) throws IOException {
+        final Path key = zipFilePath.toAbsolutePath().normalize();
+        final BasicFileAttributes attributes = ZipCentralDirectoryIndex.attributesOf(key);
+        synchronized (this.indexes) {
+            final ZipCentralDirectoryIndex cached = this.indexes.get(key);
+            if (cached != null && cached.isCurrent(attributes)) {
+                return cached;
+            }
+        }
+
+        final ZipCentralDirectoryIndex index = ZipCentralDirectoryIndex.read(key, attributes);
+        synchronized (this.indexes) {
+            this.indexes.put(key, index);
+        }
+        return index;
+    }
+
+    /**
+     * Drops the cached index of a zip file, e.g. before it is rewritten in
+     * place within the modification time resolution.
+     *
+     * @param zipFilePath the zip file path
+     */
+    public void evictZipIndex(final Path zipFilePath) {
+        synchronized (this.indexes) {
+            this.indexes.remove(zipFilePath.toAbsolutePath().normalize());
+        }
+    }
+
     /**
      * Gets the zip file entry as string.
      *
@@ -46,7 +160,7 @@ public enum Cons3rtCompressUtils {
      * @throws IOException Signals that an I/O exception has occurred.
      */
     public String getZipFileEntryAsString(final Path zipFilePath, final String entryToGet) throws IOException {
-        return ApacheCompressUtils.getZipFileEntryAsString(zipFilePath, entryToGet);
+        return this.getZipIndex(zipFilePath).getEntryAsString(entryToGet);
     }
 
     /**
@@ -57,7 +171,33 @@ public enum Cons3rtCompressUtils {
      * @throws IOException Signals that an I/O exception has occurred.
      */
     public List<String> getZipFileListing(final Path zipFilePath) throws IOException {
-        return ApacheCompressUtils.getZipFileListing(zipFilePath);
+        return this.getZipIndex(zipFilePath).getNames();
+    }
+
+    /**
+     * Gets the uncompressed size of a zip file entry.
+     *
+     * @param zipFilePath the zip file path
+     * @param entryName   the entry name
+     * @return the size, or -1 if the zip has no such entry
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public long getZipFileEntrySize(final Path zipFilePath, final String entryName) throws IOException {
+        final ZipCentralDirectoryIndex.IndexedEntry entry = this.getZipIndex(zipFilePath).getEntry(entryName);
+        return entry == null ? -1 : entry.getSize();
+    }
+
+    /**
+     * Gets the CRC-32 of a zip file entry.
+     *
+     * @param zipFilePath the zip file path
+     * @param entryName   the entry name
+     * @return the crc, or -1 if the zip has no such entry
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public long getZipFileEntryCrc(final Path zipFilePath, final String entryName) throws IOException {
+        final ZipCentralDirectoryIndex.IndexedEntry entry = this.getZipIndex(zipFilePath).getEntry(entryName);
+        return entry == null ? -1 : entry.getCrc();
     }
 
     /**
@@ -70,7 +210,7 @@ public enum Cons3rtCompressUtils {
      */
     public void unzipIntoDirFromZipFile(final Path destDirPath, final Path zipFilePath)
             throws IOException, InvalidPathException {
-        ApacheCompressUtils.unzipIntoDirFromZipFile(destDirPath, zipFilePath, null);
+        ApacheCompressUtils.unzipIntoDirFromZipFile(destDirPath, zipFilePath, null, this.unzipThreads);
     }
 
     /**
@@ -84,7 +224,7 @@ public enum Cons3rtCompressUtils {
      */
     public void unzipIntoDirFromZipFile(final Path destDirPath, final Path zipFilePath,
             final List<String> filesToInclude) throws IOException, InvalidPathException {
-        ApacheCompressUtils.unzipIntoDirFromZipFile(destDirPath, zipFilePath, filesToInclude);
+        ApacheCompressUtils.unzipIntoDirFromZipFile(destDirPath, zipFilePath, filesToInclude, this.unzipThreads);
     }
 
     /**
@@ -100,6 +240,178 @@ public enum Cons3rtCompressUtils {
      */
     public void zipIntoZipFileFromDir(final Path destZipFilePath, final Path sourceDirPath,
             final boolean includeSourceDir, final String extensionToMatch) throws IOException, InvalidPathException {
-        ApacheCompressUtils.zipIntoZipFileFromDir(destZipFilePath, sourceDirPath, includeSourceDir, extensionToMatch);
+        this.zipIntoZipFileFromDir(destZipFilePath, sourceDirPath, includeSourceDir, extensionToMatch, null);
+    }
+
+    /**
+     * Zip into an output stream from dir. The stream is left open.
+     *
+     * @param out              the stream to write the zip to
+     * @param sourceDirPath    the source dir path
+     * @param includeSourceDir include the source dir itself as the root dir in the
+     *                         resulting zip file
+     * @param extensionToMatch the extension to match - ignored if null or empty
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public void zipIntoStreamFromDir(final OutputStream out, final Path sourceDirPath,
+            final boolean includeSourceDir, final String extensionToMatch) throws IOException {
+        this.zipIntoStreamFromDir(out, sourceDirPath, includeSourceDir, extensionToMatch, null);
+    }
+
+    /**
+     * Zip into zip file from dir, reporting progress.
+     *
+     * @param destZipFilePath  the dest zip file path
+     * @param sourceDirPath    the source dir path
+     * @param includeSourceDir include the source dir itself as the root dir in the
+     *                         resulting zip file
+     * @param extensionToMatch the extension to match - ignored if null or empty
+     * @param progress         receives the bytes read and written - ignored if
+     *                         null
+     * @throws IOException          Signals that an I/O exception has occurred.
+     * @throws InvalidPathException the invalid path exception
+     */
+    public void zipIntoZipFileFromDir(final Path destZipFilePath, final Path sourceDirPath,
+            final boolean includeSourceDir, final String extensionToMatch, final TransferProgress progress)
+            throws IOException, InvalidPathException {
+        this.zipIntoZipFileFromDir(destZipFilePath, sourceDirPath, includeSourceDir, extensionToMatch, progress,
+                CompressionPolicy.DEFAULT);
+    }
+
+    /**
+     * Zip into zip file from dir, reporting progress and compressing each file
+     * as the policy decides.
+     *
+     * @param destZipFilePath  the dest zip file path
+     * @param sourceDirPath    the source dir path
+     * @param includeSourceDir include the source dir itself as the root dir in the
+     *                         resulting zip file
+     * @param extensionToMatch the extension to match - ignored if null or empty
+     * @param progress         receives the bytes read and written - ignored if
+     *                         null
+     * @param policy           decides how each file is compressed
+     * @throws IOException          Signals that an I/O exception has occurred.
+     * @throws InvalidPathException the invalid path exception
+     */
+    public void zipIntoZipFileFromDir(final Path destZipFilePath, final Path sourceDirPath,
+            final boolean includeSourceDir, final String extensionToMatch, final TransferProgress progress,
+            final CompressionPolicy policy) throws IOException, InvalidPathException {
+        this.zipIntoZipFileFromDir(destZipFilePath, sourceDirPath, includeSourceDir, extensionToMatch, progress,
+                policy, null);
+    }
+
+    /**
+     * Zip into zip file from dir, reporting progress, compressing each file as
+     * the policy decides and updating a digest with the zip file bytes as they
+     * are written.
+     *
+     * @param destZipFilePath  the dest zip file path
+     * @param sourceDirPath    the source dir path
+     * @param includeSourceDir include the source dir itself as the root dir in the
+     *                         resulting zip file
+     * @param extensionToMatch the extension to match - ignored if null or empty
+     * @param progress         receives the bytes read and written - ignored if
+     *                         null
+     * @param policy           decides how each file is compressed
+     * @param digest           receives the zip file bytes - ignored if null
+     * @throws IOException          Signals that an I/O exception has occurred.
+     * @throws InvalidPathException the invalid path exception
+     */
+    public void zipIntoZipFileFromDir(final Path destZipFilePath, final Path sourceDirPath,
+            final boolean includeSourceDir, final String extensionToMatch, final TransferProgress progress,
+            final CompressionPolicy policy, final MessageDigest digest) throws IOException, InvalidPathException {
+        ApacheCompressUtils.zipIntoZipFileFromDir(destZipFilePath, sourceDirPath, includeSourceDir,
+                extensionToMatch, progress, this.getZipThreads(policy), policy, digest);
+    }
+
+    /**
+     * Zip the entries of an asset manifest into a zip file, reading each file
+     * from where it is instead of from a staged copy.
+     *
+     * @param destZipFilePath the dest zip file path
+     * @param manifest        the entries to zip
+     * @param progress        receives the bytes read and written - ignored if
+     *                        null
+     * @param policy          decides how each file is compressed
+     * @throws IOException          Signals that an I/O exception has occurred.
+     * @throws InvalidPathException the invalid path exception
+     */
+    public void zipIntoZipFileFromManifest(final Path destZipFilePath, final AssetManifest manifest,
+            final TransferProgress progress, final CompressionPolicy policy) throws IOException, InvalidPathException {
+        this.zipIntoZipFileFromManifest(destZipFilePath, manifest, progress, policy, null);
+    }
+
+    /**
+     * Zip the entries of an asset manifest into a zip file, updating a digest
+     * with the zip file bytes as they are written.
+     *
+     * @param destZipFilePath the dest zip file path
+     * @param manifest        the entries to zip
+     * @param progress        receives the bytes read and written - ignored if
+     *                        null
+     * @param policy          decides how each file is compressed
+     * @param digest          receives the zip file bytes - ignored if null
+     * @throws IOException          Signals that an I/O exception has occurred.
+     * @throws InvalidPathException the invalid path exception
+     */
+    public void zipIntoZipFileFromManifest(final Path destZipFilePath, final AssetManifest manifest,
+            final TransferProgress progress, final CompressionPolicy policy, final MessageDigest digest)
+            throws IOException, InvalidPathException {
+
+        // make sure we can write to the dest dir
+        final Path parentDir = destZipFilePath.getParent();
+        if ((parentDir == null) || (!Files.isWritable(parentDir))) {
+            throw new InvalidPathException("zip destination directory " + parentDir + " failed writability test",
+                    (parentDir == null) ? "null" : parentDir.toString());
+        }
+
+        try (final OutputStream fos = new FileOutputStream(destZipFilePath.toFile());
+                final OutputStream bfos = ApacheCompressUtils.digesting(new BufferedOutputStream(fos), digest)) {
+            final Path tempDir = (ParallelZipArchiver.TEMP_DIR != null) ? Paths.get(ParallelZipArchiver.TEMP_DIR)
+                    : parentDir;
+            ParallelZipArchiver.zipIntoStreamFromManifest(bfos, manifest, progress, this.getZipThreads(policy),
+                    policy, tempDir);
+        }
+    }
+
+    /**
+     * Zip into an output stream from dir, reporting progress. The stream is left
+     * open.
+     *
+     * @param out              the stream to write the zip to
+     * @param sourceDirPath    the source dir path
+     * @param includeSourceDir include the source dir itself as the root dir in the
+     *                         resulting zip file
+     * @param extensionToMatch the extension to match - ignored if null or empty
+     * @param progress         receives the bytes read and written - ignored if
+     *                         null
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public void zipIntoStreamFromDir(final OutputStream out, final Path sourceDirPath,
+            final boolean includeSourceDir, final String extensionToMatch, final TransferProgress progress)
+            throws IOException {
+        this.zipIntoStreamFromDir(out, sourceDirPath, includeSourceDir, extensionToMatch, progress,
+                CompressionPolicy.DEFAULT);
+    }
+
+    /**
+     * Zip into an output stream from dir, reporting progress and compressing
+     * each file as the policy decides. The stream is left open.
+     *
+     * @param out              the stream to write the zip to
+     * @param sourceDirPath    the source dir path
+     * @param includeSourceDir include the source dir itself as the root dir in the
+     *                         resulting zip file
+     * @param extensionToMatch the extension to match - ignored if null or empty
+     * @param progress         receives the bytes read and written - ignored if
+     *                         null
+     * @param policy           decides how each file is compressed
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public void zipIntoStreamFromDir(final OutputStream out, final Path sourceDirPath,
+            final boolean includeSourceDir, final String extensionToMatch, final TransferProgress progress,
+            final CompressionPolicy policy) throws IOException {
+        ParallelZipArchiver.zipIntoStreamFromDir(out, sourceDirPath, includeSourceDir, extensionToMatch, progress,
+                this.getZipThreads(policy), policy);
     }
 }
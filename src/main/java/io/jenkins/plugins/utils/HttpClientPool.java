@@ -0,0 +1,273 @@
+package io.jenkins.plugins.utils;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+
+import io.jenkins.plugins.utils.HttpWrapper.HTTPException;
+
+/**
+ * Holds one long-lived, pooled http client per CONS3RT site and credential.
+ *
+ * Clients are never closed by callers. Connections are kept alive and reused
+ * between requests (which also lets the SSL context resume TLS sessions), and a
+ * background evictor closes idle or expired connections.
+ *
+ * Requests take a {@link Lease} on the client for as long as they run. A
+ * client replaced because its credential changed is retired: new requests get
+ * the new client, and the retired one is closed once no lease is held and no
+ * response is still being read from it.
+ *
+ * Tunables are read from system properties prefixed with this class name:
+ * maxConnectionsPerRoute, maxConnectionsTotal, idleEvictionSeconds and
+ * connectionTimeToLiveSeconds.
+ */
+public enum HttpClientPool {
+
+	INSTANCE;
+
+	public static final Logger LOGGER = Logger.getLogger(HttpClientPool.class.getName());
+
+	static final int MAX_CONNECTIONS_PER_ROUTE = Integer
+			.getInteger(HttpClientPool.class.getName() + ".maxConnectionsPerRoute", 4);
+
+	static final int MAX_CONNECTIONS_TOTAL = Integer
+			.getInteger(HttpClientPool.class.getName() + ".maxConnectionsTotal", 20);
+
+	static final long IDLE_EVICTION_SECONDS = Long.getLong(HttpClientPool.class.getName() + ".idleEvictionSeconds",
+			60L);
+
+	static final long CONNECTION_TIME_TO_LIVE_SECONDS = Long
+			.getLong(HttpClientPool.class.getName() + ".connectionTimeToLiveSeconds", 300L);
+
+	/**
+	 * Supplies the socket factory for a client that is not yet pooled, so
+	 * that it is only built on a cache miss.
+	 */
+	public interface ContextFactory {
+		SSLConnectionSocketFactory create() throws HTTPException;
+	}
+
+	/**
+	 * The use of a pooled client by one request. Closing the lease hands it
+	 * back; a response read after that still holds its connection, which
+	 * keeps a retired client open until the response is closed.
+	 */
+	public static final class Lease implements AutoCloseable {
+		private final PooledClient pooled;
+
+		private boolean released;
+
+		Lease(final PooledClient pooled) {
+			this.pooled = pooled;
+		}
+
+		public CloseableHttpClient getClient() {
+			return this.pooled.client;
+		}
+
+		@Override
+		public void close() {
+			if (!this.released) {
+				this.released = true;
+				this.pooled.release();
+			}
+		}
+	}
+
+	private static final class PooledClient {
+		final String key;
+		final String fingerprint;
+		final CloseableHttpClient client;
+		private final PoolingHttpClientConnectionManager manager;
+
+		/** The number of leases held. */
+		private int users;
+		private boolean retired;
+		private boolean closed;
+
+		PooledClient(final String key, final String fingerprint, final SSLConnectionSocketFactory context) {
+			this.key = key;
+			this.fingerprint = fingerprint;
+			this.manager = createConnectionManager(context, this);
+			this.client = createClient(this.manager);
+		}
+
+		/**
+		 * Takes a lease, unless the client was retired in the meantime.
+		 */
+		synchronized Lease acquire() {
+			if (this.retired) {
+				return null;
+			}
+			this.users++;
+			return new Lease(this);
+		}
+
+		void release() {
+			synchronized (this) {
+				this.users--;
+			}
+			this.closeIfIdle();
+		}
+
+		void retire() {
+			synchronized (this) {
+				this.retired = true;
+			}
+			this.closeIfIdle();
+		}
+
+		/**
+		 * Closes a retired client once no lease is held and no connection is
+		 * leased for a response that is still being read.
+		 */
+		void closeIfIdle() {
+			synchronized (this) {
+				if (!this.retired || this.closed || this.users > 0
+						|| this.manager.getTotalStats().getLeased() > 0) {
+					return;
+				}
+				this.closed = true;
+			}
+			close(this.key, this.client);
+		}
+	}
+
+	private final ConcurrentMap<String, PooledClient> clients = new ConcurrentHashMap<>();
+
+	/**
+	 * Builds the key that identifies a pooled client.
+	 *
+	 * @param baseUrl            the site url
+	 * @param authenticationType the site authentication type
+	 * @param principal          the certificate credential id or username
+	 * @return the pool key
+	 */
+	public static String key(final String baseUrl, final String authenticationType, final String principal) {
+		return baseUrl + "|" + authenticationType + "|" + principal;
+	}
+
+	/**
+	 * Leases the pooled client for the given key, creating it if needed. A
+	 * pooled client whose credential fingerprint no longer matches is retired
+	 * and replaced.
+	 *
+	 * @param key         the pool key
+	 * @param fingerprint the fingerprint of the credential material
+	 * @param factory     builds the socket factory if the client must be
+	 *                    created
+	 * @return the lease on the shared client, to be closed when the request
+	 *         is done
+	 * @throws HTTPException if the socket factory could not be built
+	 */
+	public Lease acquire(final String key, final String fingerprint, final ContextFactory factory)
+			throws HTTPException {
+		for (;;) {
+			PooledClient pooled = this.clients.get(key);
+			if (pooled == null || !pooled.fingerprint.equals(fingerprint)) {
+				synchronized (this.clients) {
+					pooled = this.clients.get(key);
+					if (pooled == null || !pooled.fingerprint.equals(fingerprint)) {
+						final PooledClient stale = pooled;
+						pooled = new PooledClient(key, fingerprint, factory.create());
+						this.clients.put(key, pooled);
+						LOGGER.log(Level.INFO, "Created pooled http client for " + key);
+
+						if (stale != null) {
+							stale.retire();
+						}
+					}
+				}
+			}
+
+			// a client retired between the lookup and the lease is looked up again
+			final Lease lease = pooled.acquire();
+			if (lease != null) {
+				return lease;
+			}
+		}
+	}
+
+	/**
+	 * Removes the pooled client for the given key, if any. It is closed once
+	 * the requests using it are done.
+	 *
+	 * @param key the pool key
+	 */
+	public void invalidate(final String key) {
+		final PooledClient pooled = this.clients.remove(key);
+		if (pooled != null) {
+			pooled.retire();
+		}
+	}
+
+	/**
+	 * Removes all pooled clients, closing each once the requests using it are
+	 * done.
+	 */
+	public void shutdown() {
+		for (final String key : this.clients.keySet()) {
+			this.invalidate(key);
+		}
+	}
+
+	private static PoolingHttpClientConnectionManager createConnectionManager(
+			final SSLConnectionSocketFactory context, final PooledClient pooled) {
+		final Registry<ConnectionSocketFactory> registry = RegistryBuilder.<ConnectionSocketFactory>create()
+				.register("http", PlainConnectionSocketFactory.getSocketFactory()).register("https", context)
+				.build();
+
+		// a retired client is closed when the last response read from it is done
+		final PoolingHttpClientConnectionManager manager = new PoolingHttpClientConnectionManager(registry, null,
+				null, null, CONNECTION_TIME_TO_LIVE_SECONDS, TimeUnit.SECONDS) {
+			@Override
+			public void releaseConnection(final HttpClientConnection managedConn, final Object state,
+					final long keepalive, final TimeUnit timeUnit) {
+				super.releaseConnection(managedConn, state, keepalive, timeUnit);
+				pooled.closeIfIdle();
+			}
+		};
+		manager.setDefaultMaxPerRoute(MAX_CONNECTIONS_PER_ROUTE);
+		manager.setMaxTotal(Math.max(MAX_CONNECTIONS_TOTAL, MAX_CONNECTIONS_PER_ROUTE));
+		return manager;
+	}
+
+	private static CloseableHttpClient createClient(final PoolingHttpClientConnectionManager manager) {
+		// requests set their own timeouts, these only bound requests that do not
+		final int connect = (int) Timeouts.DEFAULT.getConnectMillis();
+		final RequestConfig defaults = RequestConfig.custom().setConnectTimeout(connect)
+				.setConnectionRequestTimeout(connect)
+				.setSocketTimeout((int) Timeouts.DEFAULT.getReadMillis(Timeouts.Operation.UPLOAD)).build();
+
+		// RetryPolicy in HttpWrapper is the only retry layer, with backoff,
+		// deadlines and circuit breaker accounting
+		return HttpClients.custom().setConnectionManager(manager).setDefaultRequestConfig(defaults)
+				.disableAutomaticRetries().evictExpiredConnections()
+				.evictIdleConnections(IDLE_EVICTION_SECONDS, TimeUnit.SECONDS).build();
+	}
+
+	private static void close(final String key, final CloseableHttpClient client) {
+		try {
+			client.close();
+			LOGGER.log(Level.INFO, "Closed pooled http client for " + key);
+		} catch (IOException e) {
+			LOGGER.log(Level.WARNING, "Caught " + e.getClass().getSimpleName() + " closing pooled http client for "
+					+ key + ". Message: " + e.getMessage());
+		}
+	}
+}
@@ -1,42 +1,52 @@
 package io.jenkins.plugins.utils;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
-import java.security.KeyManagementException;
-import java.security.KeyStoreException;
-import java.security.NoSuchAlgorithmException;
-import java.security.UnrecoverableKeyException;
-import java.security.cert.CertificateException;
-import java.security.cert.X509Certificate;
-import java.util.AbstractMap;
-import java.util.HashSet;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.net.SocketTimeoutException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.Locale;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import javax.net.ssl.SSLContext;
-
+import org.apache.http.Header;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
 import org.apache.http.HttpResponse;
 import org.apache.http.ParseException;
 import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.client.methods.HttpUriRequest;
-import org.apache.http.conn.ssl.NoopHostnameVerifier;
+import org.apache.http.conn.ConnectTimeoutException;
 import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
-import org.apache.http.conn.ssl.TrustStrategy;
 import org.apache.http.entity.ContentType;
+import org.apache.http.entity.HttpEntityWrapper;
 import org.apache.http.entity.StringEntity;
+import org.apache.http.entity.mime.MIME;
 import org.apache.http.entity.mime.MultipartEntityBuilder;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
-import org.apache.http.ssl.SSLContexts;
+import org.apache.http.entity.mime.content.AbstractContentBody;
+import org.apache.http.entity.mime.content.ContentBody;
+import org.apache.http.entity.mime.content.FileBody;
 import org.apache.http.util.EntityUtils;
-import org.json.JSONArray;
 import org.json.JSONObject;
 
 import com.cloudbees.plugins.credentials.common.StandardCertificateCredentials;
@@ -53,20 +63,59 @@ public class HttpWrapper {
 
 	public static final Logger LOGGER = Logger.getLogger(HttpWrapper.class.getName());
 
+	/** Aborts requests that run past their deadline or whose thread was interrupted. */
+	private static final ScheduledThreadPoolExecutor deadlineTimer = createDeadlineTimer();
+
+	/**
+	 * The most of an error response that is read, and of the unread rest of a
+	 * json response that is drained to keep its connection, the rest is
+	 * dropped.
+	 */
+	static final int MAX_ERROR_BODY_BYTES = Math.max(1,
+			Integer.getInteger(HttpWrapper.class.getName() + ".maxErrorBodyBytes", 64 * 1024));
+
+	/** How often a request checks whether the thread sending it was interrupted. */
+	static final long INTERRUPT_POLL_MILLIS = Long.getLong(HttpWrapper.class.getName() + ".interruptPollMillis",
+			250L);
+
 	final String authenticationType;
 	final String baseUrl;
 	final String username;
 	final String token;
 	final StandardCertificateCredentials certificate;
 
-	final SSLConnectionSocketFactory context;
+	/** The fingerprint of the credential material the pooled client is built from. */
+	private final String fingerprint;
+
+	/** Builds the socket factory of the pooled client. */
+	private final HttpClientPool.ContextFactory contextFactory;
+
+	private final RetryPolicy retryPolicy;
+
+	private final CircuitBreaker breaker;
+
+	private final Timeouts timeouts;
+
+	private final long deadline;
+
+	private volatile TransferProgress uploadProgress;
+
+	/**
+	 * Builds wrappers. Serializable, so a build step can hand the connection
+	 * settings to an agent.
+	 */
+	public static class HttpWrapperBuilder implements Serializable {
+
+		private static final long serialVersionUID = 1L;
 
-	public static class HttpWrapperBuilder {
 		private String baseUrl;
 		private String token;
 		private String authenticationType;
 		private String username;
 		private StandardCertificateCredentials certificate;
+		private RetryPolicy retryPolicy = RetryPolicy.DEFAULT;
+		private Timeouts timeouts = Timeouts.DEFAULT;
+		private long deadline;
 
 		public HttpWrapperBuilder(final String baseUrl, final String token, final String authenticationType) {
 			this.baseUrl = baseUrl;
@@ -84,20 +133,100 @@ public class HttpWrapper {
 			return this;
 		}
 
+		public HttpWrapperBuilder retryPolicy(RetryPolicy retryPolicy) {
+			this.retryPolicy = retryPolicy;
+			return this;
+		}
+
+		public HttpWrapperBuilder timeouts(Timeouts timeouts) {
+			this.timeouts = timeouts;
+			return this;
+		}
+
+		/**
+		 * Sets the time every request of the wrapper must finish by.
+		 *
+		 * @param deadline the time in milliseconds since the epoch, or 0 for
+		 *                 no deadline
+		 * @return the builder
+		 */
+		public HttpWrapperBuilder deadline(long deadline) {
+			this.deadline = deadline;
+			return this;
+		}
+
 		public HttpWrapper build() throws HTTPException {
-			return new HttpWrapper(this.baseUrl, this.token, this.authenticationType, this.username, this.certificate);
+			return new HttpWrapper(this.baseUrl, this.token, this.authenticationType, this.username, this.certificate,
+					this.retryPolicy, this.timeouts, this.deadline);
 		}
 	}
 
 	public HttpWrapper(final String url, final String token, final String authenticationType, final String username,
 			final StandardCertificateCredentials certificate) throws HTTPException {
+		this(url, token, authenticationType, username, certificate, RetryPolicy.DEFAULT, Timeouts.DEFAULT, 0);
+	}
+
+	public HttpWrapper(final String url, final String token, final String authenticationType, final String username,
+			final StandardCertificateCredentials certificate, final RetryPolicy retryPolicy, final Timeouts timeouts,
+			final long deadline) throws HTTPException {
 		this.baseUrl = url;
+		this.retryPolicy = (retryPolicy != null) ? retryPolicy : RetryPolicy.DEFAULT;
+		this.breaker = CircuitBreaker.forSite(url);
+		this.timeouts = (timeouts != null) ? timeouts : Timeouts.DEFAULT;
+		this.deadline = deadline;
 		this.token = token;
 		this.authenticationType = authenticationType;
 		this.username = username;
 		this.certificate = certificate;
 
-		this.context = buildConnectionContext();
+		final String fingerprint = SSLContextCache.INSTANCE.fingerprint(authenticationType, certificate);
+		this.fingerprint = fingerprint;
+		this.contextFactory = new HttpClientPool.ContextFactory() {
+			@Override
+			public SSLConnectionSocketFactory create() throws HTTPException {
+				return SSLContextCache.INSTANCE.getSocketFactory(authenticationType, certificate, fingerprint);
+			}
+		};
+
+		// the pooled client is built now, so bad credential material fails here
+		this.leaseClient().close();
+	}
+
+	/**
+	 * Leases the pooled client of the site, to be closed once the request
+	 * is sent. The response holds its connection until it is closed.
+	 */
+	private HttpClientPool.Lease leaseClient() throws HTTPException {
+		return HttpClientPool.INSTANCE.acquire(this.getPoolKey(), this.fingerprint, this.contextFactory);
+	}
+
+	/**
+	 * Sets the progress that file uploads sent through this wrapper report to.
+	 *
+	 * @param uploadProgress the progress, or null to stop reporting
+	 */
+	public void setUploadProgress(final TransferProgress uploadProgress) {
+		this.uploadProgress = uploadProgress;
+	}
+
+	/**
+	 * Wraps a request body so the bytes written to the connection are counted
+	 * by the upload progress, if one is set.
+	 *
+	 * @param entity the request body
+	 * @return the wrapped body, or the body itself if no progress is set
+	 */
+	HttpEntity trackProgress(final HttpEntity entity) {
+		final TransferProgress progress = this.uploadProgress;
+		if (progress == null) {
+			return entity;
+		}
+		return new HttpEntityWrapper(entity) {
+			@Override
+			public void writeTo(final OutputStream out) throws IOException {
+				super.writeTo(new ProgressOutputStream(out, progress));
+			}
+		};
 	}
 
 	public static class HTTPException extends Exception {
@@ -113,40 +242,80 @@ public class HttpWrapper {
 		}
 	}
 
-	private SSLConnectionSocketFactory buildConnectionContext() throws HTTPException {
-		try {
-			final SSLContext sslContext;
-
-			if (Cons3rtPublisher.isCeritificateAuthentication(this.authenticationType)) {
-				sslContext = SSLContexts.custom()
-						.loadKeyMaterial(this.certificate.getKeyStore(),
-								this.certificate.getPassword().getPlainText().toCharArray())
-						.loadTrustMaterial(null, new TrustStrategy() {
-							@Override
-							public boolean isTrusted(final X509Certificate[] chain, final String authType)
-									throws CertificateException {
-								return true;
-							}
-						}).build();
-			} else if (Cons3rtPublisher.isUsernameAuthentication(this.authenticationType)) {
-				sslContext = SSLContexts.custom().loadTrustMaterial(null, new TrustStrategy() {
-					@Override
-					public boolean isTrusted(final X509Certificate[] chain, final String authType)
-							throws CertificateException {
-						return true;
-					}
-				}).build();
-			} else {
-				throw new HTTPException("Received unknown authentication type: " + this.authenticationType
-						+ " could not construct wrapper.");
-			}
+	/**
+	 * A request that ran out of time.
+	 */
+	public static class HTTPTimeoutException extends HTTPException {
+
+		private static final long serialVersionUID = 1L;
+
+		/** What ran out of time. */
+		public enum Kind {
+			/** No connection could be made in time. */
+			CONNECT,
+			/** The site sent nothing for too long. */
+			READ,
+			/** The request, retries included, took too long. */
+			DEADLINE,
+			/** The requests of the build took too long. */
+			BUILD_DEADLINE
+		}
+
+		private final Kind kind;
+
+		public HTTPTimeoutException(final Kind kind, final String message) {
+			super(message);
+			this.kind = kind;
+		}
+
+		public Kind getKind() {
+			return this.kind;
+		}
+	}
+
+	/**
+	 * A request given up on because the thread sending it was interrupted,
+	 * which is how Jenkins aborts a build. It counts neither for nor against
+	 * the circuit breaker of the site; if it was the trial of a half-open
+	 * breaker, the trial is handed back.
+	 */
+	public static class HTTPAbortedException extends HTTPException {
+
+		private static final long serialVersionUID = 1L;
+
+		public HTTPAbortedException(final String message) {
+			super(message);
+		}
+	}
 
-			return new SSLConnectionSocketFactory(sslContext, NoopHostnameVerifier.INSTANCE);
+	/**
+	 * A request the site answered with a status other than 200 or 202.
+	 */
+	public static class HTTPStatusException extends HTTPException {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int status;
+
+		public HTTPStatusException(final int status, final String message) {
+			super(message);
+			this.status = status;
+		}
 
-		} catch (KeyManagementException | UnrecoverableKeyException | NoSuchAlgorithmException | KeyStoreException e) {
-			throw new HTTPException(e.getMessage());
+		public int getStatus() {
+			return this.status;
 		}
+	}
 
+	// Identifies the site and the principal requests are sent as
+	String getPoolKey() {
+		final String principal;
+		if (Cons3rtPublisher.isCeritificateAuthentication(this.authenticationType) && this.certificate != null) {
+			principal = this.certificate.getId();
+		} else {
+			principal = this.username;
+		}
+		return HttpClientPool.key(this.baseUrl, this.authenticationType, principal);
 	}
 
 	private void setHeaders(final HttpUriRequest request) {
@@ -160,12 +329,10 @@ public class HttpWrapper {
 	// HTTP GET
 	private String get(final String url) throws HTTPException {
 
-		try (CloseableHttpClient client = HttpClients.custom().setSSLSocketFactory(this.context).build()) {
-
-			final HttpGet get = new HttpGet(url);
-			setHeaders(get);
+		final HttpGet get = new HttpGet(url);
+		setHeaders(get);
 
-			final HttpResponse response = this.executeHttpRequest(client, get);
+		try (CloseableHttpResponse response = this.executeHttpRequest(get, true, Timeouts.Operation.METADATA)) {
 			return processResponse(response);
 		} catch (IOException e) {
 			throw new HTTPException(
@@ -174,22 +341,53 @@ public class HttpWrapper {
 
 	}
 
-	// HTTP PUT for file upload
-	private String putJson(final String url, final String body) throws HTTPException {
+	// HTTP GET of a json document, parsed as it is read
+	private <T> T getJson(final String url, final JsonResponses.Reader<T> reader) throws HTTPException {
 
-		try (CloseableHttpClient client = HttpClients.custom().setSSLSocketFactory(this.context).build()) {
+		final HttpGet get = new HttpGet(url);
+		this.setHeaders(get);
 
-			final HttpPut put = new HttpPut(url);
-			this.setHeaders(put);
+		try (CloseableHttpResponse response = this.executeHttpRequest(get, true, Timeouts.Operation.METADATA)) {
+			final HttpEntity entity = response.getEntity();
+			if (entity == null) {
+				return reader.empty();
+			}
+			final InputStream in = entity.getContent();
+			if (in == null) {
+				return reader.empty();
+			}
+			try {
+				final T retval = JsonResponses.parse(in, charsetOf(entity), reader);
+				endBody(get, in);
+				return retval;
+			} catch (IOException | RuntimeException e) {
+				// closing the body would read the rest of it
+				get.abort();
+				throw e;
+			}
+		} catch (IOException e) {
+			throw new HTTPException("getJson: caught " + e.getClass().getSimpleName() + " while reading " + url
+					+ ". Message: " + e.getMessage(), e);
+		}
+	}
 
-			put.setHeader("Content-Type", "application/json");
-			
-			if (body != null) {
-                final StringEntity entity = new StringEntity(body);
-                put.setEntity(entity);
-            }
+	// HTTP PUT for json, idempotent or not
+	private String putJson(final String url, final String body, final boolean idempotent) throws HTTPException {
+
+		final HttpPut put = new HttpPut(url);
+		this.setHeaders(put);
+
+		put.setHeader("Content-Type", "application/json");
+		if (!idempotent) {
+			// the same key goes with every attempt, so the server can drop repeats
+			put.setHeader("Idempotency-Key", UUID.randomUUID().toString());
+		}
 
-			final HttpResponse response = this.executeHttpRequest(client, put);
+		if (body != null) {
+			put.setEntity(new StringEntity(body, ContentType.APPLICATION_JSON));
+		}
+
+		try (CloseableHttpResponse response = this.executeHttpRequest(put, idempotent, Timeouts.Operation.LAUNCH)) {
 			return this.processResponse(response);
 		} catch (IOException e) {
 			throw new HTTPException(
@@ -200,23 +398,38 @@ public class HttpWrapper {
 	// HTTP PUT for file upload
 	private String putFile(final String url, File filePart) throws HTTPException {
 
-		try (CloseableHttpClient client = HttpClients.custom().setSSLSocketFactory(this.context).build()) {
+		if (filePart != null && filePart.exists()) {
+			return this.sendMultipart(new HttpPut(url), filePart.getName(),
+					new FileBody(filePart, ContentType.APPLICATION_OCTET_STREAM, filePart.getName()));
+		} else {
+			throw new HTTPException("File to be uploaded was not found or does not exist");
+		}
+	}
+
+	// HTTP Post for file upload
+	private String postFile(final String url, File filePart) throws HTTPException {
+
+		if (filePart != null && filePart.exists()) {
+			return this.sendMultipart(new HttpPost(url), filePart.getName(),
+					new FileBody(filePart, ContentType.APPLICATION_OCTET_STREAM, filePart.getName()));
+		} else {
+			throw new HTTPException("File to be uploaded was not found or does not exist");
+		}
+	}
 
-			final HttpPut put = new HttpPut(url);
-			this.setHeaders(put);
+	private String sendMultipart(final HttpEntityEnclosingRequestBase request, final String filename,
+			final ContentBody filePart) throws HTTPException {
 
-			MultipartEntityBuilder builder = MultipartEntityBuilder.create();
+		this.setHeaders(request);
 
-			if (filePart != null && filePart.exists()) {
-				builder.addTextBody("filename", filePart.getName());
-				builder.addBinaryBody("file", filePart, ContentType.APPLICATION_OCTET_STREAM, filePart.getName());
-				HttpEntity entity = builder.build();
-				put.setEntity(entity);
-			} else {
-				throw new HTTPException("File to be uploaded was not found or does not exist");
-			}
+		MultipartEntityBuilder builder = MultipartEntityBuilder.create();
+		builder.addTextBody("filename", filename);
+		builder.addPart("file", filePart);
+		HttpEntity entity = builder.build();
+		request.setEntity(this.trackProgress(entity));
 
-			final HttpResponse response = this.executeHttpRequest(client, put);
+		try (CloseableHttpResponse response = this.executeHttpRequest(request, isIdempotent(request),
+				Timeouts.Operation.UPLOAD)) {
 			return this.processResponse(response);
 		} catch (IOException e) {
 			throw new HTTPException(
@@ -224,69 +437,422 @@ public class HttpWrapper {
 		}
 	}
 
-	// HTTP Post for file upload
-	private String postFile(final String url, File filePart) throws HTTPException {
+	/**
+	 * Writes upload content straight into a request body.
+	 */
+	public interface StreamingContent {
+		void writeTo(OutputStream out) throws IOException;
+	}
 
-		try (CloseableHttpClient client = HttpClients.custom().setSSLSocketFactory(this.context).build()) {
+	/**
+	 * A multipart file body of unknown length, produced while the request is
+	 * sent. The request goes out with chunked transfer encoding.
+	 */
+	static class StreamingBody extends AbstractContentBody {
 
-			final HttpPost post = new HttpPost(url);
-			this.setHeaders(post);
+		private final String filename;
 
-			MultipartEntityBuilder builder = MultipartEntityBuilder.create();
+		private final StreamingContent content;
 
-			if (filePart != null && filePart.exists()) {
-				builder.addTextBody("filename", filePart.getName());
-				builder.addBinaryBody("file", filePart, ContentType.APPLICATION_OCTET_STREAM, filePart.getName());
-				HttpEntity entity = builder.build();
-				post.setEntity(entity);
-			} else {
-				throw new HTTPException("File to be uploaded was not found or does not exist");
-			}
+		StreamingBody(final String filename, final StreamingContent content) {
+			super(ContentType.APPLICATION_OCTET_STREAM);
+			this.filename = filename;
+			this.content = content;
+		}
+
+		@Override
+		public String getFilename() {
+			return this.filename;
+		}
+
+		@Override
+		public void writeTo(final OutputStream out) throws IOException {
+			this.content.writeTo(out);
+			out.flush();
+		}
 
-			final HttpResponse response = this.executeHttpRequest(client, post);
+		@Override
+		public String getTransferEncoding() {
+			return MIME.ENC_BINARY;
+		}
+
+		@Override
+		public long getContentLength() {
+			return -1;
+		}
+	}
+
+	// Any request whose response body is wanted as a string, with the limits of the given kind of request.
+	// Only uploads of a payload count towards the upload throughput of the site
+	String send(final HttpUriRequest request, final Timeouts.Operation operation) throws HTTPException {
+
+		this.setHeaders(request);
+
+		try (CloseableHttpResponse response = this.executeHttpRequest(request, isIdempotent(request), operation)) {
 			return this.processResponse(response);
 		} catch (IOException e) {
-			throw new HTTPException(
-					"post: caught " + e.getClass().getSimpleName() + " during http post with url parameters", e);
+			throw new HTTPException("send: caught " + e.getClass().getSimpleName() + " during http "
+					+ request.getMethod() + " to " + request.getURI(), e);
 		}
+	}
 
+	// POSTs create something each time, every other request can be repeated
+	private static boolean isIdempotent(final HttpUriRequest request) {
+		return !HttpPost.METHOD_NAME.equals(request.getMethod());
 	}
 
-	private HttpResponse executeHttpRequest(CloseableHttpClient client, HttpUriRequest request) throws HTTPException {
+	/**
+	 * Sends a request, retrying it as the retry policy allows while the site
+	 * is failing, and failing fast while the circuit breaker of the site is
+	 * open. Every attempt gets the connect and read timeouts of the operation,
+	 * and is aborted when the deadline of the operation or of the wrapper
+	 * passes.
+	 */
+	private CloseableHttpResponse executeHttpRequest(final HttpUriRequest request, final boolean idempotent,
+			final Timeouts.Operation operation) throws HTTPException {
+		final HttpEntity entity = (request instanceof HttpEntityEnclosingRequest)
+				? ((HttpEntityEnclosingRequest) request).getEntity()
+				: null;
+		final boolean repeatable = entity == null || entity.isRepeatable();
+		final long bytes = (operation == Timeouts.Operation.UPLOAD) ? this.getUploadBytes(entity) : -1;
+
+		final long start = System.currentTimeMillis();
+		final long operationMillis = this.timeouts.getDeadlineMillis(operation, this.baseUrl, bytes,
+				this.retryPolicy);
+		final long operationDeadline = (operationMillis >= 0) ? start + operationMillis : Long.MAX_VALUE;
+		final boolean buildDeadlineFirst = this.deadline > 0 && this.deadline < operationDeadline;
+		final long deadline = buildDeadlineFirst ? this.deadline : operationDeadline;
+
+		for (int attempt = 1;; ++attempt) {
+			if (Thread.currentThread().isInterrupted()) {
+				throw aborted(request);
+			}
+			final long remaining = deadline - System.currentTimeMillis();
+			if (remaining <= 0) {
+				throw this.deadlineExceeded(request, operation, buildDeadlineFirst, start);
+			}
+			final long trial = this.breaker.acquire();
+			try {
+				this.configureTimeouts(request, operation);
+
+				final long attemptStart = System.currentTimeMillis();
+				final AtomicBoolean deadlinePassed = new AtomicBoolean();
+				final ScheduledFuture<?> abort = (deadline != Long.MAX_VALUE)
+						? scheduleAbort(request, remaining, deadlinePassed)
+						: null;
+				final ScheduledFuture<?> watch = watchInterrupt(request, Thread.currentThread());
+				final CloseableHttpResponse response;
+				try (HttpClientPool.Lease lease = this.leaseClient()) {
+					response = lease.getClient().execute(request);
+				} catch (ClientProtocolException e) {
+					// the request failed in the client and says nothing about the site: no
+					// outcome is recorded and a breaker trial is handed back below
+					final String message = "executeHttpRequest: caught " + e.getClass().getSimpleName()
+							+ " while attempting to make request. Message: " + e.getMessage();
+					LOGGER.log(Level.WARNING, message);
+					throw new HTTPException(message);
+				} catch (IOException e) {
+					if (Thread.currentThread().isInterrupted()) {
+						// aborted by the interrupt watch, the site is not to blame: no
+						// outcome is recorded and a breaker trial is handed back below
+						throw aborted(request);
+					}
+					if (deadlinePassed.get()) {
+						// aborted by the deadline timer. A build out of time says
+						// nothing about the site, a request out of time does
+						if (!buildDeadlineFirst) {
+							this.breaker.recordFailure();
+						}
+						throw this.deadlineExceeded(request, operation, buildDeadlineFirst, start);
+					}
+					this.breaker.recordFailure();
+					final HTTPException failure = this.describeFailure(request, operation, e);
+					LOGGER.log(Level.WARNING, failure.getMessage());
+					// a request that never reached the server can always be sent again
+					if ((RetryPolicy.isConnectFailure(e) || (idempotent && repeatable))
+							&& this.awaitRetry(request, attempt, -1, failure.getMessage(), deadline)) {
+						continue;
+					}
+					throw failure;
+				} finally {
+					if (abort != null) {
+						abort.cancel(false);
+					}
+					watch.cancel(false);
+				}
+
+				final int status = response.getStatusLine().getStatusCode();
+
+				if (status == 200 || status == 202) {
+					this.breaker.recordSuccess();
+					LOGGER.log(Level.INFO, "Response code equaled : " + response.getStatusLine());
+					if (bytes > 0) {
+						Timeouts.recordUpload(this.baseUrl, bytes, System.currentTimeMillis() - attemptStart);
+					}
+					return response;
+				}
+
+				final String message;
+				final long retryAfter;
+				try {
+					LOGGER.log(Level.INFO, "Response code equaled : " + response.getStatusLine());
+					final String http = readErrorBody(request, response.getEntity());
+					LOGGER.log(Level.INFO, http);
+					message = "Response Code returned did not equal 200 or 202. Response: " + http;
+					final Header retryAfterHeader = response.getFirstHeader("Retry-After");
+					retryAfter = RetryPolicy.parseRetryAfter(
+							(retryAfterHeader != null) ? retryAfterHeader.getValue() : null, System.currentTimeMillis());
+				} catch (IOException | ParseException e) {
+					this.breaker.recordFailure();
+					throw new HTTPException("executeHttpRequest: caught " + e.getClass().getSimpleName()
+							+ " while reading error response. Message: " + e.getMessage());
+				} finally {
+					try {
+						response.close();
+					} catch (IOException e) {
+						LOGGER.log(Level.FINE, "Could not close response: " + e.getMessage());
+					}
+				}
+
+				if (!RetryPolicy.isRetryable(status, idempotent)) {
+					// the site is up, the request itself was refused
+					this.breaker.recordSuccess();
+					throw new HTTPStatusException(status, message);
+				}
+				this.breaker.recordFailure();
+				if (!repeatable || !this.awaitRetry(request, attempt, retryAfter, message, deadline)) {
+					throw new HTTPStatusException(status, message);
+				}
+			} finally {
+				// a trial that ended without an outcome is handed back
+				this.breaker.release(trial);
+			}
+		}
+	}
+
+	/**
+	 * Reads at most maxErrorBodyBytes of an error response. Closing the
+	 * response would read the rest to reuse the connection, so the request is
+	 * aborted instead when the body is longer.
+	 */
+	private static String readErrorBody(final HttpUriRequest request, final HttpEntity entity) throws IOException {
+		if (entity == null) {
+			return null;
+		}
+
+		final InputStream in = entity.getContent();
+		if (in == null) {
+			return null;
+		}
+		final ByteArrayOutputStream body = new ByteArrayOutputStream();
+		final byte[] buffer = new byte[8192];
+		int read;
+		while (body.size() < MAX_ERROR_BODY_BYTES
+				&& (read = in.read(buffer, 0, Math.min(buffer.length, MAX_ERROR_BODY_BYTES - body.size()))) != -1) {
+			body.write(buffer, 0, read);
+		}
+
+		final String text = new String(body.toByteArray(), charsetOf(entity));
+		if (body.size() < MAX_ERROR_BODY_BYTES || in.read() == -1) {
+			in.close();
+			return text;
+		}
+		request.abort();
+		return text + "... (truncated after " + MAX_ERROR_BODY_BYTES + " bytes)";
+	}
+
+	/**
+	 * Ends a response body that was read as far as it was needed. Closing it
+	 * would read the rest to reuse the connection, so the request is aborted
+	 * instead when more than maxErrorBodyBytes are left.
+	 */
+	private static void endBody(final HttpUriRequest request, final InputStream in) throws IOException {
+		final byte[] buffer = new byte[8192];
+		long drained = 0;
+		int read = 0;
+		while (drained <= MAX_ERROR_BODY_BYTES && (read = in.read(buffer)) != -1) {
+			drained += read;
+		}
+		if (read == -1) {
+			in.close();
+		} else {
+			request.abort();
+		}
+	}
+
+	private static Charset charsetOf(final HttpEntity entity) {
 		try {
-			final CloseableHttpResponse response = client.execute(request);
-
-			final int status = response.getStatusLine().getStatusCode();
-
-			if (status != 200 && status != 202) {
-				LOGGER.log(Level.INFO, "Response code equaled : " + response.getStatusLine());
-				String http = EntityUtils.toString(response.getEntity());
-				LOGGER.log(Level.INFO, http);
-				throw new HTTPException("Response Code returned did not equal 200 or 202. Response: " + http);
-			} else {
-				LOGGER.log(Level.INFO, "Response code equaled : " + response.getStatusLine());
-				return response;
+			final ContentType type = ContentType.get(entity);
+			if (type != null && type.getCharset() != null) {
+				return type.getCharset();
 			}
-		} catch (ClientProtocolException e) {
-			final String message = "executeHttpRequest: caught " + e.getClass().getSimpleName()
-					+ " while attempting to make request. Message: " + e.getMessage();
-			LOGGER.log(Level.WARNING, message);
-			throw new HTTPException(message);
-		} catch (IOException e) {
-			final String message = "executeHttpRequest: caught " + e.getClass().getSimpleName()
-					+ " while attempting to make request. Message: " + e.getMessage();
-			LOGGER.log(Level.WARNING, message);
-			throw new HTTPException(message);
+		} catch (ParseException | UnsupportedCharsetException e) {
+			LOGGER.log(Level.FINE, "Could not read the charset of a response: " + e.getMessage());
+		}
+		return StandardCharsets.UTF_8;
+	}
+
+	/**
+	 * Gets the size of an upload, from its body or else from the upload
+	 * progress.
+	 */
+	private long getUploadBytes(final HttpEntity entity) {
+		if (entity != null && entity.getContentLength() >= 0) {
+			return entity.getContentLength();
+		}
+		final TransferProgress progress = this.uploadProgress;
+		return (progress != null) ? progress.getExpectedBytes() : -1;
+	}
+
+	/**
+	 * Sets the connect and read timeouts of an attempt. They are not shortened
+	 * to the time left before the deadline, the deadline timer enforces that,
+	 * so each expiry can be told apart.
+	 */
+	private void configureTimeouts(final HttpUriRequest request, final Timeouts.Operation operation) {
+		if (request instanceof HttpRequestBase) {
+			final int connect = (int) this.timeouts.getConnectMillis();
+			((HttpRequestBase) request).setConfig(RequestConfig.custom().setConnectTimeout(connect)
+					.setConnectionRequestTimeout(connect)
+					.setSocketTimeout((int) this.timeouts.getReadMillis(operation)).build());
 		}
 	}
 
+	/**
+	 * Turns a failed attempt into an exception, telling timeouts apart.
+	 */
+	private HTTPException describeFailure(final HttpUriRequest request, final Timeouts.Operation operation,
+			final IOException e) {
+		if (e instanceof ConnectTimeoutException) {
+			return new HTTPTimeoutException(HTTPTimeoutException.Kind.CONNECT,
+					"Connect timeout: could not connect to " + this.baseUrl + " within "
+							+ (this.timeouts.getConnectMillis() / 1000) + " seconds (" + request.getMethod() + " "
+							+ request.getURI() + ")");
+		}
+		if (e instanceof SocketTimeoutException) {
+			return new HTTPTimeoutException(HTTPTimeoutException.Kind.READ,
+					"Read timeout: " + this.baseUrl + " sent nothing for "
+							+ (this.timeouts.getReadMillis(operation) / 1000) + " seconds (" + request.getMethod()
+							+ " " + request.getURI() + ")");
+		}
+		return new HTTPException("executeHttpRequest: caught " + e.getClass().getSimpleName()
+				+ " while attempting to make request. Message: " + e.getMessage());
+	}
+
+	private HTTPTimeoutException deadlineExceeded(final HttpUriRequest request, final Timeouts.Operation operation,
+			final boolean buildDeadline, final long start) {
+		final String target = request.getMethod() + " " + request.getURI();
+		final HTTPTimeoutException e;
+		if (buildDeadline) {
+			e = new HTTPTimeoutException(HTTPTimeoutException.Kind.BUILD_DEADLINE,
+					"Build deadline exceeded: the CONS3RT requests of this build ran out of time during " + target);
+		} else {
+			e = new HTTPTimeoutException(HTTPTimeoutException.Kind.DEADLINE,
+					"Deadline exceeded: " + operation.name().toLowerCase(Locale.ROOT) + " request " + target
+							+ " did not finish within " + ((System.currentTimeMillis() - start) / 1000)
+							+ " seconds");
+		}
+		LOGGER.log(Level.WARNING, e.getMessage());
+		return e;
+	}
+
+	private static ScheduledFuture<?> scheduleAbort(final HttpUriRequest request, final long delayMillis,
+			final AtomicBoolean fired) {
+		return deadlineTimer.schedule(new Runnable() {
+			@Override
+			public void run() {
+				LOGGER.log(Level.WARNING, "Aborting " + request.getMethod() + " " + request.getURI()
+						+ ", it ran past its deadline");
+				fired.set(true);
+				request.abort();
+			}
+		}, delayMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Aborts a request once the thread sending it is interrupted. Blocking
+	 * socket io does not notice interrupts, so without this an aborted build
+	 * would keep streaming its upload until the request finished.
+	 */
+	private static ScheduledFuture<?> watchInterrupt(final HttpUriRequest request, final Thread sender) {
+		return deadlineTimer.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				if (sender.isInterrupted() && !request.isAborted()) {
+					LOGGER.log(Level.WARNING, "Aborting " + request.getMethod() + " " + request.getURI()
+							+ ", the thread sending it was interrupted");
+					request.abort();
+				}
+			}
+		}, INTERRUPT_POLL_MILLIS, INTERRUPT_POLL_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	private static HTTPAbortedException aborted(final HttpUriRequest request) {
+		final HTTPAbortedException e = new HTTPAbortedException(
+				"Aborted " + request.getMethod() + " " + request.getURI() + " as the build was aborted");
+		LOGGER.log(Level.WARNING, e.getMessage());
+		return e;
+	}
+
+	private static ScheduledThreadPoolExecutor createDeadlineTimer() {
+		final ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+			@Override
+			public Thread newThread(final Runnable r) {
+				final Thread thread = new Thread(r, "cons3rt-http-deadlines");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		timer.setRemoveOnCancelPolicy(true);
+		return timer;
+	}
+
+	/**
+	 * Waits before the next attempt of a request.
+	 *
+	 * @return false, if the request has used up its attempts or the server
+	 *         asked for a longer wait than is allowed or than the deadline
+	 *         leaves
+	 */
+	private boolean awaitRetry(final HttpUriRequest request, final int attempt, final long retryAfterMillis,
+			final String failure, final long deadline) throws HTTPException {
+		if (attempt >= this.retryPolicy.getMaxAttempts()) {
+			LOGGER.log(Level.WARNING, "Giving up on " + request.getMethod() + " " + request.getURI() + " after "
+					+ attempt + " attempts");
+			return false;
+		}
+
+		final long wait = this.retryPolicy.backoffMillis(attempt, retryAfterMillis);
+		if (wait < 0) {
+			LOGGER.log(Level.WARNING, "Not retrying " + request.getMethod() + " " + request.getURI()
+					+ ", the server asked to wait " + (retryAfterMillis / 1000) + " seconds");
+			return false;
+		}
+		if (System.currentTimeMillis() + wait >= deadline) {
+			LOGGER.log(Level.WARNING, "Not retrying " + request.getMethod() + " " + request.getURI()
+					+ ", its deadline would pass first");
+			return false;
+		}
+
+		LOGGER.log(Level.INFO, "Attempt " + attempt + " of " + this.retryPolicy.getMaxAttempts() + " of "
+				+ request.getMethod() + " " + request.getURI() + " failed (" + failure + "), retrying in " + wait
+				+ " ms");
+		try {
+			Thread.sleep(wait);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw aborted(request);
+		}
+		return true;
+	}
+
 	private String processResponse(final HttpResponse response) throws HTTPException {
 		try {
 			String retval = null;
 			HttpEntity responseEntity = response.getEntity();
 			if (responseEntity != null) {
 				retval = EntityUtils.toString(responseEntity);
-				LOGGER.log(Level.INFO, retval);
+				logBody(retval);
 			}
 			return retval;
 		} catch (IOException | ParseException e) {
@@ -297,6 +863,21 @@ public class HttpWrapper {
 		}
 	}
 
+	/**
+	 * Logs a response body at FINE, cut to maxErrorBodyBytes characters.
+	 */
+	private static void logBody(final String body) {
+		if (body == null || !LOGGER.isLoggable(Level.FINE)) {
+			return;
+		}
+		if (body.length() > MAX_ERROR_BODY_BYTES) {
+			LOGGER.log(Level.FINE, body.substring(0, MAX_ERROR_BODY_BYTES) + "... (truncated after "
+					+ MAX_ERROR_BODY_BYTES + " characters)");
+		} else {
+			LOGGER.log(Level.FINE, body);
+		}
+	}
+
 	@SuppressWarnings("unused")
 	private JSONObject processJSONObjectFromResponse(final HttpResponse response) throws Exception {
 		try {
@@ -304,7 +885,7 @@ public class HttpWrapper {
 			JSONObject retval = new JSONObject();
 			if (responseEntity != null) {
 				final String returnString = EntityUtils.toString(responseEntity);
-				LOGGER.log(Level.INFO, returnString);
+				logBody(returnString);
 				if (returnString != null && !returnString.isEmpty()) {
 					retval = new JSONObject(returnString);
 				}
@@ -333,102 +914,53 @@ public class HttpWrapper {
 		return this.putFile(url, file);
 	}
 
-	public Set<Entry<String, Integer>> getProjects() throws HTTPException {
-
-		final Set<Entry<String, Integer>> retval = new HashSet<>();
+	public String createAsset(final String filename, final StreamingContent content) throws HTTPException {
+		final String url = this.baseUrl + "/rest/api/import/";
+		return this.sendMultipart(new HttpPost(url), filename, new StreamingBody(filename, content));
+	}
 
-		final String url = this.baseUrl + "/rest/api/projects";
-		final String result = this.get(url);
-		if (result != null && !result.isEmpty()) {
-			final JSONArray projects = new JSONArray(result);
+	public String updateAsset(final Integer assetId, final String filename, final StreamingContent content)
+			throws HTTPException {
+		final String url = this.baseUrl + "/rest/api/software/" + assetId + "/updatecontent";
+		return this.sendMultipart(new HttpPut(url), filename, new StreamingBody(filename, content));
+	}
 
-			for (int i = 0; i < projects.length(); ++i) {
-				JSONObject rec = projects.getJSONObject(i);
-				Integer id = rec.getInt("id");
-				String name = rec.getString("name");
+	public String createAssetChunked(final File file, final File stateDir) throws HTTPException {
+		return new ChunkedUploader(this, "import", file, stateDir).upload();
+	}
 
-				final Entry<String, Integer> entry = new AbstractMap.SimpleEntry<String, Integer>(name, id);
-				retval.add(entry);
-			}
-		}
+	public String updateAssetChunked(final Integer assetId, final File file, final File stateDir)
+			throws HTTPException {
+		return new ChunkedUploader(this, "software/" + assetId + "/updatecontent", file, stateDir).upload();
+	}
 
+	public Set<Entry<String, Integer>> getProjects() throws HTTPException {
+		final Set<Entry<String, Integer>> retval = this.getJson(this.baseUrl + "/rest/api/projects",
+				JsonResponses.NAMED_IDS);
+		LOGGER.log(Level.INFO, "Read " + retval.size() + " projects");
 		return retval;
 	}
 
 	public Set<Entry<String, Integer>> getCloudspaces(final Integer deploymentId) throws HTTPException {
-
-		final Set<Entry<String, Integer>> retval = new HashSet<>();
-
-		final String url = this.baseUrl + "/rest/api/deployments/" + deploymentId + "/validrealms/";
-		final String result = this.get(url);
-		if (result != null && !result.isEmpty()) {
-			final JSONArray cloudspaces = new JSONArray(result);
-
-			for (int i = 0; i < cloudspaces.length(); ++i) {
-				JSONObject rec = cloudspaces.getJSONObject(i);
-				Integer id = rec.getInt("id");
-				String name = rec.getString("name");
-
-				final Entry<String, Integer> entry = new AbstractMap.SimpleEntry<String, Integer>(name, id);
-				retval.add(entry);
-			}
-		}
-
+		final Set<Entry<String, Integer>> retval = this.getJson(
+				this.baseUrl + "/rest/api/deployments/" + deploymentId + "/validrealms/", JsonResponses.NAMED_IDS);
+		LOGGER.log(Level.INFO, "Read " + retval.size() + " cloudspaces of deployment " + deploymentId);
 		return retval;
 	}
 	
 	public Set<String> getRoles(Integer deploymentId) throws HTTPException {
-		final Set<String> retval = new HashSet<>();
-
-		final String url = this.baseUrl + "/rest/api/deployments/" + deploymentId;
-		final String result = this.get(url);
-		
-		HttpWrapper.LOGGER.log(Level.INFO, result);
-		
-		if (result != null && !result.isEmpty()) {
-			
-			final JSONObject deployment = new JSONObject(result);
-			final JSONArray deploymentHosts = deployment.getJSONArray("deploymentHosts");
-			
-			for (int i = 0; i < deploymentHosts.length(); ++i) {
-				JSONObject deploymentHost = deploymentHosts.getJSONObject(i);
-				String role = deploymentHost.getString("systemRole");
-				HttpWrapper.LOGGER.log(Level.INFO, "Adding role: " + role);
-				retval.add(role);
-			}
-		}
-
+		final Set<String> retval = this.getJson(this.baseUrl + "/rest/api/deployments/" + deploymentId,
+				JsonResponses.ROLES);
+		LOGGER.log(Level.INFO, "Read roles of deployment " + deploymentId + ": " + retval);
 		return retval;
 	}
 	
 	public Set<Network> getNetworks(Integer deploymentId, Integer cloudspaceId) throws HTTPException {
-		
-		final Set<Network> retval = new HashSet<>();
-
-		final String url = this.baseUrl + "/rest/api/deployments/" + deploymentId + "/networks/" + cloudspaceId;
-		final String result = this.get(url);
-		
-		HttpWrapper.LOGGER.log(Level.INFO, result);
-		
-		if (result != null && !result.isEmpty()) {
-			
-			final JSONArray networks = new JSONArray(result);
-			
-			for (int i = 0; i < networks.length(); ++i) {
-				
-				JSONObject network = networks.getJSONObject(i);
-				String id = network.getString("identifier");
-				String name = network.getString("name");
-				String cidr = network.getString("cidr");
-				
-				String networkFunction = network.getString("networkFunction");
-				if(!"CONS3RT".equals(networkFunction)) {
-					final Network net = new Network(name, id, cidr);
-					retval.add(net);
-				}
-			}
-		}
-
+		final Set<Network> retval = this.getJson(
+				this.baseUrl + "/rest/api/deployments/" + deploymentId + "/networks/" + cloudspaceId,
+				JsonResponses.NETWORKS);
+		LOGGER.log(Level.INFO, "Read " + retval.size() + " networks of deployment " + deploymentId
+				+ " in cloudspace " + cloudspaceId);
 		return retval;
 	}
 
@@ -437,7 +969,19 @@ public class HttpWrapper {
 		
 		final String json = HttpWrapper.createJsonFromLaunchRequest(launchRequest);
 		HttpWrapper.LOGGER.log(Level.INFO, json);
-		return this.putJson(url, json);
+		return this.putJson(url, json, false);
+	}
+
+	/**
+	 * Releases a deployment run, giving back its cloud resources.
+	 *
+	 * @param deploymentRunId the id launchDeployment returned
+	 * @return the response
+	 * @throws HTTPException if the release failed
+	 */
+	public String releaseDeploymentRun(final String deploymentRunId) throws HTTPException {
+		final String url = this.baseUrl + "/rest/api/drs/" + deploymentRunId.trim() + "/release";
+		return this.putJson(url, null, true);
 	}
 
 	public static String createJsonFromLaunchRequest(final RunConfiguration launchRequest) {
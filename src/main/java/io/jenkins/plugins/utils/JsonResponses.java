@@ -0,0 +1,206 @@
+package io.jenkins.plugins.utils;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.AbstractMap;
+import java.util.HashSet;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+
+import io.jenkins.plugins.datatype.Network;
+
+/**
+ * Reads the metadata responses of a CONS3RT site with a streaming parser,
+ * keeping only the fields the plugin uses. The project lists and deployment
+ * documents of large tenants run to megabytes, so they are never held in
+ * memory whole.
+ */
+public final class JsonResponses {
+
+	/**
+	 * Reads one kind of response.
+	 */
+	public interface Reader<T> {
+
+		T read(JsonReader reader) throws IOException;
+
+		/**
+		 * Gets the value of an empty response.
+		 */
+		T empty();
+	}
+
+	/** Reads arrays of objects with an id and a name, like projects and cloudspaces. */
+	public static final Reader<Set<Entry<String, Integer>>> NAMED_IDS = new Reader<Set<Entry<String, Integer>>>() {
+		@Override
+		public Set<Entry<String, Integer>> read(final JsonReader reader) throws IOException {
+			final Set<Entry<String, Integer>> retval = new HashSet<>();
+			reader.beginArray();
+			while (reader.hasNext()) {
+				Integer id = null;
+				String name = null;
+				reader.beginObject();
+				while (reader.hasNext()) {
+					switch (reader.nextName()) {
+					case "id":
+						id = reader.nextInt();
+						break;
+					case "name":
+						name = nextString(reader);
+						break;
+					default:
+						reader.skipValue();
+					}
+				}
+				reader.endObject();
+				retval.add(new AbstractMap.SimpleEntry<String, Integer>(require(name, "name"), require(id, "id")));
+			}
+			reader.endArray();
+			return retval;
+		}
+
+		@Override
+		public Set<Entry<String, Integer>> empty() {
+			return new HashSet<>();
+		}
+	};
+
+	/**
+	 * Reads the system roles of the hosts of a deployment. Reading stops once
+	 * the hosts are read, the rest of the document is never parsed.
+	 */
+	public static final Reader<Set<String>> ROLES = new Reader<Set<String>>() {
+		@Override
+		public Set<String> read(final JsonReader reader) throws IOException {
+			final Set<String> retval = new HashSet<>();
+			reader.beginObject();
+			while (reader.hasNext()) {
+				if (!"deploymentHosts".equals(reader.nextName())) {
+					reader.skipValue();
+					continue;
+				}
+				reader.beginArray();
+				while (reader.hasNext()) {
+					reader.beginObject();
+					while (reader.hasNext()) {
+						if ("systemRole".equals(reader.nextName())) {
+							final String role = nextString(reader);
+							if (role != null) {
+								retval.add(role);
+							}
+						} else {
+							reader.skipValue();
+						}
+					}
+					reader.endObject();
+				}
+				reader.endArray();
+				return retval;
+			}
+			reader.endObject();
+			return retval;
+		}
+
+		@Override
+		public Set<String> empty() {
+			return new HashSet<>();
+		}
+	};
+
+	/** Reads the networks of a deployment in a cloudspace, leaving out CONS3RT networks. */
+	public static final Reader<Set<Network>> NETWORKS = new Reader<Set<Network>>() {
+		@Override
+		public Set<Network> read(final JsonReader reader) throws IOException {
+			final Set<Network> retval = new HashSet<>();
+			reader.beginArray();
+			while (reader.hasNext()) {
+				String id = null;
+				String name = null;
+				String cidr = null;
+				String networkFunction = null;
+				reader.beginObject();
+				while (reader.hasNext()) {
+					switch (reader.nextName()) {
+					case "identifier":
+						id = nextString(reader);
+						break;
+					case "name":
+						name = nextString(reader);
+						break;
+					case "cidr":
+						cidr = nextString(reader);
+						break;
+					case "networkFunction":
+						networkFunction = nextString(reader);
+						break;
+					default:
+						reader.skipValue();
+					}
+				}
+				reader.endObject();
+				if (!"CONS3RT".equals(networkFunction)) {
+					retval.add(new Network(require(name, "name"), require(id, "identifier"), cidr));
+				}
+			}
+			reader.endArray();
+			return retval;
+		}
+
+		@Override
+		public Set<Network> empty() {
+			return new HashSet<>();
+		}
+	};
+
+	private JsonResponses() {
+	}
+
+	/**
+	 * Parses a response as it is read.
+	 *
+	 * @param in      the response body
+	 * @param charset the charset of the body
+	 * @param reader  reads the kind of response
+	 * @return what the reader read, or its empty value if the body is empty
+	 * @throws IOException if the body could not be read or is not what the
+	 *                     reader expects
+	 */
+	public static <T> T parse(final InputStream in, final Charset charset, final Reader<T> reader)
+			throws IOException {
+		final JsonReader json = new JsonReader(new InputStreamReader(in, charset));
+		try {
+			json.peek();
+		} catch (EOFException e) {
+			return reader.empty();
+		}
+
+		try {
+			return reader.read(json);
+		} catch (IllegalStateException | NumberFormatException e) {
+			// the reader found a value of another type than it expects
+			throw new MalformedJsonException(e.getMessage());
+		}
+	}
+
+	private static String nextString(final JsonReader reader) throws IOException {
+		if (reader.peek() == JsonToken.NULL) {
+			reader.nextNull();
+			return null;
+		}
+		return reader.nextString();
+	}
+
+	private static <T> T require(final T value, final String field) throws MalformedJsonException {
+		if (value == null) {
+			throw new MalformedJsonException("Missing field " + field);
+		}
+		return value;
+	}
+}
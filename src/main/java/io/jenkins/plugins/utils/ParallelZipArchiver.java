@@ -0,0 +1,899 @@
+package io.jenkins.plugins.utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+import org.apache.commons.compress.archivers.zip.UnixStat;
+import org.apache.commons.compress.archivers.zip.Zip64Mode;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.parallel.ScatterGatherBackingStore;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Zips a directory using several threads, with the scatter/gather approach of
+ * commons-compress: worker threads deflate files into backing stores and the
+ * calling thread copies the finished entries into the archive as raw entries,
+ * in directory walk order, with sizes and CRCs in the local headers.
+ *
+ * Every zip is written here, the single-threaded
+ * {@link ApacheCompressUtils#zipIntoStreamFromDir(OutputStream, Path, boolean, String)}
+ * included, which runs with one thread. Deflate output does not depend on the
+ * thread it is made on, so the same input gives the same bytes whatever the
+ * number of threads.
+ *
+ * {@link AssetManifest}s are zipped the same way, with their entries in
+ * manifest order.
+ *
+ * Compressed entries are held in memory up to a shared budget and spill to
+ * temporary files beyond it. At most a few entries per thread are pending at
+ * any time, and spilled entries share a temporary disk budget: a worker that
+ * would go beyond it waits until earlier entries are written, unless its
+ * entry is the next to be written, so only that one entry can exceed it.
+ * Tunables are read from system properties prefixed with this class name:
+ * threads (defaults to the number of processors, at most 4),
+ * memoryBudgetMegabytes, tempBudgetMegabytes and tempDir.
+ */
+public final class ParallelZipArchiver {
+
+    /** The Constant LOGGER. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    /** The most compression threads used by default. */
+    private static final int MAX_DEFAULT_THREADS = 4;
+
+    /** The number of compression threads. */
+    public static final int THREADS = Integer.getInteger(ParallelZipArchiver.class.getName() + ".threads",
+            Math.min(Runtime.getRuntime().availableProcessors(), MAX_DEFAULT_THREADS));
+
+    /** The memory all pending compressed entries may use, in bytes. */
+    static final long MEMORY_BUDGET = Long.getLong(ParallelZipArchiver.class.getName() + ".memoryBudgetMegabytes",
+            64L) * 1024L * 1024L;
+
+    /** The temporary disk space all spilled entries may use, in bytes. */
+    static final long TEMP_BUDGET = Long.getLong(ParallelZipArchiver.class.getName() + ".tempBudgetMegabytes",
+            1024L) * 1024L * 1024L;
+
+    /** The directory spilled entries are written to, if set. */
+    static final String TEMP_DIR = System.getProperty(ParallelZipArchiver.class.getName() + ".tempDir");
+
+    /** The number of pending entries allowed per thread. */
+    private static final int PENDING_ENTRIES_PER_THREAD = 4;
+
+    /** The buffer size used when copying backing stores. */
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    /** Read buffers of the worker threads. */
+    private static final ThreadLocal<byte[]> INPUT_BUFFERS = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[ApacheCompressUtils.COPY_BUFFER_SIZE];
+        }
+    };
+
+    /** Deflate buffers of the worker threads. */
+    private static final ThreadLocal<byte[]> OUTPUT_BUFFERS = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[COPY_BUFFER_SIZE];
+        }
+    };
+
+    /** Numbers the worker threads of concurrent archivers. */
+    private static final AtomicInteger archiverCount = new AtomicInteger();
+
+    /**
+     * Zip into an output stream from dir using several threads. The stream is
+     * left open.
+     *
+     * @param out              the stream to write the zip to
+     * @param sourceDirPath    the source dir path
+     * @param includeSourceDir include source dir as top level dir of zip file
+     * @param extensionToMatch the extension to match - ignored if null or empty
+     * @param progress         receives the bytes read and written - ignored if
+     *                         null
+     * @param threads          the number of compression threads
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public static void zipIntoStreamFromDir(final OutputStream out, final Path sourceDirPath,
+            final boolean includeSourceDir, final String extensionToMatch, final TransferProgress progress,
+            final int threads) throws IOException {
+        zipIntoStreamFromDir(out, sourceDirPath, includeSourceDir, extensionToMatch, progress, threads,
+                CompressionPolicy.DEFAULT, (TEMP_DIR != null) ? Paths.get(TEMP_DIR) : null);
+    }
+
+    /**
+     * Zip into an output stream from dir using several threads, compressing
+     * each file as the policy decides. The stream is left open.
+     *
+     * @param out              the stream to write the zip to
+     * @param sourceDirPath    the source dir path
+     * @param includeSourceDir include source dir as top level dir of zip file
+     * @param extensionToMatch the extension to match - ignored if null or empty
+     * @param progress         receives the bytes read and written - ignored if
+     *                         null
+     * @param threads          the number of compression threads
+     * @param policy           decides how each file is compressed
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public static void zipIntoStreamFromDir(final OutputStream out, final Path sourceDirPath,
+            final boolean includeSourceDir, final String extensionToMatch, final TransferProgress progress,
+            final int threads, final CompressionPolicy policy) throws IOException {
+        zipIntoStreamFromDir(out, sourceDirPath, includeSourceDir, extensionToMatch, progress, threads, policy,
+                (TEMP_DIR != null) ? Paths.get(TEMP_DIR) : null);
+    }
+
+    /**
+     * Zip into an output stream from dir using several threads, spilling to
+     * the given temp dir. The stream is left open.
+     */
+    static void zipIntoStreamFromDir(final OutputStream out, final Path sourceDirPath,
+            final boolean includeSourceDir, final String extensionToMatch, final TransferProgress progress,
+            final int threads, final CompressionPolicy policy, final Path tempDir) throws IOException {
+
+        final OutputStream target;
+        if (progress != null) {
+            progress.setExpectedBytes(ApacheCompressUtils.sizeOfDir(sourceDirPath), true);
+            target = new ProgressOutputStream(new CloseShieldOutputStream(out), progress);
+        } else {
+            target = new CloseShieldOutputStream(out);
+        }
+
+        try (final Pipeline pipeline = new Pipeline(target, progress, threads, policy, tempDir)) {
+
+            final int prefixLength = ApacheCompressUtils.getEntryNamePrefixLength(sourceDirPath, includeSourceDir);
+            final ApacheCompressUtils.DirectoryEntries directories = new ApacheCompressUtils.DirectoryEntries(policy);
+
+            ApacheCompressUtils.walkFileTree(sourceDirPath, new SimpleFileVisitor<Path>() {
+
+                @Override
+                public FileVisitResult preVisitDirectory(final Path dirPath, final BasicFileAttributes attrs) {
+                    directories.enter(attrs);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(final Path dirPath, final IOException exc)
+                        throws IOException {
+                    if (exc != null) {
+                        throw exc;
+                    }
+                    final ZipArchiveEntry entry = directories
+                            .leave(ApacheCompressUtils.getEntryName(dirPath, prefixLength));
+                    if (entry != null) {
+                        pipeline.add(new DirectoryEntry(entry));
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(final Path filePath, final BasicFileAttributes attrs)
+                        throws IOException {
+
+                    if (extensionToMatch != null && !extensionToMatch.isEmpty()
+                            && !filePath.getFileName().toString().endsWith(".".concat(extensionToMatch))) {
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    final ZipArchiveEntry entry = new ZipArchiveEntry(
+                            ApacheCompressUtils.getEntryName(filePath, prefixLength));
+                    ApacheCompressUtils.setEntryTime(entry, attrs.lastModifiedTime().toMillis(), policy);
+
+                    if (attrs.isSymbolicLink()) {
+                        Path realPath = null;
+                        try {
+                            realPath = filePath.toRealPath();
+                        } catch (final IOException ioe) {
+                            LOGGER.warn("visitFile: could not find target for symbolic link entry {} - skipping",
+                                    entry.getName());
+                        }
+
+                        if (realPath != null) {
+                            final String realPathEntryName = ApacheCompressUtils.getEntryName(sourceDirPath,
+                                    realPath, includeSourceDir);
+                            pipeline.add(new SymbolicLinkEntry(entry, realPathEntryName));
+                            directories.entryWritten();
+                        }
+                    } else {
+                        pipeline.submitFile(filePath, entry, attrs.size());
+                        directories.entryWritten();
+                    }
+
+                    return FileVisitResult.CONTINUE;
+                }
+            }, policy.isReproducible());
+
+            pipeline.finish();
+        }
+    }
+
+    /**
+     * Zip the entries of an asset manifest into an output stream using several
+     * threads, spilling to the given temp dir. The stream is left open.
+     *
+     * @param out      the stream to write the zip to
+     * @param manifest the entries to zip
+     * @param progress receives the bytes read and written - ignored if null
+     * @param threads  the number of compression threads
+     * @param policy   decides how each file is compressed
+     * @param tempDir  the directory spilled entries are written to, the
+     *                 default temp dir if null
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    static void zipIntoStreamFromManifest(final OutputStream out, final AssetManifest manifest,
+            final TransferProgress progress, final int threads, final CompressionPolicy policy, final Path tempDir)
+            throws IOException {
+
+        final OutputStream target;
+        if (progress != null) {
+            progress.setExpectedBytes(manifest.getSourceBytes(), true);
+            target = new ProgressOutputStream(new CloseShieldOutputStream(out), progress);
+        } else {
+            target = new CloseShieldOutputStream(out);
+        }
+
+        try (final Pipeline pipeline = new Pipeline(target, progress, threads, policy, tempDir)) {
+            for (final AssetManifest.Entry manifestEntry : ApacheCompressUtils.getManifestEntries(manifest, policy)) {
+                final ZipArchiveEntry entry = new ZipArchiveEntry(manifestEntry.getName());
+                if (manifestEntry.getSource() != null) {
+                    final BasicFileAttributes attrs = Files.readAttributes(manifestEntry.getSource(),
+                            BasicFileAttributes.class);
+                    ApacheCompressUtils.setEntryTime(entry, attrs.lastModifiedTime().toMillis(), policy);
+                    pipeline.submitFile(manifestEntry.getSource(), entry, attrs.size());
+                } else if (manifestEntry.getContent() != null) {
+                    ApacheCompressUtils.setEntryTime(entry, System.currentTimeMillis(), policy);
+                    pipeline.add(new ContentEntry(entry, manifestEntry.getContent(), policy));
+                } else {
+                    ApacheCompressUtils.setEntryTime(entry, System.currentTimeMillis(), policy);
+                    pipeline.add(new DirectoryEntry(entry));
+                }
+            }
+
+            pipeline.finish();
+        }
+    }
+
+    /**
+     * Compresses files on the worker threads and writes the finished entries
+     * to the archive in the order they were added, keeping a bounded number of
+     * entries pending.
+     */
+    private static final class Pipeline implements Closeable {
+
+        private final ZipArchiveOutputStream zaos;
+
+        private final TransferProgress progress;
+
+        private final CompressionPolicy policy;
+
+        private final PreviousZipEntries previous;
+
+        private final CompressedEntryCache cache;
+
+        private final Path tempDir;
+
+        private final AtomicLong memoryBudget = new AtomicLong(MEMORY_BUDGET);
+
+        private final TempBudget tempBudget = new TempBudget(TEMP_BUDGET);
+
+        /** The number of entries added, each is numbered in the order it is written. */
+        private long added;
+
+        /** The number of entries written. */
+        private long written;
+
+        private final Queue<Deflater> deflaters = new ConcurrentLinkedQueue<>();
+
+        private final Deque<Future<PendingEntry>> pending = new ArrayDeque<>();
+
+        private final int maxPending;
+
+        private final ExecutorService executor;
+
+        Pipeline(final OutputStream target, final TransferProgress progress, final int threads,
+                final CompressionPolicy policy, final Path tempDir) {
+            this.progress = progress;
+            this.policy = policy;
+            this.previous = PreviousZipEntries.open(policy);
+            this.cache = CompressedEntryCache.open(policy);
+            this.tempDir = tempDir;
+            this.maxPending = Math.max(1, threads) * PENDING_ENTRIES_PER_THREAD;
+
+            final String threadName = "cons3rt-zip-" + archiverCount.incrementAndGet();
+            this.executor = Executors.newFixedThreadPool(Math.max(1, threads), new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable r) {
+                    final Thread thread = new Thread(r, threadName);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+            this.zaos = new ZipArchiveOutputStream(target);
+            this.zaos.setUseZip64(Zip64Mode.AsNeeded);
+            this.zaos.setLevel(policy.getLevel());
+        }
+
+        /**
+         * Adds an entry that needs no compression work.
+         */
+        void add(final PendingEntry entry) throws IOException {
+            this.added++;
+            this.enqueue(completed(entry));
+        }
+
+        /**
+         * Adds a file, which is compressed or checksummed on a worker thread,
+         * or compared with the previous zip and copied from it if unchanged.
+         * Large deflated files are taken from the compressed entry cache.
+         */
+        void submitFile(final Path filePath, final ZipArchiveEntry entry, final long size) throws IOException {
+            final long sequence = this.added++;
+            this.enqueue(this.executor.submit(new Callable<PendingEntry>() {
+                @Override
+                public PendingEntry call() throws IOException {
+                    if (Pipeline.this.previous != null) {
+                        final ZipArchiveEntry unchanged = Pipeline.this.previous.findUnchanged(entry.getName(),
+                                filePath, size);
+                        if (unchanged != null) {
+                            return new ReusedEntry(entry, unchanged, Pipeline.this.previous);
+                        }
+                    }
+                    if (Pipeline.this.policy.chooseMethod(filePath, size) == ZipEntry.STORED) {
+                        entry.setMethod(ZipEntry.STORED);
+                        entry.setSize(size);
+                        entry.setCompressedSize(size);
+                        entry.setCrc(CompressionPolicy.crc32(filePath));
+                        return new StoredEntry(entry, filePath);
+                    }
+                    if (Pipeline.this.cache != null && Pipeline.this.cache.accepts(size)) {
+                        return new CachedEntry(entry, Pipeline.this.cache.get(filePath));
+                    }
+                    return deflate(filePath, entry, Pipeline.this.policy.getLevel(), Pipeline.this.deflaters,
+                            new BudgetedBackingStore(Pipeline.this.memoryBudget, Pipeline.this.tempBudget, sequence,
+                                    Pipeline.this.tempDir));
+                }
+            }));
+        }
+
+        private void enqueue(final Future<PendingEntry> entry) throws IOException {
+            this.pending.addLast(entry);
+            while (this.pending.size() > this.maxPending) {
+                this.writeNext();
+            }
+        }
+
+        /**
+         * Writes all pending entries.
+         */
+        void finish() throws IOException {
+            while (!this.pending.isEmpty()) {
+                this.writeNext();
+            }
+        }
+
+        /**
+         * Waits for the oldest pending entry and writes it to the archive.
+         */
+        private void writeNext() throws IOException {
+            final PendingEntry entry;
+            try {
+                entry = this.pending.removeFirst().get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while compressing zip entries", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IOException("Compressing zip entry failed: " + e.getCause(), e.getCause());
+            }
+
+            try {
+                entry.writeTo(this.zaos);
+                if (this.progress != null) {
+                    this.progress.addSourceBytes(entry.getSourceBytes());
+                }
+            } finally {
+                entry.close();
+                this.tempBudget.advance(++this.written);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                this.zaos.close();
+            } finally {
+                // workers waiting for temporary disk space give up
+                this.tempBudget.close();
+                for (final Future<PendingEntry> future : this.pending) {
+                    discard(future);
+                }
+                this.executor.shutdownNow();
+                for (Deflater deflater = this.deflaters.poll(); deflater != null; deflater = this.deflaters.poll()) {
+                    deflater.end();
+                }
+                try {
+                    if (this.cache != null) {
+                        this.cache.close();
+                    }
+                } finally {
+                    if (this.previous != null) {
+                        this.previous.close();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Deflates a file into a backing store, on a worker thread. Deflaters are
+     * reused between entries and the read and deflate buffers are pooled per
+     * thread, so small files cost little more than their own bytes.
+     */
+    private static PendingEntry deflate(final Path filePath, final ZipArchiveEntry entry, final int level,
+            final Queue<Deflater> deflaters, final BudgetedBackingStore store) throws IOException {
+        Deflater deflater = deflaters.poll();
+        if (deflater == null) {
+            deflater = new Deflater(level, true);
+        }
+
+        try {
+            final byte[] input = INPUT_BUFFERS.get();
+            final byte[] output = OUTPUT_BUFFERS.get();
+            final ByteBuffer inputBuffer = ByteBuffer.wrap(input);
+            final CRC32 crc = new CRC32();
+            long size = 0;
+
+            try (final FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+                int read;
+                while ((read = channel.read(inputBuffer)) != -1) {
+                    crc.update(input, 0, read);
+                    size += read;
+                    deflater.setInput(input, 0, read);
+                    while (!deflater.needsInput()) {
+                        store.writeOut(output, 0, deflater.deflate(output));
+                    }
+                    inputBuffer.clear();
+                }
+            }
+
+            deflater.finish();
+            while (!deflater.finished()) {
+                store.writeOut(output, 0, deflater.deflate(output));
+            }
+            store.closeForWriting();
+
+            entry.setMethod(ZipEntry.DEFLATED);
+            entry.setSize(size);
+            entry.setCompressedSize(deflater.getBytesWritten());
+            entry.setCrc(crc.getValue());
+            return new CompressedEntry(entry, store);
+        } catch (IOException | RuntimeException e) {
+            store.close();
+            throw e;
+        } finally {
+            deflater.reset();
+            deflaters.offer(deflater);
+        }
+    }
+
+    /**
+     * Waits for an entry that will not be written and releases its store.
+     */
+    private static void discard(final Future<PendingEntry> future) {
+        try {
+            future.get().close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | IOException e) {
+            LOGGER.debug("discard: ignoring {} for abandoned zip entry", e.toString());
+        }
+    }
+
+    private static Future<PendingEntry> completed(final PendingEntry entry) {
+        final FutureTask<PendingEntry> future = new FutureTask<>(new Callable<PendingEntry>() {
+            @Override
+            public PendingEntry call() {
+                return entry;
+            }
+        });
+        future.run();
+        return future;
+    }
+
+    /**
+     * An entry that is ready to be written to the archive.
+     */
+    private abstract static class PendingEntry {
+
+        final ZipArchiveEntry entry;
+
+        PendingEntry(final ZipArchiveEntry entry) {
+            this.entry = entry;
+        }
+
+        abstract void writeTo(ZipArchiveOutputStream zaos) throws IOException;
+
+        long getSourceBytes() {
+            return 0;
+        }
+
+        void close() throws IOException {
+            // nothing to release
+        }
+    }
+
+    private static final class DirectoryEntry extends PendingEntry {
+
+        DirectoryEntry(final ZipArchiveEntry entry) {
+            super(entry);
+        }
+
+        @Override
+        void writeTo(final ZipArchiveOutputStream zaos) throws IOException {
+            try {
+                zaos.putArchiveEntry(this.entry);
+            } finally {
+                zaos.closeArchiveEntry();
+            }
+        }
+    }
+
+    private static final class SymbolicLinkEntry extends PendingEntry {
+
+        private final String target;
+
+        SymbolicLinkEntry(final ZipArchiveEntry entry, final String target) {
+            super(entry);
+            this.target = target;
+        }
+
+        @Override
+        void writeTo(final ZipArchiveOutputStream zaos) throws IOException {
+            this.entry.setUnixMode(UnixStat.LINK_FLAG | UnixStat.DEFAULT_LINK_PERM);
+            zaos.putArchiveEntry(this.entry);
+            try {
+                zaos.write(this.target.getBytes(ApacheCompressUtils.CONS3RT_CHARSET));
+            } finally {
+                zaos.closeArchiveEntry();
+            }
+            LOGGER.info("visitFile: added zip file symbolic link entry {} pointing to target path {}",
+                    this.entry.getName(), this.target);
+        }
+    }
+
+    private static final class StoredEntry extends PendingEntry {
+
+        private final Path filePath;
+
+        StoredEntry(final ZipArchiveEntry entry, final Path filePath) {
+            super(entry);
+            this.filePath = filePath;
+        }
+
+        @Override
+        void writeTo(final ZipArchiveOutputStream zaos) throws IOException {
+            zaos.putArchiveEntry(this.entry);
+            try {
+                ApacheCompressUtils.copyFile(this.filePath, zaos, null);
+            } finally {
+                zaos.closeArchiveEntry();
+            }
+        }
+
+        @Override
+        long getSourceBytes() {
+            return this.entry.getSize();
+        }
+    }
+
+    private static final class ReusedEntry extends PendingEntry {
+
+        private final ZipArchiveEntry unchanged;
+
+        private final PreviousZipEntries previous;
+
+        ReusedEntry(final ZipArchiveEntry entry, final ZipArchiveEntry unchanged, final PreviousZipEntries previous) {
+            super(entry);
+            this.unchanged = unchanged;
+            this.previous = previous;
+        }
+
+        @Override
+        void writeTo(final ZipArchiveOutputStream zaos) throws IOException {
+            this.previous.copyRaw(this.unchanged, this.entry, zaos);
+        }
+
+        @Override
+        long getSourceBytes() {
+            return this.unchanged.getSize();
+        }
+    }
+
+    private static final class CachedEntry extends PendingEntry {
+
+        private final CompressedEntryCache.Payload payload;
+
+        CachedEntry(final ZipArchiveEntry entry, final CompressedEntryCache.Payload payload) {
+            super(entry);
+            this.payload = payload;
+        }
+
+        @Override
+        void writeTo(final ZipArchiveOutputStream zaos) throws IOException {
+            this.payload.writeTo(this.entry, zaos);
+        }
+
+        @Override
+        long getSourceBytes() {
+            return this.payload.getSize();
+        }
+
+        @Override
+        void close() throws IOException {
+            this.payload.close();
+        }
+    }
+
+    private static final class ContentEntry extends PendingEntry {
+
+        private final byte[] content;
+
+        private final CompressionPolicy policy;
+
+        ContentEntry(final ZipArchiveEntry entry, final byte[] content, final CompressionPolicy policy) {
+            super(entry);
+            this.content = content;
+            this.policy = policy;
+        }
+
+        @Override
+        void writeTo(final ZipArchiveOutputStream zaos) throws IOException {
+            ApacheCompressUtils.writeContentEntry(zaos, this.entry, this.content, this.policy);
+        }
+
+        @Override
+        long getSourceBytes() {
+            return this.content.length;
+        }
+    }
+
+    private static final class CompressedEntry extends PendingEntry {
+
+        private final ScatterGatherBackingStore store;
+
+        CompressedEntry(final ZipArchiveEntry entry, final ScatterGatherBackingStore store) {
+            super(entry);
+            this.store = store;
+        }
+
+        @Override
+        void writeTo(final ZipArchiveOutputStream zaos) throws IOException {
+            try (final InputStream raw = this.store.getInputStream()) {
+                zaos.addRawArchiveEntry(this.entry, raw);
+            }
+        }
+
+        @Override
+        long getSourceBytes() {
+            return this.entry.getSize();
+        }
+
+        @Override
+        void close() throws IOException {
+            this.store.close();
+        }
+    }
+
+    /**
+     * The temporary disk space spilled entries may use. Entries are numbered in
+     * the order they are written; the next one to be written may always take
+     * space, so the archive keeps moving, the others wait for it.
+     */
+    static final class TempBudget {
+
+        private long available;
+
+        private long next;
+
+        private boolean closed;
+
+        TempBudget(final long bytes) {
+            this.available = bytes;
+        }
+
+        /**
+         * Takes space for an entry, waiting until there is enough or the entry
+         * is the next to be written.
+         */
+        synchronized void acquire(final long sequence, final long bytes) throws IOException {
+            while (sequence != this.next && this.available < bytes) {
+                if (this.closed) {
+                    throw new IOException("The zip was abandoned while the entry waited for temporary disk space");
+                }
+                try {
+                    this.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for temporary disk space");
+                }
+            }
+            this.available -= bytes;
+        }
+
+        synchronized void release(final long bytes) {
+            this.available += bytes;
+            this.notifyAll();
+        }
+
+        /**
+         * Sets the entry that is written next.
+         */
+        synchronized void advance(final long sequence) {
+            this.next = sequence;
+            this.notifyAll();
+        }
+
+        synchronized void close() {
+            this.closed = true;
+            this.notifyAll();
+        }
+    }
+
+    /**
+     * Keeps compressed data in memory while the shared budget allows it and
+     * spills to a temporary file once it does not, within the shared
+     * temporary disk budget.
+     */
+    static final class BudgetedBackingStore implements ScatterGatherBackingStore {
+
+        private final AtomicLong memoryBudget;
+
+        private final TempBudget tempBudget;
+
+        private final long sequence;
+
+        private final Path tempDir;
+
+        private MemoryBuffer memory = new MemoryBuffer();
+
+        private long reserved;
+
+        private long spilled;
+
+        private Path file;
+
+        private OutputStream fileOut;
+
+        BudgetedBackingStore(final AtomicLong memoryBudget, final TempBudget tempBudget, final long sequence,
+                final Path tempDir) {
+            this.memoryBudget = memoryBudget;
+            this.tempBudget = tempBudget;
+            this.sequence = sequence;
+            this.tempDir = tempDir;
+        }
+
+        @Override
+        public void writeOut(final byte[] data, final int offset, final int length) throws IOException {
+            if (this.fileOut == null) {
+                if (this.memoryBudget.addAndGet(-length) >= 0) {
+                    this.reserved += length;
+                    this.memory.write(data, offset, length);
+                    return;
+                }
+                this.memoryBudget.addAndGet(length);
+                this.spill();
+            }
+            this.takeDiskSpace(length);
+            this.fileOut.write(data, offset, length);
+        }
+
+        private void spill() throws IOException {
+            this.takeDiskSpace(this.memory.size());
+            this.file = (this.tempDir != null) ? Files.createTempFile(this.tempDir, "cons3rt-zip-", ".tmp")
+                    : Files.createTempFile("cons3rt-zip-", ".tmp");
+            this.fileOut = new BufferedOutputStream(Files.newOutputStream(this.file), COPY_BUFFER_SIZE);
+            this.memory.writeTo(this.fileOut);
+            this.release();
+        }
+
+        private void takeDiskSpace(final long bytes) throws IOException {
+            this.tempBudget.acquire(this.sequence, bytes);
+            this.spilled += bytes;
+        }
+
+        private void release() {
+            this.memoryBudget.addAndGet(this.reserved);
+            this.reserved = 0;
+            this.memory = null;
+        }
+
+        @Override
+        public void closeForWriting() throws IOException {
+            if (this.fileOut != null) {
+                this.fileOut.close();
+            }
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            if (this.file != null) {
+                return new BufferedInputStream(Files.newInputStream(this.file), COPY_BUFFER_SIZE);
+            }
+            return this.memory.toInputStream();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                this.closeForWriting();
+            } finally {
+                if (this.memory != null) {
+                    this.release();
+                }
+                try {
+                    if (this.file != null) {
+                        Files.deleteIfExists(this.file);
+                    }
+                } finally {
+                    this.tempBudget.release(this.spilled);
+                    this.spilled = 0;
+                }
+            }
+        }
+    }
+
+    /**
+     * A byte array stream that can be read back without copying.
+     */
+    private static final class MemoryBuffer extends ByteArrayOutputStream {
+
+        InputStream toInputStream() {
+            return new ByteArrayInputStream(this.buf, 0, this.count);
+        }
+    }
+
+    /**
+     * Instantiates a new parallel zip archiver.
+     */
+    private ParallelZipArchiver() {
+        // private ktor
+    }
+}
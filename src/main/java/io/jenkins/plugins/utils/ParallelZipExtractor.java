@@ -0,0 +1,196 @@
+package io.jenkins.plugins.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Extracts a zip file using several threads. The central directory is read
+ * once to plan the extraction: include matching uses a hash set, and each
+ * output directory is created once. File entries are then read through the
+ * random access of {@link ZipFile} on a worker pool. Symbolic links and
+ * entries that cannot be extracted on Windows are handled as in
+ * {@link ApacheCompressUtils#unzipIntoDirFromZipFile(Path, Path, List)}.
+ *
+ * The default number of threads is read from the threads system property
+ * prefixed with this class name and defaults to the number of processors.
+ */
+public final class ParallelZipExtractor {
+
+    /** The Constant LOGGER. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    /** The number of extraction threads. */
+    public static final int THREADS = Integer.getInteger(ParallelZipExtractor.class.getName() + ".threads",
+            Runtime.getRuntime().availableProcessors());
+
+    /** Numbers the worker threads of concurrent extractors. */
+    private static final AtomicInteger extractorCount = new AtomicInteger();
+
+    /**
+     * Unzip into dir from zip file using several threads. The output dir must
+     * exist and be writable.
+     *
+     * @param outputDirPath  the output dir path
+     * @param zipFilePath    the zip file path
+     * @param filesToInclude the files to include - all files if null or empty
+     * @param threads        the number of extraction threads
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    static void unzipIntoDirFromZipFile(final Path outputDirPath, final Path zipFilePath,
+            final Collection<String> filesToInclude, final int threads) throws IOException {
+
+        final boolean includeListProvided = filesToInclude != null && !filesToInclude.isEmpty();
+        final Set<String> localIncludeList = includeListProvided ? new LinkedHashSet<>(filesToInclude)
+                : new LinkedHashSet<String>();
+
+        try (final ZipFile commonsZipFile = new ZipFile(zipFilePath.toFile())) {
+
+            // plan: which directories to create, which files and links to extract
+            final Set<Path> directories = new LinkedHashSet<>();
+            final List<ZipArchiveEntry> files = new ArrayList<>();
+            final List<ZipArchiveEntry> links = new ArrayList<>();
+
+            for (final Enumeration<ZipArchiveEntry> e = commonsZipFile.getEntries(); e.hasMoreElements();) {
+                if (includeListProvided && localIncludeList.isEmpty()) {
+                    break;
+                }
+
+                final ZipArchiveEntry entry = e.nextElement();
+                final String entryName = entry.getName();
+                if (ApacheCompressUtils.isUnextractable(entryName)) {
+                    continue;
+                }
+
+                final Path entryOutputPath = outputDirPath.resolve(entryName);
+                if (entry.isDirectory()) {
+                    if (!includeListProvided || localIncludeList.contains(entryName)) {
+                        directories.add(entryOutputPath);
+                    }
+                } else if (!includeListProvided || localIncludeList.remove(entryName)) {
+                    if (entryOutputPath.getParent() != null) {
+                        directories.add(entryOutputPath.getParent());
+                    }
+                    if (entry.isUnixSymlink()) {
+                        links.add(entry);
+                    } else {
+                        files.add(entry);
+                    }
+                } else {
+                    LOGGER.info("unzipIntoDirFromZipFile: skipping entry {} as it is not on provided list of files to include",
+                            entryName);
+                }
+            }
+
+            for (final Path directory : directories) {
+                Files.createDirectories(directory);
+            }
+
+            extractFiles(commonsZipFile, files, outputDirPath, threads);
+
+            for (final ZipArchiveEntry link : links) {
+                ApacheCompressUtils.createSymbolicLink(commonsZipFile, link, outputDirPath.resolve(link.getName()));
+            }
+
+            LOGGER.info("unzipIntoDirFromZipFile: extracted {} files and {} links into {} directories with {} threads",
+                    files.size(), links.size(), directories.size(), threads);
+        }
+
+        if (includeListProvided && !localIncludeList.isEmpty()) {
+            LOGGER.warn(
+                    "unzipIntoDirFromZipFile: non-empty include list was provided, but one or more entries not found so zip was entirely traversed (remaining entries = {})",
+                    localIncludeList);
+        }
+    }
+
+    private static void extractFiles(final ZipFile zipFile, final List<ZipArchiveEntry> files,
+            final Path outputDirPath, final int threads) throws IOException {
+        if (files.isEmpty()) {
+            return;
+        }
+
+        final String threadName = "cons3rt-unzip-" + extractorCount.incrementAndGet();
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, files.size()),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(final Runnable r) {
+                        final Thread thread = new Thread(r, threadName);
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+
+        try {
+            final List<Future<Void>> futures = new ArrayList<>(files.size());
+            for (final ZipArchiveEntry entry : files) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws IOException {
+                        extract(zipFile, entry, outputDirPath.resolve(entry.getName()));
+                        return null;
+                    }
+                }));
+            }
+
+            for (final Future<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while extracting zip entries", e);
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOException) {
+                        throw (IOException) e.getCause();
+                    }
+                    throw new IOException("Extracting zip entry failed: " + e.getCause(), e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void extract(final ZipFile zipFile, final ZipArchiveEntry entry, final Path entryOutputPath)
+            throws IOException {
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("unzipIntoDirFromZipFile: copying entry {} to {})", entry.getName(), entryOutputPath);
+        }
+
+        final byte[] buffer = ApacheCompressUtils.copyBuffer();
+        try (final InputStream in = zipFile.getInputStream(entry);
+                final OutputStream out = Files.newOutputStream(entryOutputPath)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        }
+    }
+
+    /**
+     * Instantiates a new parallel zip extractor.
+     */
+    private ParallelZipExtractor() {
+        // private ktor
+    }
+}
@@ -0,0 +1,141 @@
+package io.jenkins.plugins.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandles;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The entries of the previous zip of an asset, for rebuilding it
+ * incrementally: a file that has the same name and size as an entry, and the
+ * same modification time or CRC-32, is copied into the new zip as the already
+ * compressed entry instead of being compressed again.
+ *
+ * Reused entries keep the compression method and level they were written
+ * with. Reproducible zips are compared by CRC-32 only, as their entries all
+ * have the same time.
+ */
+public final class PreviousZipEntries implements Closeable {
+
+    /** The Constant LOGGER. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    /** Zip times are kept in two second steps. */
+    private static final long ZIP_TIME_STEP = 2000;
+
+    private final Path zipPath;
+
+    private final ZipFile zipFile;
+
+    private final CompressionPolicy policy;
+
+    private final AtomicLong reusedEntries = new AtomicLong();
+
+    private final AtomicLong reusedBytes = new AtomicLong();
+
+    private PreviousZipEntries(final Path zipPath, final ZipFile zipFile, final CompressionPolicy policy) {
+        this.zipPath = zipPath;
+        this.zipFile = zipFile;
+        this.policy = policy;
+    }
+
+    /**
+     * Opens the previous zip of a policy.
+     *
+     * @param policy the compression policy
+     * @return the entries, or null if the policy has no previous zip or it
+     *         cannot be read
+     */
+    public static PreviousZipEntries open(final CompressionPolicy policy) {
+        if (policy.getPreviousZip() == null) {
+            return null;
+        }
+
+        final Path zipPath = Paths.get(policy.getPreviousZip());
+        try {
+            return new PreviousZipEntries(zipPath, new ZipFile(zipPath.toFile()), policy);
+        } catch (final IOException e) {
+            LOGGER.warn("open: not reusing entries of previous zip {}, it could not be read ({})", zipPath,
+                    e.toString());
+            return null;
+        }
+    }
+
+    /**
+     * Finds the entry of the previous zip a file can be copied from.
+     *
+     * @param name     the entry name
+     * @param filePath the file path
+     * @param size     the file size
+     * @return the previous entry, or null if the file has to be compressed
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public ZipArchiveEntry findUnchanged(final String name, final Path filePath, final long size)
+            throws IOException {
+        final ZipArchiveEntry previous = this.zipFile.getEntry(name);
+        if (previous == null || previous.isDirectory() || previous.isUnixSymlink() || previous.getSize() != size) {
+            return null;
+        }
+        if (previous.getMethod() != ZipEntry.STORED && (previous.getMethod() != ZipEntry.DEFLATED
+                || this.policy.getLevel() == Deflater.NO_COMPRESSION)) {
+            return null;
+        }
+
+        if (!this.policy.isReproducible()) {
+            final long age = Files.getLastModifiedTime(filePath).toMillis() - previous.getTime();
+            if (age >= 0 && age < ZIP_TIME_STEP) {
+                return previous;
+            }
+        }
+        return (CompressionPolicy.crc32(filePath) == previous.getCrc()) ? previous : null;
+    }
+
+    /**
+     * Copies the compressed data of a previous entry into an archive, as a new
+     * entry with its name and time.
+     *
+     * @param previous the previous entry, from {@link #findUnchanged}
+     * @param entry    the new entry
+     * @param zaos     the archive stream
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public void copyRaw(final ZipArchiveEntry previous, final ZipArchiveEntry entry,
+            final ZipArchiveOutputStream zaos) throws IOException {
+        entry.setMethod(previous.getMethod());
+        entry.setCrc(previous.getCrc());
+        entry.setSize(previous.getSize());
+        entry.setCompressedSize(previous.getCompressedSize());
+        try (final InputStream raw = this.zipFile.getRawInputStream(previous)) {
+            zaos.addRawArchiveEntry(entry, raw);
+        }
+        this.reusedEntries.incrementAndGet();
+        this.reusedBytes.addAndGet(previous.getSize());
+    }
+
+    public long getReusedEntries() {
+        return this.reusedEntries.get();
+    }
+
+    public long getReusedBytes() {
+        return this.reusedBytes.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        LOGGER.info("close: reused {} entries ({} bytes) of previous zip {}", this.reusedEntries.get(),
+                this.reusedBytes.get(), this.zipPath);
+        this.zipFile.close();
+    }
+}
@@ -0,0 +1,30 @@
+package io.jenkins.plugins.utils;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Counts the bytes written through it into a TransferProgress.
+ */
+public class ProgressOutputStream extends FilterOutputStream {
+
+	private final TransferProgress progress;
+
+	public ProgressOutputStream(final OutputStream out, final TransferProgress progress) {
+		super(out);
+		this.progress = progress;
+	}
+
+	@Override
+	public void write(final int b) throws IOException {
+		this.out.write(b);
+		this.progress.addBytes(1);
+	}
+
+	@Override
+	public void write(final byte[] b, final int off, final int len) throws IOException {
+		this.out.write(b, off, len);
+		this.progress.addBytes(len);
+	}
+}
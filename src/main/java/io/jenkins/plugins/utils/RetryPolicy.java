@@ -0,0 +1,145 @@
+package io.jenkins.plugins.utils;
+
+import java.io.Serializable;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.UnknownHostException;
+import java.util.Date;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.conn.ConnectTimeoutException;
+
+/**
+ * Decides whether and when a failed CONS3RT request is sent again.
+ *
+ * Idempotent requests (GETs, asset content updates, upload parts) are retried
+ * on connection failures and on 408, 429, 502, 503 and 504 responses. Other
+ * requests (asset imports, deployment launches) are only retried when the
+ * server cannot have acted on them: when no connection could be made, or on a
+ * 429 or 503 response. Requests whose body cannot be sent twice are retried
+ * only when no connection could be made.
+ *
+ * Attempts are spaced by exponential backoff with full jitter, or by the
+ * Retry-After of the response when it has one. Defaults are read from system
+ * properties prefixed with this class name: maxAttempts, initialBackoffMillis,
+ * maxBackoffMillis and maxRetryAfterSeconds.
+ */
+public class RetryPolicy implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/** The policy of requests made with default settings. */
+	public static final RetryPolicy DEFAULT = new RetryPolicy(
+			Integer.getInteger(RetryPolicy.class.getName() + ".maxAttempts", 4),
+			Long.getLong(RetryPolicy.class.getName() + ".initialBackoffMillis", 1000L),
+			Long.getLong(RetryPolicy.class.getName() + ".maxBackoffMillis", 30000L),
+			Long.getLong(RetryPolicy.class.getName() + ".maxRetryAfterSeconds", 300L) * 1000L);
+
+	/** Sends every request once. */
+	public static final RetryPolicy NONE = new RetryPolicy(1, 0, 0, 0);
+
+	private final int maxAttempts;
+
+	private final long initialBackoffMillis;
+
+	private final long maxBackoffMillis;
+
+	private final long maxRetryAfterMillis;
+
+	/**
+	 * Instantiates a new retry policy.
+	 *
+	 * @param maxAttempts          the number of times a request is sent at most
+	 * @param initialBackoffMillis the longest wait before the second attempt
+	 * @param maxBackoffMillis     the longest wait between any two attempts
+	 * @param maxRetryAfterMillis  the longest Retry-After that is waited for,
+	 *                             longer ones fail the request
+	 */
+	public RetryPolicy(final int maxAttempts, final long initialBackoffMillis, final long maxBackoffMillis,
+			final long maxRetryAfterMillis) {
+		this.maxAttempts = Math.max(1, maxAttempts);
+		this.initialBackoffMillis = Math.max(0, initialBackoffMillis);
+		this.maxBackoffMillis = Math.max(this.initialBackoffMillis, maxBackoffMillis);
+		this.maxRetryAfterMillis = Math.max(0, maxRetryAfterMillis);
+	}
+
+	public int getMaxAttempts() {
+		return this.maxAttempts;
+	}
+
+	public long getMaxBackoffMillis() {
+		return this.maxBackoffMillis;
+	}
+
+	/**
+	 * Checks whether a response status is worth another attempt.
+	 *
+	 * @param status     the response status
+	 * @param idempotent whether the request may be applied twice
+	 * @return true, if the request may be sent again
+	 */
+	public static boolean isRetryable(final int status, final boolean idempotent) {
+		switch (status) {
+		case 429:
+		case 503:
+			// the server turned the request away without acting on it
+			return true;
+		case 408:
+		case 502:
+		case 504:
+			return idempotent;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Checks whether a request failed before it reached the server, so it can
+	 * be sent again whatever it is.
+	 *
+	 * @param e the failure
+	 * @return true, if no connection was made
+	 */
+	public static boolean isConnectFailure(final Exception e) {
+		return e instanceof ConnectException || e instanceof ConnectTimeoutException
+				|| e instanceof NoRouteToHostException || e instanceof UnknownHostException;
+	}
+
+	/**
+	 * Gets the time to wait before an attempt.
+	 *
+	 * @param attempt          the attempt that failed, from 1
+	 * @param retryAfterMillis the wait asked for by the server, or -1
+	 * @return the wait in milliseconds, or -1 if the server asked for a longer
+	 *         wait than is allowed
+	 */
+	public long backoffMillis(final int attempt, final long retryAfterMillis) {
+		if (retryAfterMillis >= 0) {
+			return (retryAfterMillis <= this.maxRetryAfterMillis) ? retryAfterMillis : -1;
+		}
+
+		final long ceiling = Math.min(this.maxBackoffMillis,
+				this.initialBackoffMillis << Math.min(attempt - 1, 20));
+		return (ceiling > 0) ? ThreadLocalRandom.current().nextLong(ceiling + 1) : 0;
+	}
+
+	/**
+	 * Parses a Retry-After header, given in seconds or as an http date.
+	 *
+	 * @param value the header value, may be null
+	 * @param now   the current time in milliseconds
+	 * @return the wait in milliseconds, or -1 if there is none
+	 */
+	public static long parseRetryAfter(final String value, final long now) {
+		if (value == null || value.trim().isEmpty()) {
+			return -1;
+		}
+		try {
+			return Math.max(0, Long.parseLong(value.trim()) * 1000L);
+		} catch (NumberFormatException e) {
+			final Date date = DateUtils.parseDate(value.trim());
+			return (date != null) ? Math.max(0, date.getTime() - now) : -1;
+		}
+	}
+}
@@ -0,0 +1,228 @@
+package io.jenkins.plugins.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.Key;
+import java.security.KeyManagementException;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.UnrecoverableKeyException;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+
+import org.apache.http.conn.ssl.NoopHostnameVerifier;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.conn.ssl.TrustStrategy;
+import org.apache.http.ssl.SSLContexts;
+
+import com.cloudbees.plugins.credentials.common.StandardCertificateCredentials;
+import com.cloudbees.plugins.credentials.impl.CertificateCredentialsImpl;
+import com.cloudbees.plugins.credentials.impl.CertificateCredentialsImpl.KeyStoreSource;
+
+import io.jenkins.plugins.Cons3rtPublisher;
+import io.jenkins.plugins.utils.HttpWrapper.HTTPException;
+
+/**
+ * Caches ready-made socket factories so the PKCS#12 key material of a
+ * certificate credential is only loaded once.
+ *
+ * Entries are keyed by credential id and checked against a fingerprint of the
+ * credential content, so an edited credential is picked up automatically. The
+ * client TLS session cache of every context is sized from the sessionCacheSize
+ * and sessionTimeoutSeconds system properties prefixed with this class name.
+ */
+public enum SSLContextCache {
+
+	INSTANCE;
+
+	public static final Logger LOGGER = Logger.getLogger(SSLContextCache.class.getName());
+
+	static final int SESSION_CACHE_SIZE = Integer.getInteger(SSLContextCache.class.getName() + ".sessionCacheSize",
+			100);
+
+	static final int SESSION_TIMEOUT_SECONDS = Integer
+			.getInteger(SSLContextCache.class.getName() + ".sessionTimeoutSeconds", 3600);
+
+	private static final String usernameKey = "username";
+
+	private static final class CachedFactory {
+		final String fingerprint;
+		final SSLConnectionSocketFactory factory;
+
+		CachedFactory(final String fingerprint, final SSLConnectionSocketFactory factory) {
+			this.fingerprint = fingerprint;
+			this.factory = factory;
+		}
+	}
+
+	private final ConcurrentMap<String, CachedFactory> factories = new ConcurrentHashMap<>();
+
+	private static final TrustStrategy trustAll = new TrustStrategy() {
+		@Override
+		public boolean isTrusted(final X509Certificate[] chain, final String authType) throws CertificateException {
+			return true;
+		}
+	};
+
+	/**
+	 * Computes a fingerprint of the connection material for the given
+	 * authentication type. For certificate authentication this is a SHA-256
+	 * digest over the credential id, password and the raw bytes of its keystore,
+	 * so the PKCS#12 content is not decoded each time a wrapper is built. Other
+	 * kinds of certificate credentials fall back to a digest over every private
+	 * key and certificate in the keystore.
+	 *
+	 * @param authenticationType the site authentication type
+	 * @param certificate        the certificate credential, may be null for
+	 *                           username authentication
+	 * @return the fingerprint
+	 * @throws HTTPException if the credential could not be read
+	 */
+	public String fingerprint(final String authenticationType, final StandardCertificateCredentials certificate)
+			throws HTTPException {
+		if (Cons3rtPublisher.isUsernameAuthentication(authenticationType)) {
+			return usernameKey;
+		} else if (!Cons3rtPublisher.isCeritificateAuthentication(authenticationType)) {
+			throw new HTTPException("Received unknown authentication type: " + authenticationType
+					+ " could not construct wrapper.");
+		}
+
+		if (certificate == null) {
+			throw new HTTPException("Certificate authentication requested but no certificate credential was found.");
+		}
+
+		try {
+			final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			digest.update(String.valueOf(certificate.getId()).getBytes(StandardCharsets.UTF_8));
+			digest.update(certificate.getPassword().getPlainText().getBytes(StandardCharsets.UTF_8));
+
+			if (certificate instanceof CertificateCredentialsImpl) {
+				final KeyStoreSource source = ((CertificateCredentialsImpl) certificate).getKeyStoreSource();
+				if (source != null) {
+					digest.update(source.getKeyStoreBytes());
+					return toHex(digest.digest());
+				}
+			}
+
+			final KeyStore keyStore = certificate.getKeyStore();
+			final char[] password = certificate.getPassword().getPlainText().toCharArray();
+			final List<String> aliases = new ArrayList<>(Collections.list(keyStore.aliases()));
+			Collections.sort(aliases);
+
+			for (final String alias : aliases) {
+				digest.update(alias.getBytes(StandardCharsets.UTF_8));
+				// a rotated private key may come with the same certificate
+				if (keyStore.isKeyEntry(alias)) {
+					final Key key = keyStore.getKey(alias, password);
+					if (key != null && key.getEncoded() != null) {
+						digest.update(key.getEncoded());
+					}
+				}
+				final Certificate[] chain = keyStore.getCertificateChain(alias);
+				if (chain != null) {
+					for (final Certificate cert : chain) {
+						digest.update(cert.getEncoded());
+					}
+				} else if (keyStore.getCertificate(alias) != null) {
+					digest.update(keyStore.getCertificate(alias).getEncoded());
+				}
+			}
+
+			return toHex(digest.digest());
+		} catch (NoSuchAlgorithmException | KeyStoreException | UnrecoverableKeyException
+				| CertificateEncodingException e) {
+			throw new HTTPException("fingerprint: caught " + e.getClass().getSimpleName()
+					+ " while reading certificate credential. Message: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Gets the socket factory for the given authentication type, building it
+	 * only if no factory with a matching fingerprint is cached.
+	 *
+	 * @param authenticationType the site authentication type
+	 * @param certificate        the certificate credential, may be null for
+	 *                           username authentication
+	 * @param fingerprint        the fingerprint returned by
+	 *                           {@link #fingerprint(String, StandardCertificateCredentials)}
+	 * @return the socket factory
+	 * @throws HTTPException if the factory could not be built
+	 */
+	public SSLConnectionSocketFactory getSocketFactory(final String authenticationType,
+			final StandardCertificateCredentials certificate, final String fingerprint) throws HTTPException {
+
+		final String key = Cons3rtPublisher.isCeritificateAuthentication(authenticationType) ? certificate.getId()
+				: usernameKey;
+
+		final CachedFactory cached = this.factories.get(key);
+		if (cached != null && cached.fingerprint.equals(fingerprint)) {
+			return cached.factory;
+		}
+
+		if (cached != null) {
+			LOGGER.log(Level.INFO, "Credential " + key + " has changed, rebuilding its SSL context.");
+		}
+
+		final SSLConnectionSocketFactory factory = new SSLConnectionSocketFactory(
+				buildContext(authenticationType, certificate), NoopHostnameVerifier.INSTANCE);
+		this.factories.put(key, new CachedFactory(fingerprint, factory));
+		return factory;
+	}
+
+	/**
+	 * Drops every cached factory.
+	 */
+	public void clear() {
+		this.factories.clear();
+	}
+
+	private static String toHex(final byte[] bytes) {
+		final StringBuilder sb = new StringBuilder();
+		for (final byte b : bytes) {
+			sb.append(String.format("%02x", b));
+		}
+		return sb.toString();
+	}
+
+	private static SSLContext buildContext(final String authenticationType,
+			final StandardCertificateCredentials certificate) throws HTTPException {
+		try {
+			final SSLContext sslContext;
+
+			if (Cons3rtPublisher.isCeritificateAuthentication(authenticationType)) {
+				sslContext = SSLContexts.custom()
+						.loadKeyMaterial(certificate.getKeyStore(),
+								certificate.getPassword().getPlainText().toCharArray())
+						.loadTrustMaterial(null, trustAll).build();
+			} else if (Cons3rtPublisher.isUsernameAuthentication(authenticationType)) {
+				sslContext = SSLContexts.custom().loadTrustMaterial(null, trustAll).build();
+			} else {
+				throw new HTTPException("Received unknown authentication type: " + authenticationType
+						+ " could not construct wrapper.");
+			}
+
+			final SSLSessionContext sessions = sslContext.getClientSessionContext();
+			if (sessions != null) {
+				sessions.setSessionCacheSize(SESSION_CACHE_SIZE);
+				sessions.setSessionTimeout(SESSION_TIMEOUT_SECONDS);
+			}
+
+			return sslContext;
+		} catch (KeyManagementException | UnrecoverableKeyException | NoSuchAlgorithmException | KeyStoreException e) {
+			throw new HTTPException(e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,153 @@
+package io.jenkins.plugins.utils;
+
+import java.io.Serializable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The time limits of requests to a CONS3RT site.
+ *
+ * Each request has a connect timeout, a read timeout (the longest the site
+ * may stay silent) and a deadline for the whole operation, retries included.
+ * Metadata calls and deployment launches may take every attempt of the retry
+ * policy, each up to its connect and read timeouts, plus the longest backoff
+ * between them, so a site that is only slow to answer is reported as a read
+ * timeout and retried rather than cut off by the deadline. Upload
+ * deadlines grow with the size of the upload: the base upload time plus the
+ * time the upload takes at a quarter of the throughput last seen for the
+ * site, or at the configured throughput until an upload to the site has been
+ * seen. Uploads of unknown size, which are streamed, have no deadline of
+ * their own.
+ */
+public class Timeouts implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/** The kinds of request, which have their own limits. */
+	public enum Operation {
+		METADATA, LAUNCH, UPLOAD
+	}
+
+	static final int DEFAULT_CONNECT_SECONDS = 30;
+
+	static final int DEFAULT_METADATA_SECONDS = 60;
+
+	static final int DEFAULT_LAUNCH_SECONDS = 120;
+
+	static final int DEFAULT_UPLOAD_SECONDS = 600;
+
+	static final int DEFAULT_UPLOAD_KILOBYTES_PER_SECOND = 256;
+
+	/** The limits of sites that do not set their own. */
+	public static final Timeouts DEFAULT = of(null, null, null, null, null);
+
+	/** The throughput last seen for uploads to each site, in bytes per second. */
+	private static final ConcurrentMap<String, Double> observedThroughput = new ConcurrentHashMap<>();
+
+	private final long connectMillis;
+
+	private final long metadataMillis;
+
+	private final long launchMillis;
+
+	private final long uploadMillis;
+
+	private final long uploadBytesPerSecond;
+
+	private Timeouts(final long connectMillis, final long metadataMillis, final long launchMillis,
+			final long uploadMillis, final long uploadBytesPerSecond) {
+		this.connectMillis = connectMillis;
+		this.metadataMillis = metadataMillis;
+		this.launchMillis = launchMillis;
+		this.uploadMillis = uploadMillis;
+		this.uploadBytesPerSecond = uploadBytesPerSecond;
+	}
+
+	/**
+	 * Builds the limits from site settings. Missing or invalid settings fall
+	 * back to their defaults.
+	 *
+	 * @param connectSeconds           the connect timeout
+	 * @param metadataSeconds          the time metadata calls may take
+	 * @param launchSeconds            the time deployment launches may take
+	 * @param uploadSeconds            the base time uploads may take, and the
+	 *                                 longest the site may stay silent during
+	 *                                 one
+	 * @param uploadKilobytesPerSecond the upload throughput expected until an
+	 *                                 upload to the site has been seen
+	 * @return the limits
+	 */
+	public static Timeouts of(final Integer connectSeconds, final Integer metadataSeconds,
+			final Integer launchSeconds, final Integer uploadSeconds, final Integer uploadKilobytesPerSecond) {
+		return new Timeouts(orDefault(connectSeconds, DEFAULT_CONNECT_SECONDS) * 1000L,
+				orDefault(metadataSeconds, DEFAULT_METADATA_SECONDS) * 1000L,
+				orDefault(launchSeconds, DEFAULT_LAUNCH_SECONDS) * 1000L,
+				orDefault(uploadSeconds, DEFAULT_UPLOAD_SECONDS) * 1000L,
+				orDefault(uploadKilobytesPerSecond, DEFAULT_UPLOAD_KILOBYTES_PER_SECOND) * 1024L);
+	}
+
+	private static int orDefault(final Integer value, final int defaultValue) {
+		return (value != null && value > 0) ? value : defaultValue;
+	}
+
+	public long getConnectMillis() {
+		return this.connectMillis;
+	}
+
+	/**
+	 * Gets the longest a site may stay silent during a request.
+	 *
+	 * @param operation the kind of request
+	 * @return the read timeout in milliseconds
+	 */
+	public long getReadMillis(final Operation operation) {
+		switch (operation) {
+		case LAUNCH:
+			return this.launchMillis;
+		case UPLOAD:
+			return this.uploadMillis;
+		default:
+			return this.metadataMillis;
+		}
+	}
+
+	/**
+	 * Gets the time an operation may take, retries included.
+	 *
+	 * @param operation the kind of request
+	 * @param site      the site url
+	 * @param bytes     the size of the upload, or -1 if it is not known
+	 * @param retries   the retry policy of the request
+	 * @return the deadline in milliseconds from the start of the operation, or
+	 *         -1 if there is none
+	 */
+	public long getDeadlineMillis(final Operation operation, final String site, final long bytes,
+			final RetryPolicy retries) {
+		if (operation != Operation.UPLOAD) {
+			final int attempts = retries.getMaxAttempts();
+			return attempts * (this.connectMillis + this.getReadMillis(operation))
+					+ (attempts - 1) * retries.getMaxBackoffMillis();
+		}
+		if (bytes < 0) {
+			// streamed uploads are only bounded by the read timeout
+			return -1;
+		}
+
+		final Double observed = observedThroughput.get(site);
+		final double bytesPerSecond = (observed != null) ? observed / 4 : this.uploadBytesPerSecond;
+		return this.uploadMillis + (long) (bytes * 1000d / Math.max(1d, bytesPerSecond));
+	}
+
+	/**
+	 * Records the throughput of a finished upload to a site.
+	 *
+	 * @param site   the site url
+	 * @param bytes  the bytes sent
+	 * @param millis the time the upload took
+	 */
+	public static void recordUpload(final String site, final long bytes, final long millis) {
+		if (bytes > 0 && millis > 0) {
+			observedThroughput.put(site, bytes * 1000d / millis);
+		}
+	}
+}
@@ -0,0 +1,188 @@
+package io.jenkins.plugins.utils;
+
+import java.util.Locale;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import io.jenkins.plugins.datatype.TransferStatistics;
+
+/**
+ * Tracks the bytes moved by one phase (zip or upload) and logs throughput,
+ * compression ratio and ETA through a ContextLogger, at most once per log
+ * interval. The interval is read from the logIntervalSeconds system property
+ * prefixed with this class name.
+ *
+ * Output bytes are what was written (compressed bytes for a zip, bytes on the
+ * wire for an upload). Source bytes are the uncompressed input of a zip. The
+ * ETA is measured against whichever of the two the expected size refers to.
+ */
+public class TransferProgress {
+
+	public static final Logger LOGGER = Logger.getLogger(TransferProgress.class.getName());
+
+	static final long LOG_INTERVAL_MILLIS = Long.getLong(TransferProgress.class.getName() + ".logIntervalSeconds",
+			10L) * 1000L;
+
+	private static final double MEGABYTE = 1024.0 * 1024.0;
+
+	private final ContextLogger log;
+
+	private final String phase;
+
+	private final long startNanos = System.nanoTime();
+
+	private long expectedBytes = -1;
+
+	private boolean expectedIsSource = false;
+
+	private long bytes;
+
+	private long sourceBytes;
+
+	private long lastLogNanos = startNanos;
+
+	private long lastLogBytes;
+
+	private long endNanos = -1;
+
+	public TransferProgress(final ContextLogger log, final String phase) {
+		this.log = log;
+		this.phase = phase;
+	}
+
+	/**
+	 * Sets the expected size of the phase.
+	 *
+	 * @param expectedBytes the expected size, or -1 if unknown
+	 * @param source        whether the size refers to source bytes rather than
+	 *                      output bytes
+	 */
+	public synchronized void setExpectedBytes(final long expectedBytes, final boolean source) {
+		this.expectedBytes = expectedBytes;
+		this.expectedIsSource = source;
+	}
+
+	public synchronized void addBytes(final long count) {
+		this.bytes += count;
+		this.logIfDue();
+	}
+
+	public synchronized void addSourceBytes(final long count) {
+		this.sourceBytes += count;
+		this.logIfDue();
+	}
+
+	/**
+	 * Logs the final figures and returns them.
+	 *
+	 * @return the statistics of the finished phase
+	 */
+	public synchronized TransferStatistics finish() {
+		if (this.endNanos < 0) {
+			this.endNanos = System.nanoTime();
+			this.log("finished: " + describe(this.bytes) + " in " + formatDuration(this.getElapsedMillis() / 1000L)
+					+ ", " + formatRate(this.getAverageBytesPerSecond()) + " average" + this.describeRatio());
+		}
+		return new TransferStatistics(this.phase, this.bytes, this.sourceBytes, this.getElapsedMillis());
+	}
+
+	/**
+	 * Gets the number of bytes the transfer is expected to move.
+	 *
+	 * @return the bytes, or -1 if not known
+	 */
+	public synchronized long getExpectedBytes() {
+		return this.expectedBytes;
+	}
+
+	public synchronized long getBytes() {
+		return this.bytes;
+	}
+
+	public synchronized long getSourceBytes() {
+		return this.sourceBytes;
+	}
+
+	public synchronized long getElapsedMillis() {
+		final long end = (this.endNanos < 0) ? System.nanoTime() : this.endNanos;
+		return (end - this.startNanos) / 1000000L;
+	}
+
+	public synchronized double getAverageBytesPerSecond() {
+		final long millis = Math.max(1L, this.getElapsedMillis());
+		return this.bytes * 1000.0 / millis;
+	}
+
+	private void logIfDue() {
+		final long now = System.nanoTime();
+		final long sinceLastLog = (now - this.lastLogNanos) / 1000000L;
+		if (sinceLastLog < LOG_INTERVAL_MILLIS) {
+			return;
+		}
+
+		final double instantaneous = (this.bytes - this.lastLogBytes) * 1000.0 / Math.max(1L, sinceLastLog);
+		final double average = this.getAverageBytesPerSecond();
+
+		final StringBuilder sb = new StringBuilder();
+		sb.append(describe(this.bytes));
+
+		final long done = this.expectedIsSource ? this.sourceBytes : this.bytes;
+		if (this.expectedBytes > 0) {
+			sb.append(this.expectedIsSource ? " written from " + describe(done) : "");
+			sb.append(" of ");
+			sb.append(describe(this.expectedBytes));
+			sb.append(String.format(Locale.ROOT, " (%d%%)", Math.min(100L, done * 100L / this.expectedBytes)));
+		}
+
+		sb.append(", ");
+		sb.append(formatRate(instantaneous));
+		sb.append(" now, ");
+		sb.append(formatRate(average));
+		sb.append(" average");
+		sb.append(this.describeRatio());
+
+		if (this.expectedBytes > 0 && done > 0 && done < this.expectedBytes) {
+			final double elapsedSeconds = this.getElapsedMillis() / 1000.0;
+			final long remaining = (long) (elapsedSeconds * (this.expectedBytes - done) / done);
+			sb.append(", ETA ");
+			sb.append(formatDuration(remaining));
+		}
+
+		this.log(sb.toString());
+
+		this.lastLogNanos = now;
+		this.lastLogBytes = this.bytes;
+	}
+
+	private String describeRatio() {
+		if (this.sourceBytes > 0) {
+			return String.format(Locale.ROOT, ", compression ratio %.2f", (double) this.bytes / this.sourceBytes);
+		}
+		return "";
+	}
+
+	private void log(final String message) {
+		if (this.log != null) {
+			this.log.log(this.phase + " " + message);
+		} else {
+			LOGGER.log(Level.FINE, this.phase + " " + message);
+		}
+	}
+
+	static String describe(final long bytes) {
+		return String.format(Locale.ROOT, "%.1f MB", bytes / MEGABYTE);
+	}
+
+	static String formatRate(final double bytesPerSecond) {
+		return String.format(Locale.ROOT, "%.1f MB/s", bytesPerSecond / MEGABYTE);
+	}
+
+	static String formatDuration(final long seconds) {
+		if (seconds >= 3600) {
+			return String.format(Locale.ROOT, "%dh %02dm", seconds / 3600, (seconds % 3600) / 60);
+		} else if (seconds >= 60) {
+			return String.format(Locale.ROOT, "%dm %02ds", seconds / 60, seconds % 60);
+		}
+		return seconds + "s";
+	}
+}
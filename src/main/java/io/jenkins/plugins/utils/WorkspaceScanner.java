@@ -0,0 +1,337 @@
+package io.jenkins.plugins.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.file.FileSystemLoopException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import hudson.FilePath;
+import hudson.model.Run;
+import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
+
+/**
+ * Matches several Ant style include patterns against a directory tree in a
+ * single walk.
+ *
+ * Patterns are compiled once. Directories that no pattern can match anything
+ * below are not entered. Matching follows the Ant DirectoryScanner the plugin
+ * used before: case sensitive, '*' and '?' within a name, '**' across
+ * directories, a trailing separator meaning '**', symbolic links followed. Both
+ * matching files and matching directories are returned, as paths relative to
+ * the base directory.
+ *
+ * Results can be kept for the rest of a build with
+ * {@link #scan(Run, FilePath, Collection)}, so later steps of the same build do
+ * not walk the tree again for patterns that were already scanned. Workspaces
+ * given as a {@link FilePath} are walked on the machine they are on.
+ */
+public class WorkspaceScanner {
+
+    /** The Constant LOGGER. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    /** The token that matches any number of directories. */
+    private static final String DEEP_TOKEN = "**";
+
+    /** Scan results by build and pattern, dropped with the build. */
+    private static final Map<Run<?, ?>, Map<String, Set<String>>> buildResults = new WeakHashMap<>();
+
+    /**
+     * A compiled include pattern.
+     */
+    private static final class IncludePattern {
+
+        private final String pattern;
+
+        /** Null for '**', a Pattern for wildcard names, the name otherwise. */
+        private final Object[] tokens;
+
+        private final Set<String> matches = new LinkedHashSet<>();
+
+        IncludePattern(final String pattern) {
+            this.pattern = pattern;
+            String normalized = pattern.replace('\\', '/');
+            if (normalized.endsWith("/")) {
+                normalized = normalized.concat(DEEP_TOKEN);
+            }
+
+            final List<Object> compiled = new ArrayList<>();
+            for (final String token : normalized.split("/")) {
+                if (token.isEmpty()) {
+                    continue;
+                }
+                if (DEEP_TOKEN.equals(token)) {
+                    // consecutive '**' match the same as one
+                    if (compiled.isEmpty() || compiled.get(compiled.size() - 1) != null) {
+                        compiled.add(null);
+                    }
+                } else if (token.indexOf('*') >= 0 || token.indexOf('?') >= 0) {
+                    compiled.add(compileToken(token));
+                } else {
+                    compiled.add(token);
+                }
+            }
+            this.tokens = compiled.toArray();
+        }
+
+        private static Pattern compileToken(final String token) {
+            final StringBuilder regex = new StringBuilder();
+            final StringBuilder literal = new StringBuilder();
+            for (final char c : token.toCharArray()) {
+                if (c == '*' || c == '?') {
+                    if (literal.length() > 0) {
+                        regex.append(Pattern.quote(literal.toString()));
+                        literal.setLength(0);
+                    }
+                    regex.append(c == '*' ? ".*" : ".");
+                } else {
+                    literal.append(c);
+                }
+            }
+            if (literal.length() > 0) {
+                regex.append(Pattern.quote(literal.toString()));
+            }
+            return Pattern.compile(regex.toString(), Pattern.DOTALL);
+        }
+
+        private static boolean matchesToken(final Object token, final String name) {
+            if (token instanceof Pattern) {
+                return ((Pattern) token).matcher(name).matches();
+            }
+            return token.equals(name);
+        }
+
+        /**
+         * Checks whether the pattern matches a whole path.
+         */
+        boolean matches(final String[] path) {
+            return this.matches(0, path, 0);
+        }
+
+        private boolean matches(final int tokenIndex, final String[] path, final int pathIndex) {
+            int t = tokenIndex;
+            int p = pathIndex;
+            while (t < this.tokens.length) {
+                if (this.tokens[t] == null) {
+                    if (t == this.tokens.length - 1) {
+                        return true;
+                    }
+                    for (int skip = p; skip <= path.length; ++skip) {
+                        if (this.matches(t + 1, path, skip)) {
+                            return true;
+                        }
+                    }
+                    return false;
+                }
+                if (p == path.length || !matchesToken(this.tokens[t], path[p])) {
+                    return false;
+                }
+                ++t;
+                ++p;
+            }
+            return p == path.length;
+        }
+
+        /**
+         * Checks whether the pattern can match anything below a directory.
+         */
+        boolean couldMatchBelow(final String[] directory) {
+            for (int i = 0; i < this.tokens.length; ++i) {
+                if (this.tokens[i] == null || i == directory.length) {
+                    return true;
+                }
+                if (!matchesToken(this.tokens[i], directory[i])) {
+                    return false;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Scans a directory on the machine it is on.
+     */
+    private static final class ScanCallable extends MasterToSlaveFileCallable<Map<String, Set<String>>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<String> patterns;
+
+        ScanCallable(final Collection<String> patterns) {
+            this.patterns = new ArrayList<>(patterns);
+        }
+
+        @Override
+        public Map<String, Set<String>> invoke(final File baseDir, final VirtualChannel channel) throws IOException {
+            return scan(baseDir.toPath(), this.patterns);
+        }
+    }
+
+    /**
+     * Private ktor.
+     */
+    private WorkspaceScanner() {
+
+    }
+
+    /**
+     * Scans a directory tree once for all patterns.
+     *
+     * @param baseDir  the base dir
+     * @param patterns the include patterns
+     * @return the matching relative paths, by pattern in the given order
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public static Map<String, Set<String>> scan(final Path baseDir, final Collection<String> patterns)
+            throws IOException {
+        final long start = System.nanoTime();
+        final List<IncludePattern> includes = new ArrayList<>();
+        for (final String pattern : new LinkedHashSet<>(patterns)) {
+            includes.add(new IncludePattern(pattern));
+        }
+
+        final int[] visited = new int[2];
+        if (!includes.isEmpty()) {
+            Files.walkFileTree(baseDir, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE,
+                    new SimpleFileVisitor<Path>() {
+
+                        @Override
+                        public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs) {
+                            ++visited[0];
+                            final String relative = baseDir.relativize(dir).toString();
+                            final String[] path = split(relative);
+                            boolean enter = false;
+                            for (final IncludePattern include : includes) {
+                                if (include.matches(path)) {
+                                    include.matches.add(relative);
+                                }
+                                enter |= include.couldMatchBelow(path);
+                            }
+                            return enter ? FileVisitResult.CONTINUE : FileVisitResult.SKIP_SUBTREE;
+                        }
+
+                        @Override
+                        public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) {
+                            ++visited[1];
+                            final String relative = baseDir.relativize(file).toString();
+                            final String[] path = split(relative);
+                            for (final IncludePattern include : includes) {
+                                if (include.matches(path)) {
+                                    include.matches.add(relative);
+                                }
+                            }
+                            return FileVisitResult.CONTINUE;
+                        }
+
+                        @Override
+                        public FileVisitResult visitFileFailed(final Path file, final IOException exc) {
+                            if (exc instanceof FileSystemLoopException) {
+                                LOGGER.debug("scan: not following symbolic link loop at {}", file);
+                            } else {
+                                LOGGER.warn("scan: skipping {} which could not be read: {}", file, exc.toString());
+                            }
+                            return FileVisitResult.CONTINUE;
+                        }
+                    });
+        }
+
+        final Map<String, Set<String>> results = new LinkedHashMap<>();
+        for (final IncludePattern include : includes) {
+            results.put(include.pattern, Collections.unmodifiableSet(include.matches));
+        }
+        LOGGER.info("scan: matched {} patterns against {} directories and {} files of {} in {} ms", includes.size(),
+                visited[0], visited[1], baseDir, (System.nanoTime() - start) / 1000000);
+        return results;
+    }
+
+    /**
+     * Scans a directory tree once for all patterns, on the machine it is on.
+     *
+     * @param baseDir  the base dir
+     * @param patterns the include patterns
+     * @return the matching relative paths, by pattern in the given order
+     * @throws IOException          Signals that an I/O exception has occurred.
+     * @throws InterruptedException if interrupted while waiting for the agent
+     */
+    public static Map<String, Set<String>> scan(final FilePath baseDir, final Collection<String> patterns)
+            throws IOException, InterruptedException {
+        return baseDir.act(new ScanCallable(patterns));
+    }
+
+    /**
+     * Scans a directory tree for the patterns that were not scanned yet during
+     * the build, in a single walk on the machine it is on, and keeps the
+     * results for the rest of the build. Files created after a pattern was
+     * scanned are not seen by it.
+     *
+     * @param build    the build
+     * @param baseDir  the base dir
+     * @param patterns the include patterns
+     * @return the matching relative paths, by pattern in the given order
+     * @throws IOException          Signals that an I/O exception has occurred.
+     * @throws InterruptedException if interrupted while waiting for the agent
+     */
+    public static Map<String, Set<String>> scan(final Run<?, ?> build, final FilePath baseDir,
+            final Collection<String> patterns) throws IOException, InterruptedException {
+        final String prefix = baseDir.getRemote() + File.pathSeparator;
+        final List<String> missing = new ArrayList<>();
+        final Map<String, Set<String>> results = new LinkedHashMap<>();
+
+        synchronized (buildResults) {
+            final Map<String, Set<String>> cached = buildResults.get(build);
+            for (final String pattern : patterns) {
+                final Set<String> matches = (cached != null) ? cached.get(prefix + pattern) : null;
+                if (matches == null) {
+                    missing.add(pattern);
+                }
+                results.put(pattern, matches);
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            final Map<String, Set<String>> scanned = scan(baseDir, missing);
+            results.putAll(scanned);
+            synchronized (buildResults) {
+                Map<String, Set<String>> cached = buildResults.get(build);
+                if (cached == null) {
+                    cached = new LinkedHashMap<>();
+                    buildResults.put(build, cached);
+                }
+                for (final Map.Entry<String, Set<String>> entry : scanned.entrySet()) {
+                    cached.put(prefix + entry.getKey(), entry.getValue());
+                }
+            }
+        } else {
+            LOGGER.debug("scan: reusing the results of this build for {} patterns", patterns.size());
+        }
+        return results;
+    }
+
+    private static String[] split(final String relativePath) {
+        if (relativePath.isEmpty()) {
+            return new String[0];
+        }
+        return relativePath.split(Pattern.quote(File.separator));
+    }
+}
@@ -0,0 +1,261 @@
+package io.jenkins.plugins.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandles;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.compress.archivers.zip.ZipMethod;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The central directory of a zip file, read once and kept in memory.
+ *
+ * Entries are looked up by name in a hash map, so listings, sizes and CRCs are
+ * answered without reopening the archive. Entry contents are read straight
+ * from the recorded data offset with a single positional read. An index
+ * belongs to one version of the file: {@link #isCurrent(BasicFileAttributes)}
+ * compares the size and modification time it was built from.
+ */
+public class ZipCentralDirectoryIndex {
+
+    /** The Constant LOGGER. */
+    private static final Logger LOGGER = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+    /** The data offset of entries that have to be read through {@link ZipFile}. */
+    private static final long UNKNOWN_OFFSET = -1;
+
+    private final Path zipFilePath;
+
+    private final long fileSize;
+
+    private final long lastModified;
+
+    private final List<String> names;
+
+    private final Map<String, IndexedEntry> entries;
+
+    /**
+     * What the index keeps of each entry.
+     */
+    public static final class IndexedEntry {
+
+        private final String name;
+
+        private final int method;
+
+        private final long crc;
+
+        private final long size;
+
+        private final long compressedSize;
+
+        private final long dataOffset;
+
+        private final boolean directory;
+
+        private final boolean symbolicLink;
+
+        private IndexedEntry(final ZipArchiveEntry entry, final long dataOffset) {
+            this.name = entry.getName();
+            this.method = entry.getMethod();
+            this.crc = entry.getCrc();
+            this.size = entry.getSize();
+            this.compressedSize = entry.getCompressedSize();
+            this.dataOffset = dataOffset;
+            this.directory = entry.isDirectory();
+            this.symbolicLink = entry.isUnixSymlink();
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public int getMethod() {
+            return this.method;
+        }
+
+        public long getCrc() {
+            return this.crc;
+        }
+
+        public long getSize() {
+            return this.size;
+        }
+
+        public long getCompressedSize() {
+            return this.compressedSize;
+        }
+
+        public boolean isDirectory() {
+            return this.directory;
+        }
+
+        public boolean isSymbolicLink() {
+            return this.symbolicLink;
+        }
+    }
+
+    private ZipCentralDirectoryIndex(final Path zipFilePath, final BasicFileAttributes attributes,
+            final List<String> names, final Map<String, IndexedEntry> entries) {
+        this.zipFilePath = zipFilePath;
+        this.fileSize = attributes.size();
+        this.lastModified = attributes.lastModifiedTime().toMillis();
+        this.names = Collections.unmodifiableList(names);
+        this.entries = entries;
+    }
+
+    /**
+     * Reads the central directory of a zip file.
+     *
+     * @param zipFilePath the zip file path
+     * @param attributes  the attributes of the zip file, read before it is
+     *                    opened
+     * @return the index
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public static ZipCentralDirectoryIndex read(final Path zipFilePath, final BasicFileAttributes attributes)
+            throws IOException {
+        final long start = System.nanoTime();
+        final List<String> names = new ArrayList<>();
+        final Map<String, IndexedEntry> entries = new HashMap<>();
+        try (final ZipFile zipFile = new ZipFile(zipFilePath.toFile())) {
+            for (final Enumeration<ZipArchiveEntry> e = zipFile.getEntries(); e.hasMoreElements();) {
+                final ZipArchiveEntry entry = e.nextElement();
+                names.add(entry.getName());
+                // Like ZipFile.getEntry, the first of several entries with one name wins
+                if (!entries.containsKey(entry.getName())) {
+                    entries.put(entry.getName(), new IndexedEntry(entry, dataOffset(zipFile, entry)));
+                }
+            }
+        }
+        LOGGER.debug("read: indexed {} entries of {} in {} ms", names.size(), zipFilePath,
+                (System.nanoTime() - start) / 1000000);
+        return new ZipCentralDirectoryIndex(zipFilePath, attributes, names, entries);
+    }
+
+    /**
+     * Finds where the data of an entry starts, if the index can read it on its
+     * own. Newer commons-compress versions only resolve the local header when
+     * the entry is first opened.
+     */
+    private static long dataOffset(final ZipFile zipFile, final ZipArchiveEntry entry) throws IOException {
+        if (entry.isDirectory() || entry.getGeneralPurposeBit().usesEncryption()
+                || (entry.getMethod() != ZipEntry.STORED && entry.getMethod() != ZipMethod.DEFLATED.getCode())
+                || entry.getCompressedSize() < 0 || entry.getCompressedSize() >= Integer.MAX_VALUE - 1) {
+            return UNKNOWN_OFFSET;
+        }
+        if (entry.getDataOffset() < 0) {
+            try (final InputStream raw = zipFile.getRawInputStream(entry)) {
+                // Opening the raw stream resolves the local header
+            }
+        }
+        return entry.getDataOffset() < 0 ? UNKNOWN_OFFSET : entry.getDataOffset();
+    }
+
+    /**
+     * Checks whether the index still describes the file.
+     *
+     * @param attributes the current attributes of the zip file
+     * @return true, if the size and modification time are unchanged
+     */
+    public boolean isCurrent(final BasicFileAttributes attributes) {
+        return attributes.size() == this.fileSize && attributes.lastModifiedTime().toMillis() == this.lastModified;
+    }
+
+    public Path getZipFilePath() {
+        return this.zipFilePath;
+    }
+
+    /**
+     * Gets the entry names in central directory order.
+     *
+     * @return the names
+     */
+    public List<String> getNames() {
+        return this.names;
+    }
+
+    /**
+     * Gets an entry.
+     *
+     * @param name the entry name
+     * @return the entry, or null if the zip has no such entry
+     */
+    public IndexedEntry getEntry(final String name) {
+        return this.entries.get(name);
+    }
+
+    public boolean contains(final String name) {
+        return this.entries.containsKey(name);
+    }
+
+    /**
+     * Reads an entry as a string.
+     *
+     * @param name the entry name
+     * @return the entry contents, or null if the zip has no such entry
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public String getEntryAsString(final String name) throws IOException {
+        final IndexedEntry entry = this.entries.get(name);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.dataOffset == UNKNOWN_OFFSET) {
+            return ApacheCompressUtils.getZipFileEntryAsString(this.zipFilePath, name);
+        }
+
+        // One spare byte, as the inflater may need a dummy byte after raw deflate data
+        final byte[] data = new byte[(int) entry.compressedSize + 1];
+        final ByteBuffer buffer = ByteBuffer.wrap(data, 0, (int) entry.compressedSize);
+        try (final FileChannel channel = FileChannel.open(this.zipFilePath, StandardOpenOption.READ)) {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, entry.dataOffset + buffer.position()) < 0) {
+                    throw new EOFException("Unexpected end of " + this.zipFilePath + " reading " + name);
+                }
+            }
+        }
+
+        if (entry.method == ZipEntry.STORED) {
+            return new String(data, 0, (int) entry.compressedSize, ApacheCompressUtils.CONS3RT_CHARSET);
+        }
+        final Inflater inflater = new Inflater(true);
+        try (final InputStream in = new InflaterInputStream(new ByteArrayInputStream(data), inflater)) {
+            return IOUtils.toString(in, ApacheCompressUtils.CONS3RT_CHARSET);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Reads the attributes an index is keyed by.
+     *
+     * @param zipFilePath the zip file path
+     * @return the attributes
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    static BasicFileAttributes attributesOf(final Path zipFilePath) throws IOException {
+        return Files.readAttributes(zipFilePath, BasicFileAttributes.class);
+    }
+}
@@ -0,0 +1,105 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import io.jenkins.plugins.utils.AssetBuildCache;
+import io.jenkins.plugins.utils.AssetManifest;
+
+public class AssetBuildCacheTests {
+
+	@Rule public JenkinsRule j = new JenkinsRule();
+
+	@Test
+	public void fingerprintChangesWithAnyInput() throws Exception {
+		final Path source = Files.createTempDirectory("build-cache-inputs");
+		final Path script = source.resolve("install.sh");
+		Files.write(script, "echo install\n".getBytes(StandardCharsets.UTF_8));
+
+		final AssetManifest manifest = new AssetManifest();
+		manifest.addContent("asset.properties", "generated at some time".getBytes(StandardCharsets.UTF_8));
+		manifest.addFile("scripts/install.sh", script);
+		final String fingerprint = AssetBuildCache.fingerprint(manifest, "name=test");
+
+		final AssetManifest regenerated = new AssetManifest();
+		regenerated.addFile("scripts/install.sh", script);
+		regenerated.addContent("asset.properties", "generated later".getBytes(StandardCharsets.UTF_8));
+		assertEquals(fingerprint, AssetBuildCache.fingerprint(regenerated, "name=test"));
+
+		assertNotEquals(fingerprint, AssetBuildCache.fingerprint(manifest, "name=other"));
+		Files.setLastModifiedTime(script, FileTime.fromMillis(0));
+		assertNotEquals(fingerprint, AssetBuildCache.fingerprint(manifest, "name=test"));
+	}
+
+	@Test
+	public void fingerprintFollowsTheContentOfSmallFiles() throws Exception {
+		final Path source = Files.createTempDirectory("build-cache-content");
+		final Path script = source.resolve("install.sh");
+		final Path media = source.resolve("media.txt");
+		Files.write(script, "echo install\n".getBytes(StandardCharsets.UTF_8));
+		Files.write(media, "first\n".getBytes(StandardCharsets.UTF_8));
+		Files.setLastModifiedTime(script, FileTime.fromMillis(1000));
+		Files.setLastModifiedTime(media, FileTime.fromMillis(1000));
+
+		final AssetManifest manifest = new AssetManifest();
+		manifest.addFile("scripts/install.sh", script);
+		manifest.addFile("media/media.txt", media);
+		final String fingerprint = AssetBuildCache.fingerprint(manifest, "name=test");
+
+		// same size and modification time, other content
+		Files.write(script, "echo instal!\n".getBytes(StandardCharsets.UTF_8));
+		Files.setLastModifiedTime(script, FileTime.fromMillis(1000));
+		final String editedScript = AssetBuildCache.fingerprint(manifest, "name=test");
+		assertNotEquals(fingerprint, editedScript);
+
+		Files.write(media, "other\n".getBytes(StandardCharsets.UTF_8));
+		Files.setLastModifiedTime(media, FileTime.fromMillis(1000));
+		assertNotEquals(editedScript, AssetBuildCache.fingerprint(manifest, "name=test"));
+	}
+
+	@Test
+	public void cachedZipsAreTakenAndEvictedLeastRecentlyUsedFirst() throws Exception {
+		final Path cache = Files.createTempDirectory("build-cache").resolve("cache");
+		final Path workspace = Files.createTempDirectory("build-cache-workspace");
+
+		assertNull(AssetBuildCache.lookup(cache, "aaa", workspace.resolve("missing.zip")));
+
+		final Path first = workspace.resolve("first.zip");
+		Files.write(first, new byte[600]);
+		assertEquals(0, AssetBuildCache.store(cache, "aaa", first, "sha-a", 1000));
+		Files.setLastModifiedTime(cache.resolve("aaa.sha256"), FileTime.fromMillis(1000));
+		Files.setLastModifiedTime(first, FileTime.fromMillis(1000));
+
+		final Path taken = workspace.resolve("taken.zip");
+		assertEquals("sha-a", AssetBuildCache.lookup(cache, "aaa", taken));
+		assertArrayEquals(Files.readAllBytes(first), Files.readAllBytes(taken));
+		// the workspace zip linked to the cached one keeps its modification time
+		assertEquals(1000, Files.getLastModifiedTime(first).toMillis());
+		assertTrue(Files.getLastModifiedTime(cache.resolve("aaa.sha256")).toMillis() > 1000);
+
+		// the second zip does not fit next to the first, which is used less recently
+		final Path second = workspace.resolve("second.zip");
+		Files.write(second, new byte[500]);
+		Files.setLastModifiedTime(cache.resolve("aaa.sha256"), FileTime.fromMillis(1000));
+		assertEquals(1, AssetBuildCache.store(cache, "bbb", second, "sha-b", 1000));
+		assertFalse(Files.exists(cache.resolve("aaa.zip")));
+		assertFalse(Files.exists(cache.resolve("aaa.sha256")));
+		assertTrue(Files.exists(cache.resolve("bbb.zip")));
+
+		final Path large = workspace.resolve("large.zip");
+		Files.write(large, new byte[2000]);
+		assertEquals(-1, AssetBuildCache.store(cache, "ccc", large, "sha-c", 1000));
+		assertNull(AssetBuildCache.lookup(cache, "ccc", workspace.resolve("large-taken.zip")));
+	}
+}
@@ -0,0 +1,164 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.TestBuilder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import io.jenkins.plugins.AssetBuilder;
+import io.jenkins.plugins.Cons3rtPublisher;
+import io.jenkins.plugins.Cons3rtSite;
+
+import io.jenkins.plugins.utils.ApacheCompressUtils;
+import io.jenkins.plugins.utils.AssetFingerprint;
+import io.jenkins.plugins.utils.AssetFingerprintStore;
+import io.jenkins.plugins.utils.CompressionPolicy;
+
+public class AssetFingerprintTests {
+
+	@Rule public JenkinsRule j = new JenkinsRule();
+
+	@Test
+	public void fingerprintIgnoresTimestampsAndCompression() throws Exception {
+		final Path source = Files.createTempDirectory("fingerprint");
+		Files.write(source.resolve("asset.properties"), "name=test\n".getBytes(StandardCharsets.UTF_8));
+		Files.createDirectories(source.resolve("scripts"));
+		Files.write(source.resolve("scripts/install.sh"), "echo\n".getBytes(StandardCharsets.UTF_8));
+
+		final Path output = Files.createTempDirectory("fingerprint-out");
+		final Path first = output.resolve("first.zip");
+		ApacheCompressUtils.zipIntoZipFileFromDir(first, source, false, null, null, 1, CompressionPolicy.DEFAULT);
+
+		Files.setLastModifiedTime(source.resolve("scripts/install.sh"), FileTime.fromMillis(0));
+		final Path second = output.resolve("second.zip");
+		ApacheCompressUtils.zipIntoZipFileFromDir(second, source, false, null, null, 4, CompressionPolicy.of(true, 1));
+
+		final String fingerprint = AssetFingerprint.ofDirectory(source);
+		assertEquals(fingerprint, AssetFingerprint.ofZip(first));
+		assertEquals(fingerprint, AssetFingerprint.ofZip(second));
+
+		Files.write(source.resolve("scripts/install.sh"), "echo changed\n".getBytes(StandardCharsets.UTF_8));
+		assertNotEquals(fingerprint, AssetFingerprint.ofDirectory(source));
+	}
+
+	@Test
+	public void fingerprintIgnoresAssetPropertiesComments() throws Exception {
+		final Path source = Files.createTempDirectory("fingerprint-comments");
+		Files.write(source.resolve("asset.properties"),
+				"##Created by CONS3RT Jenkins Builder Plugin\n#2024.01.01.10.00.00\nname=test\n"
+						.getBytes(StandardCharsets.UTF_8));
+		final String fingerprint = AssetFingerprint.ofDirectory(source);
+
+		Files.write(source.resolve("asset.properties"),
+				"##Created by CONS3RT Jenkins Builder Plugin\r\n#2024.01.01.10.00.07\r\nname=test\r\n"
+						.getBytes(StandardCharsets.UTF_8));
+		assertEquals(fingerprint, AssetFingerprint.ofDirectory(source));
+
+		final Path zip = Files.createTempDirectory("fingerprint-comments-out").resolve("asset.zip");
+		ApacheCompressUtils.zipIntoZipFileFromDir(zip, source, false, null, null, 1, CompressionPolicy.DEFAULT);
+		assertEquals(fingerprint, AssetFingerprint.ofZip(zip));
+
+		Files.write(source.resolve("asset.properties"), "name=other\n".getBytes(StandardCharsets.UTF_8));
+		assertNotEquals(fingerprint, AssetFingerprint.ofDirectory(source));
+	}
+
+	@Test
+	public void rebuiltUnchangedAssetsAreNotUpdatedAgain() throws Exception {
+		final AtomicInteger uploads = new AtomicInteger();
+		final HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/rest/api/", new HttpHandler() {
+			@Override
+			public void handle(final HttpExchange exchange) throws IOException {
+				try (InputStream in = exchange.getRequestBody()) {
+					while (in.read() != -1) {
+						// drain the request
+					}
+				}
+				if (exchange.getRequestURI().getPath().endsWith("/updatecontent")) {
+					uploads.incrementAndGet();
+				}
+				final byte[] response = "{}".getBytes(StandardCharsets.UTF_8);
+				exchange.sendResponseHeaders(200, response.length);
+				try (OutputStream out = exchange.getResponseBody()) {
+					out.write(response);
+				}
+			}
+		});
+		server.start();
+
+		try {
+			final FreeStyleProject project = this.j.createFreeStyleProject();
+			project.getBuildersList().add(new TestBuilder() {
+				@Override
+				public boolean perform(final AbstractBuild<?, ?> build, final Launcher launcher,
+						final BuildListener listener) throws InterruptedException, IOException {
+					build.getWorkspace().child("install.sh").write("echo install\n", "UTF-8");
+					return true;
+				}
+			});
+			project.getBuildersList().add(new AssetBuilder("fingerprinted", "An unchanged asset", "1.0", "vendor",
+					"Linux", "x64", "64", 1, 1024, 10, "install.sh", null, null, null));
+
+			final String url = "http://localhost:" + server.getAddress().getPort();
+			// the site looks its credentials up for the current request
+			final Cons3rtSite site = this.j.executeOnServer(new Callable<Cons3rtSite>() {
+				@Override
+				public Cons3rtSite call() {
+					return new Cons3rtSite(url, "token", Cons3rtSite.usernameAuthentication, null, "jenkins");
+				}
+			});
+			site.setToken("token");
+			final Cons3rtPublisher publisher = new Cons3rtPublisher(site, 12, "prebuilt", null, "fingerprinted",
+					"updateAsset", false, false, null);
+			publisher.setSkipUnchangedUpdate(true);
+			project.getPublishersList().add(publisher);
+
+			this.j.buildAndAssertSuccess(project);
+			assertEquals(1, uploads.get());
+
+			// a second later, so asset.properties gets another creation time
+			Thread.sleep(1100);
+			final FreeStyleBuild second = this.j.buildAndAssertSuccess(project);
+			this.j.assertLogContains("its content is unchanged", second);
+			assertEquals(1, uploads.get());
+		} finally {
+			server.stop(0);
+		}
+	}
+
+	@Test
+	public void storeKeepsFingerprintsBySiteAndAsset() throws Exception {
+		final Path file = Files.createTempDirectory("fingerprint-store").resolve(AssetFingerprintStore.fileName);
+		final AssetFingerprintStore store = new AssetFingerprintStore(file.toFile());
+		assertNull(store.get("https://cons3rt.example/rest", 12));
+
+		store.put("https://cons3rt.example/rest/", 12, "abc");
+		store.put("https://cons3rt.example/rest", 13, "def");
+		final AssetFingerprintStore reopened = new AssetFingerprintStore(file.toFile());
+		assertEquals("abc", reopened.get("https://cons3rt.example/rest", 12));
+		assertEquals("def", reopened.get("https://cons3rt.example/rest/", 13));
+		assertNull(reopened.get("https://other.example/rest", 12));
+	}
+}
@@ -0,0 +1,64 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Writes an asset directory for the zip tests into a temporary folder, so it
+ * is removed with the folder after the test.
+ */
+final class AssetFixture {
+
+	private final Path root;
+
+	private AssetFixture(final Path root) {
+		this.root = root;
+	}
+
+	/**
+	 * Starts an empty asset directory in a new folder of the given temporary
+	 * folder.
+	 */
+	static AssetFixture in(final TemporaryFolder folder) throws IOException {
+		return new AssetFixture(folder.newFolder().toPath());
+	}
+
+	/**
+	 * Writes a file of the asset, creating its parent directories.
+	 *
+	 * @param name    the path of the file in the asset, with / separators
+	 * @param content the content, written as UTF-8
+	 */
+	AssetFixture file(final String name, final String content) throws IOException {
+		return this.file(name, content.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Writes a file of the asset, creating its parent directories.
+	 *
+	 * @param name    the path of the file in the asset, with / separators
+	 * @param content the content
+	 */
+	AssetFixture file(final String name, final byte[] content) throws IOException {
+		final Path file = this.root.resolve(name);
+		Files.createDirectories(file.getParent());
+		Files.write(file, content);
+		return this;
+	}
+
+	/**
+	 * Creates a directory of the asset.
+	 *
+	 * @param name the path of the directory in the asset, with / separators
+	 */
+	AssetFixture directory(final String name) throws IOException {
+		Files.createDirectories(this.root.resolve(name));
+		return this;
+	}
+
+	Path getPath() {
+		return this.root;
+	}
+}
@@ -0,0 +1,64 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import hudson.FilePath;
+
+import io.jenkins.plugins.utils.AssetZipRetention;
+
+public class AssetZipRetentionTests {
+
+	@Rule public JenkinsRule j = new JenkinsRule();
+
+	@Test
+	public void oldestZipsAreEvicted() throws Exception {
+		final Path workspace = Files.createTempDirectory("asset-retention");
+		final Path first = createZip(workspace, "web-server", "2000.01.01.00.00.00", 1000, 1);
+		final Path second = createZip(workspace, "web-server", "2000.01.02.00.00.00", 1000, 2);
+		final Path other = createZip(workspace, "db", "2000.01.03.00.00.00", 3000, 3);
+		final Path third = createZip(workspace, "web-server", "2000.01.04.00.00.00", 1000, 4);
+		Files.createDirectory(workspace.resolve("CONS3RT-Asset-Builder-web-server-2000.01.04.00.00.00"));
+
+		// Keep the two newest zips of the asset, leave the other asset alone
+		AssetZipRetention.Plan plan = AssetZipRetention.plan(workspace, "web-server", third.getFileName().toString(),
+				2, 0);
+		assertEquals(Arrays.asList(first.getFileName().toString()), plan.getEvicted());
+		assertEquals(1000, plan.getReclaimedBytes());
+		assertEquals(5000, plan.getUsedBytes());
+		assertEquals(3, plan.getRemaining());
+
+		// Cap the total, oldest first whatever the asset, never the zip just built
+		plan = AssetZipRetention.plan(workspace, "web-server", third.getFileName().toString(), 0, 1500);
+		assertEquals(Arrays.asList(first.getFileName().toString(), second.getFileName().toString(),
+				other.getFileName().toString()), plan.getEvicted());
+		assertEquals(1000, plan.getUsedBytes());
+		assertEquals(1, plan.getRemaining());
+
+		plan = AssetZipRetention.plan(workspace, "web-server", third.getFileName().toString(), 0, 10);
+		assertEquals(1000, plan.getUsedBytes());
+
+		AssetZipRetention.evict(new FilePath(workspace.toFile()), plan).get(10, TimeUnit.SECONDS);
+		assertFalse(Files.exists(first));
+		assertFalse(Files.exists(second));
+		assertFalse(Files.exists(other));
+		assertTrue(Files.exists(third));
+	}
+
+	private static Path createZip(final Path workspace, final String name, final String timestamp, final int size,
+			final int day) throws Exception {
+		final Path zip = workspace.resolve("CONS3RT-Asset-" + name + "-" + timestamp + ".zip");
+		Files.write(zip, new byte[size]);
+		Files.setLastModifiedTime(zip, FileTime.fromMillis(TimeUnit.DAYS.toMillis(day)));
+		return zip;
+	}
+}
@@ -0,0 +1,64 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import io.jenkins.plugins.utils.ApacheCompressUtils;
+import io.jenkins.plugins.utils.AssetZipValidator;
+import io.jenkins.plugins.utils.CompressionPolicy;
+
+public class AssetZipValidatorTests {
+
+	@Rule public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void wellFormedAssetIsValid() throws Exception {
+		final Path source = createAsset("name=test\ninstallScript=install.sh\nlicenseFile=LICENSE\n");
+		Files.write(source.resolve("LICENSE"), "license".getBytes(StandardCharsets.UTF_8));
+
+		assertEquals(0, AssetZipValidator.validateDirectory(source).size());
+		assertEquals(0, AssetZipValidator.validateZip(zip(source)).size());
+	}
+
+	@Test
+	public void missingReferencesAreReported() throws Exception {
+		final Path source = createAsset("installScript=setup.sh\ndocumentationFile=README.md\n");
+		Files.write(Files.createDirectories(source.resolve("nested")).resolve("Asset.Properties"),
+				"name=nested\n".getBytes(StandardCharsets.UTF_8));
+
+		final List<String> problems = AssetZipValidator.validateZip(zip(source));
+		assertEquals(problems.toString(), 3, problems.size());
+		assertTrue(problems.get(0).contains("does not name the asset"));
+		assertTrue(problems.get(1).contains("setup.sh"));
+		assertTrue(problems.get(2).contains("README.md"));
+		assertEquals(problems, AssetZipValidator.validateDirectory(source));
+	}
+
+	@Test
+	public void missingPropertiesAreReported() throws Exception {
+		final Path source = createAsset("name=test\n");
+		Files.move(source.resolve("asset.properties"), source.resolve("scripts").resolve("asset.properties"));
+
+		final List<String> problems = AssetZipValidator.validateZip(zip(source));
+		assertEquals(problems.toString(), 1, problems.size());
+		assertTrue(problems.get(0).contains("scripts/asset.properties"));
+	}
+
+	private Path createAsset(final String properties) throws Exception {
+		return AssetFixture.in(this.folder).file("asset.properties", properties)
+				.file("scripts/install.sh", "echo install\n").file("media/data.bin", new byte[100]).getPath();
+	}
+
+	private Path zip(final Path source) throws Exception {
+		final Path zip = this.folder.newFolder().toPath().resolve("asset.zip");
+		ApacheCompressUtils.zipIntoZipFileFromDir(zip, source, false, null, null, 1, CompressionPolicy.DEFAULT);
+		return zip;
+	}
+}
@@ -0,0 +1,248 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import io.jenkins.plugins.utils.ChunkedUploader;
+import io.jenkins.plugins.utils.HttpWrapper;
+import io.jenkins.plugins.utils.HttpWrapper.HTTPException;
+import io.jenkins.plugins.utils.RetryPolicy;
+
+public class ChunkedUploadTests {
+
+	@Rule public JenkinsRule j = new JenkinsRule();
+
+	private HttpServer server;
+
+	private final Map<Integer, byte[]> parts = new ConcurrentHashMap<>();
+
+	private final AtomicInteger partRequests = new AtomicInteger();
+
+	private volatile int failingPart = -1;
+
+	private volatile int hangingPart = -1;
+
+	private final CountDownLatch hangingReleased = new CountDownLatch(1);
+
+	private volatile byte[] assembled;
+
+	private volatile int expectedParts = -1;
+
+	@Before
+	public void startServer() throws IOException {
+		this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		this.server.createContext("/rest/api/uploads/", new HttpHandler() {
+			@Override
+			public void handle(final HttpExchange exchange) throws IOException {
+				final String path = exchange.getRequestURI().getPath();
+				final byte[] body = readAll(exchange.getRequestBody());
+
+				int status = 200;
+				if ("PUT".equals(exchange.getRequestMethod()) && path.contains("/parts/")) {
+					final int index = Integer.parseInt(path.substring(path.lastIndexOf('/') + 1));
+					partRequests.incrementAndGet();
+					if (index == hangingPart) {
+						try {
+							hangingReleased.await(60, TimeUnit.SECONDS);
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+						}
+					}
+					if (index == failingPart) {
+						status = 500;
+					} else {
+						parts.put(index, body);
+					}
+				} else if ("POST".equals(exchange.getRequestMethod()) && path.endsWith("/complete")
+						&& expectedParts >= 0 && parts.size() != expectedParts) {
+					// the session lost parts
+					status = 409;
+				} else if ("POST".equals(exchange.getRequestMethod()) && path.endsWith("/complete")) {
+					final ByteArrayOutputStream out = new ByteArrayOutputStream();
+					for (int i = 0; i < parts.size(); ++i) {
+						out.write(parts.get(i));
+					}
+					assembled = out.toByteArray();
+				} else {
+					status = 404;
+				}
+
+				final byte[] response = "{}".getBytes(StandardCharsets.UTF_8);
+				exchange.sendResponseHeaders(status, response.length);
+				try (OutputStream out = exchange.getResponseBody()) {
+					out.write(response);
+				}
+			}
+		});
+		this.server.setExecutor(Executors.newCachedThreadPool());
+		this.server.start();
+	}
+
+	@After
+	public void stopServer() {
+		this.hangingReleased.countDown();
+		this.server.stop(0);
+	}
+
+	@Test
+	public void uploadReassemblesParts() throws Exception {
+		final File dir = Files.createTempDirectory("chunked").toFile();
+		final File zip = createFile(dir, 1000 * 1000 + 17);
+
+		new ChunkedUploader(this.wrapper(), "import", zip, dir, 100 * 1000, 3).upload();
+
+		assertArrayEquals(Files.readAllBytes(zip.toPath()), this.assembled);
+		assertEquals(11, this.partRequests.get());
+	}
+
+	@Test
+	public void uploadResumesCompletedParts() throws Exception {
+		final File dir = Files.createTempDirectory("chunked").toFile();
+		final File zip = createFile(dir, 1000 * 1000);
+
+		this.failingPart = 7;
+		try {
+			new ChunkedUploader(this.wrapper(), "import", zip, dir, 100 * 1000, 1).upload();
+			fail("Expected the upload of part 7 to fail");
+		} catch (HTTPException e) {
+			// expected
+		}
+		// the parts after the failed one are not sent
+		assertEquals(8, this.partRequests.get());
+
+		this.failingPart = -1;
+		this.partRequests.set(0);
+		new ChunkedUploader(this.wrapper(), "import", zip, dir, 100 * 1000, 1).upload();
+
+		assertEquals(3, this.partRequests.get());
+		assertArrayEquals(Files.readAllBytes(zip.toPath()), this.assembled);
+	}
+
+	@Test
+	public void uploadsAsAnotherUserDoNotResume() throws Exception {
+		final File dir = Files.createTempDirectory("chunked").toFile();
+		final File zip = createFile(dir, 1000 * 1000);
+
+		this.failingPart = 7;
+		try {
+			new ChunkedUploader(this.wrapper(), "import", zip, dir, 100 * 1000, 1).upload();
+			fail("Expected the upload of part 7 to fail");
+		} catch (HTTPException e) {
+			// expected
+		}
+
+		this.failingPart = -1;
+		this.partRequests.set(0);
+		new ChunkedUploader(this.wrapper("other"), "import", zip, dir, 100 * 1000, 1).upload();
+
+		assertEquals(10, this.partRequests.get());
+	}
+
+	@Test
+	public void rejectedSessionsStartOver() throws Exception {
+		final File dir = Files.createTempDirectory("chunked").toFile();
+		final File zip = createFile(dir, 1000 * 1000);
+
+		this.failingPart = 7;
+		try {
+			new ChunkedUploader(this.wrapper(), "import", zip, dir, 100 * 1000, 1).upload();
+			fail("Expected the upload of part 7 to fail");
+		} catch (HTTPException e) {
+			// expected
+		}
+
+		// the site lost the session, only parts 7 to 9 are sent before it says so
+		this.parts.clear();
+		this.expectedParts = 10;
+		this.failingPart = -1;
+		this.partRequests.set(0);
+		new ChunkedUploader(this.wrapper(), "import", zip, dir, 100 * 1000, 1).upload();
+
+		assertEquals(13, this.partRequests.get());
+		assertArrayEquals(Files.readAllBytes(zip.toPath()), this.assembled);
+		assertEquals(0, dir.listFiles(new FilenameFilter() {
+			@Override
+			public boolean accept(final File parent, final String name) {
+				return name.endsWith(".properties");
+			}
+		}).length);
+	}
+
+	@Test
+	public void failedPartAbortsTheOtherParts() throws Exception {
+		final File dir = Files.createTempDirectory("chunked").toFile();
+		final File zip = createFile(dir, 1000 * 1000);
+
+		// part 0 never answers, part 1 fails while part 0 is still being sent
+		this.hangingPart = 0;
+		this.failingPart = 1;
+		final HttpWrapper wrapper = new HttpWrapper.HttpWrapperBuilder(
+				"http://localhost:" + this.server.getAddress().getPort(), "token", "username").username("jenkins")
+				.retryPolicy(RetryPolicy.NONE).build();
+
+		final long start = System.currentTimeMillis();
+		try {
+			new ChunkedUploader(wrapper, "import", zip, dir, 100 * 1000, 2).upload();
+			fail("Expected the upload of part 1 to fail");
+		} catch (HTTPException e) {
+			// expected
+		}
+
+		assertTrue(System.currentTimeMillis() - start < 30 * 1000);
+		assertEquals(2, this.partRequests.get());
+	}
+
+	private HttpWrapper wrapper() throws HTTPException {
+		return this.wrapper("jenkins");
+	}
+
+	private HttpWrapper wrapper(final String username) throws HTTPException {
+		return new HttpWrapper.HttpWrapperBuilder("http://localhost:" + this.server.getAddress().getPort(), "token",
+				"username").username(username).build();
+	}
+
+	private static File createFile(final File dir, final int size) throws IOException {
+		final byte[] bytes = new byte[size];
+		new Random(size).nextBytes(bytes);
+		final File file = new File(dir, "CONS3RT-Asset-test.zip");
+		Files.write(file.toPath(), bytes);
+		return file;
+	}
+
+	private static byte[] readAll(final InputStream in) throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final byte[] buffer = new byte[8192];
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			out.write(buffer, 0, read);
+		}
+		return out.toByteArray();
+	}
+}
@@ -0,0 +1,132 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.Random;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import io.jenkins.plugins.utils.ApacheCompressUtils;
+import io.jenkins.plugins.utils.CompressedEntryCache;
+import io.jenkins.plugins.utils.CompressionPolicy;
+
+public class CompressedEntryCacheTests {
+
+	@Rule public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void sharedFilesAreDeflatedOnceForAllAssets() throws Exception {
+		final byte[] media = createMedia();
+		final Path cacheDir = this.folder.newFolder().toPath();
+		final CompressionPolicy policy = CompressionPolicy.of(false, 6).withEntryCache(cacheDir.toString(),
+				64L * 1024 * 1024);
+
+		for (final int threads : new int[] { 1, 4 }) {
+			final Path first = createAsset(media, "first");
+			final Path second = createAsset(media, "second");
+			final Path output = this.folder.newFolder().toPath();
+
+			ApacheCompressUtils.zipIntoZipFileFromDir(output.resolve("first.zip"), first, false, null, null,
+					threads, policy);
+			ApacheCompressUtils.zipIntoZipFileFromDir(output.resolve("second.zip"), second, false, null, null,
+					threads, policy);
+
+			try (ZipFile zip = new ZipFile(output.resolve("second.zip").toFile())) {
+				assertArrayEquals(media, IOUtils.toByteArray(zip.getInputStream(zip.getEntry("media/base.img"))));
+				assertEquals("echo second\n", new String(
+						IOUtils.toByteArray(zip.getInputStream(zip.getEntry("scripts/install.sh"))),
+						StandardCharsets.UTF_8));
+			}
+		}
+
+		// one payload for the shared file, the small scripts are not cached
+		assertEquals(1, countFiles(cacheDir, ".deflated"));
+	}
+
+	@Test
+	public void leastRecentlyUsedPayloadsAreEvicted() throws Exception {
+		final Path cacheDir = this.folder.newFolder().toPath();
+		final CompressionPolicy policy = CompressionPolicy.of(false, 6).withEntryCache(cacheDir.toString(),
+				3L * 1024 * 1024);
+
+		final byte[] media = createMedia();
+		for (int i = 0; i < 3; i++) {
+			media[0] = (byte) i;
+			final Path asset = createAsset(media, "asset" + i);
+			ApacheCompressUtils.zipIntoZipFileFromDir(asset.resolveSibling(asset.getFileName() + ".zip"), asset,
+					false, null, null, 1, policy);
+		}
+
+		// each payload is a little over 1 MB, so only two fit
+		assertEquals(2, countFiles(cacheDir, ".deflated"));
+		assertEquals(2, countFiles(cacheDir, ".entry"));
+
+		CompressedEntryCache.evict(cacheDir, 0);
+		assertEquals(0, countFiles(cacheDir, ".deflated"));
+		assertEquals(0, countFiles(cacheDir, ".entry"));
+	}
+
+	@Test
+	public void payloadsInUseSurviveEviction() throws Exception {
+		final Path cacheDir = this.folder.newFolder().toPath();
+		final CompressionPolicy policy = CompressionPolicy.of(false, 6).withEntryCache(cacheDir.toString(),
+				64L * 1024 * 1024);
+		final byte[] media = createMedia();
+		final Path file = createAsset(media, "evicted").resolve("media/base.img");
+		final Path zipPath = this.folder.newFolder().toPath().resolve("evicted.zip");
+
+		try (CompressedEntryCache cache = CompressedEntryCache.open(policy)) {
+			// deflated into the cache by the first get, found there by the second
+			cache.get(file).close();
+			final CompressedEntryCache.Payload payload = cache.get(file);
+			assertEquals(1, cache.getHits());
+
+			// another build evicts every payload before this one is written
+			CompressedEntryCache.evict(cacheDir, 0);
+			assertEquals(0, countFiles(cacheDir, ".deflated"));
+
+			try (ZipArchiveOutputStream zaos = new ZipArchiveOutputStream(zipPath.toFile())) {
+				payload.writeTo(new ZipArchiveEntry("media/base.img"), zaos);
+			}
+		}
+
+		try (ZipFile zip = new ZipFile(zipPath.toFile())) {
+			assertArrayEquals(media, IOUtils.toByteArray(zip.getInputStream(zip.getEntry("media/base.img"))));
+		}
+	}
+
+	private static long countFiles(final Path dir, final String suffix) throws Exception {
+		long count = 0;
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + suffix)) {
+			for (final Iterator<Path> it = files.iterator(); it.hasNext(); it.next()) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private static byte[] createMedia() {
+		// half random, half repeated, so it deflates to a little over half
+		final byte[] media = new byte[2 * 1024 * 1024];
+		new Random(21).nextBytes(media);
+		for (int i = media.length / 2; i < media.length; i++) {
+			media[i] = (byte) (i % 7);
+		}
+		return media;
+	}
+
+	private Path createAsset(final byte[] media, final String name) throws Exception {
+		return AssetFixture.in(this.folder).file("scripts/install.sh", "echo " + name + "\n")
+				.file("media/base.img", media).getPath();
+	}
+}
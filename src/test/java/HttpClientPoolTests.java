@@ -0,0 +1,91 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import io.jenkins.plugins.utils.HttpClientPool;
+
+public class HttpClientPoolTests {
+
+	private static final HttpClientPool.ContextFactory plainContext = new HttpClientPool.ContextFactory() {
+		@Override
+		public SSLConnectionSocketFactory create() {
+			return SSLConnectionSocketFactory.getSocketFactory();
+		}
+	};
+
+	private HttpServer server;
+
+	private String key;
+
+	@Before
+	public void startServer() throws IOException {
+		this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		this.server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(final HttpExchange exchange) throws IOException {
+				final byte[] body = "ok".getBytes(StandardCharsets.UTF_8);
+				exchange.sendResponseHeaders(200, body.length);
+				try (OutputStream out = exchange.getResponseBody()) {
+					out.write(body);
+				}
+			}
+		});
+		this.server.start();
+		this.key = HttpClientPool.key(this.url(), "username", "pool-test");
+	}
+
+	@After
+	public void stopServer() {
+		HttpClientPool.INSTANCE.invalidate(this.key);
+		this.server.stop(0);
+	}
+
+	@Test
+	public void retiredClientsFinishTheirRequestsBeforeClosing() throws Exception {
+		final HttpClientPool.Lease before = HttpClientPool.INSTANCE.acquire(this.key, "first", plainContext);
+		final CloseableHttpClient retired = before.getClient();
+
+		// the credential changes while a request is being sent with the old client
+		try (HttpClientPool.Lease after = HttpClientPool.INSTANCE.acquire(this.key, "second", plainContext)) {
+			assertNotSame(retired, after.getClient());
+		}
+
+		final CloseableHttpResponse response = retired.execute(new HttpGet(this.url()));
+		before.close();
+		try (InputStream in = response.getEntity().getContent()) {
+			assertEquals('o', in.read());
+		}
+
+		// the response held the retired client open until it was done
+		response.close();
+		try {
+			EntityUtils.consume(retired.execute(new HttpGet(this.url())).getEntity());
+			fail("the retired client should be closed");
+		} catch (IllegalStateException e) {
+			// the connection pool is shut down
+		}
+	}
+
+	private String url() {
+		return "http://localhost:" + this.server.getAddress().getPort() + "/";
+	}
+}
@@ -0,0 +1,84 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import io.jenkins.plugins.utils.ApacheCompressUtils;
+import io.jenkins.plugins.utils.CompressionPolicy;
+
+public class IncrementalZipTests {
+
+	@Rule public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void unchangedFilesAreCopiedFromThePreviousZip() throws Exception {
+		for (final int threads : new int[] { 1, 4 }) {
+			final Path source = createAsset();
+			final Path output = this.folder.newFolder().toPath();
+
+			final Path previous = output.resolve("previous.zip");
+			ApacheCompressUtils.zipIntoZipFileFromDir(previous, source, false, null, null, threads,
+					CompressionPolicy.of(false, 9));
+
+			Files.write(source.resolve("scripts/install.sh"),
+					"echo changed install\n".getBytes(StandardCharsets.UTF_8));
+
+			// entries copied from the previous zip keep their level 9 data
+			final Path next = output.resolve("next.zip");
+			ApacheCompressUtils.zipIntoZipFileFromDir(next, source, false, null, null, threads,
+					CompressionPolicy.of(false, 1).withPreviousZip(previous.toString()));
+
+			try (ZipFile before = new ZipFile(previous.toFile()); ZipFile after = new ZipFile(next.toFile());
+					ZipFile fresh = fresh(source, output, threads)) {
+				assertEquals(before.getEntry("media/text.txt").getCompressedSize(),
+						after.getEntry("media/text.txt").getCompressedSize());
+				assertNotEquals(before.getEntry("media/text.txt").getCompressedSize(),
+						fresh.getEntry("media/text.txt").getCompressedSize());
+				assertArrayEquals(Files.readAllBytes(source.resolve("media/text.txt")),
+						IOUtils.toByteArray(after.getInputStream(after.getEntry("media/text.txt"))));
+				assertArrayEquals(Files.readAllBytes(source.resolve("scripts/install.sh")),
+						IOUtils.toByteArray(after.getInputStream(after.getEntry("scripts/install.sh"))));
+			}
+		}
+	}
+
+	@Test
+	public void missingPreviousZipCompressesEverything() throws Exception {
+		final Path source = createAsset();
+		final Path zip = this.folder.newFolder().toPath().resolve("asset.zip");
+		ApacheCompressUtils.zipIntoZipFileFromDir(zip, source, false, null, null, 1,
+				CompressionPolicy.DEFAULT.withPreviousZip(zip.resolveSibling("missing.zip").toString()));
+
+		try (ZipFile after = new ZipFile(zip.toFile())) {
+			assertArrayEquals(Files.readAllBytes(source.resolve("media/text.txt")),
+					IOUtils.toByteArray(after.getInputStream(after.getEntry("media/text.txt"))));
+		}
+	}
+
+	private static ZipFile fresh(final Path source, final Path output, final int threads) throws Exception {
+		final Path zip = output.resolve("fresh.zip");
+		ApacheCompressUtils.zipIntoZipFileFromDir(zip, source, false, null, null, threads,
+				CompressionPolicy.of(false, 1));
+		return new ZipFile(zip.toFile());
+	}
+
+	private Path createAsset() throws Exception {
+		final StringBuilder text = new StringBuilder();
+		final Random random = new Random(7);
+		for (int i = 0; i < 20000; i++) {
+			text.append("line ").append(random.nextInt(1000)).append(' ').append(i % 17).append('\n');
+		}
+		return AssetFixture.in(this.folder).file("scripts/install.sh", "echo install\n")
+				.file("media/text.txt", text.toString()).getPath();
+	}
+}
@@ -1,4 +1,16 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map.Entry;
+import java.util.Set;
 
 import org.junit.Ignore;
 import org.junit.Rule;
@@ -12,15 +24,58 @@ import com.google.gson.JsonParser;
 
 import hudson.util.Secret;
 import io.jenkins.plugins.datatype.HostOption;
+import io.jenkins.plugins.datatype.Network;
 import io.jenkins.plugins.datatype.RunConfiguration;
 import io.jenkins.plugins.utils.HttpWrapper;
 import io.jenkins.plugins.utils.HttpWrapper.HTTPException;
+import io.jenkins.plugins.utils.JsonResponses;
 import io.jenkins.plugins.utils.SecretSerializer;
 
 public class JsonTests {
 	
 	@Rule public JenkinsRule j = new JenkinsRule();
 	
+	@Test
+	public void metadataResponsesKeepOnlyTheUsedFields() throws IOException {
+		final Set<Entry<String, Integer>> projects = parse(
+				"[{\"id\":1,\"name\":\"alpha\",\"members\":[{\"id\":7}]},{\"name\":\"beta\",\"id\":2}]",
+				JsonResponses.NAMED_IDS);
+		assertEquals(new HashSet<Entry<String, Integer>>(Arrays.asList(
+				new AbstractMap.SimpleEntry<String, Integer>("alpha", 1),
+				new AbstractMap.SimpleEntry<String, Integer>("beta", 2))), projects);
+
+		final Set<String> roles = parse("{\"id\":3,\"description\":{\"long\":[1,2,3]},\"deploymentHosts\":["
+				+ "{\"systemRole\":\"web\",\"disks\":[]},{\"systemRole\":\"db\"}],\"properties\":[",
+				JsonResponses.ROLES);
+		assertEquals(new HashSet<>(Arrays.asList("web", "db")), roles);
+
+		final Set<Network> networks = parse("[{\"identifier\":\"n1\",\"name\":\"user\",\"cidr\":\"10.0.0.0/24\","
+				+ "\"networkFunction\":\"USER\"},{\"identifier\":\"n2\",\"name\":\"cons3rt\","
+				+ "\"cidr\":\"10.1.0.0/24\",\"networkFunction\":\"CONS3RT\"}]", JsonResponses.NETWORKS);
+		assertEquals(1, networks.size());
+		assertEquals("n1", networks.iterator().next().getId());
+
+		assertTrue(parse("", JsonResponses.NAMED_IDS).isEmpty());
+	}
+
+	@Test
+	public void malformedMetadataResponsesAreRejected() {
+		for (final String json : new String[] { "{\"id\":1}", "[{\"id\":\"one\",\"name\":\"alpha\"}]",
+				"[{\"id\":1}]" }) {
+			try {
+				parse(json, JsonResponses.NAMED_IDS);
+				fail("Expected " + json + " to be rejected");
+			} catch (IOException e) {
+				// expected
+			}
+		}
+	}
+
+	private static <T> T parse(final String json, final JsonResponses.Reader<T> reader) throws IOException {
+		return JsonResponses.parse(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)),
+				StandardCharsets.UTF_8, reader);
+	}
+
 	@Ignore
 	@Test
 	public void printRunOptions() throws HTTPException {
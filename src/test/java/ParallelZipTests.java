@@ -0,0 +1,175 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import io.jenkins.plugins.utils.ApacheCompressUtils;
+import io.jenkins.plugins.utils.AssetManifest;
+import io.jenkins.plugins.utils.CompressionPolicy;
+import io.jenkins.plugins.utils.Cons3rtCompressUtils;
+import io.jenkins.plugins.utils.ParallelZipArchiver;
+
+public class ParallelZipTests {
+
+	@Rule public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void parallelZipMatchesSingleThreadedZip() throws Exception {
+		final Path source = createAsset();
+		assertSameZip(source, CompressionPolicy.DEFAULT);
+	}
+
+	@Test
+	public void compressedMediaIsStored() throws Exception {
+		final Path source = createAsset();
+		final Path parallel = assertSameZip(source, CompressionPolicy.of(true, 9));
+
+		try (ZipFile zip = new ZipFile(parallel.toFile())) {
+			assertEquals(ZipEntry.STORED, zip.getEntry("media/random.bin").getMethod());
+			assertEquals(ZipEntry.STORED, zip.getEntry("media/archive.tar.gz").getMethod());
+			assertEquals(ZipEntry.DEFLATED, zip.getEntry("media/text.txt").getMethod());
+			assertEquals(ZipEntry.DEFLATED, zip.getEntry("asset.properties").getMethod());
+			assertArrayEquals(Files.readAllBytes(source.resolve("media").resolve("random.bin")),
+					IOUtils.toByteArray(zip.getInputStream(zip.getEntry("media/random.bin"))));
+		}
+	}
+
+	@Test
+	public void parallelUnzipMatchesSequentialUnzip() throws Exception {
+		final Path source = createAsset();
+		final Path zip = this.folder.newFolder().toPath().resolve("asset.zip");
+		ApacheCompressUtils.zipIntoZipFileFromDir(zip, source, false, null, null, 1, CompressionPolicy.DEFAULT);
+
+		final Path sequential = this.folder.newFolder().toPath();
+		final Path parallel = this.folder.newFolder().toPath();
+		ApacheCompressUtils.unzipIntoDirFromZipFile(sequential, zip, null, 1);
+		ApacheCompressUtils.unzipIntoDirFromZipFile(parallel, zip, null, 4);
+		assertSameTree(source, sequential);
+		assertSameTree(source, parallel);
+
+		final Path filtered = this.folder.newFolder().toPath();
+		ApacheCompressUtils.unzipIntoDirFromZipFile(filtered, zip,
+				Arrays.asList("scripts/script7.sh", "media/text.txt", "missing.txt"), 4);
+		assertArrayEquals(Files.readAllBytes(source.resolve("scripts/script7.sh")),
+				Files.readAllBytes(filtered.resolve("scripts/script7.sh")));
+		assertArrayEquals(Files.readAllBytes(source.resolve("media/text.txt")),
+				Files.readAllBytes(filtered.resolve("media/text.txt")));
+		assertEquals(1, filtered.resolve("scripts").toFile().list().length);
+		assertFalse(Files.exists(filtered.resolve("asset.properties")));
+	}
+
+	@Test
+	public void manifestZipMatchesStagedZip() throws Exception {
+		final Path source = createAsset();
+		final Path output = this.folder.newFolder().toPath();
+		final Path staged = output.resolve("staged.zip");
+		ApacheCompressUtils.zipIntoZipFileFromDir(staged, source, false, null, null, 1, CompressionPolicy.DEFAULT);
+
+		final AssetManifest manifest = new AssetManifest();
+		manifest.addContent("asset.properties", "name=test\n".getBytes(StandardCharsets.UTF_8));
+		manifest.addDirectory("media");
+		for (final Path file : listFiles(source)) {
+			if (!file.toString().equals("asset.properties")) {
+				manifest.addFile(file.toString().replace('\\', '/'), source.resolve(file));
+			}
+		}
+		manifest.addDirectory("empty");
+
+		for (final int threads : new int[] { 1, 4 }) {
+			Cons3rtCompressUtils.INSTANCE.setZipThreads(threads);
+			final Path zip = output.resolve("manifest" + threads + ".zip");
+			try {
+				Cons3rtCompressUtils.INSTANCE.zipIntoZipFileFromManifest(zip, manifest, null,
+						CompressionPolicy.of(true, 6));
+			} finally {
+				Cons3rtCompressUtils.INSTANCE.setZipThreads(ParallelZipArchiver.THREADS);
+			}
+
+			final List<String> expected = new ArrayList<>(ApacheCompressUtils.getZipFileListing(staged));
+			expected.add("empty/");
+			final List<String> actual = new ArrayList<>(ApacheCompressUtils.getZipFileListing(zip));
+			Collections.sort(expected);
+			Collections.sort(actual);
+			assertEquals(expected, actual);
+
+			final Path unzipped = this.folder.newFolder().toPath();
+			ApacheCompressUtils.unzipIntoDirFromZipFile(unzipped, zip, null, 1);
+			assertSameTree(source, unzipped);
+		}
+	}
+
+	private static void assertSameTree(final Path expected, final Path actual) throws IOException {
+		final List<Path> expectedFiles = listFiles(expected);
+		assertEquals(expectedFiles, listFiles(actual));
+		for (final Path file : expectedFiles) {
+			assertArrayEquals(Files.readAllBytes(expected.resolve(file)), Files.readAllBytes(actual.resolve(file)));
+		}
+	}
+
+	private static List<Path> listFiles(final Path root) throws IOException {
+		final List<Path> files = new ArrayList<>();
+		try (Stream<Path> paths = Files.walk(root)) {
+			for (final Iterator<Path> it = paths.iterator(); it.hasNext();) {
+				final Path path = it.next();
+				if (Files.isRegularFile(path)) {
+					files.add(root.relativize(path));
+				}
+			}
+		}
+		Collections.sort(files);
+		return files;
+	}
+
+	private Path createAsset() throws IOException {
+		final byte[] random = new byte[3 * 1000 * 1000];
+		new Random(42).nextBytes(random);
+		final StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 10000; ++i) {
+			text.append("line ").append(i).append('\n');
+		}
+		final AssetFixture asset = AssetFixture.in(this.folder).file("asset.properties", "name=test\n")
+				.file("media/random.bin", random).file("media/archive.tar.gz", Arrays.copyOf(random, 100 * 1000))
+				.file("media/empty.txt", new byte[0]).file("media/text.txt", text.toString());
+		for (int i = 0; i < 100; ++i) {
+			asset.file("scripts/script" + i + ".sh", "echo " + i + "\n");
+		}
+		return asset.getPath();
+	}
+
+	private Path assertSameZip(final Path source, final CompressionPolicy policy) throws IOException {
+		final Path output = this.folder.newFolder().toPath();
+		final Path single = output.resolve("single.zip");
+		final Path parallel = output.resolve("parallel.zip");
+		ApacheCompressUtils.zipIntoZipFileFromDir(single, source, false, null, null, 1, policy);
+		ApacheCompressUtils.zipIntoZipFileFromDir(parallel, source, false, null, null, 4, policy);
+
+		assertArrayEquals(Files.readAllBytes(single), Files.readAllBytes(parallel));
+
+		final Path configured = output.resolve("configured.zip");
+		Cons3rtCompressUtils.INSTANCE.zipIntoZipFileFromDir(configured, source, false, null, null,
+				policy.withThreads(2));
+		assertArrayEquals(Files.readAllBytes(single), Files.readAllBytes(configured));
+
+		assertEquals(3, output.toFile().list().length);
+		return parallel;
+	}
+
+}
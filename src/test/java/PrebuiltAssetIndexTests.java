@@ -0,0 +1,77 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import hudson.FilePath;
+import hudson.model.TaskListener;
+import io.jenkins.plugins.datatype.PrebuiltAsset;
+import io.jenkins.plugins.utils.AssetFileUtils;
+import io.jenkins.plugins.utils.AssetZipCallable;
+import io.jenkins.plugins.utils.CompressionPolicy;
+
+public class PrebuiltAssetIndexTests {
+
+	@Rule public JenkinsRule j = new JenkinsRule();
+
+	@Test
+	public void recordedAssetIsResolvedWithoutScanning() throws Exception {
+		final File workspaceDir = Files.createTempDirectory("prebuilt-index").toFile();
+		final FilePath workspace = new FilePath(workspaceDir);
+		final byte[] content = "zip".getBytes(StandardCharsets.UTF_8);
+
+		final File older = new File(workspaceDir, "CONS3RT-Asset-my_asset-with-dashes-2000.01.01.00.00.00.zip");
+		Files.write(older.toPath(), content);
+		final File newer = new File(workspaceDir, "CONS3RT-Asset-my_asset-with-dashes-2001.01.01.00.00.00.zip");
+		Files.write(newer.toPath(), content);
+
+		final MessageDigest digest = AssetFileUtils.newAssetDigest();
+		digest.update(content);
+		final PrebuiltAsset asset = AssetFileUtils.recordPrebuiltAsset(workspace, "my asset-with-dashes", older,
+				digest);
+		assertEquals("my_asset-with-dashes", asset.getName());
+		assertEquals(content.length, asset.getSize());
+		assertEquals("4a70fe9aa6436e02c2dea340fbd1e352e4ef2d8ce6ca52ad25d4b95471fc8bf2", asset.getSha256());
+
+		// The index wins over the newest timestamp in the workspace
+		assertEquals(older.getName(),
+				AssetFileUtils.resolvePrebuiltAsset(null, workspace, "my asset-with-dashes").getName());
+
+		// A recorded zip that changed is not trusted
+		Files.write(older.toPath(), "changed".getBytes(StandardCharsets.UTF_8));
+		assertEquals(newer.getName(),
+				AssetFileUtils.resolvePrebuiltAsset(null, workspace, "my asset-with-dashes").getName());
+	}
+
+	@Test
+	public void zipCreatedOnTheWorkspaceMachineIsRecorded() throws Exception {
+		final File workspaceDir = Files.createTempDirectory("prebuilt-callable").toFile();
+		final FilePath workspace = new FilePath(workspaceDir);
+		final File assetDir = new File(workspaceDir, "my-asset");
+		Files.createDirectories(new File(assetDir, "scripts").toPath());
+		Files.write(new File(assetDir, "asset.properties").toPath(),
+				"name=my-asset\n".getBytes(StandardCharsets.UTF_8));
+		Files.write(new File(assetDir, "scripts/install.sh").toPath(), "echo\n".getBytes(StandardCharsets.UTF_8));
+
+		final AssetZipCallable.Result zip = workspace.act(AssetZipCallable.forPath(TaskListener.NULL, "test",
+				new FilePath(assetDir), CompressionPolicy.DEFAULT));
+		assertTrue(zip.isCreated());
+		final File zipFile = new File(workspaceDir, zip.getZipName());
+		assertEquals(zipFile.length(), zip.getSize());
+
+		final MessageDigest digest = AssetFileUtils.newAssetDigest();
+		digest.update(Files.readAllBytes(zipFile.toPath()));
+		final PrebuiltAsset asset = AssetFileUtils.recordPrebuiltAsset(workspace, "my-asset", zip.getZipName(),
+				zip.getSize(), zip.getSha256());
+		assertEquals(AssetFileUtils.recordPrebuiltAsset(workspace, "my-asset", zipFile, digest).getSha256(),
+				asset.getSha256());
+		assertEquals(zip.getZipName(), AssetFileUtils.resolvePrebuiltAsset(null, workspace, "my-asset").getName());
+	}
+}
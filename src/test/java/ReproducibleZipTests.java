@@ -0,0 +1,104 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import io.jenkins.plugins.utils.ApacheCompressUtils;
+import io.jenkins.plugins.utils.AssetManifest;
+import io.jenkins.plugins.utils.CompressionPolicy;
+import io.jenkins.plugins.utils.Cons3rtCompressUtils;
+import io.jenkins.plugins.utils.ParallelZipArchiver;
+
+public class ReproducibleZipTests {
+
+	@Rule public TemporaryFolder folder = new TemporaryFolder();
+
+	private static final CompressionPolicy REPRODUCIBLE = CompressionPolicy.of(true, 6, true);
+
+	@Test
+	public void sameFilesGiveTheSameZip() throws Exception {
+		final Path source = createAsset();
+		final Path output = this.folder.newFolder().toPath();
+
+		final Path first = output.resolve("first.zip");
+		ApacheCompressUtils.zipIntoZipFileFromDir(first, source, false, null, null, 1, REPRODUCIBLE);
+
+		Files.setLastModifiedTime(source.resolve("scripts/install.sh"), FileTime.fromMillis(0));
+		Files.setLastModifiedTime(source.resolve("media"), FileTime.fromMillis(0));
+		final Path second = output.resolve("second.zip");
+		ApacheCompressUtils.zipIntoZipFileFromDir(second, source, false, null, null, 4, REPRODUCIBLE);
+
+		assertArrayEquals(Files.readAllBytes(first), Files.readAllBytes(second));
+		assertSortedWithOneTime(first);
+	}
+
+	@Test
+	public void manifestOrderDoesNotChangeTheZip() throws Exception {
+		final Path source = createAsset();
+		final Path output = this.folder.newFolder().toPath();
+
+		final AssetManifest listed = new AssetManifest();
+		listed.addContent("asset.properties", "name=test\n".getBytes(StandardCharsets.UTF_8));
+		listed.addFile("scripts/install.sh", source.resolve("scripts/install.sh"));
+		listed.addFile("media/b.txt", source.resolve("media/b.txt"));
+		listed.addFile("media/a.txt", source.resolve("media/a.txt"));
+		listed.addDirectory("empty");
+
+		final AssetManifest reversed = new AssetManifest();
+		reversed.addDirectory("empty");
+		reversed.addFile("media/a.txt", source.resolve("media/a.txt"));
+		reversed.addFile("media/b.txt", source.resolve("media/b.txt"));
+		reversed.addFile("scripts/install.sh", source.resolve("scripts/install.sh"));
+		reversed.addContent("asset.properties", "name=test\n".getBytes(StandardCharsets.UTF_8));
+
+		final Path first = output.resolve("listed.zip");
+		final Path second = output.resolve("reversed.zip");
+		try {
+			Cons3rtCompressUtils.INSTANCE.setZipThreads(1);
+			Cons3rtCompressUtils.INSTANCE.zipIntoZipFileFromManifest(first, listed, null, REPRODUCIBLE);
+			Thread.sleep(2000);
+			Cons3rtCompressUtils.INSTANCE.setZipThreads(4);
+			Cons3rtCompressUtils.INSTANCE.zipIntoZipFileFromManifest(second, reversed, null, REPRODUCIBLE);
+		} finally {
+			Cons3rtCompressUtils.INSTANCE.setZipThreads(ParallelZipArchiver.THREADS);
+		}
+
+		assertArrayEquals(Files.readAllBytes(first), Files.readAllBytes(second));
+		assertSortedWithOneTime(first);
+	}
+
+	private static void assertSortedWithOneTime(final Path zipPath) throws Exception {
+		final List<String> names = new ArrayList<>();
+		try (ZipFile zip = new ZipFile(zipPath.toFile())) {
+			final long time = zip.getEntries().nextElement().getTime();
+			for (final Enumeration<ZipArchiveEntry> e = zip.getEntries(); e.hasMoreElements();) {
+				final ZipArchiveEntry entry = e.nextElement();
+				assertEquals(time, entry.getTime());
+				assertEquals(0, entry.getExtraFields().length);
+				names.add(entry.getName());
+			}
+		}
+		final List<String> sorted = new ArrayList<>(names);
+		Collections.sort(sorted);
+		assertEquals(sorted, names);
+	}
+
+	private Path createAsset() throws Exception {
+		return AssetFixture.in(this.folder).file("asset.properties", "name=test\n")
+				.file("scripts/install.sh", "echo install\n").file("media/b.txt", "second\n")
+				.file("media/a.txt", "first\n").directory("empty").getPath();
+	}
+}
@@ -0,0 +1,335 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import io.jenkins.plugins.utils.ChunkedUploader;
+import io.jenkins.plugins.utils.CircuitBreaker;
+import io.jenkins.plugins.utils.HttpWrapper;
+import io.jenkins.plugins.utils.HttpWrapper.HTTPAbortedException;
+import io.jenkins.plugins.utils.HttpWrapper.HTTPException;
+import io.jenkins.plugins.utils.HttpWrapper.HTTPTimeoutException;
+import io.jenkins.plugins.utils.RetryPolicy;
+import io.jenkins.plugins.utils.Timeouts;
+
+public class RetryTests {
+
+	@Rule public JenkinsRule j = new JenkinsRule();
+
+	private static final RetryPolicy FAST = new RetryPolicy(4, 10, 50, 1000);
+
+
+	private HttpServer server;
+
+	private final Queue<Integer> statuses = new ConcurrentLinkedQueue<>();
+
+	private final AtomicInteger requests = new AtomicInteger();
+
+	private volatile long delayMillis;
+
+	private volatile byte[] errorBody;
+
+	private volatile byte[] body;
+
+	private volatile boolean bodySent;
+
+	@Before
+	public void startServer() throws IOException {
+		// long enough for the breaker to refuse at once, short enough to try the site again
+		System.setProperty(CircuitBreaker.class.getName() + ".openSeconds", "1");
+
+		this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		this.server.setExecutor(Executors.newCachedThreadPool());
+		this.server.createContext("/rest/api/", new HttpHandler() {
+			@Override
+			public void handle(final HttpExchange exchange) throws IOException {
+				try (InputStream in = exchange.getRequestBody()) {
+					while (in.read() != -1) {
+						// drain the request
+					}
+				}
+				requests.incrementAndGet();
+				if (delayMillis > 0) {
+					try {
+						Thread.sleep(delayMillis);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+
+				final Integer next = statuses.poll();
+				final int status = (next != null) ? next : 200;
+				if (status == 503) {
+					exchange.getResponseHeaders().add("Retry-After", "0");
+				}
+				final byte[] response = (status != 200 && errorBody != null) ? errorBody
+						: (status == 200 && body != null) ? body : "{}".getBytes(StandardCharsets.UTF_8);
+				exchange.sendResponseHeaders(status, response.length);
+				try (OutputStream out = exchange.getResponseBody()) {
+					out.write(response);
+				}
+				bodySent = true;
+			}
+		});
+		this.server.start();
+	}
+
+	@After
+	public void stopServer() {
+		this.server.stop(0);
+		System.clearProperty(CircuitBreaker.class.getName() + ".openSeconds");
+	}
+
+	@Test
+	public void idempotentRequestsAreRetried() throws Exception {
+		this.statuses.add(502);
+		this.statuses.add(503);
+		this.statuses.add(504);
+
+		assertEquals("{}", this.wrapper(FAST).validateCredentials());
+		assertEquals(4, this.requests.get());
+	}
+
+	@Test
+	public void postsAreOnlyRetriedWhenTurnedAway() throws Exception {
+		final File dir = Files.createTempDirectory("retry").toFile();
+		final File zip = new File(dir, "CONS3RT-Asset-retry.zip");
+		Files.write(zip.toPath(), new byte[1000]);
+
+		// the part is sent once, the complete POST is turned away once
+		this.statuses.add(200);
+		this.statuses.add(503);
+		new ChunkedUploader(this.wrapper(FAST), "import", zip, dir, 1000, 1).upload();
+		assertEquals(3, this.requests.get());
+
+		// a POST that may have reached the server is not sent again
+		this.requests.set(0);
+		this.statuses.add(200);
+		this.statuses.add(502);
+		try {
+			new ChunkedUploader(this.wrapper(FAST), "import", zip, dir, 1000, 1).upload();
+			fail("Expected the complete request to fail without a retry");
+		} catch (HTTPException e) {
+			assertEquals(2, this.requests.get());
+		}
+	}
+
+	@Test
+	public void unreachableSiteOpensTheCircuitBreaker() throws Exception {
+		final int port;
+		try (ServerSocket socket = new ServerSocket(0)) {
+			port = socket.getLocalPort();
+		}
+		final HttpWrapper wrapper = new HttpWrapper.HttpWrapperBuilder("http://localhost:" + port, "token",
+				"username").username("jenkins").retryPolicy(RetryPolicy.NONE).build();
+
+		for (int i = 0; i < 5; i++) {
+			try {
+				wrapper.validateCredentials();
+				fail("Expected the connection to fail");
+			} catch (HTTPException e) {
+				assertTrue(e.getMessage(), e.getMessage().contains("executeHttpRequest"));
+			}
+		}
+
+		try {
+			wrapper.validateCredentials();
+			fail("Expected the circuit breaker to be open");
+		} catch (HTTPException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("is unavailable"));
+		}
+	}
+
+	@Test
+	public void onlyTheRetryPolicyRetries() throws Exception {
+		try (final ServerSocket socket = new ServerSocket(0)) {
+			final AtomicInteger connections = new AtomicInteger();
+			final Thread acceptor = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						while (true) {
+							// hang up without an answer, which http clients like to retry
+							socket.accept().close();
+							connections.incrementAndGet();
+						}
+					} catch (IOException e) {
+						// closed
+					}
+				}
+			});
+			acceptor.setDaemon(true);
+			acceptor.start();
+
+			final HttpWrapper wrapper = new HttpWrapper.HttpWrapperBuilder(
+					"http://localhost:" + socket.getLocalPort(), "token", "username").username("jenkins")
+							.retryPolicy(RetryPolicy.NONE).build();
+			try {
+				wrapper.validateCredentials();
+				fail("Expected the request to fail");
+			} catch (HTTPException e) {
+				Thread.sleep(200);
+				assertEquals(1, connections.get());
+			}
+		}
+	}
+
+	@Test
+	public void abortedTrialRequestsReopenTheSite() throws Exception {
+		final HttpWrapper wrapper = this.wrapper(RetryPolicy.NONE);
+		for (int i = 0; i < 5; i++) {
+			this.statuses.add(503);
+			try {
+				wrapper.validateCredentials();
+				fail("Expected the site to turn the request away");
+			} catch (HTTPException e) {
+				// expected
+			}
+		}
+		Thread.sleep(1100);
+
+		// the trial request is aborted before the site answers it
+		this.delayMillis = 5000;
+		assertTrue(interruptDuring(wrapper) instanceof HTTPAbortedException);
+
+		this.delayMillis = 0;
+		assertEquals("{}", wrapper.validateCredentials());
+	}
+
+	@Test
+	public void silentSitesTimeOut() throws Exception {
+		this.delayMillis = 3000;
+		final long start = System.currentTimeMillis();
+		final HttpWrapper wrapper = new HttpWrapper.HttpWrapperBuilder(
+				"http://localhost:" + this.server.getAddress().getPort(), "token", "username").username("jenkins")
+						.retryPolicy(new RetryPolicy(2, 10, 50, 1000)).timeouts(Timeouts.of(1, 1, null, null, null))
+						.build();
+		try {
+			wrapper.validateCredentials();
+			fail("Expected the request to time out");
+		} catch (HTTPTimeoutException e) {
+			// each attempt times out reading, the deadline leaves room for the retry
+			assertEquals(HTTPTimeoutException.Kind.READ, e.getKind());
+			assertEquals(2, this.requests.get());
+			assertTrue(System.currentTimeMillis() - start < 3500);
+		}
+	}
+
+	@Test
+	public void buildDeadlineBoundsRequests() throws Exception {
+		this.delayMillis = 3000;
+		final long start = System.currentTimeMillis();
+		final HttpWrapper wrapper = new HttpWrapper.HttpWrapperBuilder(
+				"http://localhost:" + this.server.getAddress().getPort(), "token", "username").username("jenkins")
+						.retryPolicy(FAST).deadline(start + 500).build();
+		try {
+			wrapper.validateCredentials();
+			fail("Expected the build deadline to pass");
+		} catch (HTTPTimeoutException e) {
+			assertEquals(HTTPTimeoutException.Kind.BUILD_DEADLINE, e.getKind());
+			assertTrue(System.currentTimeMillis() - start < 2500);
+		}
+	}
+
+	@Test
+	public void interruptedRequestsAreAborted() throws Exception {
+		this.delayMillis = 5000;
+		final long start = System.currentTimeMillis();
+		assertTrue(interruptDuring(this.wrapper(FAST)) instanceof HTTPAbortedException);
+		assertTrue(System.currentTimeMillis() - start < 2500);
+		assertEquals(1, this.requests.get());
+
+		// the abort is not held against the site
+		this.delayMillis = 0;
+		assertEquals("{}", this.wrapper(FAST).validateCredentials());
+	}
+
+	/**
+	 * Interrupts a request to the slow server after it was sent.
+	 */
+	private static Exception interruptDuring(final HttpWrapper wrapper) throws InterruptedException {
+		final AtomicReference<Exception> thrown = new AtomicReference<>();
+		final Thread sender = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					wrapper.validateCredentials();
+				} catch (HTTPException e) {
+					thrown.set(e);
+				}
+			}
+		});
+
+		sender.start();
+		Thread.sleep(300);
+		sender.interrupt();
+		sender.join(5000);
+		return thrown.get();
+	}
+
+	@Test
+	public void errorBodiesAreReadUpToALimit() throws Exception {
+		final byte[] page = new byte[4 * 1024 * 1024];
+		Arrays.fill(page, (byte) 'x');
+		this.errorBody = page;
+		this.statuses.add(500);
+		try {
+			this.wrapper(FAST).validateCredentials();
+			fail("Expected the request to fail");
+		} catch (HTTPException e) {
+			assertTrue(e.getMessage(), e.getMessage().endsWith("(truncated after 65536 bytes)"));
+			assertTrue(e.getMessage().length() < 70 * 1024);
+		}
+	}
+
+	@Test
+	public void jsonResponsesAreNotReadPastTheirFields() throws Exception {
+		final StringBuilder deployment = new StringBuilder("{\"deploymentHosts\":[{\"systemRole\":\"web\"}],");
+		deployment.append("\"description\":\"");
+		for (int i = 0; i < 16 * 1024 * 1024; i++) {
+			deployment.append('x');
+		}
+		deployment.append("\"}");
+		this.body = deployment.toString().getBytes(StandardCharsets.UTF_8);
+
+		final HttpWrapper wrapper = this.wrapper(FAST);
+		assertEquals(Collections.singleton("web"), wrapper.getRoles(1));
+		Thread.sleep(200);
+		assertFalse("Expected the rest of the deployment to be dropped", this.bodySent);
+
+		// the next request gets a new connection
+		this.body = null;
+		assertEquals("{}", wrapper.validateCredentials());
+	}
+
+	private HttpWrapper wrapper(final RetryPolicy policy) throws HTTPException {
+		return new HttpWrapper.HttpWrapperBuilder("http://localhost:" + this.server.getAddress().getPort(), "token",
+				"username").username("jenkins").retryPolicy(policy).build();
+	}
+}
@@ -0,0 +1,114 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import com.cloudbees.plugins.credentials.CredentialsScope;
+import com.cloudbees.plugins.credentials.impl.CertificateCredentialsImpl;
+import com.cloudbees.plugins.credentials.impl.CertificateCredentialsImpl.FileOnMasterKeyStoreSource;
+
+import io.jenkins.plugins.Cons3rtSite;
+import io.jenkins.plugins.utils.HttpWrapper.HTTPException;
+import io.jenkins.plugins.utils.SSLContextCache;
+
+public class SSLContextCacheTests {
+
+	@Rule public JenkinsRule j = new JenkinsRule();
+
+	private Path folder;
+
+	private static final String certificate = Cons3rtSite.certificateAuthentication;
+
+	@Before
+	public void clearCache() throws IOException {
+		SSLContextCache.INSTANCE.clear();
+		this.folder = Files.createTempDirectory("ssl-context-cache");
+	}
+
+	@Test
+	public void unchangedCredentialsReuseTheirFactory() throws Exception {
+		final File keyStore = writeKeyStore("first.p12", "secret");
+
+		final SSLConnectionSocketFactory first = factory(credential("cert", "secret", keyStore));
+		final SSLConnectionSocketFactory second = factory(credential("cert", "secret", keyStore));
+
+		assertSame(first, second);
+	}
+
+	@Test
+	public void changedCredentialsGetANewFactory() throws Exception {
+		final File keyStore = writeKeyStore("first.p12", "secret");
+		final File otherKeyStore = writeKeyStore("second.p12", "other");
+
+		final CertificateCredentialsImpl original = credential("cert", "secret", keyStore);
+		final CertificateCredentialsImpl edited = credential("cert", "other", otherKeyStore);
+		assertNotEquals(fingerprint(original), fingerprint(edited));
+
+		final SSLConnectionSocketFactory before = factory(original);
+		final SSLConnectionSocketFactory after = factory(edited);
+
+		assertNotSame(before, after);
+		assertSame(after, factory(edited));
+	}
+
+	@Test
+	public void fingerprintsFollowTheKeyStoreContent() throws Exception {
+		final File keyStore = writeKeyStore("first.p12", "secret");
+		final CertificateCredentialsImpl credential = credential("cert", "secret", keyStore);
+		final String before = fingerprint(credential);
+		assertEquals(before, fingerprint(credential));
+
+		// the same file replaced with another keystore under the same password
+		writeKeyStore("first.p12", "secret", "replacement");
+		assertNotEquals(before, fingerprint(credential));
+	}
+
+	private File writeKeyStore(final String name, final String password, final String... aliases)
+			throws IOException, GeneralSecurityException {
+		final KeyStore keyStore = KeyStore.getInstance("PKCS12");
+		keyStore.load(null, null);
+		for (final String alias : aliases) {
+			final SecretKeySpec key = new SecretKeySpec(alias.getBytes(StandardCharsets.UTF_8), "AES");
+			keyStore.setEntry(alias, new KeyStore.SecretKeyEntry(key),
+					new KeyStore.PasswordProtection(password.toCharArray()));
+		}
+
+		final File file = this.folder.resolve(name).toFile();
+		try (OutputStream out = new FileOutputStream(file)) {
+			keyStore.store(out, password.toCharArray());
+		}
+		return file;
+	}
+
+	private static CertificateCredentialsImpl credential(final String id, final String password, final File keyStore) {
+		return new CertificateCredentialsImpl(CredentialsScope.GLOBAL, id, "test", password,
+				new FileOnMasterKeyStoreSource(keyStore.getAbsolutePath()));
+	}
+
+	private static String fingerprint(final CertificateCredentialsImpl credential) throws HTTPException {
+		return SSLContextCache.INSTANCE.fingerprint(certificate, credential);
+	}
+
+	private static SSLConnectionSocketFactory factory(final CertificateCredentialsImpl credential)
+			throws HTTPException {
+		return SSLContextCache.INSTANCE.getSocketFactory(certificate, credential, fingerprint(credential));
+	}
+}
@@ -0,0 +1,51 @@
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import io.jenkins.plugins.utils.WorkspaceScanner;
+
+public class WorkspaceScannerTests {
+
+	@Rule public JenkinsRule j = new JenkinsRule();
+
+	@Test
+	public void allPatternsAreMatchedInOneWalk() throws Exception {
+		final Path workspace = Files.createTempDirectory("workspace-scanner");
+		for (final String file : new String[] { "media/a.iso", "media/b.iso", "media/readme.txt",
+				"media/isos/c.iso", "build/out/d.iso", "build/out/e.rpm", "src/main/f.java", "top.iso" }) {
+			final Path path = workspace.resolve(file.replace('/', File.separatorChar));
+			Files.createDirectories(path.getParent());
+			Files.write(path, new byte[0]);
+		}
+
+		final Map<String, Set<String>> results = WorkspaceScanner.scan(workspace,
+				Arrays.asList("media/*.iso", "**/*.rpm", "build/", "media/is?s", "*.iso", "nothing/**/*"));
+
+		assertEquals(Arrays.asList("media/*.iso", "**/*.rpm", "build/", "media/is?s", "*.iso", "nothing/**/*"),
+				Arrays.asList(results.keySet().toArray()));
+		assertEquals(paths("media/a.iso", "media/b.iso"), results.get("media/*.iso"));
+		assertEquals(paths("build/out/e.rpm"), results.get("**/*.rpm"));
+		assertEquals(paths("build", "build/out", "build/out/d.iso", "build/out/e.rpm"), results.get("build/"));
+		assertEquals(paths("media/isos"), results.get("media/is?s"));
+		assertEquals(paths("top.iso"), results.get("*.iso"));
+		assertEquals(paths(), results.get("nothing/**/*"));
+	}
+
+	private static Set<String> paths(final String... paths) {
+		final Set<String> result = new HashSet<>();
+		for (final String path : paths) {
+			result.add(path.replace('/', File.separatorChar));
+		}
+		return result;
+	}
+}
@@ -0,0 +1,63 @@
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.logging.Logger;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import io.jenkins.plugins.utils.ApacheCompressUtils;
+import io.jenkins.plugins.utils.CompressionPolicy;
+import io.jenkins.plugins.utils.ParallelZipArchiver;
+
+/**
+ * Measures zip entries per second for an asset made of many small files. Run
+ * by hand, with the thread count to measure in the
+ * io.jenkins.plugins.utils.ParallelZipArchiver.threads system property.
+ */
+public class ZipBenchmarkTests {
+
+	public static final Logger LOGGER = Logger.getLogger(ZipBenchmarkTests.class.getName());
+
+	private static final int DIRECTORIES = 200;
+
+	private static final int FILES_PER_DIRECTORY = 100;
+
+	private static final int WARMUP_ROUNDS = 3;
+
+	private static final int ROUNDS = 5;
+
+	@Ignore
+	@Test
+	public void smallFileEntriesPerSecond() throws Exception {
+		final Path source = Files.createTempDirectory("zip-benchmark");
+		final Random random = new Random(1);
+		for (int d = 0; d < DIRECTORIES; ++d) {
+			final Path dir = Files.createDirectories(source.resolve("dir" + d).resolve("sub"));
+			for (int f = 0; f < FILES_PER_DIRECTORY; ++f) {
+				final StringBuilder content = new StringBuilder();
+				for (int i = random.nextInt(200); i >= 0; --i) {
+					content.append("line ").append(i).append('\n');
+				}
+				Files.write(dir.resolve("file" + f + ".txt"), content.toString().getBytes(StandardCharsets.UTF_8));
+			}
+		}
+
+		final int threads = ParallelZipArchiver.THREADS;
+		final Path zip = Files.createTempDirectory("zip-benchmark-out").resolve("benchmark.zip");
+		final int entries = DIRECTORIES * FILES_PER_DIRECTORY;
+
+		for (int round = 0; round < WARMUP_ROUNDS + ROUNDS; ++round) {
+			final long start = System.nanoTime();
+			ApacheCompressUtils.zipIntoZipFileFromDir(zip, source, false, null, null, threads,
+					CompressionPolicy.DEFAULT);
+			final long millis = Math.max(1, (System.nanoTime() - start) / 1000000);
+
+			if (round >= WARMUP_ROUNDS) {
+				LOGGER.info(String.format("%d threads: %d entries in %d ms, %d entries/s", threads, entries, millis,
+						entries * 1000L / millis));
+			}
+		}
+	}
+}
@@ -0,0 +1,57 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.zip.CRC32;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import io.jenkins.plugins.utils.ApacheCompressUtils;
+import io.jenkins.plugins.utils.CompressionPolicy;
+import io.jenkins.plugins.utils.Cons3rtCompressUtils;
+import io.jenkins.plugins.utils.ZipCentralDirectoryIndex;
+
+public class ZipIndexTests {
+
+	@Rule public JenkinsRule j = new JenkinsRule();
+
+	@Test
+	public void indexAnswersLikeTheArchive() throws Exception {
+		final Path source = Files.createTempDirectory("zip-index");
+		final StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 1000; ++i) {
+			text.append("line ").append(i).append('\n');
+		}
+		Files.write(source.resolve("asset.properties"), "name=test\n".getBytes(StandardCharsets.UTF_8));
+		Files.write(Files.createDirectories(source.resolve("scripts")).resolve("install.sh"),
+				text.toString().getBytes(StandardCharsets.UTF_8));
+		final Path zip = Files.createTempDirectory("zip-index-out").resolve("asset.zip");
+
+		for (final int level : new int[] { 0, 6 }) {
+			ApacheCompressUtils.zipIntoZipFileFromDir(zip, source, false, null, null, 1,
+					CompressionPolicy.of(false, level));
+			Files.setLastModifiedTime(zip, FileTime.fromMillis(System.currentTimeMillis() + level * 1000L));
+
+			final ZipCentralDirectoryIndex index = Cons3rtCompressUtils.INSTANCE.getZipIndex(zip);
+			assertSame(index, Cons3rtCompressUtils.INSTANCE.getZipIndex(zip));
+			assertEquals(ApacheCompressUtils.getZipFileListing(zip),
+					Cons3rtCompressUtils.INSTANCE.getZipFileListing(zip));
+			assertEquals("name=test\n", Cons3rtCompressUtils.INSTANCE.getZipFileEntryAsString(zip, "asset.properties"));
+			assertEquals(text.toString(),
+					Cons3rtCompressUtils.INSTANCE.getZipFileEntryAsString(zip, "scripts/install.sh"));
+			assertNull(Cons3rtCompressUtils.INSTANCE.getZipFileEntryAsString(zip, "missing.txt"));
+
+			final CRC32 crc = new CRC32();
+			crc.update(text.toString().getBytes(StandardCharsets.UTF_8));
+			assertEquals(crc.getValue(), Cons3rtCompressUtils.INSTANCE.getZipFileEntryCrc(zip, "scripts/install.sh"));
+			assertEquals(text.length(), Cons3rtCompressUtils.INSTANCE.getZipFileEntrySize(zip, "scripts/install.sh"));
+			assertEquals(-1, Cons3rtCompressUtils.INSTANCE.getZipFileEntrySize(zip, "missing.txt"));
+		}
+	}
+}